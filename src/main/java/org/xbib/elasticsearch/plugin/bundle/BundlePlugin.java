@@ -3,16 +3,23 @@ package org.xbib.elasticsearch.plugin.bundle;
 import org.apache.lucene.analysis.Analyzer;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.component.LifecycleComponent;
 import org.elasticsearch.common.inject.Module;
+import org.elasticsearch.common.io.PathUtils;
 import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
 import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.IndexScopedSettings;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsFilter;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.env.NodeEnvironment;
 import org.elasticsearch.index.analysis.AnalyzerProvider;
 import org.elasticsearch.index.analysis.CharFilterFactory;
 import org.elasticsearch.index.analysis.TokenFilterFactory;
@@ -26,11 +33,27 @@ import org.elasticsearch.plugins.Plugin;
 import org.elasticsearch.plugins.SearchPlugin;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestHandler;
+import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.threadpool.ExecutorBuilder;
+import org.elasticsearch.threadpool.FixedExecutorBuilder;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.watcher.ResourceWatcherService;
+import org.xbib.elasticsearch.plugin.bundle.action.decompound.DecompoundStatsAction;
+import org.xbib.elasticsearch.plugin.bundle.action.decompound.TransportDecompoundStatsAction;
 import org.xbib.elasticsearch.plugin.bundle.action.isbnformat.ISBNFormatAction;
 import org.xbib.elasticsearch.plugin.bundle.action.isbnformat.TransportISBNFormatAction;
 import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectAction;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectBulkAction;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectStatsAction;
 import org.xbib.elasticsearch.plugin.bundle.action.langdetect.TransportLangdetectAction;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.TransportLangdetectBulkAction;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.TransportLangdetectStatsAction;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.DecompoundCaches;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.DecompoundModels;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectCache;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModels;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectServices;
 import org.xbib.elasticsearch.plugin.bundle.index.analysis.autophrase.AutoPhrasingTokenFilterFactory;
 import org.xbib.elasticsearch.plugin.bundle.index.analysis.baseform.BaseformTokenFilterFactory;
 import org.xbib.elasticsearch.plugin.bundle.index.analysis.concat.ConcatTokenFilterFactory;
@@ -72,8 +95,12 @@ import org.xbib.elasticsearch.plugin.bundle.index.mapper.standardnumber.Standard
 import org.xbib.elasticsearch.plugin.bundle.index.mapper.standardnumber.StandardnumberMapperTypeParser;
 import org.xbib.elasticsearch.plugin.bundle.common.standardnumber.StandardnumberService;
 import org.xbib.elasticsearch.plugin.bundle.query.decompound.ExactPhraseQueryBuilder;
+import org.xbib.elasticsearch.plugin.bundle.query.langdetect.LangdetectQueryBuilder;
 import org.xbib.elasticsearch.plugin.bundle.rest.action.isbnformat.RestISBNFormatterAction;
+import org.xbib.elasticsearch.plugin.bundle.rest.action.decompound.RestDecompoundStatsAction;
 import org.xbib.elasticsearch.plugin.bundle.rest.action.langdetect.RestLangdetectAction;
+import org.xbib.elasticsearch.plugin.bundle.rest.action.langdetect.RestLangdetectBulkAction;
+import org.xbib.elasticsearch.plugin.bundle.rest.action.langdetect.RestLangdetectStatsAction;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -98,8 +125,39 @@ public class BundlePlugin extends Plugin implements AnalysisPlugin, MapperPlugin
 
     private final Settings settings;
 
+    private final LangdetectCache langdetectCache;
+
+    private final LangdetectCache langdetectQueryCache;
+
+    private final LangdetectModels langdetectModels;
+
+    private final LangdetectServices langdetectServices;
+
+    private final DecompoundModels decompoundModels;
+
+    private final DecompoundCaches decompoundCaches;
+
     public BundlePlugin(Settings settings) {
         this.settings = settings;
+        this.langdetectCache = new LangdetectCache(settings.getAsBoolean("plugins.xbib.langdetect.cache.enabled", false) ?
+                settings.getAsInt("plugins.xbib.langdetect.cache.size", 10000) : 0);
+        this.langdetectQueryCache = new LangdetectCache(settings.getAsInt("plugins.xbib.langdetect.query_cache.size", 1024));
+        String modelPath = settings.get("plugins.xbib.langdetect.model_path", "");
+        if (modelPath.isEmpty() && Environment.PATH_HOME_SETTING.exists(settings)) {
+            modelPath = PathUtils.get(Environment.PATH_HOME_SETTING.get(settings))
+                    .resolve("plugins").resolve("elasticsearch-plugin-bundle").resolve("langdetect").toString();
+        }
+        this.langdetectModels = new LangdetectModels(modelPath.isEmpty() ? null : PathUtils.get(modelPath),
+                settings.getAsInt("plugins.xbib.langdetect.quantization_bits", 0));
+        this.langdetectServices = new LangdetectServices(langdetectCache, langdetectQueryCache, langdetectModels);
+        String decompoundModelPath = settings.get("plugins.xbib.decompound.model_path", "");
+        if (decompoundModelPath.isEmpty() && Environment.PATH_HOME_SETTING.exists(settings)) {
+            decompoundModelPath = PathUtils.get(Environment.PATH_HOME_SETTING.get(settings))
+                    .resolve("plugins").resolve("elasticsearch-plugin-bundle").resolve("decompound").toString();
+        }
+        this.decompoundModels = new DecompoundModels(decompoundModelPath.isEmpty() ?
+                null : PathUtils.get(decompoundModelPath));
+        this.decompoundCaches = new DecompoundCaches();
     }
 
     @Override
@@ -111,6 +169,7 @@ public class BundlePlugin extends Plugin implements AnalysisPlugin, MapperPlugin
                 new Setting<>("plugins.xbib.concat.enabled", "true", Function.identity(), Setting.Property.NodeScope),
                 new Setting<>("plugins.xbib.pair.enabled", "true", Function.identity(), Setting.Property.NodeScope),
                 new Setting<>("plugins.xbib.decompound.enabled", "true", Function.identity(), Setting.Property.NodeScope),
+                new Setting<>("plugins.xbib.decompound.model_path", "", Function.identity(), Setting.Property.NodeScope),
                 new Setting<>("plugins.xbib.german_normalize.enabled", "true", Function.identity(), Setting.Property.NodeScope),
                 new Setting<>("plugins.xbib.hyphen.enabled", "true", Function.identity(), Setting.Property.NodeScope),
                 new Setting<>("plugins.xbib.sortform.enabled", "true", Function.identity(), Setting.Property.NodeScope),
@@ -124,6 +183,14 @@ public class BundlePlugin extends Plugin implements AnalysisPlugin, MapperPlugin
                 new Setting<>("plugins.xbib.naturalsort.enabled", "true", Function.identity(), Setting.Property.NodeScope),
                 new Setting<>("plugins.xbib.reference.enabled", "true", Function.identity(), Setting.Property.NodeScope),
                 new Setting<>("plugins.xbib.langdetect.enabled", "true", Function.identity(), Setting.Property.NodeScope),
+                new Setting<>("plugins.xbib.langdetect.cache.enabled", "false", Function.identity(), Setting.Property.NodeScope),
+                new Setting<>("plugins.xbib.langdetect.cache.size", "10000", Function.identity(), Setting.Property.NodeScope),
+                new Setting<>("plugins.xbib.langdetect.query_cache.size", "1024", Function.identity(),
+                        Setting.Property.NodeScope),
+                new Setting<>("plugins.xbib.langdetect.model_path", "", Function.identity(), Setting.Property.NodeScope),
+                new Setting<>("plugins.xbib.langdetect.quantization_bits", "0", Function.identity(),
+                        Setting.Property.NodeScope),
+                new Setting<>("plugins.xbib.langdetect.preload", "false", Function.identity(), Setting.Property.NodeScope),
                 new Setting<>("plugins.xbib.isbnformat.enabled", "true", Function.identity(), Setting.Property.NodeScope)
                 );
     }
@@ -160,7 +227,9 @@ public class BundlePlugin extends Plugin implements AnalysisPlugin, MapperPlugin
             extra.put("pair", PairTokenFilterFactory::new);
         }
         if (settings.getAsBoolean("plugins.xbib.decompound.enabled", true)) {
-            extra.put("decompound", DecompoundTokenFilterFactory::new);
+            extra.put("decompound", (indexSettings, environment, name, factorySettings) ->
+                    new DecompoundTokenFilterFactory(indexSettings, environment, name, factorySettings,
+                            decompoundModels, decompoundCaches));
         }
         if (settings.getAsBoolean("plugins.xbib.german_normalize.enabled", true)) {
             extra.put("german_normalize", GermanNormalizationFilterFactory::new);
@@ -244,7 +313,7 @@ public class BundlePlugin extends Plugin implements AnalysisPlugin, MapperPlugin
             extra.put(ReferenceMapper.CONTENT_TYPE, referenceMapperTypeParser);
         }
         if (settings.getAsBoolean("plugins.xbib.langdetect.enabled", true)) {
-            extra.put(LangdetectMapper.CONTENT_TYPE, new LangdetectMapper.TypeParser());
+            extra.put(LangdetectMapper.CONTENT_TYPE, new LangdetectMapper.TypeParser(langdetectServices));
         }
         if (settings.getAsBoolean("plugins.xbib.icu.enabled", true)) {
             extra.put(IcuCollationKeyFieldMapper.CONTENT_TYPE, new IcuCollationKeyFieldMapper.TypeParser());
@@ -254,9 +323,16 @@ public class BundlePlugin extends Plugin implements AnalysisPlugin, MapperPlugin
 
     @Override
     public List<QuerySpec<?>> getQueries() {
-        return Collections.singletonList(new QuerySpec<>(ExactPhraseQueryBuilder.NAME,
+        List<QuerySpec<?>> extra = new ArrayList<>();
+        extra.add(new QuerySpec<>(ExactPhraseQueryBuilder.NAME,
                 ExactPhraseQueryBuilder::new,
                 ExactPhraseQueryBuilder::fromXContent));
+        if (settings.getAsBoolean("plugins.xbib.langdetect.enabled", true)) {
+            extra.add(new QuerySpec<>(LangdetectQueryBuilder.NAME,
+                    LangdetectQueryBuilder::new,
+                    LangdetectQueryBuilder::fromXContent));
+        }
+        return extra;
     }
 
     @Override
@@ -267,6 +343,11 @@ public class BundlePlugin extends Plugin implements AnalysisPlugin, MapperPlugin
         }
         if (settings.getAsBoolean("plugins.xbib.langdetect.enabled", true)) {
             extra.add(new ActionHandler<>(LangdetectAction.INSTANCE, TransportLangdetectAction.class));
+            extra.add(new ActionHandler<>(LangdetectBulkAction.INSTANCE, TransportLangdetectBulkAction.class));
+            extra.add(new ActionHandler<>(LangdetectStatsAction.INSTANCE, TransportLangdetectStatsAction.class));
+        }
+        if (settings.getAsBoolean("plugins.xbib.decompound.enabled", true)) {
+            extra.add(new ActionHandler<>(DecompoundStatsAction.INSTANCE, TransportDecompoundStatsAction.class));
         }
         return extra;
     }
@@ -285,6 +366,45 @@ public class BundlePlugin extends Plugin implements AnalysisPlugin, MapperPlugin
         }
         if (settings.getAsBoolean("plugins.xbib.langdetect.enabled", true)) {
             extra.add(new RestLangdetectAction(settings, restController));
+            extra.add(new RestLangdetectBulkAction(settings, restController));
+            extra.add(new RestLangdetectStatsAction(settings, restController));
+        }
+        if (settings.getAsBoolean("plugins.xbib.decompound.enabled", true)) {
+            extra.add(new RestDecompoundStatsAction(settings, restController));
+        }
+        return extra;
+    }
+
+    @Override
+    public Collection<Object> createComponents(Client client,
+                                               ClusterService clusterService,
+                                               ThreadPool threadPool,
+                                               ResourceWatcherService resourceWatcherService,
+                                               ScriptService scriptService,
+                                               NamedXContentRegistry xContentRegistry,
+                                               Environment environment,
+                                               NodeEnvironment nodeEnvironment,
+                                               NamedWriteableRegistry namedWriteableRegistry) {
+        List<Object> extra = new ArrayList<>();
+        extra.add(langdetectCache);
+        extra.add(langdetectModels);
+        extra.add(langdetectServices);
+        extra.add(decompoundModels);
+        extra.add(decompoundCaches);
+        if (settings.getAsBoolean("plugins.xbib.langdetect.enabled", true) &&
+                settings.getAsBoolean("plugins.xbib.langdetect.preload", false)) {
+            langdetectServices.preload(threadPool.generic(), settings, null);
+        }
+        return extra;
+    }
+
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(Settings settings) {
+        List<ExecutorBuilder<?>> extra = new ArrayList<>();
+        if (settings.getAsBoolean("plugins.xbib.langdetect.enabled", true)) {
+            extra.add(new FixedExecutorBuilder(settings, TransportLangdetectBulkAction.EXECUTOR,
+                    EsExecutors.numberOfProcessors(settings), 1000,
+                    "thread_pool." + TransportLangdetectBulkAction.EXECUTOR));
         }
         return extra;
     }
@@ -0,0 +1,68 @@
+package org.xbib.elasticsearch.plugin.bundle.action.decompound;
+
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.CacheStats;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decompound statistics of a node.
+ */
+public class DecompoundNodeStats extends BaseNodeResponse implements ToXContentFragment {
+
+    private Map<String, CacheStats> cacheStats;
+
+    DecompoundNodeStats() {
+    }
+
+    public DecompoundNodeStats(DiscoveryNode node, Map<String, CacheStats> cacheStats) {
+        super(node);
+        this.cacheStats = cacheStats;
+    }
+
+    /**
+     * @return the statistics of the decompound caches of the node, by decompounder configuration
+     */
+    public Map<String, CacheStats> getCacheStats() {
+        return cacheStats;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int size = in.readVInt();
+        cacheStats = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            cacheStats.put(in.readString(), new CacheStats(in));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(cacheStats.size());
+        for (Map.Entry<String, CacheStats> entry : cacheStats.entrySet()) {
+            out.writeString(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("caches");
+        for (Map.Entry<String, CacheStats> entry : cacheStats.entrySet()) {
+            builder.startObject(entry.getKey());
+            entry.getValue().toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,28 @@
+package org.xbib.elasticsearch.plugin.bundle.action.decompound;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+/**
+ * Decompound statistics action.
+ */
+public class DecompoundStatsAction extends Action<DecompoundStatsRequest, DecompoundStatsResponse, DecompoundStatsRequestBuilder> {
+
+    public static final String NAME = "decompound_stats";
+
+    public static final DecompoundStatsAction INSTANCE = new DecompoundStatsAction();
+
+    private DecompoundStatsAction() {
+        super(NAME);
+    }
+
+    @Override
+    public DecompoundStatsRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new DecompoundStatsRequestBuilder(client);
+    }
+
+    @Override
+    public DecompoundStatsResponse newResponse() {
+        return new DecompoundStatsResponse();
+    }
+}
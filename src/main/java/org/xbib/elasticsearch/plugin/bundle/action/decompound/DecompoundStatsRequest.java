@@ -0,0 +1,16 @@
+package org.xbib.elasticsearch.plugin.bundle.action.decompound;
+
+import org.elasticsearch.action.support.nodes.BaseNodesRequest;
+
+/**
+ * Decompound statistics request.
+ */
+public class DecompoundStatsRequest extends BaseNodesRequest<DecompoundStatsRequest> {
+
+    public DecompoundStatsRequest() {
+    }
+
+    public DecompoundStatsRequest(String... nodesIds) {
+        super(nodesIds);
+    }
+}
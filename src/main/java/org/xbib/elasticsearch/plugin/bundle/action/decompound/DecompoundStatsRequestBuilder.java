@@ -0,0 +1,15 @@
+package org.xbib.elasticsearch.plugin.bundle.action.decompound;
+
+import org.elasticsearch.action.support.nodes.NodesOperationRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+
+/**
+ * Decompound statistics request builder.
+ */
+public class DecompoundStatsRequestBuilder
+        extends NodesOperationRequestBuilder<DecompoundStatsRequest, DecompoundStatsResponse, DecompoundStatsRequestBuilder> {
+
+    public DecompoundStatsRequestBuilder(ElasticsearchClient client) {
+        super(client, DecompoundStatsAction.INSTANCE, new DecompoundStatsRequest());
+    }
+}
@@ -0,0 +1,49 @@
+package org.xbib.elasticsearch.plugin.bundle.action.decompound;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.nodes.BaseNodesResponse;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Decompound statistics response.
+ */
+public class DecompoundStatsResponse extends BaseNodesResponse<DecompoundNodeStats> implements ToXContentFragment {
+
+    DecompoundStatsResponse() {
+    }
+
+    public DecompoundStatsResponse(ClusterName clusterName, List<DecompoundNodeStats> nodes,
+                                   List<FailedNodeException> failures) {
+        super(clusterName, nodes, failures);
+    }
+
+    @Override
+    protected List<DecompoundNodeStats> readNodesFrom(StreamInput in) throws IOException {
+        return in.readStreamableList(DecompoundNodeStats::new);
+    }
+
+    @Override
+    protected void writeNodesTo(StreamOutput out, List<DecompoundNodeStats> nodes) throws IOException {
+        out.writeStreamableList(nodes);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("nodes");
+        for (DecompoundNodeStats nodeStats : getNodes()) {
+            builder.startObject(nodeStats.getNode().getId());
+            builder.field("name", nodeStats.getNode().getName());
+            nodeStats.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,71 @@
+package org.xbib.elasticsearch.plugin.bundle.action.decompound;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.DecompoundCaches;
+
+import java.util.List;
+
+/**
+ * Transport action for decompound statistics. Collects the statistics of each node.
+ */
+public class TransportDecompoundStatsAction extends TransportNodesAction<DecompoundStatsRequest,
+        DecompoundStatsResponse, TransportDecompoundStatsAction.NodeRequest, DecompoundNodeStats> {
+
+    private final DecompoundCaches caches;
+
+    @Inject
+    public TransportDecompoundStatsAction(Settings settings, ThreadPool threadPool,
+                                          ClusterService clusterService,
+                                          TransportService transportService,
+                                          ActionFilters actionFilters,
+                                          IndexNameExpressionResolver indexNameExpressionResolver,
+                                          DecompoundCaches caches) {
+        super(settings, DecompoundStatsAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                indexNameExpressionResolver, DecompoundStatsRequest::new, NodeRequest::new,
+                ThreadPool.Names.MANAGEMENT, DecompoundNodeStats.class);
+        this.caches = caches;
+    }
+
+    @Override
+    protected DecompoundStatsResponse newResponse(DecompoundStatsRequest request, List<DecompoundNodeStats> nodes,
+                                                  List<FailedNodeException> failures) {
+        return new DecompoundStatsResponse(clusterService.getClusterName(), nodes, failures);
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(String nodeId, DecompoundStatsRequest request) {
+        return new NodeRequest(nodeId);
+    }
+
+    @Override
+    protected DecompoundNodeStats newNodeResponse() {
+        return new DecompoundNodeStats();
+    }
+
+    @Override
+    protected DecompoundNodeStats nodeOperation(NodeRequest request) {
+        return new DecompoundNodeStats(clusterService.localNode(), caches.stats());
+    }
+
+    /**
+     * The request for the statistics of a single node.
+     */
+    public static class NodeRequest extends BaseNodeRequest {
+
+        public NodeRequest() {
+        }
+
+        NodeRequest(String nodeId) {
+            super(nodeId);
+        }
+    }
+}
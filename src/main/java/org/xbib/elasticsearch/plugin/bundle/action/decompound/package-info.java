@@ -0,0 +1,4 @@
+/**
+ * Classes for decompound actions.
+ */
+package org.xbib.elasticsearch.plugin.bundle.action.decompound;
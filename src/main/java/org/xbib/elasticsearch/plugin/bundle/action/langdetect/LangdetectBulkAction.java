@@ -0,0 +1,28 @@
+package org.xbib.elasticsearch.plugin.bundle.action.langdetect;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+/**
+ * Bulk language detection action.
+ */
+public class LangdetectBulkAction extends Action<LangdetectBulkRequest, LangdetectBulkResponse, LangdetectBulkRequestBuilder> {
+
+    public static final String NAME = "langdetect_bulk";
+
+    public static final LangdetectBulkAction INSTANCE = new LangdetectBulkAction();
+
+    private LangdetectBulkAction() {
+        super(NAME);
+    }
+
+    @Override
+    public LangdetectBulkRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new LangdetectBulkRequestBuilder(client);
+    }
+
+    @Override
+    public LangdetectBulkResponse newResponse() {
+        return new LangdetectBulkResponse();
+    }
+}
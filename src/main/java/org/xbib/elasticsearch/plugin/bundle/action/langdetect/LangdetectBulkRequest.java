@@ -0,0 +1,101 @@
+package org.xbib.elasticsearch.plugin.bundle.action.langdetect;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+/**
+ * Bulk language detection request. All texts are detected with the same profile and are
+ * transported together in a single request. A missing text, which is null, fails only its own item.
+ */
+public class LangdetectBulkRequest extends ActionRequest {
+
+    private String profile;
+
+    private List<String> texts = new ArrayList<>();
+
+    private List<String> languages = new ArrayList<>();
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = null;
+        if (texts.isEmpty()) {
+            validationException = addValidationError("no texts added", null);
+        }
+        return validationException;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public LangdetectBulkRequest setProfile(String profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    public List<String> getLanguages() {
+        return languages;
+    }
+
+    /**
+     * Set the candidate languages, only these languages of the profile are scored.
+     *
+     * @param languages the candidate languages, or an empty list for all languages of the profile
+     * @return this request
+     */
+    public LangdetectBulkRequest setLanguages(List<String> languages) {
+        this.languages = languages;
+        return this;
+    }
+
+    public List<String> getTexts() {
+        return texts;
+    }
+
+    /**
+     * Add a text.
+     *
+     * @param text the text, or null for a missing text, which fails its item
+     * @return this request
+     */
+    public LangdetectBulkRequest add(String text) {
+        texts.add(text);
+        return this;
+    }
+
+    public LangdetectBulkRequest add(List<String> texts) {
+        this.texts.addAll(texts);
+        return this;
+    }
+
+    public int numberOfTexts() {
+        return texts.size();
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        profile = in.readOptionalString();
+        texts = in.readList(StreamInput::readOptionalString);
+        languages = in.readList(StreamInput::readString);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeOptionalString(profile);
+        out.writeVInt(texts.size());
+        for (String text : texts) {
+            out.writeOptionalString(text);
+        }
+        out.writeStringList(languages);
+    }
+}
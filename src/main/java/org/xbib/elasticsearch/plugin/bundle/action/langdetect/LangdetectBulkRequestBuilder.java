@@ -0,0 +1,38 @@
+package org.xbib.elasticsearch.plugin.bundle.action.langdetect;
+
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bulk language detection request builder.
+ */
+public class LangdetectBulkRequestBuilder
+        extends ActionRequestBuilder<LangdetectBulkRequest, LangdetectBulkResponse, LangdetectBulkRequestBuilder> {
+
+    public LangdetectBulkRequestBuilder(ElasticsearchClient client) {
+        super(client, LangdetectBulkAction.INSTANCE, new LangdetectBulkRequest());
+    }
+
+    public LangdetectBulkRequestBuilder setProfile(String string) {
+        request.setProfile(string);
+        return this;
+    }
+
+    public LangdetectBulkRequestBuilder setLanguages(String... languages) {
+        request.setLanguages(Arrays.asList(languages));
+        return this;
+    }
+
+    public LangdetectBulkRequestBuilder add(String string) {
+        request.add(string);
+        return this;
+    }
+
+    public LangdetectBulkRequestBuilder add(List<String> strings) {
+        request.add(strings);
+        return this;
+    }
+}
@@ -0,0 +1,174 @@
+package org.xbib.elasticsearch.plugin.bundle.action.langdetect;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.xcontent.StatusToXContentObject;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.RestStatus;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.Language;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.rest.RestStatus.OK;
+
+/**
+ * Bulk language detection response. The items are in the order of the texts of the request.
+ * A failed item carries its failure and does not fail the other items.
+ */
+public class LangdetectBulkResponse extends ActionResponse implements StatusToXContentObject {
+
+    private String profile;
+
+    private Item[] items = new Item[0];
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public LangdetectBulkResponse setProfile(String profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    public Item[] getItems() {
+        return items;
+    }
+
+    public LangdetectBulkResponse setItems(Item[] items) {
+        this.items = items;
+        return this;
+    }
+
+    public boolean hasFailures() {
+        for (Item item : items) {
+            if (item.isFailed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        profile = in.readOptionalString();
+        items = new Item[in.readVInt()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item();
+            items[i].readFrom(in);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeOptionalString(profile);
+        out.writeVInt(items.length);
+        for (Item item : items) {
+            item.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
+        builder.startObject();
+        if (!Strings.isNullOrEmpty(profile)) {
+            builder.field("profile", profile);
+        }
+        builder.field("errors", hasFailures());
+        builder.startArray("items");
+        for (Item item : items) {
+            builder.startObject();
+            if (item.isFailed()) {
+                builder.startObject("error");
+                ElasticsearchException.generateThrowableXContent(builder, params, item.getFailure());
+                builder.endObject();
+            } else {
+                builder.startArray("languages");
+                for (Language lang : item.getLanguages()) {
+                    builder.startObject().field("language", lang.getLanguage())
+                            .field("probability", lang.getProbability()).endObject();
+                }
+                builder.endArray();
+            }
+            builder.endObject();
+        }
+        builder.endArray();
+        builder.endObject();
+        return builder;
+    }
+
+    @Override
+    public RestStatus status() {
+        return OK;
+    }
+
+    /**
+     * The result of the language detection of a single text.
+     */
+    public static class Item implements Streamable {
+
+        private List<Language> languages;
+
+        private Exception failure;
+
+        Item() {
+        }
+
+        public Item(List<Language> languages) {
+            this.languages = languages;
+        }
+
+        public Item(Exception failure) {
+            this.failure = failure;
+        }
+
+        public List<Language> getLanguages() {
+            return languages;
+        }
+
+        public Exception getFailure() {
+            return failure;
+        }
+
+        public boolean isFailed() {
+            return failure != null;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            if (in.readBoolean()) {
+                failure = in.readException();
+            } else {
+                int size = in.readVInt();
+                languages = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    Language language = new Language(null, 0.0d);
+                    language.readFrom(in);
+                    languages.add(language);
+                }
+            }
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            if (failure != null) {
+                out.writeBoolean(true);
+                out.writeException(failure);
+            } else {
+                out.writeBoolean(false);
+                out.writeVInt(languages.size());
+                for (Language language : languages) {
+                    language.writeTo(out);
+                }
+            }
+        }
+    }
+}
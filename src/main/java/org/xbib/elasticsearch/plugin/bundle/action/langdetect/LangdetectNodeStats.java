@@ -0,0 +1,108 @@
+package org.xbib.elasticsearch.plugin.bundle.action.langdetect;
+
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.CacheStats;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModelStats;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Language detection statistics of a node.
+ */
+public class LangdetectNodeStats extends BaseNodeResponse implements ToXContentFragment {
+
+    private CacheStats cacheStats;
+
+    private CacheStats queryCacheStats;
+
+    private int services;
+
+    private List<LangdetectModelStats> modelStats;
+
+    LangdetectNodeStats() {
+    }
+
+    public LangdetectNodeStats(DiscoveryNode node, CacheStats cacheStats, CacheStats queryCacheStats, int services,
+                               List<LangdetectModelStats> modelStats) {
+        super(node);
+        this.cacheStats = cacheStats;
+        this.queryCacheStats = queryCacheStats;
+        this.services = services;
+        this.modelStats = modelStats;
+    }
+
+    public CacheStats getCacheStats() {
+        return cacheStats;
+    }
+
+    /**
+     * @return the statistics of the cache for the detected languages of query strings
+     */
+    public CacheStats getQueryCacheStats() {
+        return queryCacheStats;
+    }
+
+    /**
+     * @return the number of language detection services of the node
+     */
+    public int getServices() {
+        return services;
+    }
+
+    /**
+     * @return the statistics of the language detection models which are loaded on the node
+     */
+    public List<LangdetectModelStats> getModelStats() {
+        return modelStats;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        cacheStats = new CacheStats(in);
+        queryCacheStats = new CacheStats(in);
+        services = in.readVInt();
+        modelStats = in.readList(LangdetectModelStats::new);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        cacheStats.writeTo(out);
+        queryCacheStats.writeTo(out);
+        out.writeVInt(services);
+        out.writeList(modelStats);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("cache");
+        cacheStats.toXContent(builder, params);
+        builder.endObject();
+        builder.startObject("query_cache");
+        queryCacheStats.toXContent(builder, params);
+        builder.endObject();
+        builder.field("services", services);
+        long heapBytes = 0L;
+        for (LangdetectModelStats stats : modelStats) {
+            heapBytes += stats.getHeapBytes();
+        }
+        builder.startObject("models")
+                .field("count", modelStats.size())
+                .field("heap_bytes", heapBytes)
+                .startArray("loaded");
+        for (LangdetectModelStats stats : modelStats) {
+            builder.startObject();
+            stats.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endArray().endObject();
+        return builder;
+    }
+}
@@ -6,6 +6,8 @@ import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.elasticsearch.action.ValidateActions.addValidationError;
 
@@ -18,6 +20,10 @@ public class LangdetectRequest extends ActionRequest {
 
     private String text;
 
+    private List<String> languages = new ArrayList<>();
+
+    private boolean spans;
+
     @Override
     public ActionRequestValidationException validate() {
         ActionRequestValidationException validationException = null;
@@ -45,11 +51,43 @@ public class LangdetectRequest extends ActionRequest {
         return this;
     }
 
+    public List<String> getLanguages() {
+        return languages;
+    }
+
+    /**
+     * Set the candidate languages, only these languages of the profile are scored.
+     *
+     * @param languages the candidate languages, or an empty list for all languages of the profile
+     * @return this request
+     */
+    public LangdetectRequest setLanguages(List<String> languages) {
+        this.languages = languages;
+        return this;
+    }
+
+    public boolean isSpans() {
+        return spans;
+    }
+
+    /**
+     * Set if the spans of the text in a single language are detected instead of the languages of the whole text.
+     *
+     * @param spans true for detecting the spans
+     * @return this request
+     */
+    public LangdetectRequest setSpans(boolean spans) {
+        this.spans = spans;
+        return this;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
         text = in.readString();
         profile = in.readOptionalString();
+        languages = in.readList(StreamInput::readString);
+        spans = in.readBoolean();
     }
 
     @Override
@@ -57,5 +95,7 @@ public class LangdetectRequest extends ActionRequest {
         super.writeTo(out);
         out.writeString(text);
         out.writeOptionalString(profile);
+        out.writeStringList(languages);
+        out.writeBoolean(spans);
     }
 }
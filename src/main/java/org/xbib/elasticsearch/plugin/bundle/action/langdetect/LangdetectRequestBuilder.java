@@ -3,6 +3,8 @@ package org.xbib.elasticsearch.plugin.bundle.action.langdetect;
 import org.elasticsearch.action.ActionRequestBuilder;
 import org.elasticsearch.client.ElasticsearchClient;
 
+import java.util.Arrays;
+
 /**
  * Language detection request builder.
  */
@@ -22,4 +24,14 @@ public class LangdetectRequestBuilder extends ActionRequestBuilder<LangdetectReq
         return this;
     }
 
+    public LangdetectRequestBuilder setLanguages(String... languages) {
+        request.setLanguages(Arrays.asList(languages));
+        return this;
+    }
+
+    public LangdetectRequestBuilder setSpans(boolean spans) {
+        request.setSpans(spans);
+        return this;
+    }
+
 }
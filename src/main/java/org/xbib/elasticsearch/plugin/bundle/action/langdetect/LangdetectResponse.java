@@ -7,6 +7,7 @@ import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.rest.RestStatus;
 import org.xbib.elasticsearch.plugin.bundle.common.langdetect.Language;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LanguageSpan;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -23,6 +24,8 @@ public class LangdetectResponse extends ActionResponse implements StatusToXConte
 
     private List<Language> languages = new ArrayList<>();
 
+    private List<LanguageSpan> spans;
+
     public String getProfile() {
         return profile;
     }
@@ -41,11 +44,31 @@ public class LangdetectResponse extends ActionResponse implements StatusToXConte
         return this;
     }
 
+    public List<LanguageSpan> getSpans() {
+        return spans;
+    }
+
+    public LangdetectResponse setSpans(List<LanguageSpan> spans) {
+        this.spans = spans;
+        return this;
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
         if (!Strings.isNullOrEmpty(profile)) {
             builder.field("profile", profile);
         }
+        if (spans != null) {
+            builder.startArray("spans");
+            for (LanguageSpan span : spans) {
+                builder.startObject().field("start", span.getStart())
+                        .field("end", span.getEnd())
+                        .field("language", span.getLanguage())
+                        .field("probability", span.getProbability()).endObject();
+            }
+            builder.endArray();
+            return builder;
+        }
         builder.startArray("languages");
         for (Language lang : languages) {
             builder.startObject().field("language", lang.getLanguage())
@@ -0,0 +1,28 @@
+package org.xbib.elasticsearch.plugin.bundle.action.langdetect;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+/**
+ * Language detection statistics action.
+ */
+public class LangdetectStatsAction extends Action<LangdetectStatsRequest, LangdetectStatsResponse, LangdetectStatsRequestBuilder> {
+
+    public static final String NAME = "langdetect_stats";
+
+    public static final LangdetectStatsAction INSTANCE = new LangdetectStatsAction();
+
+    private LangdetectStatsAction() {
+        super(NAME);
+    }
+
+    @Override
+    public LangdetectStatsRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new LangdetectStatsRequestBuilder(client);
+    }
+
+    @Override
+    public LangdetectStatsResponse newResponse() {
+        return new LangdetectStatsResponse();
+    }
+}
@@ -0,0 +1,16 @@
+package org.xbib.elasticsearch.plugin.bundle.action.langdetect;
+
+import org.elasticsearch.action.support.nodes.BaseNodesRequest;
+
+/**
+ * Language detection statistics request.
+ */
+public class LangdetectStatsRequest extends BaseNodesRequest<LangdetectStatsRequest> {
+
+    public LangdetectStatsRequest() {
+    }
+
+    public LangdetectStatsRequest(String... nodesIds) {
+        super(nodesIds);
+    }
+}
@@ -0,0 +1,15 @@
+package org.xbib.elasticsearch.plugin.bundle.action.langdetect;
+
+import org.elasticsearch.action.support.nodes.NodesOperationRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+
+/**
+ * Language detection statistics request builder.
+ */
+public class LangdetectStatsRequestBuilder
+        extends NodesOperationRequestBuilder<LangdetectStatsRequest, LangdetectStatsResponse, LangdetectStatsRequestBuilder> {
+
+    public LangdetectStatsRequestBuilder(ElasticsearchClient client) {
+        super(client, LangdetectStatsAction.INSTANCE, new LangdetectStatsRequest());
+    }
+}
@@ -0,0 +1,49 @@
+package org.xbib.elasticsearch.plugin.bundle.action.langdetect;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.nodes.BaseNodesResponse;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Language detection statistics response.
+ */
+public class LangdetectStatsResponse extends BaseNodesResponse<LangdetectNodeStats> implements ToXContentFragment {
+
+    LangdetectStatsResponse() {
+    }
+
+    public LangdetectStatsResponse(ClusterName clusterName, List<LangdetectNodeStats> nodes,
+                                   List<FailedNodeException> failures) {
+        super(clusterName, nodes, failures);
+    }
+
+    @Override
+    protected List<LangdetectNodeStats> readNodesFrom(StreamInput in) throws IOException {
+        return in.readStreamableList(LangdetectNodeStats::new);
+    }
+
+    @Override
+    protected void writeNodesTo(StreamOutput out, List<LangdetectNodeStats> nodes) throws IOException {
+        out.writeStreamableList(nodes);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("nodes");
+        for (LangdetectNodeStats nodeStats : getNodes()) {
+            builder.startObject(nodeStats.getNode().getId());
+            builder.field("name", nodeStats.getNode().getName());
+            nodeStats.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
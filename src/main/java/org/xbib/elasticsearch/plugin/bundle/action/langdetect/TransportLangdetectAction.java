@@ -6,41 +6,53 @@ import org.elasticsearch.action.support.TransportAction;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportService;
 import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
-import org.xbib.elasticsearch.plugin.bundle.common.langdetect.Language;
-
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectServices;
 
 /**
  * Transport action for language detection response.
+ *
+ * The language detection service of a profile is taken from the node-level {@link LangdetectServices},
+ * it is created on the first request of the profile. The service is looked up and the text is detected on the
+ * {@link TransportLangdetectBulkAction#EXECUTOR} thread pool, because the first lookup of a profile loads its model.
  */
 public class TransportLangdetectAction extends TransportAction<LangdetectRequest, LangdetectResponse> {
 
-    private static final Map<String, LangdetectService> services = new HashMap<>();
+    private final LangdetectServices services;
 
     @Inject
     public TransportLangdetectAction(Settings settings, ThreadPool threadPool,
                                      ActionFilters actionFilters,
                                      IndexNameExpressionResolver indexNameExpressionResolver,
-                                     TransportService transportService) {
+                                     TransportService transportService,
+                                     LangdetectServices services) {
         super(settings, LangdetectAction.NAME, threadPool, actionFilters, indexNameExpressionResolver, transportService.getTaskManager());
-        services.put("", new LangdetectService(settings));
+        this.services = services;
     }
 
     @Override
     protected void doExecute(LangdetectRequest request, ActionListener<LangdetectResponse> listener) {
-        String profile = request.getProfile();
-        if (profile == null) {
-            profile = "";
-        }
-        if (!services.containsKey(profile)) {
-            services.put(profile, new LangdetectService(settings, profile));
-        }
-        List<Language> langs = services.get(profile).detectAll(request.getText());
-        listener.onResponse(new LangdetectResponse().setLanguages(langs).setProfile(request.getProfile()));
+        // getting the service may load a model, which must not block a network thread
+        threadPool.executor(TransportLangdetectBulkAction.EXECUTOR).execute(new AbstractRunnable() {
+            @Override
+            protected void doRun() {
+                LangdetectResponse response = new LangdetectResponse().setProfile(request.getProfile());
+                LangdetectService service = services.get(settings, request.getProfile());
+                if (request.isSpans()) {
+                    response.setSpans(service.detectSpans(request.getText(), request.getLanguages()));
+                } else {
+                    response.setLanguages(service.detectAll(request.getText(), request.getLanguages()));
+                }
+                listener.onResponse(response);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                listener.onFailure(e);
+            }
+        });
     }
 }
@@ -0,0 +1,118 @@
+package org.xbib.elasticsearch.plugin.bundle.action.langdetect;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.TransportAction;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectServices;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transport action for bulk language detection.
+ *
+ * The detection service is looked up on the {@link #EXECUTOR} thread pool, because the first lookup of a
+ * profile loads its model. The texts of a request are then split into slices which are detected in parallel
+ * on that pool, with at most one slice per thread of the pool. A missing text fails only its own item.
+ * The response is sent when the last slice is done.
+ */
+public class TransportLangdetectBulkAction extends TransportAction<LangdetectBulkRequest, LangdetectBulkResponse> {
+
+    /**
+     * The name of the thread pool for bulk language detection.
+     */
+    public static final String EXECUTOR = "langdetect";
+
+    private final LangdetectServices services;
+
+    @Inject
+    public TransportLangdetectBulkAction(Settings settings, ThreadPool threadPool,
+                                         ActionFilters actionFilters,
+                                         IndexNameExpressionResolver indexNameExpressionResolver,
+                                         TransportService transportService,
+                                         LangdetectServices services) {
+        super(settings, LangdetectBulkAction.NAME, threadPool, actionFilters, indexNameExpressionResolver,
+                transportService.getTaskManager());
+        this.services = services;
+    }
+
+    @Override
+    protected void doExecute(LangdetectBulkRequest request, ActionListener<LangdetectBulkResponse> listener) {
+        // getting the service may load a model, which must not block a network thread
+        threadPool.executor(EXECUTOR).execute(new AbstractRunnable() {
+            @Override
+            protected void doRun() {
+                LangdetectService service = services.get(settings, request.getProfile());
+                for (String language : request.getLanguages()) {
+                    if (!service.getLanguages().contains(language)) {
+                        throw new IllegalArgumentException("language " + language + " is not one of " +
+                                service.getLanguages());
+                    }
+                }
+                detect(service, request, listener);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                listener.onFailure(e);
+            }
+        });
+    }
+
+    private void detect(LangdetectService service, LangdetectBulkRequest request,
+                        ActionListener<LangdetectBulkResponse> listener) {
+        List<String> texts = request.getTexts();
+        List<String> languages = request.getLanguages();
+        LangdetectBulkResponse.Item[] items = new LangdetectBulkResponse.Item[texts.size()];
+        int slices = Math.max(1, Math.min(texts.size(), threadPool.info(EXECUTOR).getMax()));
+        AtomicInteger pending = new AtomicInteger(slices);
+        for (int i = 0; i < slices; i++) {
+            final int slice = i;
+            threadPool.executor(EXECUTOR).execute(new AbstractRunnable() {
+                @Override
+                protected void doRun() {
+                    for (int j = slice; j < items.length; j += slices) {
+                        String text = texts.get(j);
+                        if (text == null) {
+                            items[j] = new LangdetectBulkResponse.Item(new IllegalArgumentException(
+                                    "text is missing or not a string for item [" + j + "]"));
+                            continue;
+                        }
+                        try {
+                            items[j] = new LangdetectBulkResponse.Item(service.detectAll(text, languages));
+                        } catch (Exception e) {
+                            logger.debug(e.getMessage(), e);
+                            items[j] = new LangdetectBulkResponse.Item(e);
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    // the slice was rejected by the thread pool, fail the items of the slice
+                    for (int j = slice; j < items.length; j += slices) {
+                        if (items[j] == null) {
+                            items[j] = new LangdetectBulkResponse.Item(e);
+                        }
+                    }
+                }
+
+                @Override
+                public void onAfter() {
+                    if (pending.decrementAndGet() == 0) {
+                        listener.onResponse(new LangdetectBulkResponse()
+                                .setProfile(request.getProfile())
+                                .setItems(items));
+                    }
+                }
+            });
+        }
+    }
+}
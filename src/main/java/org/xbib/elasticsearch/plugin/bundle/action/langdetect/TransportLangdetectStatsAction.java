@@ -0,0 +1,72 @@
+package org.xbib.elasticsearch.plugin.bundle.action.langdetect;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectServices;
+
+import java.util.List;
+
+/**
+ * Transport action for language detection statistics. Collects the statistics of each node.
+ */
+public class TransportLangdetectStatsAction extends TransportNodesAction<LangdetectStatsRequest,
+        LangdetectStatsResponse, TransportLangdetectStatsAction.NodeRequest, LangdetectNodeStats> {
+
+    private final LangdetectServices services;
+
+    @Inject
+    public TransportLangdetectStatsAction(Settings settings, ThreadPool threadPool,
+                                          ClusterService clusterService,
+                                          TransportService transportService,
+                                          ActionFilters actionFilters,
+                                          IndexNameExpressionResolver indexNameExpressionResolver,
+                                          LangdetectServices services) {
+        super(settings, LangdetectStatsAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                indexNameExpressionResolver, LangdetectStatsRequest::new, NodeRequest::new,
+                ThreadPool.Names.MANAGEMENT, LangdetectNodeStats.class);
+        this.services = services;
+    }
+
+    @Override
+    protected LangdetectStatsResponse newResponse(LangdetectStatsRequest request, List<LangdetectNodeStats> nodes,
+                                                  List<FailedNodeException> failures) {
+        return new LangdetectStatsResponse(clusterService.getClusterName(), nodes, failures);
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(String nodeId, LangdetectStatsRequest request) {
+        return new NodeRequest(nodeId);
+    }
+
+    @Override
+    protected LangdetectNodeStats newNodeResponse() {
+        return new LangdetectNodeStats();
+    }
+
+    @Override
+    protected LangdetectNodeStats nodeOperation(NodeRequest request) {
+        return new LangdetectNodeStats(clusterService.localNode(), services.getCache().stats(),
+                services.getQueryCache().stats(), services.size(), services.getModels().stats());
+    }
+
+    /**
+     * The request for the statistics of a single node.
+     */
+    public static class NodeRequest extends BaseNodeRequest {
+
+        public NodeRequest() {
+        }
+
+        NodeRequest(String nodeId) {
+            super(nodeId);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.xbib.elasticsearch.plugin.bundle.common.cache;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+
+/**
+ * A point-in-time snapshot of the counters of a cache.
+ */
+public class CacheStats implements Writeable, ToXContentFragment {
+
+    private final long size;
+
+    private final long maximumSize;
+
+    private final long hits;
+
+    private final long misses;
+
+    private final long evictions;
+
+    private final long rejections;
+
+    public CacheStats(long size, long maximumSize, long hits, long misses, long evictions, long rejections) {
+        this.size = size;
+        this.maximumSize = maximumSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.rejections = rejections;
+    }
+
+    public CacheStats(StreamInput in) throws IOException {
+        this(in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong());
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(size);
+        out.writeVLong(maximumSize);
+        out.writeVLong(hits);
+        out.writeVLong(misses);
+        out.writeVLong(evictions);
+        out.writeVLong(rejections);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the ratio of the lookups which found a value, or 0 if there were no lookups
+     */
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0L ? 0d : (double) hits / requests;
+    }
+
+    /**
+     * @return the number of entries which were evicted to admit a new entry
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of new entries which were not admitted because they were less popular
+     * than the entry which would have been evicted
+     */
+    public long getRejections() {
+        return rejections;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("size", size)
+                .field("maximum_size", maximumSize)
+                .field("hits", hits)
+                .field("misses", misses)
+                .field("hit_rate", getHitRate())
+                .field("evictions", evictions)
+                .field("rejections", rejections);
+        return builder;
+    }
+}
@@ -0,0 +1,312 @@
+package org.xbib.elasticsearch.plugin.bundle.common.cache;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A bounded, thread safe cache with frequency-aware eviction.
+ *
+ * The cache is split into segments by key hash, each with its own lock and {@link FrequencySketch}, so
+ * concurrent callers only contend for the same segment. Each segment follows the W-TinyLFU policy: new entries
+ * enter a small LRU window of about 1% of the segment, and when an entry leaves the window, it is only admitted
+ * to the main space if its key was seen more often recently than the key of the least recently used entry
+ * of the main space, which is then evicted (TinyLFU admission). The window keeps bursts of new keys, and a scan
+ * of keys which are seen only once can not flush the popular entries out of the cache. The main space is
+ * a segmented LRU, where entries which are hit again are protected from eviction.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class TinyLfuCache<K, V> {
+
+    private static final int MIN_SEGMENT_SIZE = 16;
+
+    private final Segment<K, V>[] segments;
+
+    private final int segmentMask;
+
+    private final int maximumSize;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder rejections = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public TinyLfuCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximum size must be greater than 0");
+        }
+        int n = 1;
+        int max = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2));
+        while (n < max && maximumSize / (n * 2) >= MIN_SEGMENT_SIZE) {
+            n *= 2;
+        }
+        this.segments = new Segment[n];
+        this.segmentMask = n - 1;
+        this.maximumSize = maximumSize;
+        for (int i = 0; i < n; i++) {
+            segments[i] = new Segment<>(maximumSize / n + (i < maximumSize % n ? 1 : 0));
+        }
+    }
+
+    /**
+     * Get a value from the cache and count the access of the key.
+     *
+     * @param key the key
+     * @return the value, or null if the key is not in the cache
+     */
+    public V get(K key) {
+        int hash = spread(key.hashCode());
+        V value = segments[hash & segmentMask].get(key, hash);
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Offer a value to the cache. The value may be rejected if the cache is full and the key is
+     * less popular than the key which would have to be evicted.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(K key, V value) {
+        int hash = spread(key.hashCode());
+        segments[hash & segmentMask].put(key, hash, value, this);
+    }
+
+    /**
+     * Get a value from the cache, or compute and offer it if the key is not in the cache.
+     * The value is computed outside of any lock, so it may be computed more than once for the same
+     * key by concurrent callers.
+     *
+     * @param key the key
+     * @param function the function to compute the value
+     * @return the value
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        V value = get(key);
+        if (value == null) {
+            value = function.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(size(), maximumSize, hits.sum(), misses.sum(), evictions.sum(), rejections.sum());
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    /**
+     * A segment of the cache. The entries are held in three LRU queues: new entries enter the window,
+     * the entries which leave the window are candidates for the main space, which is split into a probation
+     * and a protected queue. A candidate is admitted to probation if its key was seen more often than the key
+     * of the least recently used entry of probation, which is then evicted, otherwise the candidate is dropped.
+     * A hit in probation promotes the entry to the protected queue, and the least recently used protected
+     * entries are demoted to probation if the protected queue is full.
+     */
+    private static class Segment<K, V> {
+
+        private static final int WINDOW = 0;
+
+        private static final int PROBATION = 1;
+
+        private static final int PROTECTED = 2;
+
+        private final int capacity;
+
+        private final int windowCapacity;
+
+        private final int protectedCapacity;
+
+        private final HashMap<K, Node<K, V>> map;
+
+        private final FrequencySketch sketch;
+
+        private final Node<K, V> window = new Node<>();
+
+        private final Node<K, V> probation = new Node<>();
+
+        private final Node<K, V> protectedQueue = new Node<>();
+
+        private int windowSize;
+
+        private int protectedSize;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.windowCapacity = Math.max(1, capacity / 100);
+            this.protectedCapacity = (capacity - windowCapacity) * 4 / 5;
+            this.map = new HashMap<>();
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        synchronized V get(K key, int hash) {
+            sketch.increment(hash);
+            Node<K, V> node = map.get(key);
+            if (node == null) {
+                return null;
+            }
+            switch (node.queue) {
+                case WINDOW:
+                    node.moveToTail(window);
+                    break;
+                case PROBATION:
+                    node.unlink();
+                    node.queue = PROTECTED;
+                    node.linkTail(protectedQueue);
+                    if (++protectedSize > protectedCapacity) {
+                        Node<K, V> demoted = protectedQueue.next;
+                        demoted.unlink();
+                        demoted.queue = PROBATION;
+                        demoted.linkTail(probation);
+                        protectedSize--;
+                    }
+                    break;
+                default:
+                    node.moveToTail(protectedQueue);
+                    break;
+            }
+            return node.value;
+        }
+
+        synchronized void put(K key, int hash, V value, TinyLfuCache<K, V> cache) {
+            Node<K, V> node = map.get(key);
+            if (node != null) {
+                node.value = value;
+                return;
+            }
+            node = new Node<>(key, hash, value);
+            map.put(key, node);
+            node.linkTail(window);
+            if (++windowSize <= windowCapacity) {
+                return;
+            }
+            Node<K, V> candidate = window.next;
+            candidate.unlink();
+            windowSize--;
+            candidate.queue = PROBATION;
+            candidate.linkTail(probation);
+            if (map.size() <= capacity) {
+                return;
+            }
+            Node<K, V> victim = probation.next != candidate ? probation.next : protectedQueue.next;
+            if (victim != protectedQueue && sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) {
+                if (victim.queue == PROTECTED) {
+                    protectedSize--;
+                }
+                remove(victim);
+                cache.evictions.increment();
+            } else {
+                remove(candidate);
+                cache.rejections.increment();
+            }
+        }
+
+        private void remove(Node<K, V> node) {
+            node.unlink();
+            map.remove(node.key);
+        }
+
+        synchronized void clear() {
+            map.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+            windowSize = 0;
+            protectedSize = 0;
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+    }
+
+    /**
+     * An entry of a segment, which is a node of a doubly linked LRU queue. The head of each queue is a sentinel
+     * node, its next node is the least recently used entry and its previous node the most recently used entry.
+     */
+    private static class Node<K, V> {
+
+        private final K key;
+
+        private final int hash;
+
+        private V value;
+
+        private int queue;
+
+        private Node<K, V> prev;
+
+        private Node<K, V> next;
+
+        Node() {
+            this(null, 0, null);
+            clear();
+        }
+
+        Node(K key, int hash, V value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+
+        void clear() {
+            prev = this;
+            next = this;
+        }
+
+        void linkTail(Node<K, V> head) {
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+
+        void moveToTail(Node<K, V> head) {
+            unlink();
+            linkTail(head);
+        }
+    }
+}
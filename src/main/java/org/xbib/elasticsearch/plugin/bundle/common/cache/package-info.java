@@ -0,0 +1,4 @@
+/**
+ * Classes for bounded in-memory caches.
+ */
+package org.xbib.elasticsearch.plugin.bundle.common.cache;
@@ -1,24 +1,26 @@
 package org.xbib.elasticsearch.plugin.bundle.common.decompound.fst;
 
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.DataInput;
 import org.apache.lucene.store.InputStreamDataInput;
-import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.IntsRefBuilder;
-import org.apache.lucene.util.UnicodeUtil;
 import org.apache.lucene.util.fst.Builder;
 import org.apache.lucene.util.fst.FST;
 import org.apache.lucene.util.fst.FST.BytesReader;
 import org.apache.lucene.util.fst.FST.INPUT_TYPE;
 import org.apache.lucene.util.fst.NoOutputs;
+import org.apache.lucene.util.fst.Outputs;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.xbib.elasticsearch.plugin.bundle.common.fst.FstCompiler;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Deque;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 
@@ -30,6 +32,12 @@ public class FstDecompounder {
 
     private static final List<String> morphemes = Arrays.asList("e", "es", "en", "er", "n", "ens", "ns", "s");
 
+    /**
+     * The number of ints of a split entry: the number of words, the number of glue morphemes, the end of
+     * the first word, the start of the next word, and the rank of the split of the rest of the word.
+     */
+    private static final int ENTRY = 5;
+
     /**
      * A static FSA with inflected and base surface forms.
      *
@@ -42,9 +50,23 @@ public class FstDecompounder {
      */
     private final FST<Object> glueMorphemes;
 
+    /**
+     * True if the surface forms have word weights as outputs, see {@link FstCompiler}.
+     */
+    private final boolean weighted;
+
     public FstDecompounder(InputStream inputStream, List<String> glue) throws IOException {
         try {
-            this.surfaceForms = new FST<>(new InputStreamDataInput(inputStream), NoOutputs.getSingleton());
+            InputStream in = new BufferedInputStream(inputStream);
+            DataInput dataInput = new InputStreamDataInput(in);
+            this.weighted = isWeighted(in, dataInput);
+            if (weighted) {
+                CodecUtil.checkHeader(dataInput, FstCompiler.WEIGHTED_CODEC,
+                        FstCompiler.WEIGHTED_VERSION, FstCompiler.WEIGHTED_VERSION);
+                this.surfaceForms = readFst(dataInput, PositiveIntOutputs.getSingleton());
+            } else {
+                this.surfaceForms = readFst(dataInput, NoOutputs.getSingleton());
+            }
             // set up glue morphemes
             this.glueMorphemes = createGlueMorphemes(glue != null && glue.size() > 0 ? glue :morphemes);
         } finally {
@@ -52,9 +74,27 @@ public class FstDecompounder {
         }
     }
 
-    private FST<Object> createGlueMorphemes(List<String> glue) throws IOException {
-        for (int i = 0; i < glue.size(); i++) {
-            glue.set(i, new StringBuilder(glue.get(i)).reverse().toString());
+    /**
+     * Peek at the header of the surface forms, and reset the stream to the start.
+     */
+    private static boolean isWeighted(InputStream in, DataInput dataInput) throws IOException {
+        in.mark(64);
+        boolean weighted = dataInput.readInt() == CodecUtil.CODEC_MAGIC &&
+                FstCompiler.WEIGHTED_CODEC.equals(dataInput.readString());
+        in.reset();
+        return weighted;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FST<Object> readFst(DataInput dataInput, Outputs<?> outputs) throws IOException {
+        return new FST<>(dataInput, (Outputs<Object>) outputs);
+    }
+
+    private FST<Object> createGlueMorphemes(List<String> morphs) throws IOException {
+        // do not modify the list of the caller, it may be the default list or immutable
+        List<String> glue = new ArrayList<>(morphs.size());
+        for (String morph : morphs) {
+            glue.add(new StringBuilder(morph).reverse().toString());
         }
         Collections.sort(glue);
         final Builder<Object> builder = new Builder<>(INPUT_TYPE.BYTE4, NoOutputs.getSingleton());
@@ -67,6 +107,25 @@ public class FstDecompounder {
         return builder.finish();
     }
 
+    /**
+     * Create a splitter session. The session keeps the FST arcs, the readers and the buffers between the splits,
+     * so it does not allocate once its buffers have grown to the longest word. A session must not be shared between
+     * threads, e.g. each token filter instance uses its own session.
+     *
+     * @return a new session
+     */
+    public Session newSession() {
+        return new Session();
+    }
+
+    /**
+     * @return true if the surface forms have word weights, so {@link #splitBest(CharSequence, int, int)} ranks
+     * the splits by the weights of their words
+     */
+    public boolean isWeighted() {
+        return weighted;
+    }
+
     public List<String> decompound(String word) {
         CharSequence chars = split(word);
         if (chars != null) {
@@ -75,6 +134,23 @@ public class FstDecompounder {
         return Collections.singletonList(word);
     }
 
+    /**
+     * Decompound a word into the splits with the fewest words, see {@link #splitShortest(CharSequence, int, int, int)}.
+     *
+     * @param word the word
+     * @param maxSplits the maximum number of splits
+     * @param maxParts the maximum number of words of a split
+     * @param maxStates the maximum number of FST arcs which are visited
+     * @return the splits, or the word if it can not be split
+     */
+    public List<String> decompound(String word, int maxSplits, int maxParts, int maxStates) {
+        CharSequence chars = splitShortest(word, maxSplits, maxParts, maxStates);
+        if (chars != null) {
+            return Arrays.asList(chars.toString().split(","));
+        }
+        return Collections.singletonList(word);
+    }
+
     /**
      * Splits the input sequence of characters into separate words if this sequence is
      * potentially a compound word.
@@ -85,109 +161,141 @@ public class FstDecompounder {
      * interpretations are possible, they are separated by a ',' character). The
      * returned buffer will change with each call to <code>split</code> so copy the
      * content if needed.
+     * @see Session#split(char[], int, int)
      */
     public CharSequence split(CharSequence word) {
-        try {
-            StringBuilder builder = new StringBuilder();
-            builder.append(word);
-            builder.reverse();
-            for (int i = builder.length(); --i > 0; ) {
-                // see https://issues.apache.org/jira/browse/COLLECTIONS-294
-                builder.setCharAt(i, Character.toLowerCase(Character.toUpperCase(builder.charAt(i))));
-            }
-            IntsRefBuilder utf32Builder = new IntsRefBuilder();
-            IntsRef utf32 = fromUTF16ToUTF32(builder, utf32Builder).get();
-            /*
-             * This array stores the minimum number of decomposition words during traversals to
-             * avoid splitting a larger word into smaller chunks.
-             */
-            IntsRefBuilder maxPathsBuilder = new IntsRefBuilder();
-            maxPathsBuilder.grow(utf32.length + 1);
-            Arrays.fill(maxPathsBuilder.ints(), 0, utf32.length + 1, Integer.MAX_VALUE);
-            builder.setLength(0);
-            Deque<Chunk> chunks = new LinkedList<>();
-            matchWord(utf32, utf32.offset, builder, maxPathsBuilder, chunks);
-            return builder.length() == 0 ? null : builder;
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
-    }
-
-    /**
-     * Consume a word, then recurse into glue morphemes/ further words.
-     */
-    private void matchWord(IntsRef utf32, int offset, StringBuilder builder, IntsRefBuilder maxPathsBuilder,
-                           Deque<Chunk> chunks) throws IOException {
-        FST.Arc<Object> arc = surfaceForms.getFirstArc(new FST.Arc<>());
-        FST.Arc<Object> scratch = new FST.Arc<>();
-        List<Chunk> wordsFromHere = new ArrayList<>();
-        BytesReader br = surfaceForms.getBytesReader();
-        for (int i = offset; i < utf32.length; i++) {
-            int chr = utf32.ints[i];
-            arc = surfaceForms.findTargetArc(chr, arc, arc, br);
-            if (arc == null) {
-                break;
-            }
-            if (surfaceForms.findTargetArc('<', arc, scratch, br) != null) {
-                wordsFromHere.add(new Chunk(offset, i + 1, ChunkType.WORD));
-            }
-        }
-        int[] maxPaths = maxPathsBuilder.ints();
-        for (int j = wordsFromHere.size(); --j >= 0; ) {
-            final Chunk ch = wordsFromHere.get(j);
-            if (chunks.size() + 1 > maxPaths[ch.end]) {
-                continue;
-            }
-            maxPaths[ch.end] = chunks.size() + 1;
-            chunks.addLast(ch);
-            if (ch.end == utf32.offset + utf32.length) {
-                // add match to the builder
-                if (builder.length() > 0) {
-                    builder.append(",");
-                }
-                boolean first = true;
-                Iterator<Chunk> i = chunks.descendingIterator();
-                while (i.hasNext()) {
-                    Chunk chunk = i.next();
-                    if (chunk.type == ChunkType.WORD) {
-                        if (!first) {
-                            builder.append('.');
-                        }
-                        first = false;
-                        builder.append(new StringBuilder(UnicodeUtil.newString(utf32.ints, chunk.start,
-                                chunk.end - chunk.start)).reverse());
-                    }
-                }
-            } else {
-                matchWord(utf32, ch.end, builder, maxPathsBuilder, chunks);
-                matchGlueMorpheme(utf32, ch.end, builder, maxPathsBuilder, chunks);
-            }
-            chunks.removeLast();
-        }
+        char[] chars = word.toString().toCharArray();
+        Session session = newSession();
+        session.split(chars, 0, chars.length);
+        return format(session);
+    }
+
+    /**
+     * Splits a word into the compound splits with the fewest words, by dynamic programming over the code point
+     * offsets of the word instead of a backtracking search.
+     *
+     * For each offset, from the end of the word to the start, the words which start at the offset are looked up
+     * once in the surface forms, and the best splits of the rest of the word after the offset are kept. A split
+     * of a word is a sequence of words, where each word but the first may be preceded by a glue morpheme. Splits
+     * are ranked by the number of words, then by the number of glue morphemes, then in the order of
+     * {@link #split(CharSequence)}. So the work is bounded by the length of the word times the depth of
+     * the surface form FST, times the number of splits.
+     *
+     * @param word the word to be split
+     * @param maxSplits the maximum number of splits, 1 for the best split only
+     * @param maxParts the maximum number of words of a split
+     * @param maxStates the maximum number of FST arcs which are visited, if this number is exceeded,
+     *                  the word is not split
+     * @return null if the word can not be split, otherwise the splits in the format of {@link #split(CharSequence)},
+     * the best split first
+     * @see Session#splitShortest(char[], int, int, int, int, int)
+     */
+    public CharSequence splitShortest(CharSequence word, int maxSplits, int maxParts, int maxStates) {
+        char[] chars = word.toString().toCharArray();
+        Session session = newSession();
+        session.splitShortest(chars, 0, chars.length, maxSplits, maxParts, maxStates);
+        return format(session);
     }
 
     /**
-     * Consume a maximal glue morpheme, if any, and consume the next word.
+     * Splits a word into the split with the highest score. The score of a split is the geometric mean of the weights
+     * of its words, plus one, so a frequent word is rather kept than split into rare words. Of splits with the same
+     * score, the split with the fewest words is taken, and then the split which is ranked first by
+     * {@link #splitShortest(CharSequence, int, int, int)}. Without word weights, this is the shortest split.
+     *
+     * @param word the word to be split
+     * @param maxParts the maximum number of words of the split
+     * @param maxStates the maximum number of FST arcs which are visited, if this number is exceeded,
+     *                  the word is not split
+     * @return null if the word can not be split, otherwise the split in the format of {@link #split(CharSequence)}
+     * @see Session#splitBest(char[], int, int, int, int)
      */
-    private void matchGlueMorpheme(IntsRef utf32, final int offset, StringBuilder builder,
-                                   IntsRefBuilder maxPathsBuilder,
-                                   Deque<Chunk> chunks) throws IOException {
-        FST.Arc<Object> arc = glueMorphemes.getFirstArc(new FST.Arc<>());
-        BytesReader br = glueMorphemes.getBytesReader();
-        for (int i = offset; i < utf32.length; i++) {
-            int chr = utf32.ints[i];
-            arc = glueMorphemes.findTargetArc(chr, arc, arc, br);
-            if (arc == null) {
-                break;
+    public CharSequence splitBest(CharSequence word, int maxParts, int maxStates) {
+        char[] chars = word.toString().toCharArray();
+        Session session = newSession();
+        session.splitBest(chars, 0, chars.length, maxParts, maxStates);
+        return format(session);
+    }
+
+    /**
+     * Format the splits of a session, the words of a split are separated by '.', the splits by ','.
+     */
+    private static CharSequence format(Session session) {
+        if (session.splits() == 0) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = session.buffer();
+        int part = 0;
+        for (int split = 0; split < session.splits(); split++) {
+            if (split > 0) {
+                builder.append(',');
             }
-            if (arc.isFinal()) {
-                chunks.addLast(new Chunk(offset, i + 1, ChunkType.GLUE_MORPHEME));
-                if (i + 1 < utf32.offset + utf32.length) {
-                    matchWord(utf32, i + 1, builder, maxPathsBuilder, chunks);
+            for (int first = part; part < session.splitEnd(split); part++) {
+                if (part > first) {
+                    builder.append('.');
                 }
-                chunks.removeLast();
+                builder.append(buffer, session.start(part), session.end(part) - session.start(part));
             }
         }
+        return builder;
+    }
+
+    private static void set(int[] entry, int words, int glues, int end, int next, int rank) {
+        entry[0] = words;
+        entry[1] = glues;
+        entry[2] = end;
+        entry[3] = next;
+        entry[4] = rank;
+    }
+
+    /**
+     * Insert a split entry into the sorted list of the best splits, if it is better than the worst split
+     * of a full list.
+     *
+     * @return the new number of splits
+     */
+    private static int offer(int[] splits, int offset, int count, int maxSplits, int[] entry) {
+        int pos = count;
+        while (pos > 0 && compare(entry, 0, splits, offset + (pos - 1) * ENTRY) < 0) {
+            pos--;
+        }
+        if (pos >= maxSplits) {
+            return count;
+        }
+        int last = Math.min(count, maxSplits - 1);
+        System.arraycopy(splits, offset + pos * ENTRY, splits, offset + (pos + 1) * ENTRY, (last - pos) * ENTRY);
+        System.arraycopy(entry, 0, splits, offset + pos * ENTRY, ENTRY);
+        return Math.min(count + 1, maxSplits);
+    }
+
+    /**
+     * Compare split entries by the number of words, the number of glue morphemes, the longest first word,
+     * the shortest glue morpheme, and the rank of the split of the rest of the word.
+     */
+    private static int compare(int[] a, int i, int[] b, int j) {
+        int c = Integer.compare(a[i], b[j]);
+        if (c == 0) {
+            c = Integer.compare(a[i + 1], b[j + 1]);
+        }
+        if (c == 0) {
+            c = Integer.compare(b[j + 2], a[i + 2]);
+        }
+        if (c == 0) {
+            c = Integer.compare(a[i + 3] - a[i + 2], b[j + 3] - b[j + 2]);
+        }
+        if (c == 0) {
+            c = Integer.compare(a[i + 4], b[j + 4]);
+        }
+        return c;
+    }
+
+    private long weight(Object output) {
+        return weighted ? (Long) output : 0L;
+    }
+
+    private static boolean[] grow(boolean[] array, int minSize) {
+        return array.length < minSize ? Arrays.copyOf(array, ArrayUtil.oversize(minSize, 1)) : array;
     }
 
     /**
@@ -204,24 +312,561 @@ public class FstDecompounder {
     }
 
     /**
-     * Category for a given chunk of a compound.
+     * A reusable splitter session.
+     *
+     * A split normalizes the word into the {@link #buffer() buffer} of the session, where all characters but the
+     * last one are lower-cased, and returns the words of the splits as char offsets into the buffer: the words of
+     * all splits are numbered in order, {@link #start(int)} and {@link #end(int)} are the offsets of a word,
+     * and {@link #splitEnd(int)} is the number of the first word after a split. The results are valid
+     * until the next split of the session.
      */
-     enum ChunkType {
-        GLUE_MORPHEME, WORD
-    }
+    public final class Session {
 
-    /**
-     * A slice of a compound word.
-     */
-    private final class Chunk {
-        final int start;
-        final int end;
-        final ChunkType type;
+        private final FST.Arc<Object> arc = new FST.Arc<>();
+
+        private final FST.Arc<Object> scratch = new FST.Arc<>();
+
+        /**
+         * The glue morpheme arcs of the backtracking search, by chunk depth.
+         */
+        private final List<FST.Arc<Object>> glueArcs = new ArrayList<>();
+
+        private final BytesReader wordReader = surfaceForms.getBytesReader();
+
+        private final BytesReader glueReader = glueMorphemes.getBytesReader();
+
+        private final int[] candidate = new int[ENTRY];
+
+        /**
+         * The normalized word.
+         */
+        private char[] chars = new char[0];
+
+        /**
+         * The code points of the reversed word.
+         */
+        private int[] utf32 = new int[0];
+
+        /**
+         * The char offsets in the word of the code point offsets of the reversed word.
+         */
+        private int[] offsets = new int[1];
+
+        /**
+         * The number of code points of the word.
+         */
+        private int n;
+
+        /**
+         * The start and end char offsets of the words of the splits.
+         */
+        private int[] parts = new int[0];
+
+        private int numParts;
+
+        /**
+         * The number of the first word after each split.
+         */
+        private int[] splitEnds = new int[0];
+
+        private int numSplits;
+
+        // the backtracking search
+
+        /**
+         * The minimum number of chunks of the splits up to an offset, to avoid splitting a larger word
+         * into smaller chunks.
+         */
+        private int[] maxPaths = new int[0];
+
+        /**
+         * The stacked word ends of the offsets of the backtracking search.
+         */
+        private int[] words = new int[0];
+
+        private int numWords;
+
+        /**
+         * The start and end offsets of the chunks of the current split.
+         */
+        private int[] chunks = new int[0];
+
+        private boolean[] glue = new boolean[0];
+
+        private int depth;
+
+        // the dynamic programming
+
+        private boolean[] reachable = new boolean[0];
+
+        private int[] wordEnds = new int[0];
+
+        private int[] numWordEnds = new int[0];
+
+        private int[] glueEnds = new int[0];
+
+        private int[] numGlueEnds = new int[0];
+
+        private boolean[] glued = new boolean[0];
 
-        Chunk(int start, int end, ChunkType type) {
-            this.start = start;
-            this.end = end;
-            this.type = type;
+        private int[] edges = new int[0];
+
+        /**
+         * The scores of the word edges, the logarithm of the word weight plus one.
+         */
+        private double[] edgeScores = new double[0];
+
+        private int numEdges;
+
+        /**
+         * The best split entries of the rest of the word after each offset.
+         */
+        private int[] best = new int[0];
+
+        private int[] count = new int[0];
+
+        private int maxSplits;
+
+        /**
+         * The highest score of the splits of the rest of the word after each offset, by the number of words.
+         */
+        private double[] scores = new double[0];
+
+        /**
+         * The number of glue morphemes, the end of the first word, and the start of the next word of the splits
+         * with the highest score.
+         */
+        private int[] splitsByParts = new int[0];
+
+        private Session() {
+        }
+
+        /**
+         * Split a word into all splits of a backtracking search, see {@link FstDecompounder#split(CharSequence)}.
+         *
+         * @param word the buffer of the word
+         * @param offset the offset of the word in the buffer
+         * @param length the length of the word
+         * @return the number of splits, 0 if the word can not be split
+         */
+        public int split(char[] word, int offset, int length) {
+            prepare(word, offset, length);
+            maxPaths = ArrayUtil.grow(maxPaths, n + 1);
+            Arrays.fill(maxPaths, 0, n + 1, Integer.MAX_VALUE);
+            chunks = ArrayUtil.grow(chunks, 2 * n);
+            glue = grow(glue, n);
+            numWords = 0;
+            depth = 0;
+            try {
+                matchWord(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return numSplits;
+        }
+
+        /**
+         * Split a word into the splits with the fewest words,
+         * see {@link FstDecompounder#splitShortest(CharSequence, int, int, int)}.
+         *
+         * @param word the buffer of the word
+         * @param offset the offset of the word in the buffer
+         * @param length the length of the word
+         * @param maxSplits the maximum number of splits, 1 for the best split only
+         * @param maxParts the maximum number of words of a split
+         * @param maxStates the maximum number of FST arcs which are visited, if this number is exceeded,
+         *                  the word is not split
+         * @return the number of splits, 0 if the word can not be split
+         */
+        public int splitShortest(char[] word, int offset, int length, int maxSplits, int maxParts, int maxStates) {
+            prepare(word, offset, length);
+            try {
+                if (n > 0 && reach(maxStates)) {
+                    rank(maxSplits, maxParts);
+                    for (int r = 0; r < count[0]; r++) {
+                        addWords(0, r);
+                        addSplit();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return numSplits;
+        }
+
+        /**
+         * Split a word into the split with the highest score,
+         * see {@link FstDecompounder#splitBest(CharSequence, int, int)}.
+         *
+         * @param word the buffer of the word
+         * @param offset the offset of the word in the buffer
+         * @param length the length of the word
+         * @param maxParts the maximum number of words of the split
+         * @param maxStates the maximum number of FST arcs which are visited, if this number is exceeded,
+         *                  the word is not split
+         * @return the number of splits, 1 if the word can be split, otherwise 0
+         */
+        public int splitBest(char[] word, int offset, int length, int maxParts, int maxStates) {
+            prepare(word, offset, length);
+            try {
+                if (n > 0 && reach(maxStates)) {
+                    score(maxParts);
+                    int width = maxParts + 1;
+                    int parts = 0;
+                    for (int k = 1; k <= maxParts; k++) {
+                        if (scores[k] > Double.NEGATIVE_INFINITY &&
+                                (parts == 0 || scores[k] / k > scores[parts] / parts)) {
+                            parts = k;
+                        }
+                    }
+                    if (parts > 0) {
+                        addBestWords(0, parts, width);
+                        addSplit();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return numSplits;
+        }
+
+        /**
+         * @return the buffer of the normalized word
+         */
+        public char[] buffer() {
+            return chars;
+        }
+
+        /**
+         * @return the number of splits
+         */
+        public int splits() {
+            return numSplits;
+        }
+
+        /**
+         * @param split the number of a split
+         * @return the number of the first word after the split
+         */
+        public int splitEnd(int split) {
+            return splitEnds[split];
+        }
+
+        /**
+         * @return the number of the words of all splits
+         */
+        public int parts() {
+            return numParts;
+        }
+
+        /**
+         * @param part the number of a word
+         * @return the start offset of the word in the buffer
+         */
+        public int start(int part) {
+            return parts[2 * part];
+        }
+
+        /**
+         * @param part the number of a word
+         * @return the end offset of the word in the buffer
+         */
+        public int end(int part) {
+            return parts[2 * part + 1];
+        }
+
+        /**
+         * Normalize a word into the buffer and reverse its code points. All characters but the last one are
+         * lower-cased, see https://issues.apache.org/jira/browse/COLLECTIONS-294
+         */
+        private void prepare(char[] word, int offset, int length) {
+            chars = ArrayUtil.grow(chars, length);
+            for (int i = 0; i < length; i++) {
+                char ch = word[offset + i];
+                chars[i] = i < length - 1 ? Character.toLowerCase(Character.toUpperCase(ch)) : ch;
+            }
+            utf32 = ArrayUtil.grow(utf32, length);
+            offsets = ArrayUtil.grow(offsets, length + 1);
+            n = 0;
+            offsets[0] = length;
+            for (int i = length; i > 0; ) {
+                int codePoint = Character.codePointBefore(chars, i);
+                i -= Character.charCount(codePoint);
+                utf32[n++] = codePoint;
+                offsets[n] = i;
+            }
+            numParts = 0;
+            numSplits = 0;
+        }
+
+        /**
+         * Add a word of the reversed word from start to end to the current split.
+         */
+        private void addPart(int start, int end) {
+            parts = ArrayUtil.grow(parts, 2 * numParts + 2);
+            parts[2 * numParts] = offsets[end];
+            parts[2 * numParts + 1] = offsets[start];
+            numParts++;
+        }
+
+        private void addSplit() {
+            splitEnds = ArrayUtil.grow(splitEnds, numSplits + 1);
+            splitEnds[numSplits++] = numParts;
+        }
+
+        /**
+         * Consume a word, then recurse into glue morphemes/ further words.
+         */
+        private void matchWord(int offset) throws IOException {
+            int base = numWords;
+            surfaceForms.getFirstArc(arc);
+            for (int i = offset; i < n; i++) {
+                if (surfaceForms.findTargetArc(utf32[i], arc, arc, wordReader) == null) {
+                    break;
+                }
+                if (surfaceForms.findTargetArc('<', arc, scratch, wordReader) != null) {
+                    words = ArrayUtil.grow(words, numWords + 1);
+                    words[numWords++] = i + 1;
+                }
+            }
+            for (int j = numWords; --j >= base; ) {
+                int end = words[j];
+                if (depth + 1 > maxPaths[end]) {
+                    continue;
+                }
+                maxPaths[end] = depth + 1;
+                push(offset, end, false);
+                if (end == n) {
+                    // add the words of the chunks, in the order of the word
+                    for (int c = depth; --c >= 0; ) {
+                        if (!glue[c]) {
+                            addPart(chunks[2 * c], chunks[2 * c + 1]);
+                        }
+                    }
+                    addSplit();
+                } else {
+                    matchWord(end);
+                    matchGlueMorpheme(end);
+                }
+                depth--;
+            }
+            numWords = base;
+        }
+
+        /**
+         * Consume a maximal glue morpheme, if any, and consume the next word.
+         */
+        private void matchGlueMorpheme(int offset) throws IOException {
+            while (glueArcs.size() <= depth) {
+                glueArcs.add(new FST.Arc<>());
+            }
+            FST.Arc<Object> glueArc = glueMorphemes.getFirstArc(glueArcs.get(depth));
+            for (int i = offset; i < n; i++) {
+                if (glueMorphemes.findTargetArc(utf32[i], glueArc, glueArc, glueReader) == null) {
+                    break;
+                }
+                if (glueArc.isFinal()) {
+                    push(offset, i + 1, true);
+                    if (i + 1 < n) {
+                        matchWord(i + 1);
+                    }
+                    depth--;
+                }
+            }
+        }
+
+        private void push(int start, int end, boolean isGlue) {
+            chunks[2 * depth] = start;
+            chunks[2 * depth + 1] = end;
+            glue[depth++] = isGlue;
+        }
+
+        /**
+         * Look up the ends of the words which start at an offset, and the ends of the glue morphemes which start
+         * at the end of a word, once for each offset which can be reached from the start.
+         *
+         * @return false if the maximum number of states is exceeded
+         */
+        private boolean reach(int maxStates) throws IOException {
+            reachable = grow(reachable, n);
+            glued = grow(glued, n);
+            wordEnds = ArrayUtil.grow(wordEnds, n);
+            numWordEnds = ArrayUtil.grow(numWordEnds, n);
+            glueEnds = ArrayUtil.grow(glueEnds, n);
+            numGlueEnds = ArrayUtil.grow(numGlueEnds, n);
+            Arrays.fill(reachable, 0, n, false);
+            Arrays.fill(glued, 0, n, false);
+            numEdges = 0;
+            int states = maxStates;
+            reachable[0] = true;
+            for (int p = 0; p < n; p++) {
+                if (!reachable[p]) {
+                    continue;
+                }
+                wordEnds[p] = numEdges;
+                surfaceForms.getFirstArc(arc);
+                long output = 0L;
+                for (int i = p; i < n; i++) {
+                    states -= 2;
+                    if (states < 0) {
+                        return false;
+                    }
+                    if (surfaceForms.findTargetArc(utf32[i], arc, arc, wordReader) == null) {
+                        break;
+                    }
+                    output += weight(arc.output);
+                    if (surfaceForms.findTargetArc('<', arc, scratch, wordReader) != null) {
+                        long weight = output + weight(scratch.output) +
+                                (scratch.isFinal() ? weight(scratch.nextFinalOutput) : 0L);
+                        addEdge(i + 1, weighted ? Math.log1p(weight) : 0d);
+                    }
+                }
+                numWordEnds[p] = numEdges - wordEnds[p];
+                for (int k = wordEnds[p]; k < wordEnds[p] + numWordEnds[p]; k++) {
+                    int e = edges[k];
+                    if (e == n || glued[e]) {
+                        continue;
+                    }
+                    reachable[e] = true;
+                    glued[e] = true;
+                    glueEnds[e] = numEdges;
+                    glueMorphemes.getFirstArc(arc);
+                    for (int i = e; i < n - 1; i++) {
+                        if (--states < 0) {
+                            return false;
+                        }
+                        if (glueMorphemes.findTargetArc(utf32[i], arc, arc, glueReader) == null) {
+                            break;
+                        }
+                        if (arc.isFinal()) {
+                            addEdge(i + 1, 0d);
+                            reachable[i + 1] = true;
+                        }
+                    }
+                    numGlueEnds[e] = numEdges - glueEnds[e];
+                }
+            }
+            return true;
+        }
+
+        private void addEdge(int end, double score) {
+            edges = ArrayUtil.grow(edges, numEdges + 1);
+            edgeScores = ArrayUtil.grow(edgeScores, numEdges + 1);
+            edges[numEdges] = end;
+            edgeScores[numEdges++] = score;
+        }
+
+        /**
+         * Keep the best splits of the rest of the word after each reachable offset, from the end of the word
+         * to the start.
+         */
+        private void rank(int maxSplits, int maxParts) {
+            this.maxSplits = maxSplits;
+            best = ArrayUtil.grow(best, n * maxSplits * ENTRY);
+            count = ArrayUtil.grow(count, n);
+            Arrays.fill(count, 0, n, 0);
+            for (int p = n - 1; p >= 0; p--) {
+                if (!reachable[p]) {
+                    continue;
+                }
+                int offset = p * maxSplits * ENTRY;
+                // the longest word first, as in the backtracking search
+                for (int j = numWordEnds[p]; --j >= 0; ) {
+                    int e = edges[wordEnds[p] + j];
+                    if (e == n) {
+                        set(candidate, 1, 0, e, e, 0);
+                        count[p] = offer(best, offset, count[p], maxSplits, candidate);
+                        continue;
+                    }
+                    // the next word starts at e, or after a glue morpheme which starts at e
+                    for (int g = -1; g < numGlueEnds[e]; g++) {
+                        int next = g < 0 ? e : edges[glueEnds[e] + g];
+                        int rest = next * maxSplits * ENTRY;
+                        for (int r = 0; r < count[next]; r++) {
+                            int words = best[rest + r * ENTRY] + 1;
+                            if (words <= maxParts) {
+                                set(candidate, words, best[rest + r * ENTRY + 1] + (next > e ? 1 : 0), e, next, r);
+                                count[p] = offer(best, offset, count[p], maxSplits, candidate);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Add the words of a ranked split in the order of the word, which is the reverse order
+         * of the reversed word.
+         */
+        private void addWords(int p, int rank) {
+            int i = (p * maxSplits + rank) * ENTRY;
+            int end = best[i + 2];
+            if (end < n) {
+                addWords(best[i + 3], best[i + 4]);
+            }
+            addPart(p, end);
+        }
+
+        /**
+         * Keep the split with the highest sum of word scores of the rest of the word after each reachable offset,
+         * for each number of words, from the end of the word to the start. The sum, divided by the number of
+         * words, is the logarithm of the geometric mean of the word weights plus one.
+         */
+        private void score(int maxParts) {
+            int width = maxParts + 1;
+            scores = ArrayUtil.grow(scores, n * width);
+            splitsByParts = ArrayUtil.grow(splitsByParts, 3 * n * width);
+            for (int p = n - 1; p >= 0; p--) {
+                if (!reachable[p]) {
+                    continue;
+                }
+                int offset = p * width;
+                Arrays.fill(scores, offset, offset + width, Double.NEGATIVE_INFINITY);
+                // the longest word first, as in the backtracking search
+                for (int j = numWordEnds[p]; --j >= 0; ) {
+                    int e = edges[wordEnds[p] + j];
+                    double score = edgeScores[wordEnds[p] + j];
+                    if (e == n) {
+                        offerScore(offset + 1, score, 0, e, e);
+                        continue;
+                    }
+                    // the next word starts at e, or after a glue morpheme which starts at e
+                    for (int g = -1; g < numGlueEnds[e]; g++) {
+                        int next = g < 0 ? e : edges[glueEnds[e] + g];
+                        int rest = next * width;
+                        for (int k = 1; k < maxParts; k++) {
+                            if (scores[rest + k] > Double.NEGATIVE_INFINITY) {
+                                offerScore(offset + k + 1, score + scores[rest + k],
+                                        splitsByParts[3 * (rest + k)] + (next > e ? 1 : 0), e, next);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Keep a split if it has a higher score, or the same score and fewer glue morphemes, than the kept split.
+         */
+        private void offerScore(int i, double score, int glues, int end, int next) {
+            if (score > scores[i] || (score == scores[i] && glues < splitsByParts[3 * i])) {
+                scores[i] = score;
+                splitsByParts[3 * i] = glues;
+                splitsByParts[3 * i + 1] = end;
+                splitsByParts[3 * i + 2] = next;
+            }
+        }
+
+        /**
+         * Add the words of the split with the highest score in the order of the word.
+         */
+        private void addBestWords(int p, int parts, int width) {
+            int i = 3 * (p * width + parts);
+            int end = splitsByParts[i + 1];
+            if (end < n) {
+                addBestWords(splitsByParts[i + 2], parts - 1, width);
+            }
+            addPart(p, end);
         }
     }
 }
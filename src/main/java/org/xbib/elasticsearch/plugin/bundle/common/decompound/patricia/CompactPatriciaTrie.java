@@ -1,5 +1,6 @@
 package org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia;
 
+import org.apache.lucene.util.CharsRefBuilder;
 import org.apache.lucene.util.SuppressForbidden;
 
 import java.io.IOException;
@@ -28,6 +29,8 @@ public class CompactPatriciaTrie {
 
     private static final String NL = "\n";
 
+    private static final char[] UNDECIDED = "undecided".toCharArray();
+
     private boolean reverse;
 
     private boolean ignorecase;
@@ -52,6 +55,8 @@ public class CompactPatriciaTrie {
 
     private char endOfWordChar;
 
+    private int[] weights;
+
     public CompactPatriciaTrie() {
         this.root = new Node();
         this.stringtree = null;
@@ -60,9 +65,7 @@ public class CompactPatriciaTrie {
         this.attentionNumber = 2;
         this.attentionNode = 3;
         this.endOfWordChar = 4;
-        this.basis = this.endchar - this.startchar + 1;
-        this.offset = (int) Math.ceil(Math.log(Integer.MAX_VALUE)
-                / Math.log(this.basis));
+        updateBasis();
         this.reverse = false;
         this.ignorecase = false;
     }
@@ -76,9 +79,7 @@ public class CompactPatriciaTrie {
         this.attentionNumber = (char) az;
         this.attentionNode = (char) ak;
         this.endOfWordChar = (char) eow;
-        this.basis = this.endchar - this.startchar + 1;
-        this.offset = (int) Math.ceil(Math.log(Integer.MAX_VALUE)
-                / Math.log(this.basis));
+        updateBasis();
         this.reverse = rv;
         this.ignorecase = ic;
     }
@@ -112,6 +113,79 @@ public class CompactPatriciaTrie {
         return classifyObject(word);
     }
 
+    /**
+     * Classify a word like {@link #classify(String)}, but read the word from a char array, forward or backward,
+     * without creating strings. If the trie ignores case, the characters are lower-cased one by one.
+     *
+     * @param chars the characters
+     * @param offset the offset of the word
+     * @param length the length of the word
+     * @param backward true if the word is read from the last to the first character
+     * @param suffix the characters which are appended to the word before it is classified, may be empty
+     * @param result the class of the word, or "undecided"
+     * @return false if the class is "undecided"
+     */
+    public boolean classify(char[] chars, int offset, int length, boolean backward, String suffix,
+                            CharsRefBuilder result) {
+        if (root != null) {
+            StringBuilder sb = new StringBuilder(length + suffix.length());
+            for (int i = 0; i < length; i++) {
+                sb.append(chars[backward ? offset + length - 1 - i : offset + i]);
+            }
+            result.clear();
+            result.append(classifyObject(sb.append(suffix).toString()));
+            return !isUndecided(result);
+        }
+        char[] tree = stringtree;
+        // the key is the word with the suffix, reversed if the trie is reversed, and the end of word character
+        int keyLength = length + suffix.length() + 1;
+        int pos = 0;
+        int i = 0;
+        while (tree[i] != attentionNode) {
+            i++;
+        }
+        int classes;
+        while (true) {
+            i += 2;
+            classes = i;
+            while (tree[i] != ']') {
+                i++;
+            }
+            if (pos == keyLength || i + 1 == tree.length) {
+                break;
+            }
+            i++;
+            char ch = keyChar(chars, offset, length, backward, suffix, pos);
+            while (tree[i] != ch && tree[i] != attentionNode) {
+                while (tree[i] != attentionNumber) {
+                    i++;
+                }
+                i += 1 + this.offset;
+            }
+            if (tree[i] == attentionNode) {
+                break;
+            }
+            int label = i;
+            while (tree[i] != attentionNumber) {
+                i++;
+            }
+            int labelLength = i - label;
+            int child = string2int(tree, i + 1);
+            boolean match = labelLength <= keyLength - pos;
+            for (int j = 0; match && j < labelLength; j++) {
+                match = tree[label + j] == keyChar(chars, offset, length, backward, suffix, pos + j);
+            }
+            if (!match) {
+                // the nearest node
+                classes = child + 2;
+                break;
+            }
+            pos += labelLength;
+            i = child;
+        }
+        return voted(tree, classes, result);
+    }
+
     public void setStartChar(int c) {
         if (c < 0) {
             throw new IllegalArgumentException("Character number must be greater than 0");
@@ -121,9 +195,7 @@ public class CompactPatriciaTrie {
             }
             this.stringtree = null;
             this.startchar = c;
-            this.basis = this.endchar - this.startchar + 1;
-            this.offset = (int) Math.ceil(Math.log(Integer.MAX_VALUE)
-                    / Math.log(this.basis));
+            updateBasis();
         }
     }
 
@@ -138,9 +210,7 @@ public class CompactPatriciaTrie {
             this.stringtree = null;
 
             this.endchar = c;
-            this.basis = this.endchar - this.startchar + 1;
-            this.offset = (int) Math.ceil(Math.log(Integer.MAX_VALUE)
-                    / Math.log(this.basis));
+            updateBasis();
         }
     }
 
@@ -178,14 +248,22 @@ public class CompactPatriciaTrie {
         }
     }
 
+    private void updateBasis() {
+        this.basis = this.endchar - this.startchar + 1;
+        this.offset = (int) Math.ceil(Math.log(Integer.MAX_VALUE)
+                / Math.log(this.basis));
+        this.weights = new int[offset];
+        for (int i = 0; i < offset; i++) {
+            weights[i] = (int) Math.exp((offset - i - 1) * Math.log(basis));
+        }
+    }
+
     private void internalSetStartChar(int c) {
         if (c < 0) {
             throw new IllegalArgumentException("Character number must be greater than 0");
         } else {
             this.startchar = c;
-            this.basis = this.endchar - this.startchar + 1;
-            this.offset = (int) Math.ceil(Math.log(Integer.MAX_VALUE)
-                    / Math.log(this.basis));
+            updateBasis();
         }
     }
 
@@ -195,9 +273,7 @@ public class CompactPatriciaTrie {
                     "Character number must be greater than 0");
         } else {
             this.endchar = c;
-            this.basis = this.endchar - this.startchar + 1;
-            this.offset = (int) Math.ceil(Math.log(Integer.MAX_VALUE)
-                    / Math.log(this.basis));
+            updateBasis();
         }
     }
 
@@ -241,6 +317,44 @@ public class CompactPatriciaTrie {
         this.reverse = b;
     }
 
+    /**
+     * @return the string tree, which is created from the object tree if the trie was trained
+     */
+    char[] getStringTree() {
+        if (stringtree == null) {
+            stringtree = getStringTree(root);
+        }
+        return stringtree;
+    }
+
+    char getAttentionNumber() {
+        return attentionNumber;
+    }
+
+    char getAttentionNode() {
+        return attentionNode;
+    }
+
+    char getEndOfWordChar() {
+        return endOfWordChar;
+    }
+
+    /**
+     * @return the number of characters of a position in the string tree
+     */
+    int getPositionLength() {
+        return offset;
+    }
+
+    /**
+     * @param tree the string tree
+     * @param pos the offset of the characters of a position
+     * @return the position
+     */
+    int getPosition(char[] tree, int pos) {
+        return string2int(tree, pos);
+    }
+
     private String reverse(String s) {
         char[] ret = new char[s.length()];
         StringBuilder torev = new StringBuilder(s);
@@ -283,6 +397,100 @@ public class CompactPatriciaTrie {
         }
     }
 
+    /**
+     * The character of a key at a position. The key is the word with the suffix, reversed if the trie is reversed,
+     * and the end of word character.
+     */
+    private char keyChar(char[] chars, int offset, int length, boolean backward, String suffix, int pos) {
+        int n = length + suffix.length();
+        if (pos == n) {
+            return endOfWordChar;
+        }
+        int p = reverse ? n - 1 - pos : pos;
+        char ch = p < length ? chars[backward ? offset + length - 1 - p : offset + p] : suffix.charAt(p - length);
+        return ignorecase ? Character.toLowerCase(ch) : ch;
+    }
+
+    /**
+     * Vote for a class like {@link #voted(List)} on the classes of a node of the string tree.
+     */
+    private boolean voted(char[] tree, int pos, CharsRefBuilder result) {
+        long votes = vote(tree, pos, result);
+        if ((double) (int) (votes >>> 32) / (double) (int) votes >= this.thresh) {
+            return !isUndecided(result);
+        } else {
+            result.copyChars(UNDECIDED, 0, UNDECIDED.length);
+            return false;
+        }
+    }
+
+    /**
+     * Count the votes of the classes of a node of the string tree, without applying a threshold.
+     *
+     * @param tree the string tree
+     * @param pos the position of the first class of the node
+     * @param result the class with the most votes, the classes with an equal number of votes are appended
+     *               with ';', or "undecided"
+     * @return the votes of the class in the upper 32 bits and the sum of the votes in the lower 32 bits
+     */
+    static long vote(char[] tree, int pos, CharsRefBuilder result) {
+        result.copyChars(UNDECIDED, 0, UNDECIDED.length);
+        int sum = 0;
+        int maxval = 0;
+        int i = pos;
+        while (tree[i] != ']') {
+            int end = i;
+            while (tree[end] != ';' && tree[end] != ']') {
+                end++;
+            }
+            // the class is the first token of the entry before a '=', the count is the second token
+            int start = i;
+            while (start < end && tree[start] == '=') {
+                start++;
+            }
+            int classEnd = start;
+            while (classEnd < end && tree[classEnd] != '=') {
+                classEnd++;
+            }
+            int j = classEnd;
+            while (j < end && tree[j] == '=') {
+                j++;
+            }
+            int actval = 0;
+            while (j < end && tree[j] != '=') {
+                actval = actval * 10 + tree[j] - '0';
+                j++;
+            }
+            sum += actval;
+            if (actval > maxval) {
+                maxval = actval;
+                result.copyChars(tree, start, classEnd - start);
+            }
+            if (actval == maxval && classEnd > start && !equals(result, tree, start, classEnd - start)) {
+                result.append(';');
+                result.append(tree, start, classEnd - start);
+            }
+            i = tree[end] == ';' ? end + 1 : end;
+        }
+        return ((long) maxval << 32) | (sum & 0xffffffffL);
+    }
+
+    private static boolean equals(CharsRefBuilder builder, char[] chars, int offset, int length) {
+        if (builder.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (builder.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isUndecided(CharsRefBuilder builder) {
+        return equals(builder, UNDECIDED, 0, UNDECIDED.length);
+    }
+
     private List<String> add(List<String> one, List<String> two) {
         List<String> list = new ArrayList<>();
         Map<String, Object> hash = new HashMap<>();
@@ -983,6 +1191,14 @@ public class CompactPatriciaTrie {
         return ret.toString();
     }
 
+    private int string2int(char[] chars, int pos) {
+        int ret = 0;
+        for (int i = 0; i < this.offset; i++) {
+            ret += (chars[pos + i] - this.startchar) * weights[i];
+        }
+        return ret;
+    }
+
     private int string2int(String s) {
         int ret = 0;
         for (int i = 0; i < this.offset; i++) {
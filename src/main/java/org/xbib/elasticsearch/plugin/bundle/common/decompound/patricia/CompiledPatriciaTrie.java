@@ -0,0 +1,395 @@
+package org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia;
+
+import com.carrotsearch.hppc.IntArrayList;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.CharsRefBuilder;
+import org.elasticsearch.common.hash.MurmurHash3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, compiled {@link CompactPatriciaTrie} for classification.
+ *
+ * The string tree of a compact patricia trie is text which must be scanned and parsed on every lookup. A compiled
+ * trie holds the same nodes in a binary format: each node is a fixed-width record with the class which wins the vote
+ * of the node, the votes of this class and the sum of all votes, and a table of the children, sorted by the first
+ * character of their labels, so a child is found by binary search. The threshold is applied at lookup, so a compiled
+ * trie can be shared by decompounders with different thresholds. The classes and the labels are held in a char pool.
+ *
+ * A compiled trie is either compiled on the heap, or read from a file which was written by {@link #write(Path)}.
+ * A file is memory-mapped, so the trie does not occupy heap space and is shared with the page cache of the operating
+ * system.
+ *
+ * The file starts with a header in little endian byte order: the magic number, the version, the flags, the end of
+ * word character, the number of classes, the number of characters of the char pool, and the offset of the nodes.
+ * The offsets and the lengths of the classes in the char pool and the char pool follow, then the nodes, aligned
+ * to eight bytes. A node consists of the class, the votes, the sum of the votes and the number of children, followed by
+ * the children, each with the first character and the length of the label, the offset of the label in the char pool,
+ * and the offset of the child node. The root node is the first node.
+ */
+public class CompiledPatriciaTrie implements Accountable {
+
+    private static final int MAGIC = 0x43505452;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER = 32;
+
+    private static final int REVERSE = 1;
+
+    private static final int IGNORECASE = 2;
+
+    private static final char[] UNDECIDED = "undecided".toCharArray();
+
+    private final ByteBuffer buffer;
+
+    private final boolean reverse;
+
+    private final boolean ignorecase;
+
+    private final char endOfWordChar;
+
+    private final int classes;
+
+    private final int pool;
+
+    private final int nodes;
+
+    private CompiledPatriciaTrie(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC) {
+            throw new IOException("not a compiled patricia trie");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("unsupported compiled patricia trie version " + version);
+        }
+        int flags = buffer.getInt(8);
+        this.reverse = (flags & REVERSE) != 0;
+        this.ignorecase = (flags & IGNORECASE) != 0;
+        this.endOfWordChar = (char) buffer.getInt(12);
+        this.classes = HEADER;
+        this.pool = HEADER + 8 * buffer.getInt(16);
+        this.nodes = buffer.getInt(24);
+    }
+
+    /**
+     * Compile a compact patricia trie with its reverse and ignore case flags.
+     *
+     * @param trie the trie
+     * @return the compiled trie
+     */
+    public static CompiledPatriciaTrie compile(CompactPatriciaTrie trie) {
+        Compiler compiler = new Compiler(trie);
+        compiler.compileNode(compiler.root());
+        int poolLength = compiler.pool.length();
+        int classCount = compiler.classes.size() / 2;
+        int nodes = align(HEADER + 8 * classCount + 2 * poolLength);
+        ByteBuffer buffer = ByteBuffer.allocate(nodes + 4 * compiler.nodes.size()).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt((trie.getReverse() ? REVERSE : 0) | (trie.getIgnoreCase() ? IGNORECASE : 0))
+                .putInt(trie.getEndOfWordChar())
+                .putInt(classCount)
+                .putInt(poolLength)
+                .putInt(nodes)
+                .putInt(0);
+        for (int i = 0; i < compiler.classes.size(); i++) {
+            buffer.putInt(compiler.classes.get(i));
+        }
+        for (int i = 0; i < poolLength; i++) {
+            buffer.putChar(compiler.pool.charAt(i));
+        }
+        buffer.position(nodes);
+        for (int i = 0; i < compiler.nodes.size(); i++) {
+            buffer.putInt(compiler.nodes.get(i));
+        }
+        buffer.position(0);
+        try {
+            return new CompiledPatriciaTrie(buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Read a compiled trie file by mapping it into memory.
+     *
+     * @param path the path of the file
+     * @return the compiled trie
+     * @throws IOException if the file can not be read or is not a compiled trie
+     */
+    public static CompiledPatriciaTrie read(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            return new CompiledPatriciaTrie(buffer);
+        } catch (IOException e) {
+            throw new IOException(e.getMessage() + ": " + path, e);
+        }
+    }
+
+    /**
+     * Write this trie to a file.
+     *
+     * @param path the path of the file
+     * @throws IOException if writing fails
+     */
+    public void write(Path path) throws IOException {
+        ByteBuffer b = buffer.duplicate();
+        b.clear();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+        }
+    }
+
+    /**
+     * The name of the compiled trie file of a trie resource, which is the name of the resource without
+     * its directory and without the extension {@code .tree}, followed by a hash of the full class path of the
+     * resource and the extension {@code .bin}. So resources with the same name in different directories
+     * have different compiled trie files.
+     *
+     * @param resource the trie resource, relative to the decompound token filter or an absolute path
+     * @return the file name
+     */
+    public static String fileName(String resource) {
+        String name = resource.substring(resource.lastIndexOf('/') + 1);
+        if (name.endsWith(".tree")) {
+            name = name.substring(0, name.length() - 5);
+        }
+        byte[] bytes = DecompoundModels.resourcePath(resource).getBytes(StandardCharsets.UTF_8);
+        MurmurHash3.Hash128 hash = MurmurHash3.hash128(bytes, 0, bytes.length, 0, new MurmurHash3.Hash128());
+        return name + '-' + Long.toHexString(hash.h1) + ".bin";
+    }
+
+    /**
+     * Classify a word like {@link CompactPatriciaTrie#classify(char[], int, int, boolean, String, CharsRefBuilder)}.
+     *
+     * @param chars the characters
+     * @param offset the offset of the word
+     * @param length the length of the word
+     * @param backward true if the word is read from the last to the first character
+     * @param suffix the characters which are appended to the word before it is classified, may be empty
+     * @param threshold the minimum ratio of the votes of the class to all votes of the node
+     * @param result the class of the word, or "undecided"
+     * @return false if the class is "undecided"
+     */
+    public boolean classify(char[] chars, int offset, int length, boolean backward, String suffix, double threshold,
+                            CharsRefBuilder result) {
+        int keyLength = length + suffix.length() + 1;
+        int pos = 0;
+        int node = nodes;
+        while (pos < keyLength) {
+            int child = child(node, keyChar(chars, offset, length, backward, suffix, pos));
+            if (child < 0) {
+                break;
+            }
+            int labelLength = buffer.getInt(child) & 0xffff;
+            int label = pool + 2 * buffer.getInt(child + 4);
+            node = nodes + buffer.getInt(child + 8);
+            boolean match = labelLength <= keyLength - pos;
+            for (int j = 0; match && j < labelLength; j++) {
+                match = buffer.getChar(label + 2 * j) == keyChar(chars, offset, length, backward, suffix, pos + j);
+            }
+            if (!match) {
+                // the nearest node
+                break;
+            }
+            pos += labelLength;
+        }
+        int votes = buffer.getInt(node + 4);
+        int sum = buffer.getInt(node + 8);
+        if (!((double) votes / (double) sum >= threshold)) {
+            result.copyChars(UNDECIDED, 0, UNDECIDED.length);
+            return false;
+        }
+        int clazz = buffer.getInt(node);
+        int start = pool + 2 * buffer.getInt(classes + 8 * clazz);
+        int classLength = buffer.getInt(classes + 8 * clazz + 4);
+        result.clear();
+        result.grow(classLength);
+        for (int i = 0; i < classLength; i++) {
+            result.append(buffer.getChar(start + 2 * i));
+        }
+        // the first class is "undecided"
+        return clazz != 0;
+    }
+
+    public boolean getReverse() {
+        return reverse;
+    }
+
+    public boolean getIgnoreCase() {
+        return ignorecase;
+    }
+
+    /**
+     * @return true if the trie is memory-mapped from a file
+     */
+    public boolean isMapped() {
+        return buffer.isDirect();
+    }
+
+    /**
+     * @return the size of the compiled trie in bytes
+     */
+    public long sizeInBytes() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return buffer.isDirect() ? 0L : buffer.capacity();
+    }
+
+    /**
+     * Find the child of a node with the first character of its label.
+     *
+     * @return the offset of the child in the child table of the node, or -1
+     */
+    private int child(int node, char ch) {
+        int low = 0;
+        int high = buffer.getInt(node + 12) - 1;
+        int table = node + 16;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char first = (char) (buffer.getInt(table + 12 * mid) >>> 16);
+            if (first < ch) {
+                low = mid + 1;
+            } else if (first > ch) {
+                high = mid - 1;
+            } else {
+                return table + 12 * mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The character of a key at a position, see {@link CompactPatriciaTrie}.
+     */
+    private char keyChar(char[] chars, int offset, int length, boolean backward, String suffix, int pos) {
+        int n = length + suffix.length();
+        if (pos == n) {
+            return endOfWordChar;
+        }
+        int p = reverse ? n - 1 - pos : pos;
+        char ch = p < length ? chars[backward ? offset + length - 1 - p : offset + p] : suffix.charAt(p - length);
+        return ignorecase ? Character.toLowerCase(ch) : ch;
+    }
+
+    private static int align(int position) {
+        return (position + 7) & ~7;
+    }
+
+    /**
+     * Converts the string tree of a compact patricia trie into nodes. The classes of the nodes are voted once,
+     * and equal classes share an entry of the char pool.
+     */
+    private static class Compiler {
+
+        private final char[] tree;
+
+        private final char attentionNumber;
+
+        private final char attentionNode;
+
+        private final int positionLength;
+
+        private final CompactPatriciaTrie trie;
+
+        private final StringBuilder pool = new StringBuilder();
+
+        private final IntArrayList classes = new IntArrayList();
+
+        private final Map<String, Integer> classIds = new HashMap<>();
+
+        private final IntArrayList nodes = new IntArrayList();
+
+        private final CharsRefBuilder clazz = new CharsRefBuilder();
+
+        Compiler(CompactPatriciaTrie trie) {
+            this.trie = trie;
+            this.tree = trie.getStringTree();
+            this.attentionNumber = trie.getAttentionNumber();
+            this.attentionNode = trie.getAttentionNode();
+            this.positionLength = trie.getPositionLength();
+            classId(new String(UNDECIDED));
+        }
+
+        int root() {
+            int i = 0;
+            while (tree[i] != attentionNode) {
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * Compile the node at a position of the string tree and its descendants.
+         *
+         * @return the offset of the node in bytes
+         */
+        int compileNode(int pos) {
+            int i = pos + 2;
+            long votes = CompactPatriciaTrie.vote(tree, i, clazz);
+            while (tree[i] != ']') {
+                i++;
+            }
+            // the children, the first child with a first character wins as in a scan of the string tree
+            List<int[]> children = new ArrayList<>();
+            i++;
+            while (i < tree.length && tree[i] != attentionNode) {
+                int label = i;
+                while (tree[i] != attentionNumber) {
+                    i++;
+                }
+                int child = trie.getPosition(tree, i + 1);
+                if (children.stream().noneMatch(c -> c[0] == tree[label])) {
+                    children.add(new int[] { tree[label], label, i - label, child });
+                }
+                i += 1 + positionLength;
+            }
+            children.sort((a, b) -> Integer.compare(a[0], b[0]));
+            int node = nodes.size();
+            nodes.add(classId(clazz.toString()), (int) (votes >>> 32), (int) votes, children.size());
+            for (int[] child : children) {
+                if (child[2] > 0xffff) {
+                    throw new IllegalArgumentException("label too long: " + child[2]);
+                }
+                nodes.add((child[0] << 16) | child[2], pool.length(), 0);
+                pool.append(tree, child[1], child[2]);
+            }
+            for (int k = 0; k < children.size(); k++) {
+                nodes.set(node + 4 + 3 * k + 2, compileNode(children.get(k)[3]));
+            }
+            return 4 * node;
+        }
+
+        private int classId(String s) {
+            Integer id = classIds.get(s);
+            if (id == null) {
+                id = classes.size() / 2;
+                classIds.put(s, id);
+                classes.add(pool.length(), s.length());
+                pool.append(s);
+            }
+            return id;
+        }
+    }
+}
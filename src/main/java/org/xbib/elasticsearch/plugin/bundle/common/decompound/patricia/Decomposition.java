@@ -0,0 +1,121 @@
+package org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.CharsRefBuilder;
+
+/**
+ * The parts of a decompounded word, see {@link Decompounder#decompound(char[], int, int, Decomposition)}.
+ *
+ * The characters of the word, and of its base forms, are held in one char array, and the parts are reported as
+ * start and end offsets into this array. A decomposition is meant to be reused for many words, so decompounding
+ * does not allocate once the buffers have grown to the size of the longest word. It is not thread safe.
+ */
+public class Decomposition {
+
+    private char[] chars = new char[64];
+
+    private int length;
+
+    private int[] parts = new int[16];
+
+    private int size;
+
+    int[] stack = new int[32];
+
+    final CharsRefBuilder forwardClass = new CharsRefBuilder();
+
+    final CharsRefBuilder backwardClass = new CharsRefBuilder();
+
+    final CharsRefBuilder baseFormClass = new CharsRefBuilder();
+
+    /**
+     * @return the number of parts
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the characters of the parts
+     */
+    public char[] chars() {
+        return chars;
+    }
+
+    /**
+     * @param i the index of the part
+     * @return the offset of the first character of the part in {@link #chars()}
+     */
+    public int start(int i) {
+        return parts[2 * i];
+    }
+
+    /**
+     * @param i the index of the part
+     * @return the offset after the last character of the part in {@link #chars()}
+     */
+    public int end(int i) {
+        return parts[2 * i + 1];
+    }
+
+    /**
+     * @param i the index of the part
+     * @return the part as a string
+     */
+    public String get(int i) {
+        return new String(chars, start(i), end(i) - start(i));
+    }
+
+    public void clear() {
+        length = 0;
+        size = 0;
+    }
+
+    /**
+     * Add a part.
+     *
+     * @param part the characters of the part
+     */
+    public void add(CharSequence part) {
+        int start = length;
+        grow(part.length());
+        for (int i = 0; i < part.length(); i++) {
+            chars[length++] = part.charAt(i);
+        }
+        addPart(start, length);
+    }
+
+    /**
+     * Append characters to the character buffer. The characters may be taken from the buffer itself, because
+     * a grown buffer is a copy.
+     *
+     * @return the offset of the appended characters
+     */
+    int append(char[] src, int offset, int len) {
+        int start = length;
+        grow(len);
+        System.arraycopy(src, offset, chars, length, len);
+        length += len;
+        return start;
+    }
+
+    void append(char ch) {
+        grow(1);
+        chars[length++] = ch;
+    }
+
+    int length() {
+        return length;
+    }
+
+    void addPart(int start, int end) {
+        parts = ArrayUtil.grow(parts, 2 * size + 2);
+        parts[2 * size] = start;
+        parts[2 * size + 1] = end;
+        size++;
+    }
+
+    private void grow(int len) {
+        chars = ArrayUtil.grow(chars, length + len);
+    }
+}
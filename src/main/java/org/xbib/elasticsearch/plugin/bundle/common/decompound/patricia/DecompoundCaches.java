@@ -0,0 +1,68 @@
+package org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia;
+
+import org.elasticsearch.common.settings.Settings;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.CacheStats;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.TinyLfuCache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The node-level registry of the decompound caches.
+ *
+ * A cache maps a word to its decompounded words, so it is only valid for the decompounder which computed
+ * the words. The caches are keyed by the decompounder configuration, which are the trie resources, the
+ * threshold, and the cache size. Decompound token filters with the same configuration share a cache,
+ * also across indices, and filters with different configurations never see each other's words.
+ */
+public class DecompoundCaches {
+
+    private static final int DEFAULT_CACHE_SIZE = 100000;
+
+    private final Map<String, TinyLfuCache<String, List<String>>> caches = new ConcurrentHashMap<>();
+
+    /**
+     * Get the shared cache of a decompound token filter configuration, create it if it does not exist.
+     *
+     * @param settings the settings of the decompound token filter
+     * @return the cache
+     */
+    public TinyLfuCache<String, List<String>> get(Settings settings) {
+        int cacheSize = settings.getAsInt("cache_size", DEFAULT_CACHE_SIZE);
+        return caches.computeIfAbsent(key(settings), k -> new TinyLfuCache<>(cacheSize));
+    }
+
+    /**
+     * @return the number of caches
+     */
+    public int size() {
+        return caches.size();
+    }
+
+    /**
+     * @return the statistics of the caches, by configuration
+     */
+    public Map<String, CacheStats> stats() {
+        Map<String, CacheStats> stats = new TreeMap<>();
+        for (Map.Entry<String, TinyLfuCache<String, List<String>>> entry : caches.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().stats());
+        }
+        return stats;
+    }
+
+    /**
+     * The configuration key of the settings of a decompound token filter.
+     *
+     * @param settings the settings
+     * @return the key
+     */
+    public static String key(Settings settings) {
+        return "forward=" + settings.get("forward", "kompVVic.tree") +
+                ",backward=" + settings.get("backward", "kompVHic.tree") +
+                ",reduce=" + settings.get("reduce", "grfExt.tree") +
+                ",threshold=" + settings.getAsDouble("threshold", 0.51d) +
+                ",cache_size=" + settings.getAsInt("cache_size", DEFAULT_CACHE_SIZE);
+    }
+}
@@ -0,0 +1,172 @@
+package org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.settings.Settings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The node-level registry of the decompound tries.
+ *
+ * Each trie resource is loaded once and the immutable {@link CompiledPatriciaTrie compiled trie} is shared by all
+ * decompounders of the node, and the decompounders are shared by all decompound token filters with the same
+ * configuration, also across indices. If the model directory contains a compiled trie file of a resource,
+ * see {@link CompiledPatriciaTrie#fileName(String)}, the file is memory-mapped. Otherwise, the trie is loaded
+ * from the class path and compiled on the heap. The footprint of each loaded trie is logged.
+ *
+ * A trie or decompounder is loaded by the first thread which requests it, outside of the registry, so loading
+ * a trie does not block the requests of other tries. Other threads which request the same trie wait for it.
+ * If the loading fails, the next request loads it again.
+ */
+public class DecompoundModels {
+
+    private static final Logger logger = LogManager.getLogger(DecompoundModels.class.getName());
+
+    /**
+     * The class path of the trie resources which are not given by an absolute path.
+     */
+    static final String RESOURCE_PATH = "/org/xbib/elasticsearch/plugin/bundle/index/analysis/decompound/patricia/";
+
+    private final Path path;
+
+    private final Map<String, CompletableFuture<CompiledPatriciaTrie>> tries = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletableFuture<Decompounder>> decompounders = new ConcurrentHashMap<>();
+
+    /**
+     * Create a decompound trie registry.
+     *
+     * @param path the directory of the compiled trie files, or null
+     */
+    public DecompoundModels(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Get the shared decompounder of the settings of a decompound token filter, create it if it does not exist.
+     *
+     * @param settings the settings
+     * @return the decompounder
+     * @throws IOException if a trie can not be loaded
+     */
+    public Decompounder get(Settings settings) throws IOException {
+        String forward = settings.get("forward", "kompVVic.tree");
+        String backward = settings.get("backward", "kompVHic.tree");
+        String reduce = settings.get("reduce", "grfExt.tree");
+        double threshold = settings.getAsDouble("threshold", 0.51d);
+        String key = forward + ',' + backward + ',' + reduce + ',' + threshold;
+        return get(decompounders, key,
+                () -> new Decompounder(getTrie(forward), getTrie(backward), getTrie(reduce), threshold));
+    }
+
+    /**
+     * Get a shared compiled trie, load it if it is not yet loaded.
+     *
+     * @param resource the trie resource
+     * @return the compiled trie
+     * @throws IOException if the trie can not be loaded
+     */
+    public CompiledPatriciaTrie getTrie(String resource) throws IOException {
+        return get(tries, resource, () -> {
+            CompiledPatriciaTrie trie = load(resource);
+            logger.info("decompound trie {}: {}, {} bytes, {} heap bytes", resource,
+                    trie.isMapped() ? "memory-mapped" : "compiled", trie.sizeInBytes(), trie.ramBytesUsed());
+            return trie;
+        });
+    }
+
+    /**
+     * @return the number of loaded tries, without the tries which are being loaded
+     */
+    public int size() {
+        int n = 0;
+        for (CompletableFuture<CompiledPatriciaTrie> future : tries.values()) {
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static <T> T get(Map<String, CompletableFuture<T>> map, String key, Loader<T> loader)
+            throws IOException {
+        CompletableFuture<T> future = map.get(key);
+        if (future == null) {
+            CompletableFuture<T> created = new CompletableFuture<>();
+            future = map.putIfAbsent(key, created);
+            if (future == null) {
+                try {
+                    T value = loader.load();
+                    created.complete(value);
+                    return value;
+                } catch (IOException e) {
+                    map.remove(key, created);
+                    created.completeExceptionally(new UncheckedIOException(e));
+                    throw e;
+                } catch (RuntimeException | Error e) {
+                    map.remove(key, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private CompiledPatriciaTrie load(String resource) throws IOException {
+        if (path != null) {
+            Path file = path.resolve(CompiledPatriciaTrie.fileName(resource));
+            if (Files.isRegularFile(file)) {
+                try {
+                    return CompiledPatriciaTrie.read(file);
+                } catch (IOException e) {
+                    logger.warn("unable to read decompound trie " + file, e);
+                }
+            }
+        }
+        try (InputStream in = DecompoundModels.class.getResourceAsStream(resourcePath(resource))) {
+            if (in == null) {
+                throw new IOException("decompound trie resource not found: " + resource);
+            }
+            return Decompounder.compile(in);
+        }
+    }
+
+    /**
+     * The class path of a trie resource.
+     *
+     * @param resource the trie resource, relative to the decompound token filter or an absolute path
+     * @return the class path
+     */
+    static String resourcePath(String resource) {
+        return resource.startsWith("/") ? resource : RESOURCE_PATH + resource;
+    }
+
+    @FunctionalInterface
+    private interface Loader<T> {
+        T load() throws IOException;
+    }
+}
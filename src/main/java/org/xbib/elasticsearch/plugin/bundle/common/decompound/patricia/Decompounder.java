@@ -1,207 +1,292 @@
 package org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia;
 
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.CharsRefBuilder;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.StringTokenizer;
 
 /**
  * Decompounder.
+ *
+ * The forward, backward and base form tries are {@link CompiledPatriciaTrie compiled}, so they can be
+ * shared by decompounders with different thresholds, see {@link DecompoundModels}.
  */
 public class Decompounder {
 
-    private CompactPatriciaTrie kompvvTree;
-    private CompactPatriciaTrie kompvhTree;
-    private CompactPatriciaTrie grfTree;
+    private final CompiledPatriciaTrie kompvvTree;
+    private final CompiledPatriciaTrie kompvhTree;
+    private final CompiledPatriciaTrie grfTree;
+    private final double kompvvThreshold;
+    private final double kompvhThreshold;
+    private final double grfThreshold;
 
     public Decompounder(InputStream kompvv, InputStream kompvh, InputStream gfred, double threshold)
             throws IOException {
-        kompvvTree = new CompactPatriciaTrie();
-        kompvvTree.load(kompvv);
-        kompvvTree.setIgnoreCase(true);
-        kompvvTree.setThreshold(threshold);
-        kompvhTree = new CompactPatriciaTrie();
-        kompvhTree.load(kompvh);
-        kompvhTree.setIgnoreCase(true);
-        kompvhTree.setThreshold(threshold);
-        grfTree = new CompactPatriciaTrie();
-        grfTree.load(gfred);
-        grfTree.setIgnoreCase(true);
-        grfTree.setThreshold(threshold); // previous value = 0.46
+        this(compile(kompvv), compile(kompvh), compile(gfred), threshold);
     }
 
     public Decompounder(CompactPatriciaTrie kompvv, CompactPatriciaTrie kompvh, CompactPatriciaTrie gfred, double threshold) {
-        kompvvTree = kompvv;
-        kompvhTree = kompvh;
-        grfTree = gfred;
-        grfTree.setThreshold(threshold); // previous value = 0.46
+        this(CompiledPatriciaTrie.compile(kompvv), CompiledPatriciaTrie.compile(kompvh),
+                CompiledPatriciaTrie.compile(gfred), kompvv.getThreshold(), kompvh.getThreshold(), threshold);
     }
 
-    private String reverse(String torev) {
-        StringBuilder ret = new StringBuilder();
-        for (int i = torev.length(); i > 0; i--) {
-            ret.append(torev.substring(i - 1, i));
-        }
-        return ret.toString();
+    /**
+     * Create a decompounder of compiled tries. The tries are expected to ignore case, as the tries which are
+     * compiled by {@link PatriciaTrieCompiler}.
+     *
+     * @param kompvv the forward trie
+     * @param kompvh the backward trie
+     * @param gfred the base form trie
+     * @param threshold the threshold of the tries
+     */
+    public Decompounder(CompiledPatriciaTrie kompvv, CompiledPatriciaTrie kompvh, CompiledPatriciaTrie gfred,
+                        double threshold) {
+        this(kompvv, kompvh, gfred, threshold, threshold, threshold);
+    }
+
+    private Decompounder(CompiledPatriciaTrie kompvv, CompiledPatriciaTrie kompvh, CompiledPatriciaTrie gfred,
+                         double kompvvThreshold, double kompvhThreshold, double grfThreshold) {
+        this.kompvvTree = kompvv;
+        this.kompvhTree = kompvh;
+        this.grfTree = gfred;
+        this.kompvvThreshold = kompvvThreshold;
+        this.kompvhThreshold = kompvhThreshold;
+        this.grfThreshold = grfThreshold;
     }
 
+    /**
+     * Load a trie which ignores case and compile it.
+     *
+     * @param in the input stream of the trie
+     * @return the compiled trie
+     * @throws IOException if the trie can not be loaded
+     */
+    public static CompiledPatriciaTrie compile(InputStream in) throws IOException {
+        CompactPatriciaTrie trie = new CompactPatriciaTrie();
+        trie.load(in);
+        trie.setIgnoreCase(true);
+        return CompiledPatriciaTrie.compile(trie);
+    }
+
+    /**
+     * Decompound a word.
+     *
+     * @param string the word
+     * @return the parts of the word, or the base form of the word if it is not a compound
+     */
     public List<String> decompound(String string) {
-        String word = string;
-        word = reduceToBaseForm(word);
-        List<String> list = new ArrayList<>();
-        String classvv = kompvvTree.classify(word + "<");
-        String classvh = kompvhTree.classify(reverse(word) + "<");
-        StringBuilder numStrvv = new StringBuilder();
-        StringBuilder numStrvh = new StringBuilder();
-        StringBuilder suffixvv = new StringBuilder();
-        StringBuilder suffixvh = new StringBuilder();
-        String vvpart1 = "";
-        String vhpart1 = "";
-        String vvpart2 = "";
-        String vhpart2 = "";
-        int numvv = 0;
-        int numvh = 0;
-        boolean vhOk = true;
-        boolean vvOk = true;
-        if ("undecided".equals(classvv)) {
+        Decomposition decomposition = new Decomposition();
+        decompound(string.toCharArray(), 0, string.length(), decomposition);
+        List<String> list = new ArrayList<>(decomposition.size());
+        for (int i = 0; i < decomposition.size(); i++) {
+            list.add(decomposition.get(i));
+        }
+        return list;
+    }
+
+    /**
+     * Decompound a word of a char array. The word is first reduced to its base form, then split at the positions
+     * which are classified by the forward and backward tries. The parts are decompounded again until they can not
+     * be split any further. The tries are traversed on the characters of the decomposition, no strings are created.
+     *
+     * @param chars the characters
+     * @param offset the offset of the word
+     * @param length the length of the word
+     * @param decomposition the decomposition which receives the parts, it is cleared first
+     */
+    public void decompound(char[] chars, int offset, int length, Decomposition decomposition) {
+        decomposition.clear();
+        int start = decomposition.append(chars, offset, length);
+        decompound(decomposition, start, start + length, 0);
+    }
+
+    public String reduceToBaseForm(String word) {
+        Decomposition decomposition = new Decomposition();
+        int start = decomposition.append(word.toCharArray(), 0, word.length());
+        reduceToBaseForm(decomposition, start, start + word.length(), 0);
+        int[] stack = decomposition.stack;
+        return new String(decomposition.chars(), stack[0], stack[1] - stack[0]);
+    }
+
+    /**
+     * Decompound the characters of a decomposition between start and end. The parts of the word are pushed
+     * on the stack of the decomposition at the stack pointer, before they are decompounded again.
+     */
+    private void decompound(Decomposition decomposition, int wordStart, int wordEnd, int sp) {
+        reduceToBaseForm(decomposition, wordStart, wordEnd, sp);
+        int[] stack = decomposition.stack;
+        int start = stack[sp];
+        int end = stack[sp + 1];
+        int length = end - start;
+        char[] word = decomposition.chars();
+        CharsRefBuilder classvv = decomposition.forwardClass;
+        CharsRefBuilder classvh = decomposition.backwardClass;
+        boolean vvOk = kompvvTree.classify(word, start, length, false, "<", kompvvThreshold, classvv);
+        boolean vhOk = kompvhTree.classify(word, start, length, true, "<", kompvhThreshold, classvh);
+        int numvv = vvOk ? number(classvv) : -1;
+        int numvh = vhOk ? number(classvh) : -1;
+        if (numvv < 0 || numvv >= length) {
             vvOk = false;
         }
-        if ("undecided".equals(classvh)) {
+        if (numvh < 0 || numvh >= length) {
             vhOk = false;
         }
+        int suffixvv = 0;
         if (vvOk) {
             for (int i = 0; i < classvv.length(); i++) {
                 char c = classvv.charAt(i);
-                if ((c <= '9') && (c >= '0')) {
-                    numStrvv.append(c);
-                } else {
-                    suffixvv.append(c);
+                if (!isDigit(c)) {
+                    if (length <= numvv + suffixvv || c != word[start + numvv + suffixvv]) {
+                        vvOk = false;
+                    }
+                    suffixvv++;
                 }
             }
         }
+        int suffixvh = 0;
         if (vhOk) {
             for (int i = 0; i < classvh.length(); i++) {
                 char c = classvh.charAt(i);
-                if ((c <= '9') && (c >= '0')) {
-                    numStrvh.append(c);
-                } else {
-                    suffixvh.append(c);
+                if (!isDigit(c)) {
+                    if (length <= numvh + 1 + suffixvh) {
+                        vhOk = false;
+                    } else if (c != word[start + numvh + 1 + suffixvh]) {
+                        // a mismatch of the backward suffix has always rejected the forward split
+                        vvOk = false;
+                    }
+                    suffixvh++;
                 }
             }
         }
-
-        if (vvOk) {
-            numvv = Integer.parseInt(numStrvv.toString());
-        }
-        if (vhOk) {
-            numvh = Integer.parseInt(numStrvh.toString());
-        }
-
-        if (vvOk && numvv >= word.length()) {
+        // the parts: vvpart1 = [start, vv), vvpart2 = [vv + suffixvv, end),
+        // vhpart1 = [start, end - numvh), vhpart2 = [end - numvh - suffixvh, end)
+        int vv = start + numvv;
+        int vh = end - numvh;
+        if (vvOk && end - (vv + suffixvv) <= 3) {
             vvOk = false;
         }
-
-        if (vhOk && numvh >= word.length()) {
+        if (vhOk && vh - start <= 3) {
             vhOk = false;
         }
-
-        if (vvOk) {
-            for (int i = 0; i < suffixvv.length(); i++) {
-                if (word.length() > (numvv + i)) {
-                    if (suffixvv.charAt(i) != word.charAt(numvv + i)) {
-                        vvOk = false;
-                    }
-                } else {
-                    vvOk = false;
+        stack = grow(decomposition, sp + 10);
+        int n = sp + 2;
+        if (vvOk && vhOk) {
+            n = push(stack, n, start, vv);
+            int vvpart2 = end - (vv + suffixvv);
+            int vhpart2 = numvh + suffixvh;
+            if (vv == vh || (vh - vv) < 3) {
+                if (vhpart2 < vvpart2) {
+                    n = push(stack, n, end - vhpart2, end);
+                } else if (vhpart2 > vvpart2) {
+                    n = push(stack, n, vv + suffixvv, end);
                 }
+            } else {
+                n = push(stack, n, vv + suffixvv, vh);
+                n = push(stack, n, end - vhpart2, end);
             }
-        }
-        if (vhOk) {
-            for (int i = 0; i < suffixvh.length(); i++) {
-                if (suffixvh.charAt(i) != word.charAt(numvh + 1 + i)) {
-                    vvOk = false;
-                }
+            if (vvpart2 == vhpart2) {
+                n = push(stack, n, vv + suffixvv, end);
             }
+        } else if (vvOk) {
+            n = push(stack, n, start, vv);
+            n = push(stack, n, vv + suffixvv, end);
+        } else if (vhOk) {
+            n = push(stack, n, start, vh);
+            n = push(stack, n, end - numvh - suffixvh, end);
+        } else {
+            n = push(stack, n, start, end);
         }
-        if (vvOk) {
-            vvpart1 = word.substring(0, numvv);
-            vvpart2 = word.substring(numvv + suffixvv.length(), word.length());
-            if (vvpart2.length() <= 3) {
-                vvOk = false;
+        if (n - sp > 4) {
+            for (int i = sp + 2; i < n; i += 2) {
+                int[] s = decomposition.stack;
+                decompound(decomposition, s[i], s[i + 1], n);
             }
+        } else {
+            decomposition.addPart(stack[sp + 2], stack[sp + 3]);
         }
-        if (vhOk) {
-            vhpart1 = word.substring(0, word.length() - numvh);
-            vhpart2 = word.substring(word.length() - (numvh + suffixvh.length()), word.length());
-            if (vhpart1.length() <= 3) {
-                vhOk = false;
-            }
+    }
+
+    /**
+     * Reduce the characters of a decomposition between start and end to the base form. The start and the end
+     * of the base form are put on the stack of the decomposition at the stack pointer.
+     */
+    private void reduceToBaseForm(Decomposition decomposition, int start, int end, int sp) {
+        int[] stack = grow(decomposition, sp + 2);
+        stack[sp] = start;
+        stack[sp + 1] = end;
+        int length = end - start;
+        CharsRefBuilder baseForm = decomposition.baseFormClass;
+        if (!grfTree.classify(decomposition.chars(), start, length, true, "", grfThreshold, baseForm)) {
+            return;
         }
-        if (vvOk && vhOk) {
-            if ((vvpart1.equals(vhpart1)) || ((vhpart1.length() - vvpart1.length()) < 3)) {
-                list.add(vvpart1);
-                if (vhpart2.length() < vvpart2.length()) {
-                    list.add(vhpart2);
-                } else if (vhpart2.length() > vvpart2.length()) {
-                    list.add(vvpart2);
-                }
+        // the first of the comma separated base forms
+        int from = 0;
+        while (from < baseForm.length() && baseForm.charAt(from) == ',') {
+            from++;
+        }
+        int to = from;
+        int cutpos = 0;
+        int suffix = 0;
+        boolean hasNumber = false;
+        while (to < baseForm.length() && baseForm.charAt(to) != ',') {
+            char c = baseForm.charAt(to);
+            if (isDigit(c)) {
+                cutpos = cutpos * 10 + c - '0';
+                hasNumber = true;
             } else {
-                list.add(vvpart1);
-                list.add(word.substring(vvpart1.length() + suffixvv.length(), word.length() - numvh));
-                list.add(vhpart2);
-            }
-            if (vvpart2.equals(vhpart2)) {
-                list.add(vvpart2);
+                suffix++;
             }
-
-        } else if (vvOk && !vhOk) {
-            list.add(vvpart1);
-            list.add(vvpart2);
-        } else if (vhOk && !vvOk) {
-            list.add(vhpart1);
-            list.add(vhpart2);
-        } else {
-            list.add(word);
-        }
-        List<String> retvec2 = new ArrayList<>();
-        List<String> l;
-        if (list.size() > 1) {
-            for (String s : list) {
-                l = decompound(s);
-                retvec2.addAll(l);
+            to++;
+        }
+        if (!hasNumber) {
+            return;
+        }
+        if (cutpos > length) {
+            cutpos = length;
+        }
+        if (suffix == 0) {
+            stack[sp + 1] = end - cutpos;
+            return;
+        }
+        stack[sp] = decomposition.append(decomposition.chars(), start, length - cutpos);
+        for (int i = from; i < to; i++) {
+            char c = baseForm.charAt(i);
+            if (!isDigit(c)) {
+                decomposition.append(c);
             }
-        } else {
-            retvec2 = list;
         }
-        return retvec2;
+        stack[sp + 1] = decomposition.length();
     }
 
-    public String reduceToBaseForm(String word) {
-        String result = word;
-        String baseForm = grfTree.classify(reverse(word));
-        if (!"undecided".equals(baseForm)) {
-            StringTokenizer st = new StringTokenizer(baseForm, ",");
-            baseForm = st.nextToken();
-            StringBuilder numStr = new StringBuilder();
-            StringBuilder suffix = new StringBuilder();
-            for (int i = 0; i < baseForm.length(); i++) {
-                char c = baseForm.charAt(i);
-                if ((c <= '9') && (c >= '0')) {
-                    numStr.append(c);
-                } else {
-                    suffix.append(c);
-                }
-            }
-            if (numStr.length() > 0) {
-                int cutpos = Integer.parseInt(numStr.toString());
-                if (cutpos > result.length()) {
-                    cutpos = result.length();
-                }
-                result = result.substring(0, result.length() - cutpos) + suffix;
+    /**
+     * The number of the digits of a class, or -1 if there are no digits.
+     */
+    private static int number(CharsRefBuilder builder) {
+        int num = -1;
+        for (int i = 0; i < builder.length(); i++) {
+            char c = builder.charAt(i);
+            if (isDigit(c)) {
+                num = (num < 0 ? 0 : num * 10) + c - '0';
             }
         }
-        return result;
+        return num;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 
+    private static int push(int[] stack, int n, int start, int end) {
+        stack[n] = start;
+        stack[n + 1] = end;
+        return n + 2;
+    }
+
+    private static int[] grow(Decomposition decomposition, int size) {
+        decomposition.stack = ArrayUtil.grow(decomposition.stack, size);
+        return decomposition.stack;
+    }
 }
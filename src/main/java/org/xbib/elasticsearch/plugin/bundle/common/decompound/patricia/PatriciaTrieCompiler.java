@@ -0,0 +1,64 @@
+package org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles the decompound tries into binary trie files which are memory-mapped by {@link DecompoundModels}.
+ *
+ * Usage: {@code PatriciaTrieCompiler <directory> [tree...]}, where a tree is a {@code .tree} file, or a class path
+ * resource of the decompound token filter. Without trees, the forward, backward and base form tries of the
+ * decompound token filter are compiled. The tries are compiled to ignore case, as the decompounder reads them.
+ * The compiled trie file of a {@code .tree} file is used for the resource with the name of the file, e.g. the file
+ * {@code /path/to/custom.tree} for the setting {@code forward: custom.tree}.
+ */
+public class PatriciaTrieCompiler {
+
+    private PatriciaTrieCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: PatriciaTrieCompiler <directory> [tree...]");
+            System.exit(1);
+        }
+        Path directory = Paths.get(args[0]);
+        Files.createDirectories(directory);
+        List<String> trees = args.length > 1 ?
+                Arrays.asList(args).subList(1, args.length) :
+                Arrays.asList("kompVVic.tree", "kompVHic.tree", "grfExt.tree");
+        for (String tree : trees) {
+            Path path = compile(tree, directory);
+            System.err.println("compiled " + path + ", " + Files.size(path) + " bytes");
+        }
+    }
+
+    /**
+     * Compile a trie. The compiled trie file is named by {@link CompiledPatriciaTrie#fileName(String)}
+     * of the class path resource, or of the name of the {@code .tree} file.
+     *
+     * @param tree the path of the {@code .tree} file or the class path resource of the trie
+     * @param directory the directory of the compiled trie file
+     * @return the path of the compiled trie file
+     * @throws IOException if the trie can not be read or written
+     */
+    public static Path compile(String tree, Path directory) throws IOException {
+        Path file = Paths.get(tree);
+        boolean isFile = Files.isRegularFile(file);
+        try (InputStream in = isFile ? Files.newInputStream(file) :
+                PatriciaTrieCompiler.class.getResourceAsStream(DecompoundModels.resourcePath(tree))) {
+            if (in == null) {
+                throw new IOException("trie not found: " + tree);
+            }
+            String resource = isFile ? file.getFileName().toString() : tree;
+            Path path = directory.resolve(CompiledPatriciaTrie.fileName(resource));
+            Decompounder.compile(in).write(path);
+            return path;
+        }
+    }
+}
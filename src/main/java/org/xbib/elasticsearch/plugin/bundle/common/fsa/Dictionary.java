@@ -1,5 +1,10 @@
 package org.xbib.elasticsearch.plugin.bundle.common.fsa;
 
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.CharsRefBuilder;
+
 import java.io.BufferedReader;
 import java.io.DataInputStream;
 import java.io.IOException;
@@ -119,4 +124,95 @@ public class Dictionary {
     public FSA fsa() {
         return fsa;
     }
+
+    /**
+     * Create a reusable lookup, see {@link Lookup}.
+     *
+     * @return a new lookup
+     */
+    public Lookup newLookup() {
+        return new Lookup();
+    }
+
+    /**
+     * A reusable lookup, which gives the same results as {@link #lookup(CharSequence)}, but encodes the words into
+     * a scratch buffer and reuses the match result, the final states iterator and the result buffer, so it does
+     * not allocate once the buffers have grown to the longest word. A lookup must not be shared between threads,
+     * e.g. each token filter instance uses its own lookup.
+     */
+    public final class Lookup {
+
+        private final MatchResult matchResult = new MatchResult();
+
+        private final FSAFinalStatesIterator iterator = new FSAFinalStatesIterator(fsa, fsa.getRootNode());
+
+        private final BytesRefBuilder request = new BytesRefBuilder();
+
+        private final CharsRefBuilder result = new CharsRefBuilder();
+
+        private Lookup() {
+        }
+
+        /**
+         * Look up a word.
+         *
+         * @param buffer the buffer of the word
+         * @param offset the offset of the word in the buffer
+         * @param length the length of the word
+         * @return the result, which is valid until the next lookup, the word itself if it is not found
+         */
+        public CharsRef lookup(char[] buffer, int offset, int length) {
+            request.copyChars(buffer, offset, length);
+            boolean found = false;
+            for (int level = 0; level <= 3 && request.length() > 0; level++) {
+                matcher.match(matchResult, request.bytes(), 0, request.length(), fsa.getRootNode());
+                if (matchResult.getKind() != MatchResult.SEQUENCE_IS_A_PREFIX) {
+                    break;
+                }
+                final int arc = fsa.getArc(matchResult.getNode(), (byte) '+');
+                if (arc == 0 || fsa.isArcFinal(arc)) {
+                    break;
+                }
+                iterator.restartFrom(fsa.getEndNode(arc));
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                ByteBuffer next = iterator.next();
+                if (equals(next)) {
+                    break;
+                }
+                request.clear();
+                request.append(next.array(), next.position(), next.remaining());
+                found = true;
+            }
+            if (found) {
+                result.copyUTF8Bytes(request.bytes(), 0, request.length());
+            } else {
+                result.copyChars(buffer, offset, length);
+            }
+            return result.get();
+        }
+
+        /**
+         * Look up the word of a term and replace it by the result.
+         *
+         * @param termAtt the term
+         */
+        public void lookup(CharTermAttribute termAtt) {
+            CharsRef chars = lookup(termAtt.buffer(), 0, termAtt.length());
+            termAtt.copyBuffer(chars.chars, chars.offset, chars.length);
+        }
+
+        private boolean equals(ByteBuffer bytes) {
+            if (bytes.remaining() != request.length()) {
+                return false;
+            }
+            for (int i = 0; i < request.length(); i++) {
+                if (bytes.get(bytes.position() + i) != request.byteAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -6,27 +6,96 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.regex.Pattern;
 
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.OutputStreamDataOutput;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.OfflineSorter;
 import org.apache.lucene.util.fst.Builder;
-import org.apache.lucene.util.fst.FST;
 import org.apache.lucene.util.fst.FST.INPUT_TYPE;
 import org.apache.lucene.util.fst.NoOutputs;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
 
 
 /**
  * Compile an FSA from an UTF-8 text file (must be properly sorted).
+ *
+ * A weighted FST has the weight of each word as output, e.g. the frequency of the word in a corpus, which is given
+ * in the second column of the line. It is written with a {@link #WEIGHTED_CODEC} header before the FST, so readers
+ * can tell it from an FSA without outputs.
+ *
+ * Large lexicons are compiled by {@link #compileOffline(InputStream, OutputStream, boolean, Path, int)}, which
+ * sorts the words in temporary files with a bounded sort buffer. This is also the command line usage:
+ * {@code FstCompiler [--weighted] [--buffer <megabytes>] [--tmp <directory>] <lexicon> <fst>}
  */
 public class FstCompiler {
 
+    /**
+     * The codec name of the header of a weighted FST.
+     */
+    public static final String WEIGHTED_CODEC = "WeightedFST";
+
+    public static final int WEIGHTED_VERSION = 0;
+
     private static final Pattern pattern = Pattern.compile("\\s+");
 
+    private static final String TEMP_PREFIX = "fst";
+
+    /**
+     * The length of the weight of a sort entry, after the word and a 0 byte.
+     */
+    private static final int WEIGHT_LENGTH = Long.BYTES;
+
+    public static void main(String[] args) throws IOException {
+        boolean weighted = false;
+        int buffer = 64;
+        Path tmp = null;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            if ("--weighted".equals(args[i])) {
+                weighted = true;
+            } else if ("--buffer".equals(args[i]) && i + 1 < args.length) {
+                buffer = Integer.parseInt(args[++i]);
+            } else if ("--tmp".equals(args[i]) && i + 1 < args.length) {
+                tmp = Paths.get(args[++i]);
+            } else {
+                break;
+            }
+        }
+        if (args.length - i != 2) {
+            System.err.println("usage: FstCompiler [--weighted] [--buffer <megabytes>] [--tmp <directory>] " +
+                    "<lexicon> <fst>");
+            System.exit(1);
+        }
+        Path input = Paths.get(args[i]);
+        Path output = Paths.get(args[i + 1]);
+        Path directory = tmp != null ? tmp : Files.createTempDirectory(TEMP_PREFIX);
+        try (InputStream inputStream = Files.newInputStream(input);
+             OutputStream outputStream = Files.newOutputStream(output)) {
+            new FstCompiler().compileOffline(inputStream, outputStream, weighted, directory, buffer);
+        } finally {
+            if (tmp == null) {
+                IOUtils.rm(directory);
+            }
+        }
+        System.err.println("compiled " + output + ", " + Files.size(output) + " bytes");
+    }
+
     /**
      *
      * @param inputStream the input stream
@@ -34,49 +103,199 @@ public class FstCompiler {
      * @throws IOException if compilation fails
      */
     public void compile(InputStream inputStream, OutputStream outputStream) throws IOException {
-        final HashSet<BytesRef> words = new HashSet<>();
+        compile(inputStream, outputStream, false);
+    }
+
+    /**
+     * Compile an FSA, or a weighted FST. The weight of a word is the number in the second column of the line,
+     * or 1 if there is no second column. The weights of the duplicate words of a weighted FST are added.
+     *
+     * @param inputStream the input stream
+     * @param outputStream the output stream
+     * @param weighted true for a weighted FST
+     * @throws IOException if compilation fails
+     */
+    public void compile(InputStream inputStream, OutputStream outputStream, boolean weighted) throws IOException {
+        final Map<BytesRef, Long> words = new HashMap<>();
+        read(inputStream, weighted, (entry, weight) -> words.merge(BytesRef.deepCopyOf(entry), weight, Long::sum));
+        final BytesRef [] all = new BytesRef[words.size()];
+        words.keySet().toArray(all);
+        Arrays.sort(all, BytesRef::compareTo);
+        WordBuilder builder = new WordBuilder(weighted);
+        for (BytesRef bytesRef : all) {
+            builder.add(bytesRef, words.get(bytesRef));
+        }
+        builder.save(outputStream);
+    }
+
+    /**
+     * Compile an FSA, or a weighted FST, like {@link #compile(InputStream, OutputStream, boolean)}, but sort the
+     * words with an external merge sort in a temporary directory and remove the duplicate words while streaming the
+     * sorted words into the FST builder. So the heap is bounded by the sort buffer and the size of the compiled FST,
+     * not by the number of words.
+     *
+     * @param inputStream the input stream
+     * @param outputStream the output stream
+     * @param weighted true for a weighted FST
+     * @param tempDir the directory of the temporary files
+     * @param bufferMB the size of the sort buffer in megabytes
+     * @throws IOException if compilation fails
+     */
+    public void compileOffline(InputStream inputStream, OutputStream outputStream, boolean weighted,
+                               Path tempDir, int bufferMB) throws IOException {
+        try (Directory directory = FSDirectory.open(tempDir)) {
+            OfflineSorter sorter = new OfflineSorter(directory, TEMP_PREFIX, OfflineSorter.DEFAULT_COMPARATOR,
+                    OfflineSorter.BufferSize.megabytes(bufferMB), OfflineSorter.MAX_TEMPFILES, -1, null, 0);
+            String input = null;
+            String sorted = null;
+            try {
+                try (IndexOutput output = directory.createTempOutput(TEMP_PREFIX, "input", IOContext.DEFAULT)) {
+                    input = output.getName();
+                    OfflineSorter.ByteSequencesWriter writer = new OfflineSorter.ByteSequencesWriter(output);
+                    BytesRefBuilder entryBuilder = new BytesRefBuilder();
+                    read(inputStream, weighted, (entry, weight) -> {
+                        // the word, a 0 byte, which sorts a word before its extensions, and the weight
+                        entryBuilder.copyBytes(entry);
+                        entryBuilder.append((byte) 0);
+                        for (int shift = 56; shift >= 0; shift -= 8) {
+                            entryBuilder.append((byte) (weight >>> shift));
+                        }
+                        writer.write(entryBuilder.get());
+                    });
+                    CodecUtil.writeFooter(output);
+                }
+                sorted = sorter.sort(input);
+                WordBuilder builder = new WordBuilder(weighted);
+                try (OfflineSorter.ByteSequencesReader reader = new OfflineSorter.ByteSequencesReader(
+                        directory.openChecksumInput(sorted, IOContext.READONCE), sorted)) {
+                    BytesRefBuilder word = new BytesRefBuilder();
+                    BytesRef key = new BytesRef();
+                    long weight = 0L;
+                    BytesRef entry;
+                    while ((entry = reader.next()) != null) {
+                        int length = entry.length - 1 - WEIGHT_LENGTH;
+                        long entryWeight = 0L;
+                        for (int i = entry.offset + length + 1; i < entry.offset + entry.length; i++) {
+                            entryWeight = (entryWeight << 8) | (entry.bytes[i] & 0xff);
+                        }
+                        key.bytes = entry.bytes;
+                        key.offset = entry.offset;
+                        key.length = length;
+                        if (word.get().bytesEquals(key)) {
+                            weight += entryWeight;
+                            continue;
+                        }
+                        if (word.length() > 0) {
+                            builder.add(word.get(), weight);
+                        }
+                        word.copyBytes(key);
+                        weight = entryWeight;
+                    }
+                    if (word.length() > 0) {
+                        builder.add(word.get(), weight);
+                    }
+                }
+                builder.save(outputStream);
+            } finally {
+                IOUtils.deleteFilesIgnoringExceptions(directory, input, sorted);
+            }
+        }
+    }
+
+    /**
+     * Read the lexicon, and add each word in left-to-right characters order and reversed, for easier matching
+     * later on.
+     */
+    private void read(InputStream inputStream, boolean weighted, Entries entries) throws IOException {
         BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
         String line;
-        String last = null;
         StringBuilder stringBuilder = new StringBuilder();
+        BytesRefBuilder bytesRefBuilder = new BytesRefBuilder();
+        int lineNumber = 0;
         while ((line = reader.readLine()) != null) {
+            lineNumber++;
             if (line.indexOf('#') >= 0) {
                 continue;
             }
-            line = pattern.split(line)[0].trim();
+            String[] columns = pattern.split(line.trim());
+            line = columns[0].trim();
             line = line.toLowerCase(Locale.ROOT);
-            if (line.equals(last)) {
-                continue;
+            if (line.indexOf('\u0000') >= 0) {
+                throw new IllegalArgumentException("invalid character in line " + lineNumber);
             }
-            last = line;
-            /*
-             * Add the word to the hash set in left-to-right characters order and reversed
-             * for easier matching later on.
-             */
+            long weight = weighted ? weight(columns, lineNumber) : 0L;
             stringBuilder.setLength(0);
             stringBuilder.append(line);
             final int len = stringBuilder.length();
             stringBuilder.append('>');
-            words.add(new BytesRef(stringBuilder));
+            bytesRefBuilder.copyChars(stringBuilder);
+            entries.add(bytesRefBuilder.get(), weight);
             stringBuilder.setLength(len);
             stringBuilder.reverse().append('<');
-            words.add(new BytesRef(stringBuilder));
+            bytesRefBuilder.copyChars(stringBuilder);
+            entries.add(bytesRefBuilder.get(), weight);
         }
         reader.close();
-        final BytesRef [] all = new BytesRef[words.size()];
-        words.toArray(all);
-        Arrays.sort(all, BytesRef::compareTo);
-        final Object nothing = NoOutputs.getSingleton().getNoOutput();
-        final Builder<Object> builder = new Builder<>(INPUT_TYPE.BYTE4, NoOutputs.getSingleton());
-        final IntsRefBuilder intsRef = new IntsRefBuilder();
-        for (BytesRef bytesRef : all) {
+    }
+
+    private static long weight(String[] columns, int lineNumber) {
+        if (columns.length < 2) {
+            return 1L;
+        }
+        try {
+            long weight = Long.parseLong(columns[1].trim());
+            if (weight < 0L) {
+                throw new IllegalArgumentException("negative weight in line " + lineNumber + ": " + weight);
+            }
+            return weight;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid weight in line " + lineNumber + ": " + columns[1], e);
+        }
+    }
+
+    /**
+     * A consumer of the entries of the lexicon.
+     */
+    @FunctionalInterface
+    private interface Entries {
+        void add(BytesRef entry, long weight) throws IOException;
+    }
+
+    /**
+     * Builds an FSA, or a weighted FST, from sorted words.
+     */
+    private static class WordBuilder {
+
+        private final Builder<Object> builder;
+
+        private final Builder<Long> weightedBuilder;
+
+        private final IntsRefBuilder intsRef = new IntsRefBuilder();
+
+        WordBuilder(boolean weighted) {
+            this.builder = weighted ? null : new Builder<>(INPUT_TYPE.BYTE4, NoOutputs.getSingleton());
+            this.weightedBuilder = weighted ? new Builder<>(INPUT_TYPE.BYTE4, PositiveIntOutputs.getSingleton()) : null;
+        }
+
+        void add(BytesRef word, long weight) throws IOException {
             intsRef.clear();
-            intsRef.copyUTF8Bytes(bytesRef);
-            builder.add(intsRef.get(), nothing);
+            intsRef.copyUTF8Bytes(word);
+            if (weightedBuilder != null) {
+                weightedBuilder.add(intsRef.get(), weight);
+            } else {
+                builder.add(intsRef.get(), NoOutputs.getSingleton().getNoOutput());
+            }
         }
-        final FST<Object> fst = builder.finish();
-        try (OutputStreamDataOutput out = new OutputStreamDataOutput(outputStream)) {
-            fst.save(out);
+
+        void save(OutputStream outputStream) throws IOException {
+            try (OutputStreamDataOutput out = new OutputStreamDataOutput(outputStream)) {
+                if (weightedBuilder != null) {
+                    CodecUtil.writeHeader(out, WEIGHTED_CODEC, WEIGHTED_VERSION);
+                    weightedBuilder.finish().save(out);
+                } else {
+                    builder.finish().save(out);
+                }
+            }
         }
     }
 }
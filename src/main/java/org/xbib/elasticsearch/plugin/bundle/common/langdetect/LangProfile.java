@@ -1,10 +1,12 @@
 package org.xbib.elasticsearch.plugin.bundle.common.langdetect;
 
+import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.json.JsonXContent;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -72,4 +74,24 @@ public class LangProfile {
         name = (String) map.get("name");
         nWords = (List<Integer>) map.get("n_words");
     }
+
+    /**
+     * Write this profile in the JSON format which is read by {@link #read(InputStream)}.
+     *
+     * @param output the output stream, it is not closed
+     * @throws IOException if the profile can not be written
+     */
+    public void write(OutputStream output) throws IOException {
+        XContentBuilder builder = new XContentBuilder(JsonXContent.jsonXContent, output);
+        builder.startObject();
+        builder.startObject("freq");
+        for (Map.Entry<String, Integer> entry : freq.entrySet()) {
+            builder.field(entry.getKey(), entry.getValue().intValue());
+        }
+        builder.endObject();
+        builder.field("n_words", nWords);
+        builder.field("name", name);
+        builder.endObject();
+        builder.flush();
+    }
 }
@@ -0,0 +1,382 @@
+package org.xbib.elasticsearch.plugin.bundle.common.langdetect;
+
+import com.carrotsearch.hppc.LongLongHashMap;
+import com.carrotsearch.hppc.cursors.LongLongCursor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Builds a language profile from a text corpus.
+ *
+ * The corpus is streamed in chunks, which are split at line or word boundaries, to a number of worker threads.
+ * Each worker counts the 1- to 3-grams of its chunks in its own map of primitive counters, with the character
+ * normalization of the language detection. The maps are merged when the profile is built. N-grams which are
+ * not more frequent than the minimum frequency, or one in 100000 of the unigrams, are omitted. If less than
+ * a third of the unigrams are latin letters, all n-grams with latin letters are omitted, too.
+ *
+ * If a worker fails, it discards the remaining chunks, so the corpus is never blocked, and the failure is thrown
+ * by the next {@link #add(String)} and by {@link #build()}. The workers are no daemon threads, the builder must
+ * be closed.
+ *
+ * Usage: {@code LangProfileBuilder [-threads n] [-min_freq n] <language> <profile file> <corpus file...>}, where
+ * the corpus files are UTF-8 encoded text and {@code -} reads the corpus from standard input.
+ */
+public class LangProfileBuilder implements Closeable {
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private static final int LESS_FREQ_RATIO = 100000;
+
+    private static final String END = new String("end");
+
+    private final String name;
+
+    private final int minFrequency;
+
+    private final BlockingQueue<String> queue;
+
+    private final List<Worker> workers = new ArrayList<>();
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * Create a language profile builder.
+     *
+     * @param name the language of the profile
+     * @param threads the number of worker threads
+     * @param minFrequency the minimum frequency of the n-grams of the profile, n-grams which are not more
+     *                     frequent are omitted
+     */
+    public LangProfileBuilder(String name, int threads, int minFrequency) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1: " + threads);
+        }
+        this.name = name;
+        this.minFrequency = minFrequency;
+        this.queue = new ArrayBlockingQueue<>(threads * 2);
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(queue, failure);
+            worker.setName("langprofile-" + name + "-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int minFrequency = 2;
+        int i = 0;
+        for (; i + 1 < args.length && args[i].startsWith("-") && args[i].length() > 1; i += 2) {
+            if ("-threads".equals(args[i])) {
+                threads = Integer.parseInt(args[i + 1]);
+            } else if ("-min_freq".equals(args[i])) {
+                minFrequency = Integer.parseInt(args[i + 1]);
+            } else {
+                break;
+            }
+        }
+        if (args.length - i < 3) {
+            System.err.println("usage: LangProfileBuilder [-threads n] [-min_freq n] " +
+                    "<language> <profile file> <corpus file...>");
+            System.exit(1);
+        }
+        long t0 = System.nanoTime();
+        LangProfile profile;
+        try (LangProfileBuilder builder = new LangProfileBuilder(args[i], threads, minFrequency)) {
+            for (int j = i + 2; j < args.length; j++) {
+                try (Reader reader = "-".equals(args[j]) ? new InputStreamReader(System.in, StandardCharsets.UTF_8) :
+                        Files.newBufferedReader(Paths.get(args[j]), StandardCharsets.UTF_8)) {
+                    builder.add(reader);
+                }
+            }
+            profile = builder.build();
+        }
+        Path path = Paths.get(args[i + 1]);
+        try (OutputStream out = Files.newOutputStream(path)) {
+            profile.write(out);
+        }
+        System.err.println("built " + path + ", " + profile.getFreq().size() + " n-grams of " +
+                profile.getNWords() + " in " + (System.nanoTime() - t0) / 1000000L + " ms");
+    }
+
+    /**
+     * Add the text of a reader to the corpus. The text is counted by the worker threads while it is read.
+     *
+     * @param reader the reader
+     * @throws IOException if the reader fails
+     * @throws IllegalStateException if a worker failed
+     */
+    public void add(Reader reader) throws IOException {
+        char[] buffer = new char[CHUNK_SIZE];
+        int length = 0;
+        int n;
+        while ((n = reader.read(buffer, length, buffer.length - length)) != -1) {
+            length += n;
+            if (length == buffer.length) {
+                int end = boundary(buffer, length);
+                put(new String(buffer, 0, end));
+                System.arraycopy(buffer, end, buffer, 0, length - end);
+                length -= end;
+            }
+        }
+        if (length > 0) {
+            put(new String(buffer, 0, length));
+        }
+    }
+
+    /**
+     * Add a text to the corpus.
+     *
+     * @param text the text
+     * @throws IllegalStateException if a worker failed
+     */
+    public void add(String text) {
+        put(text);
+    }
+
+    /**
+     * Wait until the corpus is counted and build the profile. The builder can not be used afterwards.
+     *
+     * @return the language profile
+     * @throws IllegalStateException if a worker failed
+     */
+    public LangProfile build() {
+        close();
+        checkFailure();
+        LongLongHashMap counts = workers.get(0).counts;
+        long[] nWords = workers.get(0).nWords;
+        for (int i = 1; i < workers.size(); i++) {
+            Worker worker = workers.get(i);
+            for (LongLongCursor cursor : worker.counts) {
+                counts.addTo(cursor.key, cursor.value);
+            }
+            for (int j = 0; j < nWords.length; j++) {
+                nWords[j] += worker.nWords[j];
+            }
+            worker.counts = null;
+        }
+        // omit the rare n-grams
+        long threshold = Math.max(nWords[0] / LESS_FREQ_RATIO, minFrequency);
+        long roman = 0L;
+        LongLongHashMap kept = new LongLongHashMap(counts.size());
+        for (LongLongCursor cursor : counts) {
+            int len = length(cursor.key);
+            if (cursor.value <= threshold) {
+                nWords[len - 1] -= cursor.value;
+            } else {
+                kept.put(cursor.key, cursor.value);
+                if (len == 1 && isLatin((char) cursor.key)) {
+                    roman += cursor.value;
+                }
+            }
+        }
+        // omit the n-grams with latin letters in texts which are mostly not written in latin letters
+        boolean noLatin = roman < nWords[0] / 3;
+        for (LongLongCursor cursor : kept) {
+            if (noLatin && hasLatin(cursor.key)) {
+                nWords[length(cursor.key) - 1] -= cursor.value;
+            }
+        }
+        // the counts of a very large corpus are scaled to the range of the profile format
+        int[] shift = new int[nWords.length];
+        for (int j = 0; j < nWords.length; j++) {
+            while (nWords[j] >> shift[j] > Integer.MAX_VALUE) {
+                shift[j]++;
+            }
+        }
+        Map<String, Integer> freq = new HashMap<>(kept.size() * 2);
+        for (LongLongCursor cursor : kept) {
+            if (noLatin && hasLatin(cursor.key)) {
+                continue;
+            }
+            long count = cursor.value >> shift[length(cursor.key) - 1];
+            if (count > 0L) {
+                freq.put(NGramTable.gram(cursor.key), (int) count);
+            }
+        }
+        LangProfile profile = new LangProfile();
+        profile.setName(name);
+        profile.setFreq(freq);
+        for (int j = 0; j < nWords.length; j++) {
+            profile.getNWords().set(j, (int) (nWords[j] >> shift[j]));
+        }
+        return profile;
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    @Override
+    public void close() {
+        for (Worker worker : workers) {
+            if (worker.isAlive()) {
+                enqueue(END);
+            }
+        }
+        for (Worker worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private void put(String chunk) {
+        checkFailure();
+        enqueue(chunk);
+    }
+
+    private void checkFailure() {
+        Throwable t = failure.get();
+        if (t != null) {
+            throw new IllegalStateException("language profile worker failed for " + name, t);
+        }
+    }
+
+    private void enqueue(String chunk) {
+        try {
+            queue.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The end of a full chunk: after the last line break, or else after the last white space,
+     * or else before a trailing high surrogate.
+     */
+    private static int boundary(char[] buffer, int length) {
+        for (int i = length - 1; i > 0; i--) {
+            if (buffer[i] == '\n') {
+                return i + 1;
+            }
+        }
+        for (int i = length - 1; i > 0; i--) {
+            if (Character.isWhitespace(buffer[i])) {
+                return i + 1;
+            }
+        }
+        return Character.isHighSurrogate(buffer[length - 1]) ? length - 1 : length;
+    }
+
+    private static int length(long key) {
+        int len = 1;
+        while (key >>> (16 * len) != len) {
+            len++;
+        }
+        return len;
+    }
+
+    private static boolean isLatin(char ch) {
+        return (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z');
+    }
+
+    private static boolean hasLatin(long key) {
+        for (int i = length(key) - 1; i >= 0; i--) {
+            if (isLatin((char) (key >>> (16 * i)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A worker thread which counts the n-grams of chunks of the corpus.
+     */
+    private static class Worker extends Thread {
+
+        private final BlockingQueue<String> queue;
+
+        private final AtomicReference<Throwable> failure;
+
+        private final NGram ngram = new NGram();
+
+        private LongLongHashMap counts = new LongLongHashMap();
+
+        private final long[] nWords = new long[NGram.N_GRAM];
+
+        Worker(BlockingQueue<String> queue, AtomicReference<Throwable> failure) {
+            this.queue = queue;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            try {
+                String chunk;
+                while ((chunk = queue.take()) != END) {
+                    try {
+                        count(chunk);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                        counts = null;
+                        discard();
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, e);
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Take the remaining chunks until the end, so the corpus is not blocked by a full queue.
+         */
+        private void discard() throws InterruptedException {
+            while (queue.take() != END) {
+                // the chunk is not counted
+            }
+        }
+
+        /**
+         * Count the n-grams of a chunk like {@link LangdetectService} extracts the n-grams of a text.
+         */
+        private void count(String chunk) {
+            ngram.reset();
+            int length = chunk.length();
+            int i = 0;
+            while (i < length) {
+                int codePoint = chunk.codePointAt(i);
+                int count = Character.charCount(codePoint);
+                if (LangdetectService.isWord(codePoint)) {
+                    for (int j = 0; j < count; j++) {
+                        add(chunk.charAt(i + j));
+                    }
+                } else {
+                    add(' ');
+                }
+                i += count;
+            }
+        }
+
+        private void add(char ch) {
+            ngram.addChar(ch);
+            for (int n = 1; n <= NGram.N_GRAM; n++) {
+                long key = ngram.key(n);
+                if (key != 0L) {
+                    counts.addTo(key, 1L);
+                    nWords[n - 1]++;
+                }
+            }
+        }
+    }
+}
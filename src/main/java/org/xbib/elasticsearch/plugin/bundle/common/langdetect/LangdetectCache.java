@@ -0,0 +1,148 @@
+package org.xbib.elasticsearch.plugin.bundle.common.langdetect;
+
+import org.apache.lucene.util.BytesRefBuilder;
+import org.elasticsearch.common.hash.MurmurHash3;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.CacheStats;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.TinyLfuCache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The node-level cache of language detection results.
+ *
+ * Results are keyed by the detecting service, the candidate languages and a 128-bit MurmurHash3 of the UTF-8 bytes
+ * of the text, so exact duplicate texts are detected only once per service and candidate languages. The service and
+ * the candidate languages are compared by equality, not by a hash. The cached language lists are unmodifiable.
+ *
+ * A lookup encodes and hashes the text into a scratch key of the current thread, so a cache hit does not allocate.
+ * The key is copied only when a result is inserted.
+ */
+public class LangdetectCache {
+
+    private final TinyLfuCache<Key, List<Language>> cache;
+
+    private final ThreadLocal<Lookup> lookups = ThreadLocal.withInitial(Lookup::new);
+
+    /**
+     * Create a language detection cache.
+     *
+     * @param maximumSize the maximum number of cached results, or 0 to disable caching
+     */
+    public LangdetectCache(int maximumSize) {
+        this.cache = maximumSize > 0 ? new TinyLfuCache<>(maximumSize) : null;
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Get the detection result of a text from the cache, or detect the languages of the text.
+     *
+     * @param service the detecting service
+     * @param columns the columns of the candidate languages of the service, or null for all languages
+     * @param text the text
+     * @param detector the language detection
+     * @return the detected languages
+     */
+    public List<Language> computeIfAbsent(LangdetectService service, int[] columns, CharSequence text,
+                                          Function<CharSequence, List<Language>> detector) {
+        if (cache == null) {
+            return detector.apply(text);
+        }
+        Lookup lookup = lookups.get();
+        Key key = lookup.key(service, columns, text);
+        List<Language> languages = cache.get(key);
+        if (languages == null) {
+            // the scratch key is copied before the detection, which may look up another text on this thread
+            key = new Key(service, columns, key.h1, key.h2);
+            lookup.clear();
+            languages = Collections.unmodifiableList(detector.apply(text));
+            cache.put(key, languages);
+        } else {
+            lookup.clear();
+        }
+        return languages;
+    }
+
+    public void clear() {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    public CacheStats stats() {
+        return cache != null ? cache.stats() : new CacheStats(0L, 0L, 0L, 0L, 0L, 0L);
+    }
+
+    /**
+     * The scratch buffers and the scratch key of the lookups of a thread.
+     */
+    private static final class Lookup {
+
+        /**
+         * The maximum size of the encoded text which is kept for the next lookup.
+         */
+        private static final int MAX_RETAINED_BYTES = 1 << 16;
+
+        private BytesRefBuilder bytes = new BytesRefBuilder();
+
+        private final MurmurHash3.Hash128 hash = new MurmurHash3.Hash128();
+
+        private final Key key = new Key(null, null, 0L, 0L);
+
+        Key key(LangdetectService service, int[] columns, CharSequence text) {
+            bytes.copyChars(text);
+            MurmurHash3.hash128(bytes.bytes(), 0, bytes.length(), 0L, hash);
+            key.service = service;
+            key.columns = columns;
+            key.h1 = hash.h1;
+            key.h2 = hash.h2;
+            return key;
+        }
+
+        void clear() {
+            key.service = null;
+            key.columns = null;
+            if (bytes.bytes().length > MAX_RETAINED_BYTES) {
+                // do not keep the buffer of a very large text alive on this thread
+                bytes = new BytesRefBuilder();
+            }
+        }
+    }
+
+    private static final class Key {
+
+        private LangdetectService service;
+
+        private int[] columns;
+
+        private long h1;
+
+        private long h2;
+
+        Key(LangdetectService service, int[] columns, long h1, long h2) {
+            this.service = service;
+            this.columns = columns;
+            this.h1 = h1;
+            this.h2 = h2;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return h1 == key.h1 && h2 == key.h2 && service.equals(key.service) && Arrays.equals(columns, key.columns);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) h1;
+        }
+    }
+}
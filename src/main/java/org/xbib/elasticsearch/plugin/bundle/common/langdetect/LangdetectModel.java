@@ -0,0 +1,270 @@
+package org.xbib.elasticsearch.plugin.bundle.common.langdetect;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.Accountable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable language detection model, the list of languages and their n-gram probability table.
+ *
+ * A model is either built from the JSON language profiles in the class path, or read from a binary model
+ * file which was compiled by {@link LangdetectModelCompiler}. A model file is memory-mapped, so the
+ * n-gram probabilities do not occupy heap space and are shared with the page cache of the operating system.
+ *
+ * The model file starts with a header in little endian byte order: the magic number, the version,
+ * the number of languages, and the UTF-8 encoded language codes, padded to a multiple of eight bytes.
+ * The n-gram table follows, see {@link NGramTable#writeTo(java.nio.channels.WritableByteChannel)}.
+ */
+public class LangdetectModel implements Accountable {
+
+    private static final Logger logger = LogManager.getLogger(LangdetectModel.class.getName());
+
+    private static final int MAGIC = 0x4c444d46;
+
+    private static final int VERSION = 2;
+
+    private final String profile;
+
+    private final List<String> languages;
+
+    private final NGramTable table;
+
+    private final LanguageScripts scripts;
+
+    private LangdetectModel(String profile, List<String> languages, NGramTable table) {
+        this.profile = profile;
+        this.languages = Collections.unmodifiableList(languages);
+        this.table = table;
+        this.scripts = table != null ? LanguageScripts.of(table, table.getLangSize()) : null;
+    }
+
+    /**
+     * Build a model from the JSON language profiles in the class path. Languages without a profile
+     * are logged and skipped, the n-gram table has a column for each language with a profile.
+     *
+     * @param profile the profile, or null for the default profile
+     * @param keys the languages
+     * @return the model
+     */
+    public static LangdetectModel build(String profile, List<String> keys) {
+        List<String> languages = new ArrayList<>();
+        List<LangProfile> profiles = new ArrayList<>();
+        for (String key : keys) {
+            try {
+                LangProfile langProfile = loadProfileFromResource(profile, key);
+                if (languages.contains(langProfile.getName())) {
+                    throw new IOException("duplicate of the same language profile: " + langProfile.getName());
+                }
+                languages.add(langProfile.getName());
+                profiles.add(langProfile);
+            } catch (Exception e) {
+                logger.error(e.getMessage() + " key=" + key + " profile=" + profile, e);
+            }
+        }
+        if (profiles.isEmpty()) {
+            return new LangdetectModel(profile, languages, null);
+        }
+        // the table has a column for each loaded profile, not for each requested language
+        NGramTable table = new NGramTable(profiles.size());
+        languages.clear();
+        for (int i = 0; i < profiles.size(); i++) {
+            try {
+                addProfile(languages, table, profiles.get(i), i, profiles.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        table.trim();
+        logger.debug("language detection model built for {}, {} n-grams, {} bytes",
+                languages, table.size(), table.ramBytesUsed());
+        return new LangdetectModel(profile, languages, table);
+    }
+
+    /**
+     * Read a compiled model file by mapping it into memory.
+     *
+     * @param profile the profile of the model, or null for the default profile
+     * @param path the path of the model file
+     * @return the model
+     * @throws IOException if the file can not be read or is not a model file
+     */
+    public static LangdetectModel read(String profile, Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+            throw new IOException("not a language detection model: " + path);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported language detection model version " + version + ": " + path);
+        }
+        int langsize = buffer.getInt();
+        List<String> languages = new ArrayList<>(langsize);
+        for (int i = 0; i < langsize; i++) {
+            byte[] b = new byte[buffer.getInt()];
+            buffer.get(b);
+            languages.add(new String(b, StandardCharsets.UTF_8));
+        }
+        buffer.position(align(buffer.position()));
+        NGramTable table = NGramTable.readFrom(buffer);
+        logger.debug("language detection model mapped from {} for {}, {} n-grams, {} bytes",
+                path, languages, table.size(), table.ramBytesUsed());
+        return new LangdetectModel(profile, languages, table);
+    }
+
+    /**
+     * Create a model of a subset of the languages of this model, with a compacted copy of the columns
+     * of these languages. Detection with the new model gives the same result as with a model which is
+     * built from the profiles of these languages.
+     *
+     * @param keys the languages of the subset
+     * @return the new model, or null if this model does not contain all of the languages
+     * or a language is given twice
+     */
+    public LangdetectModel select(List<String> keys) {
+        if (table == null) {
+            return null;
+        }
+        int[] columns = new int[keys.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = languages.indexOf(keys.get(i));
+            if (columns[i] < 0 || keys.indexOf(keys.get(i)) != i) {
+                return null;
+            }
+        }
+        return new LangdetectModel(profile, new ArrayList<>(keys), table.select(columns));
+    }
+
+    /**
+     * Create a model with the probabilities of this model quantized to 8 or 16 bit codes,
+     * see {@link NGramTable#quantize(int)}.
+     *
+     * @param bits the number of bits, 8 or 16
+     * @return the quantized model
+     */
+    public LangdetectModel quantize(int bits) {
+        return table != null ? new LangdetectModel(profile, new ArrayList<>(languages), table.quantize(bits)) : this;
+    }
+
+    /**
+     * Write this model to a model file.
+     *
+     * @param path the path of the model file
+     * @throws IOException if writing fails
+     */
+    public void write(Path path) throws IOException {
+        if (table == null) {
+            throw new IOException("no language profiles in model for profile " + profile);
+        }
+        int length = 12;
+        List<byte[]> codes = new ArrayList<>();
+        for (String language : languages) {
+            byte[] b = language.getBytes(StandardCharsets.UTF_8);
+            codes.add(b);
+            length += 4 + b.length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(align(length)).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(languages.size());
+        for (byte[] b : codes) {
+            header.putInt(b.length).put(b);
+        }
+        header.position(0);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            table.writeTo(channel);
+        }
+    }
+
+    /**
+     * The name of the model file of a profile.
+     *
+     * @param profile the profile, or null for the default profile
+     * @return the file name
+     */
+    public static String fileName(String profile) {
+        return (profile != null && !profile.isEmpty() ? profile : "default") + ".bin";
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public List<String> getLanguages() {
+        return languages;
+    }
+
+    /**
+     * @return the n-gram probability table, or null if the model contains no language
+     */
+    public NGramTable getTable() {
+        return table;
+    }
+
+    /**
+     * @return the scripts of the languages, or null if the model contains no language
+     */
+    LanguageScripts getScripts() {
+        return scripts;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return table != null ? table.ramBytesUsed() : 0L;
+    }
+
+    static LangProfile loadProfileFromResource(String profile, String resource) throws IOException {
+        String thisProfile = (profile != null ? profile + "/" : "");
+        InputStream in = LangdetectModel.class.getResourceAsStream(thisProfile + resource);
+        if (in == null) {
+            throw new IOException("resource for profile '" + resource + "' not found");
+        }
+        LangProfile langProfile = new LangProfile();
+        langProfile.read(in);
+        return langProfile;
+    }
+
+    static void addProfile(List<String> languages, NGramTable table, LangProfile profile, int index, int langsize)
+            throws IOException {
+        String lang = profile.getName();
+        if (languages.contains(lang)) {
+            throw new IOException("duplicate of the same language profile: " + lang);
+        }
+        if (table.getLangSize() != langsize) {
+            throw new IOException("language profile " + lang + " has language size " + langsize +
+                    " but expected " + table.getLangSize());
+        }
+        languages.add(lang);
+        for (Map.Entry<String, Integer> entry : profile.getFreq().entrySet()) {
+            String s = entry.getKey();
+            long key = NGramTable.key(s);
+            if (key != 0L) {
+                double prob = entry.getValue().doubleValue() / profile.getNWords().get(s.length() - 1);
+                table.set(table.add(key), index, prob);
+            }
+        }
+    }
+
+    private static int align(int position) {
+        return (position + 7) & ~7;
+    }
+}
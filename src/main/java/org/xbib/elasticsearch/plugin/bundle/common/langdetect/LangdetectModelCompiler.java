@@ -0,0 +1,53 @@
+package org.xbib.elasticsearch.plugin.bundle.common.langdetect;
+
+import org.elasticsearch.common.settings.Settings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles the JSON language profiles into binary model files which are memory-mapped by {@link LangdetectModels}.
+ *
+ * Usage: {@code LangdetectModelCompiler <directory> [profile...]}, where the profile {@code default}
+ * denotes the default profile. Without profiles, the default and the {@code shorttext} profile are compiled
+ * with their default languages.
+ */
+public class LangdetectModelCompiler {
+
+    private LangdetectModelCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: LangdetectModelCompiler <directory> [profile...]");
+            System.exit(1);
+        }
+        Path directory = Paths.get(args[0]);
+        Files.createDirectories(directory);
+        List<String> profiles = args.length > 1 ?
+                Arrays.asList(args).subList(1, args.length) : Arrays.asList("default", "shorttext");
+        for (String profile : profiles) {
+            Path path = compile("default".equals(profile) ? null : profile, directory);
+            System.err.println("compiled " + path + ", " + Files.size(path) + " bytes");
+        }
+    }
+
+    /**
+     * Compile the model of a profile with its default languages.
+     *
+     * @param profile the profile, or null for the default profile
+     * @param directory the directory of the model file
+     * @return the path of the model file
+     * @throws IOException if the model can not be written
+     */
+    public static Path compile(String profile, Path directory) throws IOException {
+        List<String> languages = LangdetectService.getLanguages(Settings.EMPTY, profile);
+        Path path = directory.resolve(LangdetectModel.fileName(profile));
+        LangdetectModel.build(profile, languages).write(path);
+        return path;
+    }
+}
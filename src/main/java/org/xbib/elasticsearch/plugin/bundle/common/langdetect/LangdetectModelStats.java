@@ -0,0 +1,82 @@
+package org.xbib.elasticsearch.plugin.bundle.common.langdetect;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+
+/**
+ * A snapshot of the size of a loaded language detection model.
+ */
+public class LangdetectModelStats implements Writeable, ToXContentFragment {
+
+    private final String profile;
+
+    private final int languages;
+
+    private final long ngrams;
+
+    private final String storage;
+
+    private final long heapBytes;
+
+    public LangdetectModelStats(String profile, int languages, long ngrams, String storage, long heapBytes) {
+        this.profile = profile;
+        this.languages = languages;
+        this.ngrams = ngrams;
+        this.storage = storage;
+        this.heapBytes = heapBytes;
+    }
+
+    public LangdetectModelStats(StreamInput in) throws IOException {
+        this(in.readString(), in.readVInt(), in.readVLong(), in.readString(), in.readVLong());
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(profile);
+        out.writeVInt(languages);
+        out.writeVLong(ngrams);
+        out.writeString(storage);
+        out.writeVLong(heapBytes);
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return the number of languages of the model
+     */
+    public int getLanguages() {
+        return languages;
+    }
+
+    public long getNgrams() {
+        return ngrams;
+    }
+
+    /**
+     * @return the storage of the probabilities, "32 bit", "8 bit quantized", "16 bit quantized" or "memory-mapped"
+     */
+    public String getStorage() {
+        return storage;
+    }
+
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("profile", profile)
+                .field("languages", languages)
+                .field("ngrams", ngrams)
+                .field("storage", storage)
+                .field("heap_bytes", heapBytes);
+        return builder;
+    }
+}
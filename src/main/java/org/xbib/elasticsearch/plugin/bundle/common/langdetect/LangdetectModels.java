@@ -0,0 +1,193 @@
+package org.xbib.elasticsearch.plugin.bundle.common.langdetect;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.settings.Settings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The node-level registry of language detection models.
+ *
+ * Each combination of profile and languages is loaded once and the immutable model is shared by all
+ * language detection services of the node. If the model directory contains a compiled model file of the
+ * profile with exactly the requested languages, the file is memory-mapped. Otherwise, a model of a subset
+ * of the default languages of a profile is selected from the model of the default languages, and any other
+ * model is built from the JSON language profiles.
+ *
+ * The probabilities of the models which are not memory-mapped can be quantized to 8 or 16 bits
+ * to reduce their heap footprint, see {@link NGramTable#quantize(int)}. The footprint of each loaded
+ * model is logged.
+ *
+ * A model is loaded by the first thread which requests it, outside of the lock of the registry. Other threads
+ * which request the same model wait for it, requests of other models and of the statistics do not wait.
+ * If loading fails, the model is removed, so the next request loads it again.
+ */
+public class LangdetectModels {
+
+    private static final Logger logger = LogManager.getLogger(LangdetectModels.class.getName());
+
+    private final Path path;
+
+    private final int quantizationBits;
+
+    private final Map<String, CompletableFuture<LangdetectModel>> models = new LinkedHashMap<>();
+
+    /**
+     * Create a language detection model registry.
+     *
+     * @param path the directory of the compiled model files, or null
+     */
+    public LangdetectModels(Path path) {
+        this(path, 0);
+    }
+
+    /**
+     * Create a language detection model registry.
+     *
+     * @param path the directory of the compiled model files, or null
+     * @param quantizationBits the number of bits of quantized probabilities, 8 or 16, or 0 for no quantization
+     */
+    public LangdetectModels(Path path, int quantizationBits) {
+        if (quantizationBits != 0 && quantizationBits != 8 && quantizationBits != 16) {
+            throw new IllegalArgumentException("langdetect quantization must be 0, 8 or 16 bits: " + quantizationBits);
+        }
+        this.path = path;
+        this.quantizationBits = quantizationBits;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Get the shared model of a profile and a list of languages, load it if it is not yet loaded.
+     *
+     * @param profile the profile, or null for the default profile
+     * @param languages the languages
+     * @return the model
+     */
+    public LangdetectModel get(String profile, List<String> languages) {
+        String key = (profile != null ? profile : "") + '/' + String.join(",", languages);
+        CompletableFuture<LangdetectModel> future;
+        boolean owner = false;
+        synchronized (models) {
+            future = models.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                models.put(key, future);
+                owner = true;
+            }
+        }
+        if (owner) {
+            try {
+                LangdetectModel model = load(profile, languages);
+                NGramTable table = model.getTable();
+                if (table != null) {
+                    logger.info("language detection model {} with {} languages: {} n-grams, {} probabilities, " +
+                            "{} heap bytes", profile != null ? profile : "default", model.getLanguages().size(),
+                            table.size(), storage(table), model.ramBytesUsed());
+                }
+                future.complete(model);
+                return model;
+            } catch (RuntimeException | Error e) {
+                synchronized (models) {
+                    models.remove(key);
+                }
+                future.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of loaded models
+     */
+    public int size() {
+        return loaded().size();
+    }
+
+    /**
+     * @return the statistics of the loaded models, in the order of loading
+     */
+    public List<LangdetectModelStats> stats() {
+        List<LangdetectModelStats> list = new ArrayList<>();
+        for (LangdetectModel model : loaded()) {
+            NGramTable table = model.getTable();
+            if (table != null) {
+                list.add(new LangdetectModelStats(model.getProfile() != null ? model.getProfile() : "default",
+                        model.getLanguages().size(), table.size(), storage(table), model.ramBytesUsed()));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return the models which are loaded, without the models which are being loaded
+     */
+    private List<LangdetectModel> loaded() {
+        List<LangdetectModel> list = new ArrayList<>();
+        synchronized (models) {
+            for (CompletableFuture<LangdetectModel> future : models.values()) {
+                if (future.isDone() && !future.isCompletedExceptionally()) {
+                    list.add(future.join());
+                }
+            }
+        }
+        return list;
+    }
+
+    private LangdetectModel load(String profile, List<String> languages) {
+        if (path != null) {
+            Path file = path.resolve(LangdetectModel.fileName(profile));
+            if (Files.isRegularFile(file)) {
+                try {
+                    LangdetectModel model = LangdetectModel.read(profile, file);
+                    if (model.getLanguages().equals(languages)) {
+                        return model;
+                    }
+                    logger.debug("language detection model {} has languages {}, building model for {}",
+                            file, model.getLanguages(), languages);
+                } catch (IOException e) {
+                    logger.warn("unable to read language detection model " + file, e);
+                }
+            }
+        }
+        List<String> defaultLanguages = LangdetectService.getLanguages(Settings.EMPTY, profile);
+        if (!languages.equals(defaultLanguages) && defaultLanguages.containsAll(languages)) {
+            // copy the columns of the languages from the model of the default languages
+            LangdetectModel model = get(profile, defaultLanguages).select(languages);
+            if (model != null) {
+                return quantize(model);
+            }
+        }
+        return quantize(LangdetectModel.build(profile, languages));
+    }
+
+    private static String storage(NGramTable table) {
+        if (table.getQuantizationBits() > 0) {
+            return table.getQuantizationBits() + " bit quantized";
+        }
+        return table.isReadOnly() ? "memory-mapped" : "32 bit";
+    }
+
+    private LangdetectModel quantize(LangdetectModel model) {
+        return quantizationBits > 0 ? model.quantize(quantizationBits) : model;
+    }
+}
@@ -1,18 +1,21 @@
 package org.xbib.elasticsearch.plugin.bundle.common.langdetect;
 
+import com.carrotsearch.hppc.IntIntHashMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.io.Streams;
 import org.elasticsearch.common.settings.Settings;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.SecureRandom;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -20,6 +23,10 @@ import java.util.regex.Pattern;
 
 /**
  * Language detection service.
+ *
+ * The language profiles are loaded once at construction time and are never modified afterwards,
+ * so a single instance can be shared by any number of threads. All state of a detection run
+ * (the n-gram list, the probability vectors and the random generator) is confined to the calling thread.
  */
 public class LangdetectService {
 
@@ -108,7 +115,11 @@ public class LangdetectService {
 
     private static final Logger logger = LogManager.getLogger(LangdetectService.class.getName());
 
-    private static final Pattern word = Pattern.compile("[\\P{IsWord}]", Pattern.UNICODE_CHARACTER_CLASS);
+    private static final int WORD_TYPES = (1 << Character.NON_SPACING_MARK) |
+            (1 << Character.ENCLOSING_MARK) |
+            (1 << Character.COMBINING_SPACING_MARK) |
+            (1 << Character.DECIMAL_DIGIT_NUMBER) |
+            (1 << Character.CONNECTOR_PUNCTUATION);
 
     private static final Settings DEFAULT_SETTINGS = Settings.builder()
             .putList("languages", DEFAULT_LANGUAGES)
@@ -119,31 +130,64 @@ public class LangdetectService {
 
     private final String profile;
 
-    private Map<String, double[]> wordLangProbMap = new HashMap<>();
+    private NGramTable table;
 
-    private List<String> langlist = new LinkedList<>();
+    private LanguageScripts scripts;
 
-    private Map<String, String> langmap = new HashMap<>();
+    private final List<String> langlist = new ArrayList<>();
 
-    private double alpha;
+    private final Map<String, String> langmap = new HashMap<>();
 
-    private double alphaWidth;
+    private final double alpha;
 
-    private int nTrial;
+    private final double alphaWidth;
 
-    private double[] priorMap;
+    private final int nTrial;
 
-    private int iterationLimit;
+    private final double[] priorMap;
 
-    private double probThreshold;
+    private final int iterationLimit;
 
-    private double convThreshold;
+    private final double probThreshold;
 
-    private int baseFreq;
+    private final double convThreshold;
 
-    private Pattern filterPattern;
+    private final int baseFreq;
 
-    private boolean isStarted;
+    private final int max;
+
+    private final Pattern filterPattern;
+
+    private final boolean exact;
+
+    private final boolean scriptFilter;
+
+    private final int maxChars;
+
+    private final int sampleWindows;
+
+    private final LangdetectCache cache;
+
+    private final LangdetectModels models;
+
+    private final int minNGrams;
+
+    private final int adaptiveNGrams;
+
+    private final LangdetectService shortText;
+
+    /**
+     * The languages of this service which are languages of the service for short texts.
+     */
+    private final boolean[] shortTextLanguages;
+
+    private final int spanWindow;
+
+    /**
+     * The detection contexts of this service, one per thread. The service for short texts has its own contexts,
+     * so the contexts are never resized for another number of languages.
+     */
+    private final ThreadLocal<DetectionContext> contexts = ThreadLocal.withInitial(DetectionContext::new);
 
     public LangdetectService() {
         this(DEFAULT_SETTINGS);
@@ -154,34 +198,109 @@ public class LangdetectService {
     }
 
     public LangdetectService(Settings settings, String profile) {
+        this(settings, profile, null);
+    }
+
+    /**
+     * Create a language detection service.
+     *
+     * @param settings the settings
+     * @param profile the profile, or null for the default profile
+     * @param cache the cache for detection results, or null
+     */
+    public LangdetectService(Settings settings, String profile, LangdetectCache cache) {
+        this(settings, profile, cache, null);
+    }
+
+    /**
+     * Create a language detection service.
+     *
+     * @param settings the settings
+     * @param profile the profile, or null for the default profile
+     * @param cache the cache for detection results, or null
+     * @param models the registry of shared models, or null to build a model for this service only
+     */
+    public LangdetectService(Settings settings, String profile, LangdetectCache cache, LangdetectModels models) {
+        this(settings, profile, cache, models, true);
+    }
+
+    private LangdetectService(Settings settings, String profile, LangdetectCache cache, LangdetectModels models,
+                              boolean adaptive) {
         this.settings = settings;
         this.profile = settings.get("profile", profile);
+        this.cache = cache;
+        this.models = models;
+        this.priorMap = null;
+        this.nTrial = settings.getAsInt("number_of_trials", 7);
+        this.alpha = settings.getAsDouble("alpha", 0.5);
+        this.alphaWidth = settings.getAsDouble("alpha_width", 0.05);
+        this.iterationLimit = settings.getAsInt("iteration_limit", 10000);
+        this.probThreshold = settings.getAsDouble("prob_threshold", 0.1);
+        this.convThreshold = settings.getAsDouble("conv_threshold", 0.99999);
+        this.baseFreq = settings.getAsInt("base_freq", 10000);
+        this.max = settings.getAsInt("max", -1);
+        this.maxChars = settings.getAsInt("max_chars", -1);
+        this.sampleWindows = settings.getAsInt("sample_windows", 1);
+        if (sampleWindows < 1) {
+            throw new IllegalArgumentException("sample_windows must be at least 1: " + sampleWindows);
+        }
+        this.minNGrams = settings.getAsInt("min_ngrams", 0);
+        this.adaptiveNGrams = settings.getAsInt("adaptive_ngrams", 150);
+        this.spanWindow = settings.getAsInt("span_window", 100);
+        if (spanWindow < 2) {
+            throw new IllegalArgumentException("span_window must be at least 2: " + spanWindow);
+        }
+        this.scriptFilter = settings.getAsBoolean("script_filter", true);
+        this.filterPattern = settings.get("pattern") != null ?
+                Pattern.compile(settings.get("pattern"), Pattern.UNICODE_CHARACTER_CLASS) : null;
+        String algorithm = settings.get("algorithm", "sampling");
+        switch (algorithm) {
+            case "sampling":
+                this.exact = false;
+                break;
+            case "exact":
+                this.exact = true;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown language detection algorithm: " + algorithm);
+        }
         load(settings);
-        init();
+        this.shortText = adaptive && settings.getAsBoolean("adaptive", false) ? createShortText(settings) : null;
+        this.shortTextLanguages = shortText != null ? new boolean[langlist.size()] : null;
+        if (shortText != null) {
+            for (int lang = 0; lang < langlist.size(); lang++) {
+                shortTextLanguages[lang] = shortText.langlist.contains(langlist.get(lang));
+            }
+        }
     }
 
     public Settings getSettings() {
         return settings;
     }
 
+    /**
+     * The languages of a profile.
+     *
+     * @param settings the settings, which may override the default languages
+     * @param profile the profile, or null for the default profile
+     * @return the languages
+     */
+    public static List<String> getLanguages(Settings settings, String profile) {
+        return "shorttext".equals(profile) ?
+                settings.getAsList("languages_short_text", Arrays.asList(DEFAULT_LANGUAGES_SHORT_TEXT)) :
+                settings.getAsList("languages", Arrays.asList(DEFAULT_LANGUAGES));
+    }
+
     private void load(Settings settings) {
         if (settings.equals(Settings.EMPTY)) {
             // empty service
             return;
         }
-        List<String> keys = "shorttext".equals(profile) ?
-                settings.getAsList("languages_short_text", Arrays.asList(DEFAULT_LANGUAGES_SHORT_TEXT)) :
-                settings.getAsList("languages", Arrays.asList(DEFAULT_LANGUAGES));
-        int index = 0;
-        int size = keys.size();
-        for (String key : keys) {
-            try {
-                loadProfileFromResource(key, index++, size);
-            } catch (Exception e) {
-                logger.error(e.getMessage() + " key=" + key + " profile=" + profile, e);
-            }
-        }
-        logger.debug("language detection service installed for {}", langlist);
+        List<String> keys = getLanguages(settings, profile);
+        LangdetectModel model = models != null ? models.get(profile, keys) : LangdetectModel.build(profile, keys);
+        table = model.getTable();
+        scripts = scriptFilter ? model.getScripts() : null;
+        langlist.addAll(model.getLanguages());
         try {
             // map by settings
             Settings settings1 = Settings.builder().put(settings.getByPrefix("map.")).build();
@@ -198,149 +317,802 @@ public class LangdetectService {
             for (String key : settings1.keySet()) {
                 map.put(key, settings1.get(key));
             }
-            this.langmap = map;
+            this.langmap.putAll(map);
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
             throw new ElasticsearchException(e.getMessage());
         }
     }
 
-    private void init() {
-        this.priorMap = null;
-        this.nTrial = settings.getAsInt("number_of_trials", 7);
-        this.alpha = settings.getAsDouble("alpha", 0.5);
-        this.alphaWidth = settings.getAsDouble("alpha_width", 0.05);
-        this.iterationLimit = settings.getAsInt("iteration_limit", 10000);
-        this.probThreshold = settings.getAsDouble("prob_threshold", 0.1);
-        this.convThreshold = settings.getAsDouble("conv_threshold", 0.99999);
-        this.baseFreq = settings.getAsInt("base_freq", 10000);
-        this.filterPattern = settings.get("pattern") != null ?
-                Pattern.compile(settings.get("pattern"), Pattern.UNICODE_CHARACTER_CLASS) : null;
-        isStarted = true;
+    /**
+     * Create the service for short texts of an adaptive service. It uses the {@code shorttext} profile with the
+     * languages of this service which are in the profile, and a smaller sampling budget.
+     *
+     * @param settings the settings of this service
+     * @return the service for short texts, or null if this service has no language of the {@code shorttext}
+     * profile or is a {@code shorttext} service
+     */
+    private LangdetectService createShortText(Settings settings) {
+        if ("shorttext".equals(profile) || table == null) {
+            return null;
+        }
+        List<String> languages = new ArrayList<>(getLanguages(settings, "shorttext"));
+        languages.retainAll(langlist);
+        if (languages.isEmpty()) {
+            return null;
+        }
+        Settings shortSettings = Settings.builder()
+                .put(settings)
+                .put("profile", "shorttext")
+                .putList("languages_short_text", languages)
+                .put("number_of_trials", settings.getAsInt("adaptive_short_trials", 3))
+                .put("iteration_limit", settings.getAsInt("adaptive_short_iteration_limit", 1000))
+                .build();
+        // the results are cached by this service
+        return new LangdetectService(shortSettings, "shorttext", null, models, false);
     }
 
     public void loadProfileFromResource(String resource, int index, int langsize) throws IOException {
-        String thisProfile = (this.profile != null ? this.profile + "/" : "");
-        InputStream in = getClass().getResourceAsStream(thisProfile + resource);
-        if (in == null) {
-            throw new IOException("resource for profile '" + resource + "' not found");
-        }
-        LangProfile langProfile = new LangProfile();
-        langProfile.read(in);
-        addProfile(langProfile, index, langsize);
+        addProfile(LangdetectModel.loadProfileFromResource(profile, resource), index, langsize);
     }
 
+    /**
+     * Add a language profile to this service. Profiles must be added before the service is used
+     * for detection, they are not safe to add while other threads are detecting.
+     * Profiles can not be added to a service which uses a shared model.
+     *
+     * @param profile the language profile
+     * @param index the index of the language
+     * @param langsize the total number of languages
+     * @throws IOException if the profile is a duplicate
+     */
     public void addProfile(LangProfile profile, int index, int langsize) throws IOException {
-        String lang = profile.getName();
-        if (langlist.contains(lang)) {
-            throw new IOException("duplicate of the same language profile: " + lang);
+        if (table == null) {
+            table = new NGramTable(langsize);
+        } else if (models != null || table.isReadOnly()) {
+            throw new IllegalStateException("language profiles can not be added to a shared model");
         }
-        langlist.add(lang);
-        for (String s : profile.getFreq().keySet()) {
-            if (!wordLangProbMap.containsKey(s)) {
-                wordLangProbMap.put(s, new double[langsize]);
+        LangdetectModel.addProfile(langlist, table, profile, index, langsize);
+    }
+
+    /**
+     * @return the n-gram probability table, or null if no profile has been added
+     */
+    public NGramTable getTable() {
+        return table;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    /**
+     * Detect the languages of a text. If {@code max_chars} is set, only a prefix of the text or,
+     * with {@code sample_windows}, evenly spaced windows of the text are used for detection.
+     *
+     * @param text the text
+     * @return the detected languages, sorted by probability
+     */
+    public List<Language> detectAll(CharSequence text) {
+        return detectSample(sample(text), null);
+    }
+
+    /**
+     * Detect the languages of a text, where only some of the languages of this service are candidates.
+     * Only the columns of the candidate languages of the probability matrix are scored.
+     *
+     * @param text the text
+     * @param languages the candidate languages, or null or empty for all languages
+     * @return the detected languages, sorted by probability
+     * @throws IllegalArgumentException if a language is not a language of this service
+     */
+    public List<Language> detectAll(CharSequence text, List<String> languages) {
+        return detectSample(sample(text), getColumns(languages));
+    }
+
+    /**
+     * Detect the languages of a text with a cache which is not the cache of this service, such as a small cache
+     * of recent query strings.
+     *
+     * @param text the text
+     * @param cache the cache
+     * @return the detected languages, sorted by probability
+     */
+    public List<Language> detectAllCached(CharSequence text, LangdetectCache cache) {
+        return cache.computeIfAbsent(this, null, text, this::detectAll);
+    }
+
+    /**
+     * Detect the languages of UTF-8 encoded text which is read from a stream. If {@code max_chars}
+     * is set, at most {@code max_chars} bytes are decoded, and the rest of the stream is skipped
+     * or not read at all.
+     *
+     * @param in the stream of UTF-8 encoded text
+     * @param length the number of bytes in the stream, or -1 if unknown
+     * @return the detected languages, sorted by probability
+     * @throws IOException if the stream can not be read
+     */
+    public List<Language> detectAll(InputStream in, long length) throws IOException {
+        return detectSample(sample(in, length), null);
+    }
+
+    /**
+     * Detect the spans of a text which switches between languages.
+     *
+     * Each n-gram of the text is labelled with the best language of a window of {@code span_window}
+     * characters around it. The window slides over the n-grams in a single pass, the scores of the languages
+     * are the sums of the logarithms of the smoothed n-gram probabilities, so the n-grams which enter the
+     * window are added to the scores and the n-grams which leave the window are subtracted, and the cost is
+     * linear in the length of the text. The logarithms are computed once for each distinct n-gram of the text.
+     * Consecutive n-grams with the same label form a span, and spans which are shorter than half a window are
+     * merged into the previous span. The language and probability of a span are computed from all n-grams of
+     * the span. The whole text is used, {@code max_chars} does not apply.
+     *
+     * @param text the text
+     * @param languages the candidate languages, or null or empty for all languages
+     * @return the spans of the text, which cover the text, or an empty list if no n-gram is found
+     * @throws IllegalArgumentException if a language is not a language of this service
+     */
+    public List<LanguageSpan> detectSpans(CharSequence text, List<String> languages) {
+        int[] columns = getColumns(languages);
+        List<LanguageSpan> spans = new ArrayList<>();
+        if (filterPattern != null && !filterPattern.matcher(text).matches()) {
+            return spans;
+        }
+        DetectionContext context = contexts.get();
+        context.spanUpdates = 0L;
+        extractNGrams(context, text, true);
+        int size = context.size;
+        if (size == 0) {
+            return spans;
+        }
+        int[] rows = context.rows;
+        int[] offsets = context.offsets;
+        int langsize = langlist.size();
+        // the logarithms of the probabilities of each distinct n-gram of the text are computed once
+        double weight = alpha / baseFreq;
+        IntIntHashMap slots = new IntIntHashMap();
+        int[] slot = new int[size];
+        double[] logs = new double[langsize * 64];
+        for (int i = 0; i < size; i++) {
+            int s = slots.getOrDefault(rows[i], -1);
+            if (s < 0) {
+                s = slots.size() * langsize;
+                slots.put(rows[i], s);
+                if (s == logs.length) {
+                    logs = Arrays.copyOf(logs, s * 2);
+                }
+                table.logProbabilities(rows[i], weight, logs, s);
+            }
+            slot[i] = s;
+        }
+        int half = spanWindow / 2;
+        double[] scores = new double[langsize];
+        // the label of each n-gram is the best language of the window around it
+        int[] labels = new int[size];
+        int lo = 0;
+        int hi = 0;
+        long updates = 0L;
+        for (int i = 0; i < size; i++) {
+            int offset = offsets[i];
+            for (; hi < size && offsets[hi] <= offset + half; hi++) {
+                addScores(scores, logs, slot[hi], 1d);
+                updates++;
+            }
+            for (; offsets[lo] < offset - half; lo++) {
+                addScores(scores, logs, slot[lo], -1d);
+                updates++;
             }
-            int length = s.length();
-            if (length >= 1 && length <= 3) {
-                double prob = profile.getFreq().get(s).doubleValue() / profile.getNWords().get(length - 1);
-                wordLangProbMap.get(s)[index] = prob;
+            labels[i] = maxScore(scores, columns);
+        }
+        // the first n-gram of each run of labels, runs shorter than half a window are merged
+        int[] runs = new int[size + 1];
+        int n = 0;
+        int length = 0;
+        for (int i = 1, start = 0; i <= size; i++) {
+            if (i < size && labels[i] == labels[start]) {
+                continue;
+            }
+            int l = (i < size ? offsets[i] : text.length()) - offsets[start];
+            if (n == 0) {
+                runs[n++] = start;
+                length = l;
+            } else if (labels[runs[n - 1]] == labels[start] || l < half) {
+                length += l;
+            } else if (n == 1 && length < half) {
+                // the first run is too short, it is taken over by the following run
+                runs[0] = start;
+                length += l;
+            } else {
+                runs[n++] = start;
+                length = l;
             }
+            start = i;
         }
+        runs[n] = size;
+        runs[0] = 0;
+        // the scores of the runs, where adjacent runs with the same best language are joined
+        int[] starts = new int[n];
+        int[] langs = new int[n];
+        double[] probs = new double[n];
+        int k = 0;
+        double[] total = new double[scores.length];
+        int lang = -1;
+        for (int r = 0; r < n; r++) {
+            Arrays.fill(scores, 0d);
+            for (int i = runs[r]; i < runs[r + 1]; i++) {
+                addScores(scores, logs, slot[i], 1d);
+            }
+            updates += runs[r + 1] - runs[r];
+            int best = maxScore(scores, columns);
+            if (best == lang) {
+                for (int j = 0; j < scores.length; j++) {
+                    total[j] += scores[j];
+                }
+            } else {
+                if (lang >= 0) {
+                    probs[k - 1] = softmax(total, lang, columns);
+                }
+                System.arraycopy(scores, 0, total, 0, scores.length);
+                starts[k] = k == 0 ? 0 : wordStart(text, offsets[runs[r]], starts[k - 1]);
+                langs[k++] = best;
+                lang = best;
+            }
+        }
+        probs[k - 1] = softmax(total, lang, columns);
+        context.spanUpdates = updates;
+        for (int i = 0; i < k; i++) {
+            String code = langlist.get(langs[i]);
+            if (langmap.containsKey(code)) {
+                code = langmap.get(code);
+            }
+            spans.add(new LanguageSpan(starts[i], i + 1 < k ? starts[i + 1] : text.length(), code, probs[i]));
+        }
+        return spans;
     }
 
-    public String getProfile() {
-        return profile;
+    /**
+     * The work of the last span detection of the current thread, which is the number of n-grams which were
+     * added to or subtracted from the scores of the languages by {@link #detectSpans(CharSequence, List)}.
+     *
+     * @return the number of score updates
+     */
+    public long getSpanUpdates() {
+        return contexts.get().spanUpdates;
     }
 
-    public synchronized List<Language> detectAll(String text) {
-        if (!isStarted) {
-            load(settings);
-            init();
+    private static void addScores(double[] scores, double[] logs, int offset, double sign) {
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] += sign * logs[offset + i];
         }
+    }
+
+    /**
+     * The best language of scores, or of the scores of the candidate languages.
+     */
+    private static int maxScore(double[] scores, int[] columns) {
+        if (columns == null) {
+            return maxProbability(scores, scores.length);
+        }
+        int max = columns[0];
+        for (int column : columns) {
+            if (scores[column] > scores[max]) {
+                max = column;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * The probability of a language, given the logarithmic scores of the languages.
+     */
+    private static double softmax(double[] scores, int lang, int[] columns) {
+        double sum = 0d;
+        if (columns == null) {
+            for (double score : scores) {
+                sum += Math.exp(score - scores[lang]);
+            }
+        } else {
+            for (int column : columns) {
+                sum += Math.exp(scores[column] - scores[lang]);
+            }
+        }
+        return 1d / sum;
+    }
+
+    /**
+     * Move a span boundary back to the start of the word which contains it, but not before a lower bound.
+     */
+    private static int wordStart(CharSequence text, int offset, int min) {
+        int i = offset;
+        while (i > min + 1 && isWord(Character.codePointBefore(text, i))) {
+            i -= Character.charCount(Character.codePointBefore(text, i));
+        }
+        return i;
+    }
+
+    /**
+     * @return the languages of this service
+     */
+    public List<String> getLanguages() {
+        return Collections.unmodifiableList(langlist);
+    }
+
+    private int[] getColumns(List<String> languages) {
+        if (languages == null || languages.isEmpty()) {
+            return null;
+        }
+        int[] columns = new int[languages.size()];
+        int n = 0;
+        for (String language : languages) {
+            int column = langlist.indexOf(language);
+            if (column < 0) {
+                throw new IllegalArgumentException("language " + language + " is not one of " + langlist);
+            }
+            columns[n++] = column;
+        }
+        Arrays.sort(columns);
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (k == 0 || columns[k - 1] != columns[i]) {
+                columns[k++] = columns[i];
+            }
+        }
+        return k < n ? Arrays.copyOf(columns, k) : columns;
+    }
+
+    private List<Language> detectSample(CharSequence text, int[] columns) {
         List<Language> languages = new ArrayList<>();
         if (filterPattern != null && !filterPattern.matcher(text).matches()) {
             return languages;
         }
-        List<String> list = new ArrayList<>();
-        languages = sortProbability(languages, detectBlock(list, text));
-        return languages.subList(0, Math.min(languages.size(), settings.getAsInt("max", languages.size())));
+        if (cache == null) {
+            return detect(text, columns);
+        }
+        return cache.computeIfAbsent(this, columns, text, t -> detect(t, columns));
+    }
+
+    /**
+     * The sample of a text which is detected by {@link #detectAll(CharSequence)}. If {@code max_chars} is set,
+     * this is a prefix of the text or, with {@code sample_windows}, evenly spaced windows of the text, which
+     * are separated by a space. The borders of the windows are moved forward so they do not split a surrogate pair.
+     *
+     * @param text the text
+     * @return the sample of the text
+     */
+    public CharSequence sample(CharSequence text) {
+        int length = text.length();
+        if (maxChars <= 0 || length <= maxChars) {
+            return text;
+        }
+        int windows = Math.min(sampleWindows, maxChars);
+        int windowSize = maxChars / windows;
+        StringBuilder sb = new StringBuilder(maxChars + 2 * windows);
+        for (int i = 0; i < windows; i++) {
+            int start = windows > 1 ? (int) ((long) (length - windowSize) * i / (windows - 1)) : 0;
+            if (start < length && Character.isLowSurrogate(text.charAt(start))) {
+                start++;
+            }
+            int end = Math.min(length, start + windowSize);
+            if (end < length && Character.isLowSurrogate(text.charAt(end))) {
+                end++;
+            }
+            if (i > 0) {
+                // a word break between the windows
+                sb.append(' ');
+            }
+            sb.append(text, start, end);
+        }
+        return sb;
+    }
+
+    private CharSequence sample(InputStream in, long length) throws IOException {
+        if (maxChars <= 0) {
+            return Streams.copyToString(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+        int windows = length > maxChars ? Math.min(sampleWindows, maxChars) : 1;
+        int windowSize = maxChars / windows;
+        byte[] b = new byte[windowSize];
+        StringBuilder sb = new StringBuilder(maxChars + windows);
+        long position = 0L;
+        for (int i = 0; i < windows; i++) {
+            long start = windows > 1 ? (length - windowSize) * i / (windows - 1) : 0L;
+            while (position < start) {
+                long n = in.skip(start - position);
+                if (n <= 0) {
+                    if (in.read() < 0) {
+                        return sb;
+                    }
+                    n = 1;
+                }
+                position += n;
+            }
+            int len = Streams.readFully(in, b, 0, windowSize);
+            position += len;
+            if (i > 0) {
+                // a word break between the windows
+                sb.append(' ');
+            }
+            // a character which is cut at a window border is decoded to U+FFFD, which is a word break
+            sb.append(new String(b, 0, len, StandardCharsets.UTF_8));
+            if (len < windowSize) {
+                break;
+            }
+        }
+        return sb;
+    }
+
+    /**
+     * Detect the languages of a text. Texts with less than {@code min_ngrams} n-grams are not detected.
+     * In adaptive mode, texts with less than {@code adaptive_ngrams} n-grams are detected by the
+     * {@code shorttext} profile if all languages with a probability for the n-grams of the text are in that
+     * profile, or else if the best language of the full profile is in that profile. They are not, if most of their
+     * n-grams are not in that profile. The trials of longer texts stop early when they converge to the same
+     * language.
+     */
+    private List<Language> detect(CharSequence text, int[] columns) {
+        DetectionContext context = contexts.get();
+        extractNGrams(context, text);
+        int ngrams = context.size;
+        if (ngrams < minNGrams) {
+            return new ArrayList<>();
+        }
+        int all = select(context, columns);
+        if (shortText == null || ngrams >= adaptiveNGrams || !shortText.langlist.containsAll(languages(columns))) {
+            return toList(score(context, all, shortText != null));
+        }
+        double[] prob = null;
+        if (!isShortText(context.marks)) {
+            // a language outside of the shorttext profile may be the language of the text
+            prob = score(context, all, true);
+            if (!isShortTextLanguage(prob)) {
+                return toList(prob);
+            }
+        }
+        List<Language> languages = shortText.detectShortText(text, shortTextColumns(columns), ngrams);
+        if (languages != null) {
+            return languages;
+        }
+        // the service for short texts has its own context, so the n-grams and probabilities are still there
+        return toList(prob != null ? prob : score(context, all, true));
+    }
+
+    /**
+     * Detect the languages of a short text, which has been classified as short by an adaptive service.
+     *
+     * @param text the text
+     * @param columns the columns of the candidate languages, or null for all languages
+     * @param ngrams the number of n-grams of the text in the model of the adaptive service
+     * @return the detected languages, or null if less than half of the n-grams are in this model
+     */
+    private List<Language> detectShortText(CharSequence text, int[] columns, int ngrams) {
+        DetectionContext context = contexts.get();
+        extractNGrams(context, text);
+        if (context.size * 2 < ngrams) {
+            return null;
+        }
+        return toList(score(context, select(context, columns), false));
+    }
+
+    /**
+     * Translate the columns of candidate languages to the columns of the service for short texts.
+     */
+    private int[] shortTextColumns(int[] columns) {
+        return columns != null ? shortText.getColumns(languages(columns)) : null;
+    }
+
+    /**
+     * Check if all marked languages are languages of the service for short texts.
+     */
+    private boolean isShortText(boolean[] marks) {
+        for (int lang = 0; lang < marks.length; lang++) {
+            if (marks[lang] && !shortTextLanguages[lang]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the language with the highest probability is a language of the service for short texts.
+     */
+    private boolean isShortTextLanguage(double[] prob) {
+        int lang = maxProbability(prob, prob.length);
+        return prob[lang] > 0d && shortTextLanguages[lang];
+    }
+
+    private List<String> languages(int[] columns) {
+        if (columns == null) {
+            return Collections.emptyList();
+        }
+        List<String> languages = new ArrayList<>(columns.length);
+        for (int column : columns) {
+            languages.add(langlist.get(column));
+        }
+        return languages;
+    }
+
+    private List<Language> toList(double[] prob) {
+        List<Language> languages = sortProbability(new ArrayList<>(), prob);
+        return max < 0 ? languages : languages.subList(0, Math.min(languages.size(), max));
+    }
+
+    /**
+     * Select the languages which are scored for the n-grams of a text. The scored languages with a probability
+     * for any n-gram of the text are marked as candidate languages, or all scored languages if the scripts are
+     * not classified.
+     *
+     * @param context the detection context with the extracted n-gram rows
+     * @param allowed the columns of the languages which are scored, or null for all languages
+     * @return the number of scored languages
+     */
+    private int select(DetectionContext context, int[] allowed) {
+        boolean[] scored = context.scored;
+        int all = scored.length;
+        if (allowed != null) {
+            Arrays.fill(scored, false);
+            for (int lang : allowed) {
+                scored[lang] = true;
+            }
+            all = allowed.length;
+            // n-grams without a probability for the scored languages would be missing in their profiles
+            context.retain(table);
+        } else {
+            Arrays.fill(scored, true);
+        }
+        int size = context.size;
+        boolean[] marks = context.marks;
+        if (scripts != null) {
+            int[] counts = context.scripts;
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[scripts.getScript(context.rows[i])]++;
+            }
+        }
+        if (scripts == null || !scripts.compatible(context.scripts, scored, marks)) {
+            System.arraycopy(scored, 0, marks, 0, marks.length);
+        }
+        return all;
     }
 
-    private double[] detectBlock(List<String> list, String string) {
-        // clean all non-work characters from text
-        String text = string.replaceAll(word.pattern(), " ");
-        extractNGrams(list, text);
-        double[] langprob = new double[langlist.size()];
-        if (list.isEmpty()) {
+    /**
+     * Compute the language probabilities of the n-grams of a text for the languages which are selected
+     * by {@link #select(DetectionContext, int[])}.
+     *
+     * @param context the detection context with the extracted n-gram rows and the selected languages
+     * @param all the number of scored languages
+     * @param early if the trials stop when two consecutive trials converge to the same language
+     * @return the language probabilities
+     */
+    private double[] score(DetectionContext context, int all, boolean early) {
+        double[] langprob = context.langprob;
+        Arrays.fill(langprob, 0d);
+        int size = context.size;
+        if (size == 0) {
             return langprob;
         }
-        Random rand = new SecureRandom();
-        Long seed = 0L;
-        rand.setSeed(seed);
+        boolean[] marks = context.marks;
+        int n = 0;
+        int[] positions = context.positions;
+        for (int lang = 0; lang < marks.length; lang++) {
+            if (marks[lang]) {
+                positions[lang] = n;
+                context.columns[n++] = lang;
+            } else {
+                positions[lang] = -1;
+            }
+        }
+        int[] columns = n < langprob.length ? context.columns : null;
+        // the scored languages which are not compatible with the scripts of the text share one probability
+        int rest = all - n;
+        if (exact) {
+            return detectExact(context, columns, n, rest);
+        }
+        int[] rows = context.rows;
+        Random rand = context.random;
+        rand.setSeed(0L);
+        // the language to which the previous trial has converged
+        int top = -1;
         for (int t = 0; t < nTrial; ++t) {
-            double[] prob = initProbability();
+            double[] prob = initProbability(context.prob, columns, n, rest);
             double a = this.alpha + rand.nextGaussian() * alphaWidth;
+            boolean converged = false;
             for (int i = 0; ; ++i) {
-                int r = rand.nextInt(list.size());
-                updateLangProb(prob, list.get(r), a);
-                if (i % 5 == 0 && normalizeProb(prob) > convThreshold || i >= iterationLimit) {
+                int r = rand.nextInt(size);
+                updateLangProb(context, prob, rows[r], a, columns);
+                if (i % 5 == 0 && normalizeProb(prob, n, rest) > convThreshold) {
+                    converged = true;
+                    break;
+                }
+                if (i >= iterationLimit) {
                     break;
                 }
             }
-            for (int j = 0; j < langprob.length; ++j) {
-                langprob[j] += prob[j] / nTrial;
+            if (columns == null) {
+                for (int j = 0; j < n; ++j) {
+                    langprob[j] += prob[j] / nTrial;
+                }
+            } else {
+                scatter(context, prob, n, langprob, nTrial);
+            }
+            if (early) {
+                int lang = converged ? maxProbability(prob, rest > 0 ? n + 1 : n) : -1;
+                if (lang >= 0 && lang == top) {
+                    // the average of the trials so far
+                    for (int j = 0; j < langprob.length; j++) {
+                        langprob[j] *= (double) nTrial / (t + 1);
+                    }
+                    break;
+                }
+                top = lang;
             }
         }
         return langprob;
     }
 
-    private double[] initProbability() {
-        double[] prob = new double[langlist.size()];
-        if (priorMap != null) {
-            System.arraycopy(priorMap, 0, prob, 0, prob.length);
-        } else {
-            for (int i = 0; i < prob.length; ++i) {
-                prob[i] = 1.0 / langlist.size();
+    /**
+     * Score every extracted n-gram exactly once. This is the naive Bayes sum of the logarithms of the
+     * smoothed n-gram probabilities for each language, with the same smoothing as for sampling but without
+     * the random variation of alpha, so the result is deterministic. The sum is computed as a product
+     * which is renormalized every few n-grams, which gives the same probabilities without computing
+     * a logarithm for each n-gram and language.
+     *
+     * @param context the detection context with the extracted n-gram rows
+     * @param columns the candidate languages, or null for all languages
+     * @param n the number of candidate languages
+     * @param rest the number of the other languages
+     * @return the language probabilities
+     */
+    private double[] detectExact(DetectionContext context, int[] columns, int n, int rest) {
+        double[] prob = initProbability(columns != null ? context.prob : context.langprob, columns, n, rest);
+        int[] rows = context.rows;
+        int size = context.size;
+        for (int i = 0; i < size; i++) {
+            updateLangProb(context, prob, rows[i], alpha, columns);
+            if (i % 5 == 4) {
+                normalizeProb(prob, n, rest);
             }
         }
+        normalizeProb(prob, n, rest);
+        if (columns == null) {
+            return prob;
+        }
+        scatter(context, prob, n, context.langprob, 1);
+        return context.langprob;
+    }
+
+    /**
+     * Initialize the probabilities of the candidate languages, followed by the probability
+     * which is shared by the other languages if there are any.
+     */
+    private double[] initProbability(double[] prob, int[] columns, int n, int rest) {
+        for (int i = 0; i < n; ++i) {
+            prob[i] = priorMap != null ? priorMap[columns != null ? columns[i] : i] : 1.0 / (n + rest);
+        }
+        if (rest > 0) {
+            prob[n] = 1.0 / (n + rest);
+        }
         return prob;
     }
 
-    private void extractNGrams(List<String> list, String text) {
-        NGram ngram = new NGram();
-        for (int i = 0; i < text.length(); ++i) {
-            ngram.addChar(text.charAt(i));
-            for (int n = 1; n <= NGram.N_GRAM; ++n) {
-                String w = ngram.get(n);
-                if (w != null && wordLangProbMap.containsKey(w)) {
-                    list.add(w);
+    /**
+     * Add the probabilities of the candidate languages and the shared probability of the other languages
+     * to the probabilities of all languages.
+     */
+    private static void scatter(DetectionContext context, double[] prob, int n, double[] langprob, int trials) {
+        int[] columns = context.columns;
+        for (int j = 0; j < n; j++) {
+            langprob[columns[j]] += prob[j] / trials;
+        }
+        boolean[] marks = context.marks;
+        boolean[] scored = context.scored;
+        for (int j = 0; j < langprob.length; j++) {
+            if (scored[j] && !marks[j]) {
+                langprob[j] += prob[n] / trials;
+            }
+        }
+    }
+
+    /**
+     * Extract the rows of all n-grams of a text in a single pass. Code points which are not word characters
+     * in the sense of the Unicode regular expression class {@code \p{IsWord}} are replaced by a single space.
+     * The remaining characters are normalized by {@link NGram}.
+     *
+     * @param context the detection context, which is reset and receives the n-gram rows
+     * @param text the text
+     */
+    private void extractNGrams(DetectionContext context, CharSequence text) {
+        extractNGrams(context, text, false);
+    }
+
+    /**
+     * Extract the rows of all n-grams of a text in a single pass, see {@link #extractNGrams(DetectionContext,
+     * CharSequence)}, and optionally the offset of the last character of each n-gram in the text.
+     */
+    private void extractNGrams(DetectionContext context, CharSequence text, boolean withOffsets) {
+        context.reset(langlist.size(), scripts != null ? scripts.size() : 0);
+        context.withOffsets = withOffsets;
+        if (table == null) {
+            return;
+        }
+        NGram ngram = context.ngram;
+        ngram.reset();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int codePoint = Character.codePointAt(text, i);
+            int count = Character.charCount(codePoint);
+            if (isWord(codePoint)) {
+                for (int j = 0; j < count; j++) {
+                    addNGrams(context, ngram, text.charAt(i + j), i);
                 }
+            } else {
+                addNGrams(context, ngram, ' ', i);
             }
+            i += count;
         }
     }
 
-    private boolean updateLangProb(double[] prob, String word, double alpha) {
-        if (word == null || !wordLangProbMap.containsKey(word)) {
-            return false;
+    private void addNGrams(DetectionContext context, NGram ngram, char ch, int offset) {
+        ngram.addChar(ch);
+        for (int n = 1; n <= NGram.N_GRAM; ++n) {
+            long key = ngram.key(n);
+            if (key != 0L) {
+                int row = table.find(key);
+                if (row >= 0) {
+                    context.add(row, offset);
+                }
+            }
         }
-        double[] langProbMap = wordLangProbMap.get(word);
-        double weight = alpha / baseFreq;
-        for (int i = 0; i < prob.length; ++i) {
-            prob[i] *= weight + langProbMap[i];
+    }
+
+    /**
+     * Check if a code point is a word character in the sense of the Unicode regular expression class
+     * {@code \p{IsWord}}. Other code points separate the words of a text.
+     */
+    static boolean isWord(int codePoint) {
+        return Character.isAlphabetic(codePoint) ||
+                ((WORD_TYPES >> Character.getType(codePoint)) & 1) != 0 ||
+                codePoint == 0x200C || codePoint == 0x200D;
+    }
+
+    /**
+     * Multiply the probabilities by the smoothed probabilities of a n-gram. Each probability would be
+     * multiplied by the smoothing weight {@code alpha / base_freq}, which is dropped because it is removed
+     * by the normalization, so only the languages with a probability for the n-gram are touched. The other
+     * languages, which have no probability for the n-grams of the scripts of the text, keep their shared
+     * probability.
+     */
+    private void updateLangProb(DetectionContext context, double[] prob, int row, double alpha, int[] columns) {
+        if (columns != null) {
+            table.updateSparse(row, prob, context.positions, alpha / baseFreq);
+        } else {
+            table.updateSparse(row, prob, alpha / baseFreq);
         }
-        return true;
     }
 
-    private double normalizeProb(double[] prob) {
-        if (prob.length == 0) {
+    /**
+     * Normalize the probabilities of the candidate languages and the shared probability of the other languages.
+     *
+     * @param prob the probabilities
+     * @param n the number of candidate languages
+     * @param rest the number of the other languages
+     * @return the maximum probability
+     */
+    private double normalizeProb(double[] prob, int n, int rest) {
+        if (n == 0) {
             return 0d;
         }
         double sump = prob[0];
-        for (int i = 1; i < prob.length; i++) {
+        for (int i = 1; i < n; i++) {
             sump += prob[i];
         }
+        if (rest > 0) {
+            sump += prob[n] * rest;
+        }
         double maxp = 0d;
-        for (int i = 0; i < prob.length; i++) {
+        int length = rest > 0 ? n + 1 : n;
+        for (int i = 0; i < length; i++) {
             double p = prob[i] / sump;
             if (maxp < p) {
                 maxp = p;
@@ -350,6 +1122,16 @@ public class LangdetectService {
         return maxp;
     }
 
+    private static int maxProbability(double[] prob, int length) {
+        int max = 0;
+        for (int i = 1; i < length; i++) {
+            if (prob[i] > prob[max]) {
+                max = i;
+            }
+        }
+        return max;
+    }
+
     private List<Language> sortProbability(List<Language> list, double[] prob) {
         for (int j = 0; j < prob.length; ++j) {
             double p = prob[j];
@@ -368,4 +1150,90 @@ public class LangdetectService {
         }
         return list;
     }
+
+    /**
+     * The per-thread state of a detection run, the rows of the n-grams found in the text and the
+     * probability vectors. It is reused by all detections on a thread and
+     * never shared between threads.
+     */
+    private static class DetectionContext {
+
+        private final Random random = new Random();
+
+        private final NGram ngram = new NGram();
+
+        private static final int INITIAL_ROWS = 1024;
+
+        private static final int MAX_RETAINED_ROWS = 1 << 16;
+
+        private int[] rows = new int[INITIAL_ROWS];
+
+        private int size;
+
+        private int[] offsets = new int[0];
+
+        private boolean withOffsets;
+
+        private double[] prob = new double[0];
+
+        private double[] langprob = new double[0];
+
+        private int[] columns = new int[0];
+
+        private int[] positions = new int[0];
+
+        private boolean[] marks = new boolean[0];
+
+        private boolean[] scored = new boolean[0];
+
+        private int[] scripts = new int[0];
+
+        private long spanUpdates;
+
+        void reset(int langsize, int scriptsize) {
+            size = 0;
+            if (rows.length > MAX_RETAINED_ROWS) {
+                // do not keep the buffer of a very large text alive on this thread
+                rows = new int[INITIAL_ROWS];
+                offsets = new int[0];
+            }
+            if (langprob.length != langsize) {
+                prob = new double[langsize + 1];
+                langprob = new double[langsize];
+                columns = new int[langsize];
+                positions = new int[langsize];
+                marks = new boolean[langsize];
+                scored = new boolean[langsize];
+            }
+            if (scripts.length != scriptsize) {
+                scripts = new int[scriptsize];
+            }
+        }
+
+        void retain(NGramTable table) {
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (table.hasProbability(rows[i], scored)) {
+                    if (withOffsets) {
+                        offsets[n] = offsets[i];
+                    }
+                    rows[n++] = rows[i];
+                }
+            }
+            size = n;
+        }
+
+        void add(int row, int offset) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            if (withOffsets) {
+                if (size == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, rows.length);
+                }
+                offsets[size] = offset;
+            }
+            rows[size++] = row;
+        }
+    }
 }
@@ -0,0 +1,199 @@
+package org.xbib.elasticsearch.plugin.bundle.common.langdetect;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.settings.Settings;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * The node-level registry of language detection services.
+ *
+ * The services are keyed by their effective settings, which are the settings read by
+ * {@link LangdetectService}, the profile and the resolved list of languages. Services with equal effective
+ * settings are created once and shared by the language detection actions and all language detection
+ * field mappers of the node. The models of the services are loaded on first use, or in the background
+ * by {@link #preload(Executor, Settings, String)}, and are shared through {@link LangdetectModels}.
+ */
+public class LangdetectServices {
+
+    private static final Logger logger = LogManager.getLogger(LangdetectServices.class.getName());
+
+    private static final List<String> KEYS = Collections.unmodifiableList(Arrays.asList(
+            "number_of_trials",
+            "alpha",
+            "alpha_width",
+            "iteration_limit",
+            "prob_threshold",
+            "conv_threshold",
+            "base_freq",
+            "max",
+            "max_chars",
+            "sample_windows",
+            "script_filter",
+            "pattern",
+            "algorithm",
+            "min_ngrams",
+            "adaptive",
+            "adaptive_ngrams",
+            "adaptive_short_trials",
+            "adaptive_short_iteration_limit",
+            "span_window",
+            "map"
+    ));
+
+    private final LangdetectCache cache;
+
+    private final LangdetectCache queryCache;
+
+    private final LangdetectModels models;
+
+    private final Map<Settings, CompletableFuture<LangdetectService>> services = new ConcurrentHashMap<>();
+
+    /**
+     * Create a language detection service registry.
+     *
+     * @param cache the cache for detection results, or null
+     * @param models the registry of shared models, or null to build a model for each service
+     */
+    public LangdetectServices(LangdetectCache cache, LangdetectModels models) {
+        this(cache, new LangdetectCache(0), models);
+    }
+
+    /**
+     * Create a language detection service registry.
+     *
+     * @param cache the cache for detection results, or null
+     * @param queryCache the cache for the detected languages of query strings
+     * @param models the registry of shared models, or null to build a model for each service
+     */
+    public LangdetectServices(LangdetectCache cache, LangdetectCache queryCache, LangdetectModels models) {
+        this.cache = cache;
+        this.queryCache = queryCache;
+        this.models = models;
+    }
+
+    public LangdetectCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the cache for the detected languages of query strings
+     */
+    public LangdetectCache getQueryCache() {
+        return queryCache;
+    }
+
+    public LangdetectModels getModels() {
+        return models;
+    }
+
+    /**
+     * Get the shared language detection service of settings and a profile, create it if it does not exist.
+     * Only one service is created for equal effective settings, even if it is requested concurrently.
+     * The service is created by the first thread which requests it, outside of the registry, other threads
+     * which request the same service wait for it. If the creation fails, the next request creates it again.
+     *
+     * @param settings the settings, settings which are not read by the language detection service are ignored
+     * @param profile the profile, or null or empty for the default profile. A profile in the settings takes
+     *                precedence.
+     * @return the language detection service
+     */
+    public LangdetectService get(Settings settings, String profile) {
+        Settings key = effectiveSettings(settings, profile);
+        CompletableFuture<LangdetectService> future = services.get(key);
+        if (future == null) {
+            CompletableFuture<LangdetectService> created = new CompletableFuture<>();
+            future = services.putIfAbsent(key, created);
+            if (future == null) {
+                try {
+                    LangdetectService service = new LangdetectService(key, null, cache, models);
+                    created.complete(service);
+                    return service;
+                } catch (RuntimeException | Error e) {
+                    services.remove(key, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Create the shared language detection service of settings and a profile in the background.
+     * A failure is logged, it is thrown again when the service is requested by {@link #get(Settings, String)}.
+     *
+     * @param executor the executor
+     * @param settings the settings
+     * @param profile the profile, or null for the default profile
+     */
+    public void preload(Executor executor, Settings settings, String profile) {
+        executor.execute(() -> {
+            try {
+                get(settings, profile);
+            } catch (Exception e) {
+                logger.warn("unable to load language detection profile " + (profile != null ? profile : "default"), e);
+            }
+        });
+    }
+
+    /**
+     * @return the number of created services, without the services which are being created
+     */
+    public int size() {
+        int n = 0;
+        for (CompletableFuture<LangdetectService> future : services.values()) {
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * The effective settings of a language detection service. These settings never equal
+     * {@link Settings#EMPTY}, because they always contain the languages.
+     *
+     * @param settings the settings
+     * @param profile the profile, or null or empty for the default profile
+     * @return the effective settings
+     */
+    public static Settings effectiveSettings(Settings settings, String profile) {
+        String p = settings.get("profile", profile);
+        if (p != null && p.isEmpty()) {
+            p = null;
+        }
+        Settings.Builder builder = Settings.builder();
+        for (String key : settings.keySet()) {
+            int pos = key.indexOf('.');
+            if (KEYS.contains(pos > 0 ? key.substring(0, pos) : key)) {
+                builder.copy(key, settings);
+            }
+        }
+        if (p != null) {
+            builder.put("profile", p);
+        }
+        builder.putList("shorttext".equals(p) ? "languages_short_text" : "languages",
+                LangdetectService.getLanguages(settings, p));
+        if (!"shorttext".equals(p) && settings.getAsBoolean("adaptive", false)) {
+            // the languages of short texts
+            builder.putList("languages_short_text", LangdetectService.getLanguages(settings, "shorttext"));
+        }
+        return builder.build();
+    }
+}
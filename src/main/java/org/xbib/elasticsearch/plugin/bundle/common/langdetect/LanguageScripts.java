@@ -0,0 +1,133 @@
+package org.xbib.elasticsearch.plugin.bundle.common.langdetect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Unicode scripts of the n-grams of a n-gram table, for restricting the scored languages of a text
+ * before the n-gram scoring.
+ *
+ * Each n-gram is classified by the script of its first character which is not of the scripts {@code Common},
+ * {@code Inherited} or {@code Unknown}. N-grams without such a character, such as n-grams of digits, form a
+ * class of their own. A language is compatible with a class if it has a probability for any n-gram of that class.
+ * A language which is not compatible with any class of the n-grams of a text has no probability for any of these
+ * n-grams, so it gains only the smoothing probability and is scored by the probability which is shared by all
+ * such languages. The results are the same as without the classification.
+ */
+final class LanguageScripts {
+
+    private final byte[] rowScripts;
+
+    private final int[][] languages;
+
+    private LanguageScripts(byte[] rowScripts, int[][] languages) {
+        this.rowScripts = rowScripts;
+        this.languages = languages;
+    }
+
+    /**
+     * Classify the n-grams of a table by their scripts.
+     *
+     * @param table the n-gram table
+     * @param langsize the number of languages in the table
+     * @return the scripts, or null if there are too many scripts
+     */
+    static LanguageScripts of(NGramTable table, int langsize) {
+        Map<Character.UnicodeScript, Integer> index = new LinkedHashMap<>();
+        List<boolean[]> marks = new ArrayList<>();
+        // the class of the n-grams without a classifying script
+        marks.add(new boolean[langsize]);
+        long[] keys = table.rowKeys();
+        byte[] rowScripts = new byte[keys.length];
+        for (int row = 0; row < keys.length; row++) {
+            Character.UnicodeScript script = script(NGramTable.gram(keys[row]));
+            int i = 0;
+            if (script != null) {
+                Integer n = index.get(script);
+                if (n == null) {
+                    if (marks.size() > Byte.MAX_VALUE) {
+                        return null;
+                    }
+                    n = marks.size();
+                    index.put(script, n);
+                    marks.add(new boolean[langsize]);
+                }
+                i = n;
+            }
+            rowScripts[row] = (byte) i;
+            table.markLanguages(row, marks.get(i));
+        }
+        int[][] languages = new int[marks.size()][];
+        for (int i = 0; i < languages.length; i++) {
+            boolean[] m = marks.get(i);
+            int[] langs = new int[langsize];
+            int n = 0;
+            for (int lang = 0; lang < langsize; lang++) {
+                if (m[lang]) {
+                    langs[n++] = lang;
+                }
+            }
+            languages[i] = Arrays.copyOf(langs, n);
+        }
+        return new LanguageScripts(rowScripts, languages);
+    }
+
+    private static Character.UnicodeScript script(String gram) {
+        if (gram == null) {
+            return null;
+        }
+        for (int i = 0; i < gram.length(); i++) {
+            Character.UnicodeScript script = Character.UnicodeScript.of(gram.charAt(i));
+            if (script != Character.UnicodeScript.COMMON && script != Character.UnicodeScript.INHERITED &&
+                    script != Character.UnicodeScript.UNKNOWN) {
+                return script;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of script classes
+     */
+    int size() {
+        return languages.length;
+    }
+
+    /**
+     * The script class of a n-gram row.
+     *
+     * @param row the row
+     * @return the script class
+     */
+    int getScript(int row) {
+        return rowScripts[row];
+    }
+
+    /**
+     * Find the scored languages which are compatible with the script classes of the n-grams of a text.
+     *
+     * @param counts the number of n-grams of each script class in the text
+     * @param scored the languages which are scored
+     * @param marks receives the scored languages which have a probability for any n-gram of a class of the text
+     * @return false if the languages can not be restricted because no scored language has a probability for
+     * any n-gram of the text
+     */
+    boolean compatible(int[] counts, boolean[] scored, boolean[] marks) {
+        Arrays.fill(marks, false);
+        boolean found = false;
+        for (int script = 0; script < counts.length; script++) {
+            if (counts[script] > 0) {
+                for (int lang : languages[script]) {
+                    if (scored[lang]) {
+                        marks[lang] = true;
+                        found = true;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,49 @@
+package org.xbib.elasticsearch.plugin.bundle.common.langdetect;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+/**
+ * A span of a text in a single language, given by the offsets of its first character and the character after it.
+ */
+public class LanguageSpan extends Language {
+
+    private int start;
+
+    private int end;
+
+    public LanguageSpan(int start, int end, String lang, double prob) {
+        super(lang, prob);
+        this.start = start;
+        this.end = end;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        this.start = in.readVInt();
+        this.end = in.readVInt();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(start);
+        out.writeVInt(end);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + "," + end + "] " + super.toString();
+    }
+}
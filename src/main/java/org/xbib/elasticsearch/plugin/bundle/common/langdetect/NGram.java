@@ -1,15 +1,20 @@
 package org.xbib.elasticsearch.plugin.bundle.common.langdetect;
 
 import java.lang.Character.UnicodeBlock;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * N-grams for languague detection.
+ *
+ * The last {@link #N_GRAM} characters are held in a fixed buffer, so adding characters
+ * and computing n-gram keys does not allocate.
  */
 public class NGram {
 
-    private static final Map<Character, Character> cjk_map = new HashMap<>();
+    private static final char CJK_FIRST = '\u4E00';
+
+    private static final char CJK_LAST = '\u9FFF';
+
+    private static final char[] cjk_map = new char[CJK_LAST - CJK_FIRST + 1];
 
     public static final  int N_GRAM = 3;
 
@@ -483,21 +488,37 @@ public class NGram {
         for (String cjk_list : CJK_CLASS) {
             char representative = cjk_list.charAt(0);
             for (int i = 0; i < cjk_list.length(); ++i) {
-                cjk_map.put(cjk_list.charAt(i), representative);
+                cjk_map[cjk_list.charAt(i) - CJK_FIRST] = representative;
             }
         }
     }
 
-    private StringBuilder grams;
+    private final char[] grams;
+
+    private int length;
+
     private boolean capitalword;
 
     public NGram() {
-        grams = new StringBuilder(" ");
+        grams = new char[N_GRAM];
+        reset();
+    }
+
+    /**
+     * Reset to the state after construction, i.e. at the beginning of a word.
+     */
+    public void reset() {
+        grams[0] = ' ';
+        length = 1;
         capitalword = false;
     }
 
     public static char normalize(char c) {
         char ch = c;
+        if (ch < 0x80) {
+            // fast path for basic latin
+            return (ch < 'A' || (ch < 'a' && ch > 'Z') || ch > 'z') ? ' ' : ch;
+        }
         Character.UnicodeBlock block = Character.UnicodeBlock.of(ch);
         if (block == UnicodeBlock.BASIC_LATIN) {
             if (ch < 'A' || (ch < 'a' && ch > 'Z') || ch > 'z') {
@@ -524,8 +545,9 @@ public class NGram {
         } else if (block == UnicodeBlock.BOPOMOFO || block == UnicodeBlock.BOPOMOFO_EXTENDED) {
             ch = '\u3105';
         } else if (block == UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS) {
-            if (cjk_map.containsKey(ch)) {
-                ch = cjk_map.get(ch);
+            char representative = cjk_map[ch - CJK_FIRST];
+            if (representative != 0) {
+                ch = representative;
             }
         } else if (block == UnicodeBlock.HANGUL_SYLLABLES) {
             ch = '\uac00';
@@ -535,17 +557,17 @@ public class NGram {
 
     public void addChar(char c) {
         char ch = normalize(c);
-        char lastchar = grams.charAt(grams.length() - 1);
+        char lastchar = grams[length - 1];
         if (lastchar == ' ') {
-            grams = new StringBuilder(" ");
-            capitalword = false;
+            reset();
             if (ch == ' ') {
                 return;
             }
-        } else if (grams.length() >= N_GRAM) {
-            grams.deleteCharAt(0);
+        } else if (length >= N_GRAM) {
+            System.arraycopy(grams, 1, grams, 0, N_GRAM - 1);
+            length--;
         }
-        grams.append(ch);
+        grams[length++] = ch;
         if (Character.isUpperCase(ch)) {
             if (Character.isUpperCase(lastchar)) {
                 capitalword = true;
@@ -556,21 +578,34 @@ public class NGram {
     }
 
     public String get(int n) {
-        if (capitalword) {
+        if (!has(n)) {
             return null;
         }
-        int len = grams.length();
-        if (n < 1 || n > 3 || len < n) {
-            return null;
+        return new String(grams, length - n, n);
+    }
+
+    /**
+     * Return the key of the current n-gram of the given length, packed as described in
+     * {@link NGramTable#key(CharSequence)}, without creating a string.
+     *
+     * @param n the n-gram length
+     * @return the key, or 0 if there is no such n-gram
+     */
+    public long key(int n) {
+        if (!has(n)) {
+            return 0L;
         }
-        if (n == 1) {
-            char ch = grams.charAt(len - 1);
-            if (ch == ' ') {
-                return null;
-            }
-            return Character.toString(ch);
-        } else {
-            return grams.substring(len - n, len);
+        long key = n;
+        for (int i = length - n; i < length; i++) {
+            key = key << 16 | grams[i];
+        }
+        return key;
+    }
+
+    private boolean has(int n) {
+        if (capitalword || n < 1 || n > N_GRAM || length < n) {
+            return false;
         }
+        return n != 1 || grams[length - 1] != ' ';
     }
 }
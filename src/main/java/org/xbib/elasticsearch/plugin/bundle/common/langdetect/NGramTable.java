@@ -0,0 +1,742 @@
+package org.xbib.elasticsearch.plugin.bundle.common.langdetect;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * The n-gram probability table of the language detection.
+ *
+ * N-grams of one to three characters are packed into a {@code long} key, see {@link #key(CharSequence)}.
+ * The keys are held in an open addressing hash table with linear probing which maps each key to a row.
+ *
+ * While the language profiles are loaded, the rows are held in a dense probability matrix with one column
+ * per language. Most n-grams occur in only a few languages, so {@link #trim()} compresses the matrix into
+ * sparse rows: the languages with a non-zero probability and their probabilities, in the order of the
+ * languages. A row in which at least half of the languages have a probability is stored dense, with the
+ * probabilities of all languages. The scoring by {@link #updateSparse(int, double[], double)} only touches
+ * the stored probabilities of a row.
+ *
+ * The stored probabilities of a trimmed table can be quantized to 8 or 16 bit codes of their logarithm,
+ * see {@link #quantize(int)}. The codes are decoded by a code book which is shared by all tables.
+ *
+ * The table must not be modified after loading. Lookups are then safe from any number of threads.
+ *
+ * A table can be written to a channel with {@link #writeTo(WritableByteChannel)} and read back with
+ * {@link #readFrom(ByteBuffer)}. If the buffer is memory-mapped, the probabilities are not copied
+ * onto the heap but read from the mapped file, and the table is read only.
+ */
+public class NGramTable implements Accountable {
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(NGramTable.class);
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int MAX_LANGSIZE = 256;
+
+    /**
+     * The smallest logarithm of a probability which can be quantized, smaller probabilities are quantized
+     * to this value. The language profiles have no probability below about {@code exp(-12)}.
+     */
+    static final double MIN_LOG_PROBABILITY = -16d;
+
+    private final int langsize;
+
+    private long[] keys;
+
+    private int[] rows;
+
+    private int mask;
+
+    private int size;
+
+    private float[] probs;
+
+    private int[] offsets;
+
+    private float[] values;
+
+    private byte[] langs;
+
+    private byte[] codes8;
+
+    private short[] codes16;
+
+    private final FloatBuffer mappedValues;
+
+    private final ByteBuffer mappedLangs;
+
+    public NGramTable(int langsize) {
+        if (langsize > MAX_LANGSIZE) {
+            throw new IllegalArgumentException("too many languages: " + langsize);
+        }
+        this.langsize = langsize;
+        this.keys = new long[INITIAL_CAPACITY];
+        this.rows = new int[INITIAL_CAPACITY];
+        this.mask = INITIAL_CAPACITY - 1;
+        this.probs = new float[(INITIAL_CAPACITY / 2) * langsize];
+        this.mappedValues = null;
+        this.mappedLangs = null;
+    }
+
+    private NGramTable(int langsize, long[] keys, int[] rows, int size, int[] offsets,
+                       FloatBuffer mappedValues, ByteBuffer mappedLangs) {
+        this.langsize = langsize;
+        this.keys = keys;
+        this.rows = rows;
+        this.mask = keys.length - 1;
+        this.size = size;
+        this.offsets = offsets;
+        this.mappedValues = mappedValues;
+        this.mappedLangs = mappedLangs;
+    }
+
+    /**
+     * Read a table which was written by {@link #writeTo(WritableByteChannel)}. The hash table of the
+     * n-gram keys and the row offsets are copied onto the heap, the probabilities and their languages
+     * are views of the buffer.
+     *
+     * @param buffer the buffer, positioned at the start of the table, it is advanced to the end of the table
+     * @return the read only table
+     * @throws IOException if the buffer does not contain a valid table
+     */
+    public static NGramTable readFrom(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int langsize = in.getInt();
+        int size = in.getInt();
+        int capacity = in.getInt();
+        int count = in.getInt();
+        if (langsize < 0 || langsize > MAX_LANGSIZE || size < 0 || count < 0 ||
+                Integer.bitCount(capacity) != 1 || size * 2L > capacity ||
+                in.remaining() < capacity * 12L + (size + 1L) * Integer.BYTES + count * (Float.BYTES + 1L)) {
+            throw new IOException("invalid n-gram table: langsize=" + langsize + " size=" + size +
+                    " capacity=" + capacity + " count=" + count);
+        }
+        long[] keys = new long[capacity];
+        in.asLongBuffer().get(keys);
+        in.position(in.position() + capacity * Long.BYTES);
+        int[] rows = new int[capacity];
+        in.asIntBuffer().get(rows);
+        in.position(in.position() + capacity * Integer.BYTES);
+        int[] offsets = new int[size + 1];
+        in.asIntBuffer().get(offsets);
+        in.position(in.position() + offsets.length * Integer.BYTES);
+        if (offsets[size] != count) {
+            throw new IOException("invalid n-gram table: offset " + offsets[size] + " count=" + count);
+        }
+        ByteBuffer v = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+        v.limit(count * Float.BYTES);
+        in.position(in.position() + v.limit());
+        ByteBuffer l = in.slice();
+        l.limit(count);
+        in.position(in.position() + l.limit());
+        buffer.position(buffer.position() + in.position());
+        return new NGramTable(langsize, keys, rows, size, offsets, v.asFloatBuffer(), l);
+    }
+
+    /**
+     * Write this table in little endian byte order: a header of the language size, the number of n-grams,
+     * the hash table capacity and the number of stored probabilities, the hash table of the n-gram keys
+     * and their rows, the offsets of the rows, the stored probabilities as 32-bit floats, and the languages
+     * of the stored probabilities as bytes. The table is trimmed before it is written.
+     *
+     * @param channel the channel
+     * @throws IOException if writing fails
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        trim();
+        int capacity = keys.length;
+        int count = offsets[size];
+        ByteBuffer out = ByteBuffer.allocate(16 + capacity * 12 + (size + 1) * Integer.BYTES +
+                count * (Float.BYTES + 1)).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(langsize).putInt(size).putInt(capacity).putInt(count);
+        out.asLongBuffer().put(keys);
+        out.position(out.position() + capacity * Long.BYTES);
+        out.asIntBuffer().put(rows);
+        out.position(out.position() + capacity * Integer.BYTES);
+        out.asIntBuffer().put(offsets, 0, size + 1);
+        out.position(out.position() + (size + 1) * Integer.BYTES);
+        FloatBuffer f = out.asFloatBuffer();
+        for (int i = 0; i < count; i++) {
+            f.put(value(i));
+        }
+        out.position(out.position() + count * Float.BYTES);
+        for (int i = 0; i < count; i++) {
+            out.put(langs != null ? langs[i] : mappedLangs.get(i));
+        }
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+
+    /**
+     * @return true if this table was read from a buffer or is quantized, and can not be modified
+     */
+    public boolean isReadOnly() {
+        return mappedValues != null || codes8 != null || codes16 != null;
+    }
+
+    /**
+     * @return the number of bits of the quantized probabilities, or 0 if the probabilities are not quantized
+     */
+    public int getQuantizationBits() {
+        return codes8 != null ? 8 : codes16 != null ? 16 : 0;
+    }
+
+    /**
+     * Create a table with the probabilities of this table quantized to codes of their logarithm. The codes
+     * are spread evenly between {@link #MIN_LOG_PROBABILITY} and 0, the code 0 stands for no probability.
+     * The relative error of a quantized probability is at most about 3.2% with 8 bits and 0.013% with
+     * 16 bits. Quantizing a quantized table with the same number of bits gives the same probabilities.
+     *
+     * @param bits the number of bits of a code, 8 or 16
+     * @return the quantized table
+     */
+    public NGramTable quantize(int bits) {
+        if (bits != 8 && bits != 16) {
+            throw new IllegalArgumentException("quantization must be 8 or 16 bits: " + bits);
+        }
+        trim();
+        int count = offsets[size];
+        NGramTable table = new NGramTable(langsize, keys.clone(), rows.clone(), size, offsets.clone(), null, null);
+        table.langs = new byte[count];
+        if (bits == 8) {
+            table.codes8 = new byte[count];
+        } else {
+            table.codes16 = new short[count];
+        }
+        for (int i = 0; i < count; i++) {
+            table.langs[i] = (byte) lang(i);
+            int code = encode(value(i), bits);
+            if (bits == 8) {
+                table.codes8[i] = (byte) code;
+            } else {
+                table.codes16[i] = (short) code;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Pack a n-gram into a key. The n-gram length is stored in the upper bits, followed by the
+     * 16 bits of each character, so a key is never 0.
+     *
+     * @param gram the n-gram
+     * @return the key, or 0 if the n-gram is not between 1 and 3 characters long
+     */
+    public static long key(CharSequence gram) {
+        int len = gram.length();
+        if (len < 1 || len > NGram.N_GRAM) {
+            return 0L;
+        }
+        long key = len;
+        for (int i = 0; i < len; i++) {
+            key = key << 16 | gram.charAt(i);
+        }
+        return key;
+    }
+
+    /**
+     * Unpack a key into its n-gram, this is the inverse of {@link #key(CharSequence)}.
+     *
+     * @param key the key
+     * @return the n-gram, or null if the key is not a valid key
+     */
+    public static String gram(long key) {
+        for (int len = 1; len <= NGram.N_GRAM; len++) {
+            if (key >>> (16 * len) == len) {
+                char[] chars = new char[len];
+                for (int i = len - 1; i >= 0; i--) {
+                    chars[i] = (char) (key >>> (16 * (len - 1 - i)));
+                }
+                return new String(chars);
+            }
+        }
+        return null;
+    }
+
+    public int getLangSize() {
+        return langsize;
+    }
+
+    /**
+     * @return the number of n-grams in this table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Look up the row of a n-gram key.
+     *
+     * @param key the n-gram key
+     * @return the row, or -1 if the n-gram is not in this table
+     */
+    public int find(long key) {
+        int slot = hash(key) & mask;
+        long k;
+        while ((k = keys[slot]) != 0L) {
+            if (k == key) {
+                return rows[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * The n-gram keys of the rows of this table.
+     *
+     * @return the key of each row, indexed by row
+     */
+    long[] rowKeys() {
+        long[] result = new long[size];
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0L) {
+                result[rows[slot]] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Look up the row of a n-gram key, create a new row if the key is not present.
+     *
+     * @param key the n-gram key
+     * @return the row
+     */
+    public int add(long key) {
+        inflate();
+        int slot = hash(key) & mask;
+        long k;
+        while ((k = keys[slot]) != 0L) {
+            if (k == key) {
+                return rows[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        int row = size++;
+        keys[slot] = key;
+        rows[slot] = row;
+        if ((row + 1) * langsize > probs.length) {
+            probs = Arrays.copyOf(probs, Math.max(probs.length * 2, langsize));
+        }
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return row;
+    }
+
+    public void set(int row, int lang, double prob) {
+        inflate();
+        probs[row * langsize + lang] = (float) prob;
+    }
+
+    public double get(int row, int lang) {
+        if (probs != null) {
+            return probs[row * langsize + lang];
+        }
+        int start = offsets[row];
+        int end = offsets[row + 1];
+        if (end - start == langsize) {
+            return value(start + lang);
+        }
+        for (int i = start; i < end; i++) {
+            if (lang(i) == lang) {
+                return value(i);
+            }
+        }
+        return 0d;
+    }
+
+    /**
+     * Multiply a language probability vector by the smoothed probabilities of a n-gram row.
+     *
+     * @param row the row of the n-gram
+     * @param prob the language probabilities
+     * @param weight the smoothing weight which is added to each n-gram probability
+     */
+    public void update(int row, double[] prob, double weight) {
+        if (probs != null) {
+            int offset = row * langsize;
+            for (int i = 0; i < langsize; i++) {
+                prob[i] *= weight + probs[offset + i];
+            }
+            return;
+        }
+        int k = offsets[row];
+        int end = offsets[row + 1];
+        if (end - k == langsize) {
+            for (int i = 0; i < langsize; i++) {
+                prob[i] *= weight + value(k + i);
+            }
+        } else {
+            for (int i = 0; i < langsize; i++) {
+                double p = 0d;
+                if (k < end && lang(k) == i) {
+                    p = value(k++);
+                }
+                prob[i] *= weight + p;
+            }
+        }
+    }
+
+    /**
+     * Multiply a language probability vector by the smoothed probabilities of a n-gram row, divided by
+     * the smoothing weight. The languages without a probability for the n-gram keep their probability,
+     * so only the stored probabilities of the row are touched. After normalization, the result is the same
+     * as with {@link #update(int, double[], double)}.
+     *
+     * @param row the row of the n-gram
+     * @param prob the language probabilities
+     * @param weight the smoothing weight which is added to each n-gram probability
+     */
+    public void updateSparse(int row, double[] prob, double weight) {
+        double scale = 1d / weight;
+        if (probs != null) {
+            int offset = row * langsize;
+            for (int i = 0; i < langsize; i++) {
+                float p = probs[offset + i];
+                if (p != 0f) {
+                    prob[i] *= 1d + p * scale;
+                }
+            }
+            return;
+        }
+        int start = offsets[row];
+        int end = offsets[row + 1];
+        if (values != null) {
+            if (end - start == langsize) {
+                for (int i = 0; i < langsize; i++) {
+                    prob[i] *= 1d + values[start + i] * scale;
+                }
+            } else {
+                for (int i = start; i < end; i++) {
+                    prob[langs[i] & 0xff] *= 1d + values[i] * scale;
+                }
+            }
+        } else if (mappedValues != null) {
+            for (int i = start; i < end; i++) {
+                prob[mappedLangs.get(i) & 0xff] *= 1d + mappedValues.get(i) * scale;
+            }
+        } else if (codes8 != null) {
+            float[] codebook = Codebook8.CODEBOOK;
+            for (int i = start; i < end; i++) {
+                prob[langs[i] & 0xff] *= 1d + codebook[codes8[i] & 0xff] * scale;
+            }
+        } else {
+            float[] codebook = Codebook16.CODEBOOK;
+            for (int i = start; i < end; i++) {
+                prob[langs[i] & 0xff] *= 1d + codebook[codes16[i] & 0xffff] * scale;
+            }
+        }
+    }
+
+    /**
+     * Multiply the probabilities of a subset of the languages by the smoothed probabilities of a n-gram row,
+     * divided by the smoothing weight, see {@link #updateSparse(int, double[], double)}.
+     *
+     * @param row the row of the n-gram
+     * @param prob the probabilities of the subset of languages
+     * @param positions the position of each language in the probabilities of the subset,
+     *                  or -1 if the language is not in the subset
+     * @param weight the smoothing weight which is added to each n-gram probability
+     */
+    public void updateSparse(int row, double[] prob, int[] positions, double weight) {
+        double scale = 1d / weight;
+        if (probs != null) {
+            int offset = row * langsize;
+            for (int i = 0; i < langsize; i++) {
+                float p = probs[offset + i];
+                if (p != 0f && positions[i] >= 0) {
+                    prob[positions[i]] *= 1d + p * scale;
+                }
+            }
+            return;
+        }
+        int start = offsets[row];
+        int end = offsets[row + 1];
+        for (int i = start; i < end; i++) {
+            int position = positions[lang(i)];
+            if (position >= 0) {
+                prob[position] *= 1d + value(i) * scale;
+            }
+        }
+    }
+
+    /**
+     * Write the logarithms of the smoothed probabilities of a n-gram row, divided by the smoothing weight,
+     * for all languages. This is the logarithm of the factors of {@link #updateSparse(int, double[], double)},
+     * it is zero for the languages without a probability for the n-gram.
+     *
+     * @param row the row of the n-gram
+     * @param weight the smoothing weight which is added to each n-gram probability
+     * @param logs the array which receives the logarithms
+     * @param offset the offset of the logarithm of the first language in the array
+     */
+    public void logProbabilities(int row, double weight, double[] logs, int offset) {
+        double scale = 1d / weight;
+        if (probs != null) {
+            int start = row * langsize;
+            for (int i = 0; i < langsize; i++) {
+                logs[offset + i] = Math.log(1d + probs[start + i] * scale);
+            }
+            return;
+        }
+        Arrays.fill(logs, offset, offset + langsize, 0d);
+        int end = offsets[row + 1];
+        for (int i = offsets[row]; i < end; i++) {
+            logs[offset + lang(i)] = Math.log(1d + value(i) * scale);
+        }
+    }
+
+    /**
+     * Check if a n-gram row has a probability for any language of a subset of the languages.
+     *
+     * @param row the row of the n-gram
+     * @param languages the languages of the subset
+     * @return true if the n-gram has a probability for any of the languages
+     */
+    public boolean hasProbability(int row, boolean[] languages) {
+        if (probs != null) {
+            int offset = row * langsize;
+            for (int i = 0; i < langsize; i++) {
+                if (languages[i] && probs[offset + i] != 0f) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        int end = offsets[row + 1];
+        for (int i = offsets[row]; i < end; i++) {
+            if (languages[lang(i)] && value(i) != 0f) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mark the languages which have a probability for a n-gram row.
+     *
+     * @param row the row of the n-gram
+     * @param languages receives true for each language with a probability, other languages are not changed
+     */
+    public void markLanguages(int row, boolean[] languages) {
+        if (probs != null) {
+            int offset = row * langsize;
+            for (int i = 0; i < langsize; i++) {
+                if (probs[offset + i] != 0f) {
+                    languages[i] = true;
+                }
+            }
+            return;
+        }
+        int end = offsets[row + 1];
+        for (int i = offsets[row]; i < end; i++) {
+            if (value(i) != 0f) {
+                languages[lang(i)] = true;
+            }
+        }
+    }
+
+    /**
+     * Create a table with the probabilities of a subset of the languages of this table, which contains
+     * only the n-grams with a probability for any of these languages.
+     *
+     * @param columns the languages of the subset, in the order of the columns of the new table
+     * @return the new table
+     */
+    public NGramTable select(int[] columns) {
+        boolean[] languages = new boolean[langsize];
+        for (int column : columns) {
+            languages[column] = true;
+        }
+        NGramTable table = new NGramTable(columns.length);
+        for (int slot = 0; slot < keys.length; slot++) {
+            long key = keys[slot];
+            if (key != 0L && hasProbability(rows[slot], languages)) {
+                int row = table.add(key);
+                for (int i = 0; i < columns.length; i++) {
+                    table.set(row, i, get(rows[slot], columns[i]));
+                }
+            }
+        }
+        table.trim();
+        return table;
+    }
+
+    /**
+     * Compress the probability matrix into sparse rows after all profiles have been added.
+     */
+    public void trim() {
+        if (probs == null) {
+            return;
+        }
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            count += rowLength(row);
+        }
+        int[] o = new int[size + 1];
+        float[] v = new float[count];
+        byte[] l = new byte[count];
+        int k = 0;
+        for (int row = 0; row < size; row++) {
+            o[row] = k;
+            int offset = row * langsize;
+            boolean dense = rowLength(row) == langsize;
+            for (int i = 0; i < langsize; i++) {
+                if (dense || probs[offset + i] != 0f) {
+                    v[k] = probs[offset + i];
+                    l[k] = (byte) i;
+                    k++;
+                }
+            }
+        }
+        o[size] = k;
+        offsets = o;
+        values = v;
+        langs = l;
+        probs = null;
+    }
+
+    /**
+     * @return the heap bytes of this table, memory-mapped probabilities and the shared code books of
+     * quantized probabilities are not included
+     */
+    @Override
+    public long ramBytesUsed() {
+        return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(keys) + RamUsageEstimator.sizeOf(rows) +
+                (probs != null ? RamUsageEstimator.sizeOf(probs) : 0L) +
+                (offsets != null ? RamUsageEstimator.sizeOf(offsets) : 0L) +
+                (langs != null ? RamUsageEstimator.sizeOf(langs) : 0L) +
+                (values != null ? RamUsageEstimator.sizeOf(values) : 0L) +
+                (codes8 != null ? RamUsageEstimator.sizeOf(codes8) : 0L) +
+                (codes16 != null ? RamUsageEstimator.sizeOf(codes16) : 0L);
+    }
+
+    /**
+     * The number of stored probabilities of a row of the dense matrix: the number of languages with
+     * a probability, or all languages if at least half of the languages have a probability.
+     */
+    private int rowLength(int row) {
+        int offset = row * langsize;
+        int n = 0;
+        for (int i = 0; i < langsize; i++) {
+            if (probs[offset + i] != 0f) {
+                n++;
+            }
+        }
+        return n * 2 >= langsize ? langsize : n;
+    }
+
+    /**
+     * Expand the sparse rows into the dense matrix for adding more n-grams or probabilities.
+     */
+    private void inflate() {
+        if (isReadOnly()) {
+            throw new IllegalStateException("n-gram table is read only");
+        }
+        if (probs != null) {
+            return;
+        }
+        float[] p = new float[Math.max(size, 1) * langsize];
+        for (int row = 0; row < size; row++) {
+            for (int i = offsets[row]; i < offsets[row + 1]; i++) {
+                p[row * langsize + lang(i)] = values[i];
+            }
+        }
+        probs = p;
+        offsets = null;
+        values = null;
+        langs = null;
+    }
+
+    private float value(int i) {
+        if (values != null) {
+            return values[i];
+        }
+        if (codes8 != null) {
+            return Codebook8.CODEBOOK[codes8[i] & 0xff];
+        }
+        if (codes16 != null) {
+            return Codebook16.CODEBOOK[codes16[i] & 0xffff];
+        }
+        return mappedValues.get(i);
+    }
+
+    private static int encode(double prob, int bits) {
+        if (prob <= 0d) {
+            return 0;
+        }
+        int max = (1 << bits) - 1;
+        long code = 1L + Math.round((Math.log(prob) - MIN_LOG_PROBABILITY) / -MIN_LOG_PROBABILITY * (max - 1));
+        return (int) Math.max(1L, Math.min(max, code));
+    }
+
+    private int lang(int i) {
+        return (langs != null ? langs[i] : mappedLangs.get(i)) & 0xff;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldRows = rows;
+        keys = new long[capacity];
+        rows = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0L) {
+                int slot = hash(key) & mask;
+                while (keys[slot] != 0L) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                rows[slot] = oldRows[i];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        // finalization step of MurmurHash3
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb3fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static float[] codebook(int bits) {
+        int max = (1 << bits) - 1;
+        float[] codebook = new float[max + 1];
+        for (int code = 1; code <= max; code++) {
+            codebook[code] = (float) Math.exp(MIN_LOG_PROBABILITY * (max - code) / (max - 1));
+        }
+        return codebook;
+    }
+
+    /**
+     * The code book of the 8 bit codes, created on first use.
+     */
+    private static final class Codebook8 {
+
+        static final float[] CODEBOOK = codebook(8);
+    }
+
+    /**
+     * The code book of the 16 bit codes, created on first use.
+     */
+    private static final class Codebook16 {
+
+        static final float[] CODEBOOK = codebook(16);
+    }
+}
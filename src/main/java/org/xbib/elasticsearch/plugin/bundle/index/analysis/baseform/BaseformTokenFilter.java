@@ -6,21 +6,20 @@ import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.CharsRef;
 import org.xbib.elasticsearch.plugin.bundle.common.fsa.Dictionary;
 
 import java.io.IOException;
-import java.nio.charset.CharacterCodingException;
-import java.util.LinkedList;
 
 /**
  * Base form tokern filter.
  */
 public class BaseformTokenFilter extends TokenFilter {
 
-    private final LinkedList<String> tokens;
-
     private final Dictionary dictionary;
 
+    private final Dictionary.Lookup lookup;
+
     private final boolean respectKeywords;
 
     private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
@@ -31,23 +30,22 @@ public class BaseformTokenFilter extends TokenFilter {
 
     private AttributeSource.State current;
 
+    private CharsRef baseform;
+
     protected BaseformTokenFilter(TokenStream input, Dictionary dictionary, boolean respectKeywords) {
         super(input);
-        this.tokens = new LinkedList<>();
         this.dictionary = dictionary;
+        this.lookup = dictionary.newLookup();
         this.respectKeywords = respectKeywords;
     }
 
     @Override
     public final boolean incrementToken() throws IOException {
-        if (!tokens.isEmpty()) {
-            if (current == null) {
-                throw new IllegalArgumentException("current is null");
-            }
-            String token = tokens.removeFirst();
+        if (baseform != null) {
             restoreState(current);
-            termAtt.setEmpty().append(token);
+            termAtt.copyBuffer(baseform.chars, baseform.offset, baseform.length);
             posIncAtt.setPositionIncrement(0);
+            baseform = null;
             return true;
         }
         if (!input.incrementToken()) {
@@ -56,39 +54,32 @@ public class BaseformTokenFilter extends TokenFilter {
         if (respectKeywords && keywordAtt.isKeyword()) {
             return true;
         }
-        baseform();
-        if (!tokens.isEmpty()) {
+        // the base form is valid until the next lookup, which is after it has been emitted
+        CharsRef chars = lookup.lookup(termAtt.buffer(), 0, termAtt.length());
+        if (chars.length > 0) {
+            baseform = chars;
             current = captureState();
         }
         return true;
     }
 
-    private void baseform() throws CharacterCodingException {
-        CharSequence term = new String(termAtt.buffer(), 0, termAtt.length());
-        CharSequence s = dictionary.lookup(term);
-        if (s != null && s.length() > 0) {
-            tokens.add(s.toString());
-        }
-    }
-
     @Override
     public void reset() throws IOException {
         super.reset();
-        tokens.clear();
+        baseform = null;
         current = null;
     }
 
     @Override
     public boolean equals(Object object) {
         return object instanceof BaseformTokenFilter &&
-                tokens.equals(((BaseformTokenFilter)object).tokens) &&
                 dictionary.equals(((BaseformTokenFilter)object).dictionary) &&
                 respectKeywords == ((BaseformTokenFilter)object).respectKeywords;
     }
 
     @Override
     public int hashCode() {
-        return tokens.hashCode() ^ dictionary.hashCode() ^ Boolean.hashCode(respectKeywords);
+        return dictionary.hashCode() ^ Boolean.hashCode(respectKeywords);
     }
 
 }
@@ -9,23 +9,36 @@ import org.apache.lucene.util.AttributeSource;
 import org.xbib.elasticsearch.plugin.bundle.common.decompound.fst.FstDecompounder;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * Finite state decompound token filter.
+ *
+ * The words are split into all splits of the backtracking search, into the splits with the fewest words,
+ * see {@link FstDecompounder#splitShortest(CharSequence, int, int, int)}, or into the split with the highest
+ * score, see {@link FstDecompounder#splitBest(CharSequence, int, int)}, as given by the {@link SplitMode}.
+ * In the shortest and best split modes, a word whose best split is the word itself is not decompounded.
+ *
+ * The filter splits the words with its own {@link FstDecompounder.Session session}, and copies the words of the
+ * splits from the session buffer into the term attribute, without intermediate strings.
  */
 public class FstDecompoundTokenFilter extends TokenFilter {
 
-    private final LinkedList<String> tokens;
-
     private final FstDecompounder fstDecompounder;
 
+    private final FstDecompounder.Session session;
+
     private final boolean respectKeywords;
 
     private final boolean subwordsonly;
 
+    private final SplitMode splitMode;
+
+    private final int maxSplits;
+
+    private final int maxParts;
+
+    private final int maxStates;
+
     private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
 
     private final KeywordAttribute keywordAtt = addAttribute(KeywordAttribute.class);
@@ -34,24 +47,43 @@ public class FstDecompoundTokenFilter extends TokenFilter {
 
     private AttributeSource.State current;
 
+    /**
+     * The number of the next word of the session to emit.
+     */
+    private int part;
+
+    /**
+     * The number of words of the session to emit.
+     */
+    private int parts;
+
     protected FstDecompoundTokenFilter(TokenStream input, FstDecompounder fstDecompounder,
                                        boolean respectKeywords, boolean subwordsonly) {
+        this(input, fstDecompounder, respectKeywords, subwordsonly, SplitMode.ALL, 0, 0, 0);
+    }
+
+    protected FstDecompoundTokenFilter(TokenStream input, FstDecompounder fstDecompounder,
+                                       boolean respectKeywords, boolean subwordsonly,
+                                       SplitMode splitMode, int maxSplits, int maxParts, int maxStates) {
         super(input);
-        this.tokens = new LinkedList<>();
         this.fstDecompounder = fstDecompounder;
+        this.session = fstDecompounder.newSession();
         this.respectKeywords = respectKeywords;
         this.subwordsonly = subwordsonly;
+        this.splitMode = splitMode;
+        this.maxSplits = maxSplits;
+        this.maxParts = maxParts;
+        this.maxStates = maxStates;
     }
 
     @Override
     public final boolean incrementToken() throws IOException {
-        if (!tokens.isEmpty()) {
+        if (part < parts) {
             if (current == null) {
                 throw new IllegalArgumentException("current is null");
             }
-            String token = tokens.removeFirst();
             restoreState(current);
-            termAtt.setEmpty().append(token);
+            copyPart();
             if (!subwordsonly) {
                 posIncAtt.setPositionIncrement(0);
             }
@@ -64,37 +96,56 @@ public class FstDecompoundTokenFilter extends TokenFilter {
             return true;
         }
         if (!decompound()) {
-            current = captureState();
-            if (subwordsonly) {
-                String token = tokens.removeFirst();
-                restoreState(current);
-                termAtt.setEmpty().append(token);
-                return true;
-            }
+            // the word is not split, it is emitted once as it is
+            return true;
+        }
+        current = captureState();
+        if (subwordsonly) {
+            copyPart();
         }
         return true;
     }
 
+    /**
+     * Split the word of the term attribute.
+     *
+     * @return true if the word is split, false if the session has no words for it
+     */
     protected boolean decompound() {
-        String term = new String(termAtt.buffer(), 0, termAtt.length());
-        tokens.addAll(doDecompound(term));
-        return tokens.isEmpty();
+        switch (splitMode) {
+            case SHORTEST:
+                session.splitShortest(termAtt.buffer(), 0, termAtt.length(), maxSplits, maxParts, maxStates);
+                break;
+            case BEST:
+                session.splitBest(termAtt.buffer(), 0, termAtt.length(), maxParts, maxStates);
+                break;
+            default:
+                session.split(termAtt.buffer(), 0, termAtt.length());
+                break;
+        }
+        part = 0;
+        parts = session.parts();
+        if (splitMode != SplitMode.ALL && session.splits() > 0 && session.splitEnd(0) == 1) {
+            // the best split is the whole word of the lexicon, the word is not decompounded
+            parts = 0;
+        }
+        return parts > 0;
     }
 
-    private List<String> doDecompound(String term) {
-        List<String> list = new LinkedList<>();
-        for (String suggestions : fstDecompounder.decompound(term)) {
-            for (String suggestion : suggestions.split(",")) {
-                list.addAll(Arrays.asList(suggestion.split("\\.")));
-            }
-        }
-        return list;
+    /**
+     * Copy the next word of the session into the term attribute.
+     */
+    private void copyPart() {
+        int start = session.start(part);
+        termAtt.copyBuffer(session.buffer(), start, session.end(part) - start);
+        part++;
     }
 
     @Override
     public void reset() throws IOException {
         super.reset();
-        tokens.clear();
+        part = 0;
+        parts = 0;
         current = null;
     }
 
@@ -108,4 +159,22 @@ public class FstDecompoundTokenFilter extends TokenFilter {
     public int hashCode() {
         return fstDecompounder.hashCode();
     }
+
+    /**
+     * The split modes.
+     */
+    public enum SplitMode {
+        /**
+         * All splits of the backtracking search.
+         */
+        ALL,
+        /**
+         * The splits with the fewest words.
+         */
+        SHORTEST,
+        /**
+         * The split with the highest score of the word weights.
+         */
+        BEST
+    }
 }
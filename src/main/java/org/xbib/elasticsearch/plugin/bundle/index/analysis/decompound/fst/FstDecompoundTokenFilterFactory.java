@@ -8,10 +8,23 @@ import org.elasticsearch.index.analysis.AbstractTokenFilterFactory;
 import org.xbib.elasticsearch.plugin.bundle.common.decompound.fst.FstDecompounder;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Finite state decompound token filter factory.
+ *
+ * With {@code split_mode: shortest}, the words are split by dynamic programming into at most {@code max_splits}
+ * splits with the fewest words, with at most {@code max_parts} words, and at most {@code max_states} visited
+ * FST arcs per word. With {@code split_mode: best}, only the split with the highest geometric mean of the word
+ * weights is emitted, if the FST is compiled with weights, otherwise the split with the fewest words.
+ * With {@code split_mode: all}, the default, all splits of the backtracking search are emitted.
+ *
+ * The {@code fst} setting is a file in the configuration directory, e.g. a custom lexicon compiled by
+ * {@link org.xbib.elasticsearch.plugin.bundle.common.fst.FstCompiler}, or else a class path resource.
  */
 public class FstDecompoundTokenFilterFactory extends AbstractTokenFilterFactory {
 
@@ -21,24 +34,51 @@ public class FstDecompoundTokenFilterFactory extends AbstractTokenFilterFactory
 
     private final Boolean subwordsonly;
 
+    private final FstDecompoundTokenFilter.SplitMode splitMode;
+
+    private final int maxSplits;
+
+    private final int maxParts;
+
+    private final int maxStates;
+
     public FstDecompoundTokenFilterFactory(IndexSettings indexSettings, Environment environment, String name,
                                            Settings settings) {
         super(indexSettings, name, settings);
-        this.decompounder = createDecompounder(settings);
+        this.decompounder = createDecompounder(environment, settings);
         this.respectKeywords = settings.getAsBoolean("respect_keywords", false);
         this.subwordsonly = settings.getAsBoolean("subwords_only", false);
+        String mode = settings.get("split_mode", "all");
+        try {
+            this.splitMode = FstDecompoundTokenFilter.SplitMode.valueOf(mode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown split_mode: " + mode, e);
+        }
+        this.maxSplits = settings.getAsInt("max_splits", 1);
+        if (maxSplits < 1) {
+            throw new IllegalArgumentException("max_splits must be greater than 0: " + maxSplits);
+        }
+        this.maxParts = settings.getAsInt("max_parts", 8);
+        this.maxStates = settings.getAsInt("max_states", 10000);
     }
 
     @Override
     public TokenStream create(TokenStream tokenStream) {
-        return new FstDecompoundTokenFilter(tokenStream, decompounder, respectKeywords, subwordsonly);
+        return new FstDecompoundTokenFilter(tokenStream, decompounder, respectKeywords, subwordsonly,
+                splitMode, maxSplits, maxParts, maxStates);
     }
 
-    private FstDecompounder createDecompounder(Settings settings) {
+    private FstDecompounder createDecompounder(Environment environment, Settings settings) {
         try {
             String words = settings.get("fst", "words.fst");
             List<String> glueMorphs = settings.getAsList("glue_morphs");
-            return new FstDecompounder(getClass().getResourceAsStream(words), glueMorphs);
+            Path path = environment.configFile().resolve(words);
+            InputStream inputStream = Files.isRegularFile(path) ?
+                    Files.newInputStream(path) : getClass().getResourceAsStream(words);
+            if (inputStream == null) {
+                throw new IOException("fst not found: " + words);
+            }
+            return new FstDecompounder(inputStream, glueMorphs);
         } catch (IOException e) {
             throw new IllegalArgumentException("fst decompounder resources in settings not found: " + settings, e);
         }
@@ -9,19 +9,19 @@ import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.util.AttributeSource;
 import org.apache.lucene.util.BytesRef;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.TinyLfuCache;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.Decomposition;
 import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.Decompounder;
 
 import java.io.IOException;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Decompound token filter.
  */
 public class DecompoundTokenFilter extends TokenFilter {
 
-    private final LinkedList<DecompoundToken> tokens;
+    private final Decomposition decomposition;
 
     private final Decompounder decomp;
 
@@ -31,7 +31,7 @@ public class DecompoundTokenFilter extends TokenFilter {
 
     private final boolean usePayload;
 
-    private final Map<String, List<String>> cache;
+    private final TinyLfuCache<String, List<String>> cache;
 
     private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
 
@@ -45,14 +45,20 @@ public class DecompoundTokenFilter extends TokenFilter {
 
     private AttributeSource.State current;
 
+    private int next;
+
+    private int startOffset;
+
+    private int endOffset;
+
     private static final byte TOKEN_TYPE = 1;
 
     private static final byte DECOMP_TOKEN_TYPE = 2;
 
     protected DecompoundTokenFilter(TokenStream input, Decompounder decomp, boolean respectKeywords,
-                                    boolean subwordsonly, boolean usePayload, Map<String, List<String>> cache) {
+                                    boolean subwordsonly, boolean usePayload, TinyLfuCache<String, List<String>> cache) {
         super(input);
-        this.tokens = new LinkedList<>();
+        this.decomposition = new Decomposition();
         this.decomp = decomp;
         this.respectKeywords = respectKeywords;
         this.subwordsonly = subwordsonly;
@@ -62,20 +68,15 @@ public class DecompoundTokenFilter extends TokenFilter {
 
     @Override
     public final boolean incrementToken() throws IOException {
-        if (!tokens.isEmpty()) {
+        if (next < decomposition.size()) {
             if (current == null) {
                 throw new IllegalArgumentException("current is null");
             }
-            DecompoundToken token = tokens.removeFirst();
             restoreState(current);
-            termAtt.setEmpty().append(token.value);
-            offsetAtt.setOffset(token.startOffset, token.endOffset);
+            setSubword();
             if (!subwordsonly) {
                 posIncAtt.setPositionIncrement(0);
             }
-            if (usePayload) {
-                addPayload(DECOMP_TOKEN_TYPE);
-            }
             return true;
         }
         if (!input.incrementToken()) {
@@ -87,31 +88,38 @@ public class DecompoundTokenFilter extends TokenFilter {
             }
             return true;
         }
-        if (!decompound()) {
-            current = captureState();
-            if (subwordsonly) {
-                DecompoundToken token = tokens.removeFirst();
-                restoreState(current);
-                termAtt.setEmpty().append(token.value);
-                offsetAtt.setOffset(token.startOffset, token.endOffset);
-                if (usePayload) {
-                    addPayload(DECOMP_TOKEN_TYPE);
-                }
-                return true;
-            }
+        decompound();
+        current = captureState();
+        if (subwordsonly) {
+            restoreState(current);
+            setSubword();
         }
         return true;
     }
 
-    protected boolean decompound() {
-        String term = new String(termAtt.buffer(), 0, termAtt.length());
-        List<String> list = (cache != null ?
-                cache.computeIfAbsent(term, decomp::decompound) : decomp.decompound(term));
-        for (String string : list) {
-            DecompoundToken token = new DecompoundToken(string, termAtt, offsetAtt);
-            tokens.add(token);
+    protected void decompound() {
+        if (cache != null) {
+            String term = new String(termAtt.buffer(), 0, termAtt.length());
+            decomposition.clear();
+            for (String string : cache.computeIfAbsent(term, decomp::decompound)) {
+                decomposition.add(string);
+            }
+        } else {
+            decomp.decompound(termAtt.buffer(), 0, termAtt.length(), decomposition);
+        }
+        next = 0;
+        startOffset = offsetAtt.startOffset();
+        endOffset = offsetAtt.endOffset();
+    }
+
+    private void setSubword() {
+        termAtt.copyBuffer(decomposition.chars(), decomposition.start(next),
+                decomposition.end(next) - decomposition.start(next));
+        offsetAtt.setOffset(startOffset, endOffset);
+        if (usePayload) {
+            addPayload(DECOMP_TOKEN_TYPE);
         }
-        return tokens.isEmpty();
+        next++;
     }
 
     private void addPayload(byte tokenType) {
@@ -137,37 +145,20 @@ public class DecompoundTokenFilter extends TokenFilter {
     @Override
     public void reset() throws IOException {
         super.reset();
-        tokens.clear();
+        decomposition.clear();
+        next = 0;
         current = null;
     }
 
     @Override
     public boolean equals(Object object) {
         return object instanceof DecompoundTokenFilter &&
-                tokens.equals(((DecompoundTokenFilter)object).tokens) &&
                 respectKeywords == ((DecompoundTokenFilter)object).respectKeywords &&
                 subwordsonly == ((DecompoundTokenFilter)object).subwordsonly;
     }
 
     @Override
     public int hashCode() {
-        return tokens.hashCode() ^ Boolean.hashCode(respectKeywords) ^ Boolean.hashCode(subwordsonly);
-    }
-
-    class DecompoundToken {
-        final CharSequence value;
-        final int startOffset;
-        final int endOffset;
-
-        DecompoundToken(CharSequence value, CharTermAttribute termAttribute, OffsetAttribute offsetAttribute) {
-            this.value = value;
-            if (offsetAttribute.endOffset() - offsetAttribute.startOffset() != termAttribute.length()) {
-                this.startOffset = offsetAttribute.startOffset();
-                this.endOffset = offsetAttribute.endOffset();
-            } else {
-                this.startOffset = offsetAttribute.startOffset();
-                this.endOffset = offsetAttribute.startOffset() + termAttribute.length();
-            }
-        }
+        return Boolean.hashCode(respectKeywords) ^ Boolean.hashCode(subwordsonly);
     }
 }
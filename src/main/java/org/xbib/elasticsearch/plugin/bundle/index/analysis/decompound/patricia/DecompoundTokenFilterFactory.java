@@ -2,24 +2,30 @@ package org.xbib.elasticsearch.plugin.bundle.index.analysis.decompound.patricia;
 
 import org.apache.lucene.analysis.TokenStream;
 import org.elasticsearch.ElasticsearchException;
-import org.elasticsearch.common.inject.assistedinject.Assisted;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.analysis.AbstractTokenFilterFactory;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.TinyLfuCache;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.DecompoundCaches;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.DecompoundModels;
 import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.Decompounder;
-import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.LFUCache;
 
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Decompound token filter factory.
+ *
+ * The decompounder, and its tries, are shared with all decompound token filters of the node which have the same
+ * configuration, see {@link DecompoundModels}.
+ *
+ * If {@code use_cache} is enabled, the decompounded words are cached in the cache of the node which belongs to
+ * the decompounder configuration of the filter, see {@link DecompoundCaches}. The former setting
+ * {@code cache_eviction_factor} is ignored.
  */
 public class DecompoundTokenFilterFactory extends AbstractTokenFilterFactory {
 
-    private static Map<String, List<String>> cache;
+    private final TinyLfuCache<String, List<String>> cache;
 
     private final Decompounder decompounder;
 
@@ -30,14 +36,16 @@ public class DecompoundTokenFilterFactory extends AbstractTokenFilterFactory {
     private final Boolean usePayload;
 
     public DecompoundTokenFilterFactory(IndexSettings indexSettings, Environment environment,
-                                        @Assisted String name, @Assisted Settings settings) {
+                                        String name, Settings settings, DecompoundModels models,
+                                        DecompoundCaches caches) {
         super(indexSettings, name, settings);
-        this.decompounder = createDecompounder(settings);
+        this.decompounder = createDecompounder(models, settings);
         this.respectKeywords = settings.getAsBoolean("respect_keywords", false);
         this.subwordsonly = settings.getAsBoolean("subwords_only", false);
         this.usePayload = settings.getAsBoolean("use_payload", false);
-        if (cache == null && settings.getAsBoolean("use_cache", false)) {
-            cache = createCache(settings);
+        this.cache = settings.getAsBoolean("use_cache", false) ? caches.get(settings) : null;
+        if (settings.get("cache_eviction_factor") != null) {
+            deprecationLogger.deprecated("[cache_eviction_factor] is ignored, the decompound cache evicts by frequency");
         }
     }
 
@@ -47,24 +55,11 @@ public class DecompoundTokenFilterFactory extends AbstractTokenFilterFactory {
                 usePayload, cache);
     }
 
-    private Decompounder createDecompounder(Settings settings) {
+    private static Decompounder createDecompounder(DecompoundModels models, Settings settings) {
         try {
-            String forward = settings.get("forward", "kompVVic.tree");
-            String backward = settings.get("backward", "kompVHic.tree");
-            String reduce = settings.get("reduce", "grfExt.tree");
-            double threshold = settings.getAsDouble("threshold", 0.51d);
-            return new Decompounder(getClass().getResourceAsStream(forward),
-                    getClass().getResourceAsStream(backward),
-                    getClass().getResourceAsStream(reduce),
-                    threshold);
+            return models.get(settings);
         } catch (Exception e) {
             throw new ElasticsearchException("decompounder resources in settings not found: " + settings, e);
         }
     }
-
-    private Map<String, List<String>> createCache(Settings settings) {
-        int cachesize = settings.getAsInt("cache_size", 100000);
-        float evictionfactor = settings.getAsFloat("cache_eviction_factor", 0.90f);
-        return Collections.synchronizedMap(new LFUCache<>(cachesize, evictionfactor));
-    }
 }
@@ -6,21 +6,20 @@ import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.CharsRef;
 import org.xbib.elasticsearch.plugin.bundle.common.fsa.Dictionary;
 
 import java.io.IOException;
-import java.nio.charset.CharacterCodingException;
-import java.util.LinkedList;
 
 /**
  * Lemmative token filter.
  */
 public class LemmatizeTokenFilter extends TokenFilter {
 
-    private final LinkedList<String> tokens;
-
     private final Dictionary dictionary;
 
+    private final Dictionary.Lookup lookup;
+
     private final boolean respectKeywords;
 
     private final boolean lemmaOnly;
@@ -33,27 +32,24 @@ public class LemmatizeTokenFilter extends TokenFilter {
 
     private AttributeSource.State current;
 
+    private CharsRef lemma;
+
     protected LemmatizeTokenFilter(TokenStream input, Dictionary dictionary,
                                    boolean respectKeywords, boolean lemmaOnly) {
         super(input);
-        this.tokens = new LinkedList<>();
         this.dictionary = dictionary;
+        this.lookup = dictionary.newLookup();
         this.respectKeywords = respectKeywords;
         this.lemmaOnly = lemmaOnly;
     }
 
     @Override
     public final boolean incrementToken() throws IOException {
-        if (!tokens.isEmpty()) {
-            if (current == null) {
-                throw new IllegalArgumentException("current is null");
-            }
-            String token = tokens.removeFirst();
+        if (lemma != null) {
             restoreState(current);
-            termAtt.setEmpty().append(token);
-            if (!lemmaOnly) {
-                posIncAtt.setPositionIncrement(0);
-            }
+            termAtt.copyBuffer(lemma.chars, lemma.offset, lemma.length);
+            posIncAtt.setPositionIncrement(0);
+            lemma = null;
             return true;
         }
         if (!input.incrementToken()) {
@@ -62,38 +58,26 @@ public class LemmatizeTokenFilter extends TokenFilter {
         if (respectKeywords && keywordAtt.isKeyword()) {
             return true;
         }
-        if (!expand()) {
+        if (lemmaOnly) {
+            lookup.lookup(termAtt);
+        } else {
+            // the lemma is valid until the next lookup, which is after it has been emitted
+            lemma = lookup.lookup(termAtt.buffer(), 0, termAtt.length());
             current = captureState();
-            if (lemmaOnly) {
-                String token = tokens.removeFirst();
-                restoreState(current);
-                termAtt.setEmpty().append(token);
-                return true;
-            }
         }
         return true;
     }
 
-    private boolean expand() throws CharacterCodingException {
-        String term = new String(termAtt.buffer(), 0, termAtt.length());
-        CharSequence s = dictionary.lookup(term);
-        if (s != null) {
-            tokens.add(s.toString());
-        }
-        return tokens.isEmpty();
-    }
-
     @Override
     public void reset() throws IOException {
         super.reset();
-        tokens.clear();
+        lemma = null;
         current = null;
     }
 
     @Override
     public boolean equals(Object object) {
         return object instanceof LemmatizeTokenFilter &&
-                tokens.equals(((LemmatizeTokenFilter)object).tokens) &&
                 dictionary.equals(((LemmatizeTokenFilter)object).dictionary) &&
                 respectKeywords == ((LemmatizeTokenFilter)object).respectKeywords &&
                 lemmaOnly == ((LemmatizeTokenFilter)object).lemmaOnly;
@@ -101,7 +85,6 @@ public class LemmatizeTokenFilter extends TokenFilter {
 
     @Override
     public int hashCode() {
-        return tokens.hashCode() ^ dictionary.hashCode()
-                ^ Boolean.hashCode(respectKeywords) ^ Boolean.hashCode(lemmaOnly);
+        return dictionary.hashCode() ^ Boolean.hashCode(respectKeywords) ^ Boolean.hashCode(lemmaOnly);
     }
 }
@@ -1,6 +1,5 @@
 package org.xbib.elasticsearch.plugin.bundle.index.mapper.langdetect;
 
-import com.fasterxml.jackson.core.Base64Variants;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.index.IndexableField;
 import org.elasticsearch.common.lucene.Lucene;
@@ -16,12 +15,17 @@ import org.elasticsearch.index.mapper.MapperParsingException;
 import org.elasticsearch.index.mapper.ParseContext;
 import org.elasticsearch.index.mapper.TextFieldMapper;
 import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectCache;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectServices;
 import org.xbib.elasticsearch.plugin.bundle.common.langdetect.Language;
 import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LanguageDetectionException;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.nio.CharBuffer;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -30,6 +34,9 @@ import java.util.Map;
 
 /**
  * Language detection field mapper.
+ *
+ * The language detection service of a mapper is shared with all other mappers and actions of the node
+ * which have the same effective language detection settings, see {@link LangdetectServices}.
  */
 public class LangdetectMapper extends FieldMapper {
 
@@ -46,10 +53,13 @@ public class LangdetectMapper extends FieldMapper {
         FIELD_TYPE.freeze();
     }
 
+    private final Settings langdetectSettings;
+
     private final LangdetectService langdetectService;
 
+    private final LangdetectCache queryCache;
+
     private final LanguageTo languageTo;
-    private ParseContext context;
 
     public LangdetectMapper(String simpleName,
                             MappedFieldType fieldType,
@@ -58,12 +68,31 @@ public class LangdetectMapper extends FieldMapper {
                             MultiFields multiFields,
                             CopyTo copyTo,
                             LanguageTo languageTo,
-                            LangdetectService langdetectService) {
+                            Settings langdetectSettings,
+                            LangdetectService langdetectService,
+                            LangdetectCache queryCache) {
         super(simpleName, fieldType, defaultFieldType, indexSettings, multiFields, copyTo);
+        this.langdetectSettings = langdetectSettings;
         this.langdetectService = langdetectService;
+        this.queryCache = queryCache;
         this.languageTo = languageTo;
     }
 
+    public LangdetectService getLangdetectService() {
+        return langdetectService;
+    }
+
+    /**
+     * @return the node-level cache for the detected languages of query strings
+     */
+    public LangdetectCache getQueryCache() {
+        return queryCache;
+    }
+
+    public LanguageTo getLanguageTo() {
+        return languageTo;
+    }
+
     @Override
     protected String contentType() {
         return CONTENT_TYPE;
@@ -71,41 +100,43 @@ public class LangdetectMapper extends FieldMapper {
 
     @Override
     protected void parseCreateField(ParseContext context, List<IndexableField> fields) throws IOException {
-        String value;
+        CharSequence value;
         XContentParser parser = context.parser();
         if (context.externalValueSet()) {
             value = context.externalValue().toString();
+        } else if (parser.currentToken() == XContentParser.Token.VALUE_STRING) {
+            // view on the buffer of the parser, the value is not copied into a string
+            value = CharBuffer.wrap(parser.textCharacters(), parser.textOffset(), parser.textLength());
         } else {
-            value = context.parser().textOrNull();
+            value = parser.textOrNull();
         }
         if (value == null) {
             return;
         }
-        boolean isBinary = langdetectService.getSettings().getAsBoolean("binary", false);
+        boolean isBinary = langdetectSettings.getAsBoolean("binary", false);
+        List<Language> langs = null;
         if (isBinary) {
             try {
-                byte[] b = parser.binaryValue();
-                if (b != null && b.length > 0) {
-                    value = new String(b, StandardCharsets.UTF_8);
-                }
-            } catch (Exception e) {
-                // Try to decode manually because of
-                // com.fasterxml.jackson.core.JsonParseException: Current token (VALUE_STRING) not VALUE_EMBEDDED_OBJECT,
-                // can not access as binary
-                try {
-                    byte[] b = Base64Variants.getDefaultVariant().decode(parser.text());
+                if (!context.externalValueSet() && parser.currentToken() == XContentParser.Token.VALUE_EMBEDDED_OBJECT) {
+                    byte[] b = parser.binaryValue();
                     if (b != null && b.length > 0) {
-                        value = new String(b, StandardCharsets.UTF_8);
+                        langs = langdetectService.detectAll(new ByteArrayInputStream(b), b.length);
                     }
-                } catch (Exception e2) {
-                    // if clear text, this may fail with IllegalArgumentException[Illegal white space character (code 0x20)
-                    // ignore exception
+                } else if (isBase64(value)) {
+                    // decode while reading, so only the part of the value which is used for detection is decoded
+                    langs = langdetectService.detectAll(Base64.getMimeDecoder().wrap(new CharSequenceInputStream(value)),
+                            value.length() / 4 * 3);
                 }
+            } catch (Exception e) {
+                // ignore exception, detect the value as clear text
+                langs = null;
             }
         }
         try {
             createFieldNamesField(context, fields);
-            List<Language> langs = langdetectService.detectAll(value);
+            if (langs == null) {
+                langs = langdetectService.detectAll(value);
+            }
             for (Language lang : langs) {
                 Field field = new Field(fieldType().name(), lang.getLanguage(), fieldType());
                 fields.add(field);
@@ -167,7 +198,7 @@ public class LangdetectMapper extends FieldMapper {
     @Override
     protected void doXContentBody(XContentBuilder builder, boolean includeDefaults, Params params) throws IOException {
         super.doXContentBody(builder, includeDefaults, params);
-        langdetectService.getSettings().toXContent(builder, params);
+        langdetectSettings.toXContent(builder, params);
         languageTo.toXContent(builder, params);
     }
 
@@ -210,6 +241,8 @@ public class LangdetectMapper extends FieldMapper {
 
         protected Settings.Builder settingsBuilder = Settings.builder();
 
+        protected LangdetectServices services;
+
         public Builder(String name) {
             super(name, FIELD_TYPE, FIELD_TYPE);
             this.builder = this;
@@ -255,6 +288,11 @@ public class LangdetectMapper extends FieldMapper {
             return this;
         }
 
+        public Builder algorithm(String algorithm) {
+            settingsBuilder.put("algorithm", algorithm);
+            return this;
+        }
+
         public Builder pattern(String pattern) {
             settingsBuilder.put("pattern", pattern);
             return this;
@@ -265,6 +303,41 @@ public class LangdetectMapper extends FieldMapper {
             return this;
         }
 
+        public Builder maxChars(int maxChars) {
+            settingsBuilder.put("max_chars", maxChars);
+            return this;
+        }
+
+        public Builder sampleWindows(int sampleWindows) {
+            settingsBuilder.put("sample_windows", sampleWindows);
+            return this;
+        }
+
+        public Builder minNGrams(int minNGrams) {
+            settingsBuilder.put("min_ngrams", minNGrams);
+            return this;
+        }
+
+        public Builder adaptive(boolean adaptive) {
+            settingsBuilder.put("adaptive", adaptive);
+            return this;
+        }
+
+        public Builder adaptiveNGrams(int adaptiveNGrams) {
+            settingsBuilder.put("adaptive_ngrams", adaptiveNGrams);
+            return this;
+        }
+
+        public Builder adaptiveShortTrials(int adaptiveShortTrials) {
+            settingsBuilder.put("adaptive_short_trials", adaptiveShortTrials);
+            return this;
+        }
+
+        public Builder adaptiveShortIterationLimit(int adaptiveShortIterationLimit) {
+            settingsBuilder.put("adaptive_short_iteration_limit", adaptiveShortIterationLimit);
+            return this;
+        }
+
         public Builder binary(boolean binary) {
             settingsBuilder.put("binary", binary);
             return this;
@@ -293,10 +366,19 @@ public class LangdetectMapper extends FieldMapper {
             return this;
         }
 
+        public Builder services(LangdetectServices services) {
+            this.services = services;
+            return this;
+        }
+
         @Override
         public LangdetectMapper build(BuilderContext context) {
             setupFieldType(context);
-            LangdetectService service = new LangdetectService(settingsBuilder.build());
+            Settings settings = settingsBuilder.build();
+            if (services == null) {
+                throw new IllegalStateException("no language detection services for langdetect field [" + name + "]");
+            }
+            LangdetectService service = services.get(settings, null);
             return new LangdetectMapper(name,
                     fieldType(),
                     defaultFieldType,
@@ -304,15 +386,32 @@ public class LangdetectMapper extends FieldMapper {
                     multiFieldsBuilder.build(this, context),
                     copyTo,
                     languageTo,
-                    service);
+                    settings,
+                    service,
+                    services.getQueryCache());
         }
     }
 
     public static class TypeParser implements Mapper.TypeParser {
 
+        private final LangdetectServices services;
+
+        /**
+         * Create a type parser of langdetect fields.
+         *
+         * @param services the node registry of language detection services, which shares the services and
+         *                 their models between all langdetect fields of the node
+         */
+        public TypeParser(LangdetectServices services) {
+            if (services == null) {
+                throw new IllegalStateException("langdetect fields require the language detection services of the node");
+            }
+            this.services = services;
+        }
+
         @Override
         public Mapper.Builder<?, ?> parse(String name, Map<String, Object> mapping, ParserContext parserContext) {
-            Builder builder = new Builder(name);
+            Builder builder = new Builder(name).services(services);
             Iterator<Map.Entry<String, Object>> iterator = mapping.entrySet().iterator();
             while (iterator.hasNext()) {
                 Map.Entry<String, Object> entry = iterator.next();
@@ -372,6 +471,10 @@ public class LangdetectMapper extends FieldMapper {
                         builder.baseFreq(XContentMapValues.nodeIntegerValue(fieldNode));
                         iterator.remove();
                         break;
+                    case "algorithm":
+                        builder.algorithm(XContentMapValues.nodeStringValue(fieldNode, null));
+                        iterator.remove();
+                        break;
                     case "pattern":
                         builder.pattern(XContentMapValues.nodeStringValue(fieldNode, null));
                         iterator.remove();
@@ -380,6 +483,34 @@ public class LangdetectMapper extends FieldMapper {
                         builder.max(XContentMapValues.nodeIntegerValue(fieldNode));
                         iterator.remove();
                         break;
+                    case "max_chars":
+                        builder.maxChars(XContentMapValues.nodeIntegerValue(fieldNode));
+                        iterator.remove();
+                        break;
+                    case "sample_windows":
+                        builder.sampleWindows(XContentMapValues.nodeIntegerValue(fieldNode));
+                        iterator.remove();
+                        break;
+                    case "min_ngrams":
+                        builder.minNGrams(XContentMapValues.nodeIntegerValue(fieldNode));
+                        iterator.remove();
+                        break;
+                    case "adaptive":
+                        builder.adaptive(XContentMapValues.nodeBooleanValue(fieldNode));
+                        iterator.remove();
+                        break;
+                    case "adaptive_ngrams":
+                        builder.adaptiveNGrams(XContentMapValues.nodeIntegerValue(fieldNode));
+                        iterator.remove();
+                        break;
+                    case "adaptive_short_trials":
+                        builder.adaptiveShortTrials(XContentMapValues.nodeIntegerValue(fieldNode));
+                        iterator.remove();
+                        break;
+                    case "adaptive_short_iteration_limit":
+                        builder.adaptiveShortIterationLimit(XContentMapValues.nodeIntegerValue(fieldNode));
+                        iterator.remove();
+                        break;
                     case "binary":
                         builder.binary(XContentMapValues.nodeBooleanValue(fieldNode));
                         iterator.remove();
@@ -411,6 +542,63 @@ public class LangdetectMapper extends FieldMapper {
         }
     }
 
+    /**
+     * Check if a value is Base64 encoded before it is decoded while reading, because the decoding stops at the
+     * {@code max_chars} limit and would not see illegal characters after it. As with the Jackson Base64 decoder,
+     * white space is allowed between groups of four characters, and the last group may be padded.
+     * A value which is not Base64 encoded, such as clear text, is detected as it is.
+     *
+     * @param value the value
+     * @return true if the value is Base64 encoded
+     */
+    private static boolean isBase64(CharSequence value) {
+        int n = 0;
+        int padding = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch <= ' ') {
+                if (n % 4 != 0) {
+                    return false;
+                }
+            } else if (ch == '=') {
+                if (n % 4 < 2 || ++padding > 2) {
+                    return false;
+                }
+                n++;
+            } else if (padding == 0 && (ch >= 'A' && ch <= 'Z' || ch >= 'a' && ch <= 'z' || ch >= '0' && ch <= '9' ||
+                    ch == '+' || ch == '/')) {
+                n++;
+            } else {
+                return false;
+            }
+        }
+        return n > 0 && n % 4 == 0;
+    }
+
+    /**
+     * An input stream of the characters of a Base64 encoded value. Characters outside of the
+     * ASCII range are passed as an illegal byte, so the decoder rejects them.
+     */
+    private static class CharSequenceInputStream extends InputStream {
+
+        private final CharSequence value;
+
+        private int pos;
+
+        CharSequenceInputStream(CharSequence value) {
+            this.value = value;
+        }
+
+        @Override
+        public int read() {
+            if (pos >= value.length()) {
+                return -1;
+            }
+            char ch = value.charAt(pos++);
+            return ch < 0x80 ? ch : 0xff;
+        }
+    }
+
     public static class LanguageTo {
 
         private final Map<String, Object> languageToFields;
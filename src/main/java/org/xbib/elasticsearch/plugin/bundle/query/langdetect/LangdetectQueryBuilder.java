@@ -0,0 +1,234 @@
+package org.xbib.elasticsearch.plugin.bundle.query.langdetect;
+
+import org.apache.lucene.search.Query;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.query.AbstractQueryBuilder;
+import org.elasticsearch.index.query.MultiMatchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryRewriteContext;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.query.QueryShardException;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.Language;
+import org.xbib.elasticsearch.plugin.bundle.index.mapper.langdetect.LangdetectMapper;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A query which is routed to the language fields of a {@code langdetect} field.
+ *
+ * The languages of the query string are detected with the language detection service of the
+ * {@code langdetect} field, and the query string is matched against the {@code language_to} fields of the
+ * top detected languages only. If none of these languages has a field, the query string is matched against
+ * all {@code language_to} fields. The query is rewritten on the shard into a {@code multi_match} query.
+ *
+ * The detected languages of recent query strings are kept in the node-level query cache, which is sized by
+ * {@code plugins.xbib.langdetect.query_cache.size}.
+ */
+public class LangdetectQueryBuilder extends AbstractQueryBuilder<LangdetectQueryBuilder> {
+
+    public static final String NAME = "langdetect_match";
+
+    private static final ParseField QUERY_FIELD = new ParseField("query");
+
+    private static final ParseField FIELD_FIELD = new ParseField("field");
+
+    private static final ParseField TOP_FIELD = new ParseField("top");
+
+    private final String query;
+
+    private final String field;
+
+    private int top = 1;
+
+    /**
+     * Create a language routing query.
+     *
+     * @param query the query string
+     * @param field the name of the {@code langdetect} field
+     */
+    public LangdetectQueryBuilder(String query, String field) {
+        if (query == null) {
+            throw new IllegalArgumentException("[" + NAME + "] requires query value");
+        }
+        if (field == null) {
+            throw new IllegalArgumentException("[" + NAME + "] requires field value");
+        }
+        this.query = query;
+        this.field = field;
+    }
+
+    public LangdetectQueryBuilder(StreamInput in) throws IOException {
+        super(in);
+        query = in.readString();
+        field = in.readString();
+        top = in.readVInt();
+    }
+
+    @Override
+    public String getWriteableName() {
+        return NAME;
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        out.writeString(query);
+        out.writeString(field);
+        out.writeVInt(top);
+    }
+
+    public String query() {
+        return query;
+    }
+
+    public String field() {
+        return field;
+    }
+
+    /**
+     * Set the number of top detected languages whose fields are queried.
+     *
+     * @param top the number of languages, at least 1
+     * @return this query
+     */
+    public LangdetectQueryBuilder top(int top) {
+        if (top < 1) {
+            throw new IllegalArgumentException("[" + NAME + "] requires top to be at least 1");
+        }
+        this.top = top;
+        return this;
+    }
+
+    public int top() {
+        return top;
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(NAME);
+        builder.field(QUERY_FIELD.getPreferredName(), query);
+        builder.field(FIELD_FIELD.getPreferredName(), field);
+        builder.field(TOP_FIELD.getPreferredName(), top);
+        printBoostAndQueryName(builder);
+        builder.endObject();
+    }
+
+    @Override
+    protected QueryBuilder doRewrite(QueryRewriteContext queryRewriteContext) throws IOException {
+        QueryShardContext context = queryRewriteContext.convertToShardContext();
+        if (context == null) {
+            // the mapping of the field is only known on the shard
+            return this;
+        }
+        return toMultiMatch(context);
+    }
+
+    @Override
+    protected Query doToQuery(QueryShardContext context) throws IOException {
+        return toMultiMatch(context).toQuery(context);
+    }
+
+    private MultiMatchQueryBuilder toMultiMatch(QueryShardContext context) {
+        LangdetectMapper mapper = null;
+        for (DocumentMapper documentMapper : context.getMapperService().docMappers(false)) {
+            FieldMapper fieldMapper = documentMapper.mappers().getMapper(field);
+            if (fieldMapper instanceof LangdetectMapper) {
+                mapper = (LangdetectMapper) fieldMapper;
+                break;
+            }
+        }
+        if (mapper == null) {
+            throw new QueryShardException(context, "[" + NAME + "] field [" + field + "] is not a langdetect field");
+        }
+        if (mapper.getLanguageTo().languageToFields().isEmpty()) {
+            throw new QueryShardException(context, "[" + NAME + "] field [" + field + "] has no language_to fields");
+        }
+        Set<String> fields = new LinkedHashSet<>();
+        List<Language> languages = mapper.getLangdetectService().detectAllCached(query, mapper.getQueryCache());
+        for (int i = 0; i < Math.min(top, languages.size()); i++) {
+            Object target = mapper.getLanguageTo().languageToFields().get(languages.get(i).getLanguage());
+            if (target != null) {
+                addFields(fields, target);
+            }
+        }
+        if (fields.isEmpty()) {
+            for (Object target : mapper.getLanguageTo().languageToFields().values()) {
+                addFields(fields, target);
+            }
+        }
+        return new MultiMatchQueryBuilder(query, fields.toArray(new String[0]))
+                .boost(boost())
+                .queryName(queryName());
+    }
+
+    private static void addFields(Set<String> fields, Object target) {
+        if (target instanceof Collection) {
+            for (Object o : (Collection<?>) target) {
+                fields.add(o.toString());
+            }
+        } else {
+            fields.add(target.toString());
+        }
+    }
+
+    public static LangdetectQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+        String queryName = null;
+        String query = null;
+        String field = null;
+        int top = 1;
+        String currentFieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token.isValue()) {
+                if (QUERY_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    query = parser.text();
+                } else if (FIELD_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    field = parser.text();
+                } else if (TOP_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    top = parser.intValue();
+                } else if (AbstractQueryBuilder.BOOST_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    boost = parser.floatValue();
+                } else if (AbstractQueryBuilder.NAME_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    queryName = parser.text();
+                } else {
+                    throw new ParsingException(parser.getTokenLocation(),
+                            "[" + NAME + "] query does not support [" + currentFieldName + "]");
+                }
+            } else {
+                throw new ParsingException(parser.getTokenLocation(),
+                        "[" + NAME + "] query does not support [" + currentFieldName + "]");
+            }
+        }
+        if (query == null) {
+            throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] requires query value");
+        }
+        if (field == null) {
+            throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] requires field value");
+        }
+        return new LangdetectQueryBuilder(query, field).top(top).queryName(queryName).boost(boost);
+    }
+
+    @Override
+    protected boolean doEquals(LangdetectQueryBuilder that) {
+        return Objects.equals(query, that.query) && Objects.equals(field, that.field) && top == that.top;
+    }
+
+    @Override
+    protected int doHashCode() {
+        return Objects.hash(query, field, top);
+    }
+}
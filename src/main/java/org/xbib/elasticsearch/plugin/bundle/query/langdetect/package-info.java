@@ -0,0 +1,4 @@
+/**
+ * Classes for queries which are routed by the detected language of the query string.
+ */
+package org.xbib.elasticsearch.plugin.bundle.query.langdetect;
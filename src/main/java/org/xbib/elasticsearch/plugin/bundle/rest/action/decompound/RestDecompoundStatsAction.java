@@ -0,0 +1,42 @@
+package org.xbib.elasticsearch.plugin.bundle.rest.action.decompound;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestActions;
+import org.xbib.elasticsearch.plugin.bundle.action.decompound.DecompoundStatsAction;
+import org.xbib.elasticsearch.plugin.bundle.action.decompound.DecompoundStatsRequest;
+
+import java.io.IOException;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+
+/**
+ * REST decompound statistics action.
+ */
+public class RestDecompoundStatsAction extends BaseRestHandler {
+
+    @Inject
+    public RestDecompoundStatsAction(Settings settings, RestController controller) {
+        super(settings);
+        controller.registerHandler(GET, "/_decompound/_stats", this);
+        controller.registerHandler(GET, "/_nodes/{nodeId}/_decompound/_stats", this);
+    }
+
+    @Override
+    public String getName() {
+        return "decompound_stats";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        String[] nodesIds = Strings.splitStringByCommaToArray(request.param("nodeId"));
+        DecompoundStatsRequest decompoundStatsRequest = new DecompoundStatsRequest(nodesIds);
+        return channel -> client.execute(DecompoundStatsAction.INSTANCE, decompoundStatsRequest,
+                new RestActions.NodesResponseRestListener<>(channel));
+    }
+}
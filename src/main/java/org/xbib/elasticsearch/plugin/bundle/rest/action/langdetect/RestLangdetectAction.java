@@ -2,6 +2,7 @@ package org.xbib.elasticsearch.plugin.bundle.rest.action.langdetect;
 
 import org.elasticsearch.client.node.NodeClient;
 import org.elasticsearch.common.CheckedConsumer;
+import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
@@ -16,6 +17,9 @@ import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectAction;
 import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectRequest;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.elasticsearch.rest.RestRequest.Method.GET;
 import static org.elasticsearch.rest.RestRequest.Method.POST;
@@ -44,20 +48,33 @@ public class RestLangdetectAction extends BaseRestHandler {
         final LangdetectRequest langdetectRequest = new LangdetectRequest();
         langdetectRequest.setText(request.param("text"));
         langdetectRequest.setProfile(request.param("profile", ""));
+        langdetectRequest.setSpans(request.paramAsBoolean("spans", false));
+        final List<String> languages =
+                new ArrayList<>(Arrays.asList(request.paramAsStringArray("languages", Strings.EMPTY_ARRAY)));
         withContent(request, parser -> {
             if (parser != null) {
                 XContentParser.Token token;
+                String currentFieldName = null;
                 while ((token = parser.nextToken()) != null) {
-                    if (token == XContentParser.Token.VALUE_STRING) {
-                        if ("text".equals(parser.currentName())) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        currentFieldName = parser.currentName();
+                    } else if (token == XContentParser.Token.VALUE_STRING) {
+                        if ("text".equals(currentFieldName)) {
                             langdetectRequest.setText(parser.text());
-                        } else if ("profile".equals(parser.currentName())) {
+                        } else if ("profile".equals(currentFieldName)) {
                             langdetectRequest.setProfile(parser.text());
+                        } else if ("languages".equals(currentFieldName)) {
+                            languages.addAll(Arrays.asList(Strings.commaDelimitedListToStringArray(parser.text())));
+                        }
+                    } else if (token == XContentParser.Token.VALUE_BOOLEAN) {
+                        if ("spans".equals(currentFieldName)) {
+                            langdetectRequest.setSpans(parser.booleanValue());
                         }
                     }
                 }
             }
         });
+        langdetectRequest.setLanguages(languages);
         return channel -> client.execute(LangdetectAction.INSTANCE, langdetectRequest,
                 new RestStatusToXContentListener<>(channel));
     }
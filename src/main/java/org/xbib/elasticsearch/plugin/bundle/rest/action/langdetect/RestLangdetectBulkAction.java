@@ -0,0 +1,171 @@
+package org.xbib.elasticsearch.plugin.bundle.rest.action.langdetect;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestStatusToXContentListener;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectBulkAction;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectBulkRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+
+/**
+ * REST bulk language detection action.
+ *
+ * The body is either a single JSON object with a {@code texts} array and optional {@code profile} and
+ * {@code languages} fields, or newline delimited JSON with one {@code text} object per line. A text which is
+ * null or not a string is kept as a missing text, so it fails only its own item and the items stay in the order
+ * of the texts. Other fields and other structures are rejected.
+ */
+public class RestLangdetectBulkAction extends BaseRestHandler {
+
+    @Inject
+    public RestLangdetectBulkAction(Settings settings, RestController controller) {
+        super(settings);
+        controller.registerHandler(POST, "/_langdetect/_bulk", this);
+        controller.registerHandler(POST, "/_langdetect/{profile}/_bulk", this);
+    }
+
+    @Override
+    public String getName() {
+        return "langdetect_bulk";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        final LangdetectBulkRequest langdetectBulkRequest = new LangdetectBulkRequest();
+        langdetectBulkRequest.setProfile(request.param("profile", ""));
+        List<String> languages =
+                new ArrayList<>(Arrays.asList(request.paramAsStringArray("languages", Strings.EMPTY_ARRAY)));
+        BytesReference content = request.content();
+        if (content.length() > 0) {
+            try (XContentParser parser = XContentType.JSON.xContent().createParser(request.getXContentRegistry(),
+                    DeprecationHandler.THROW_UNSUPPORTED_OPERATION, content.streamInput())) {
+                parse(parser, langdetectBulkRequest, languages);
+            }
+        }
+        langdetectBulkRequest.setLanguages(languages);
+        return channel -> client.execute(LangdetectBulkAction.INSTANCE, langdetectBulkRequest,
+                new RestStatusToXContentListener<>(channel));
+    }
+
+    /**
+     * Parse the body of a bulk language detection request.
+     *
+     * @param parser the parser of the body
+     * @param request the request, which receives the texts and the profile
+     * @param languages receives the candidate languages
+     * @throws IOException if the body can not be read
+     * @throws IllegalArgumentException if the body is not an object with {@code texts} or {@code text} lines
+     */
+    public static void parse(XContentParser parser, LangdetectBulkRequest request, List<String> languages)
+            throws IOException {
+        XContentParser.Token token;
+        int line = 0;
+        boolean array = false;
+        while ((token = parser.nextToken()) != null) {
+            if (token != XContentParser.Token.START_OBJECT) {
+                throw new IllegalArgumentException("expected an object, found [" + token + "]");
+            }
+            if (array) {
+                throw new IllegalArgumentException("no object is allowed after an object with [texts]");
+            }
+            array = parseObject(parser, request, languages, line++ == 0);
+        }
+    }
+
+    /**
+     * Parse an object of the body, either the object with the {@code texts} array, or a {@code text} line.
+     *
+     * @return true if the object has a {@code texts} array
+     */
+    private static boolean parseObject(XContentParser parser, LangdetectBulkRequest request, List<String> languages,
+                                       boolean first) throws IOException {
+        XContentParser.Token token;
+        int texts = 0;
+        boolean array = false;
+        String batchField = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token != XContentParser.Token.FIELD_NAME) {
+                throw new IllegalArgumentException("expected a field, found [" + token + "]");
+            }
+            String fieldName = parser.currentName();
+            token = parser.nextToken();
+            if ("text".equals(fieldName)) {
+                texts++;
+                request.add(text(parser, token));
+            } else if ("texts".equals(fieldName)) {
+                if (!first || array) {
+                    throw new IllegalArgumentException("[texts] is only allowed once in the only object of the body");
+                }
+                if (token != XContentParser.Token.START_ARRAY) {
+                    throw new IllegalArgumentException("[texts] must be an array");
+                }
+                array = true;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                    request.add(text(parser, token));
+                }
+            } else if ("profile".equals(fieldName)) {
+                if (token != XContentParser.Token.VALUE_STRING) {
+                    throw new IllegalArgumentException("[profile] must be a string");
+                }
+                batchField = fieldName;
+                request.setProfile(parser.text());
+            } else if ("languages".equals(fieldName)) {
+                batchField = fieldName;
+                if (token == XContentParser.Token.START_ARRAY) {
+                    while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                        if (token != XContentParser.Token.VALUE_STRING) {
+                            throw new IllegalArgumentException("[languages] must contain strings");
+                        }
+                        languages.add(parser.text());
+                    }
+                } else if (token == XContentParser.Token.VALUE_STRING) {
+                    languages.addAll(Arrays.asList(Strings.commaDelimitedListToStringArray(parser.text())));
+                } else {
+                    throw new IllegalArgumentException("[languages] must be a string or an array of strings");
+                }
+            } else {
+                throw new IllegalArgumentException("unknown field [" + fieldName + "]");
+            }
+        }
+        if (array) {
+            if (texts > 0) {
+                throw new IllegalArgumentException("[text] and [texts] can not be used in the same object");
+            }
+            return true;
+        }
+        if (texts != 1) {
+            throw new IllegalArgumentException("a line must have exactly one [text] field");
+        }
+        if (batchField != null) {
+            throw new IllegalArgumentException("[" + batchField + "] is not allowed in a [text] line, " +
+                    "it must be given for the whole request");
+        }
+        return false;
+    }
+
+    /**
+     * The text of a value, or null if the value is not a string. A value which is not a string is skipped.
+     */
+    private static String text(XContentParser parser, XContentParser.Token token) throws IOException {
+        if (token == XContentParser.Token.VALUE_STRING) {
+            return parser.text();
+        }
+        parser.skipChildren();
+        return null;
+    }
+}
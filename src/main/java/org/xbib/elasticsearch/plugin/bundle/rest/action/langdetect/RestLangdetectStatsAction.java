@@ -0,0 +1,42 @@
+package org.xbib.elasticsearch.plugin.bundle.rest.action.langdetect;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestActions;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectStatsAction;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectStatsRequest;
+
+import java.io.IOException;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+
+/**
+ * REST language detection statistics action.
+ */
+public class RestLangdetectStatsAction extends BaseRestHandler {
+
+    @Inject
+    public RestLangdetectStatsAction(Settings settings, RestController controller) {
+        super(settings);
+        controller.registerHandler(GET, "/_langdetect/_stats", this);
+        controller.registerHandler(GET, "/_nodes/{nodeId}/_langdetect/_stats", this);
+    }
+
+    @Override
+    public String getName() {
+        return "langdetect_stats";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        String[] nodesIds = Strings.splitStringByCommaToArray(request.param("nodeId"));
+        LangdetectStatsRequest langdetectStatsRequest = new LangdetectStatsRequest(nodesIds);
+        return channel -> client.execute(LangdetectStatsAction.INSTANCE, langdetectStatsRequest,
+                new RestActions.NodesResponseRestListener<>(channel));
+    }
+}
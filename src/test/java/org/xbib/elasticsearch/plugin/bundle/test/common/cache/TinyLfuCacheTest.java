@@ -0,0 +1,103 @@
+package org.xbib.elasticsearch.plugin.bundle.test.common.cache;
+
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.CacheStats;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.TinyLfuCache;
+
+/**
+ * TinyLFU cache test.
+ */
+public class TinyLfuCacheTest extends ESTestCase {
+
+    public void testBounded() {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(100);
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(Integer.valueOf(i % 2), cache.computeIfAbsent(i, f -> f % 2));
+        }
+        assertTrue(cache.size() <= 100);
+        CacheStats stats = cache.stats();
+        assertEquals(0L, stats.getHits());
+        assertEquals(10000L, stats.getMisses());
+        assertEquals(10000L - cache.size(), stats.getEvictions() + stats.getRejections());
+    }
+
+    public void testFrequentKeysSurviveScan() {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(256);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 32; i++) {
+                cache.computeIfAbsent(i, f -> f);
+            }
+        }
+        // a scan of keys which are seen only once must not flush the popular keys
+        for (int i = 1000; i < 2000; i++) {
+            cache.computeIfAbsent(i, f -> f);
+        }
+        long hits = cache.stats().getHits();
+        for (int i = 0; i < 32; i++) {
+            assertEquals(Integer.valueOf(i), cache.get(i));
+        }
+        assertEquals(hits + 32, cache.stats().getHits());
+    }
+
+    public void testConcurrentAccess() throws Exception {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(1000);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    int key = i % 2000;
+                    assertEquals(Integer.valueOf(-key), cache.computeIfAbsent(key, k -> -k));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(cache.size() <= 1000);
+        CacheStats stats = cache.stats();
+        assertEquals(400000L, stats.getHits() + stats.getMisses());
+        assertTrue(stats.getHits() > 0L);
+    }
+
+    public void testNewKeysEnterWindow() {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(1000);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 1000; i++) {
+                cache.computeIfAbsent(i, f -> f);
+            }
+        }
+        // a new key is admitted to the window of a full cache, even if it was never seen before
+        cache.put(5000, 5000);
+        assertEquals(Integer.valueOf(5000), cache.get(5000));
+        assertTrue(cache.size() <= 1000);
+    }
+
+    public void testHitRate() {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(100);
+        assertEquals(0d, cache.stats().getHitRate(), 0d);
+        for (int round = 0; round < 4; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.computeIfAbsent(i, f -> f);
+            }
+        }
+        CacheStats stats = cache.stats();
+        assertEquals(50L, stats.getMisses());
+        assertEquals(150L, stats.getHits());
+        assertEquals(0.75d, stats.getHitRate(), 1e-9);
+        assertEquals(50L, stats.getSize());
+    }
+
+    public void testStatsSerialization() throws Exception {
+        CacheStats stats = new CacheStats(3L, 10L, 6L, 2L, 1L, 4L);
+        BytesStreamOutput out = new BytesStreamOutput();
+        stats.writeTo(out);
+        CacheStats read = new CacheStats(out.bytes().streamInput());
+        assertEquals(3L, read.getSize());
+        assertEquals(10L, read.getMaximumSize());
+        assertEquals(0.75d, read.getHitRate(), 1e-9);
+        assertEquals(1L, read.getEvictions());
+        assertEquals(4L, read.getRejections());
+    }
+}
@@ -0,0 +1,148 @@
+package org.xbib.elasticsearch.plugin.bundle.test.common.decompound.fst;
+
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.fst.FstDecompounder;
+import org.xbib.elasticsearch.plugin.bundle.common.fst.FstCompiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Finite state decompounder test.
+ */
+public class FstDecompounderTest extends ESTestCase {
+
+    private static final String WORDS = "/org/xbib/elasticsearch/plugin/bundle/index/analysis/decompound/fst/words.fst";
+
+    public void testSplitShortest() throws IOException {
+        FstDecompounder decompounder = new FstDecompounder(getClass().getResourceAsStream(WORDS), null);
+        assertEquals("donau.dampf.schiff", decompounder.splitShortest("Donaudampfschiff", 1, 8, 10000).toString());
+        // the splits with fewer glue morphemes first
+        assertEquals("druck.erzeugnis,drucker.zeugnis,druck.zeugnis",
+                decompounder.splitShortest("Druckerzeugnis", 3, 8, 10000).toString());
+        assertEquals("jahres.feier,jahre.feier,jahr.feier",
+                decompounder.splitShortest("Jahresfeier", 3, 8, 10000).toString());
+        // too many parts
+        assertNull(decompounder.splitShortest("Donaudampfschiff", 1, 2, 10000));
+        // too many states
+        assertNull(decompounder.splitShortest("Donaudampfschiff", 1, 8, 10));
+        assertNull(decompounder.splitShortest("", 1, 8, 10000));
+        for (String word : new String[] { "Rechtsanwaltskanzleien", "Ökosteuer", "gekostet", "Die" }) {
+            assertEquals(decompounder.decompound(word), decompounder.decompound(word, 1, 8, 10000));
+        }
+    }
+
+    public void testGlueMorphemesAreNotModified() throws IOException {
+        FstDecompounder first = new FstDecompounder(getClass().getResourceAsStream(WORDS), null);
+        FstDecompounder second = new FstDecompounder(getClass().getResourceAsStream(WORDS), null);
+        assertEquals(first.splitShortest("Druckerzeugnis", 3, 8, 10000).toString(),
+                second.splitShortest("Druckerzeugnis", 3, 8, 10000).toString());
+    }
+
+    public void testSession() throws IOException {
+        FstDecompounder decompounder = new FstDecompounder(getClass().getResourceAsStream(WORDS), null);
+        FstDecompounder.Session session = decompounder.newSession();
+        char[] buffer = "Die Druckerzeugnisse auf dem Donaudampfschiff".toCharArray();
+        assertEquals(1, session.split(buffer, 29, 16));
+        assertEquals(3, session.parts());
+        assertEquals(3, session.splitEnd(0));
+        assertEquals("donau", new String(session.buffer(), session.start(0), session.end(0) - session.start(0)));
+        assertEquals("dampf", new String(session.buffer(), session.start(1), session.end(1) - session.start(1)));
+        assertEquals("schiff", new String(session.buffer(), session.start(2), session.end(2) - session.start(2)));
+        // the session is reused for the next word
+        assertEquals(0, session.split(buffer, 0, 3));
+        assertEquals(0, session.parts());
+        assertEquals(1, session.splitShortest(buffer, 4, 16, 1, 8, 10000));
+        assertEquals(2, session.parts());
+        assertEquals("druck", new String(session.buffer(), session.start(0), session.end(0) - session.start(0)));
+        assertEquals("erzeugnisse", new String(session.buffer(), session.start(1), session.end(1) - session.start(1)));
+        for (String word : new String[] { "Rechtsanwaltskanzleien", "Druckerzeugnis", "Jahresfeier", "Die" }) {
+            char[] chars = word.toCharArray();
+            session.split(chars, 0, chars.length);
+            StringBuilder sb = new StringBuilder();
+            for (int split = 0, part = 0; split < session.splits(); split++) {
+                sb.append(split > 0 ? "," : "");
+                for (int first = part; part < session.splitEnd(split); part++) {
+                    sb.append(part > first ? "." : "")
+                            .append(session.buffer(), session.start(part), session.end(part) - session.start(part));
+                }
+            }
+            CharSequence expected = decompounder.split(word);
+            assertEquals(expected != null ? expected.toString() : "", sb.toString());
+        }
+    }
+
+    public void testSplitBest() throws IOException {
+        FstDecompounder decompounder = new FstDecompounder(getClass().getResourceAsStream(WORDS), null);
+        assertFalse(decompounder.isWeighted());
+        // without weights, the best split is the shortest split
+        for (String word : new String[] { "Donaudampfschiff", "Druckerzeugnis", "Jahresfeier", "Rechtsanwaltskanzleien" }) {
+            assertEquals(decompounder.splitShortest(word, 1, 8, 10000).toString(),
+                    decompounder.splitBest(word, 8, 10000).toString());
+        }
+        assertNull(decompounder.splitBest("Donaudampfschiff", 2, 10000));
+        assertNull(decompounder.splitBest("Donaudampfschiff", 8, 10));
+        assertNull(decompounder.splitBest("", 8, 10000));
+    }
+
+    public void testWeighted() throws IOException {
+        String lexicon = "druck 10\ndrucker 1000\nerzeugnis 10\nzeugnis 1000\ndruckerzeugnis 1\n" +
+                "donau 500\ndampf\t500\nSchiff 250\nschiff 250\ndonaudampfschiff\n" +
+                "jahr 10\nfeier 10\njahresfeier 5000\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FstCompiler().compile(new ByteArrayInputStream(lexicon.getBytes(StandardCharsets.UTF_8)), out, true);
+        FstDecompounder decompounder = new FstDecompounder(new ByteArrayInputStream(out.toByteArray()), null);
+        assertTrue(decompounder.isWeighted());
+        assertEquals("drucker.zeugnis", decompounder.splitBest("Druckerzeugnis", 8, 10000).toString());
+        assertEquals("donau.dampf.schiff", decompounder.splitBest("Donaudampfschiff", 8, 10000).toString());
+        assertEquals("jahresfeier", decompounder.splitBest("Jahresfeier", 8, 10000).toString());
+        // the other split modes ignore the weights
+        assertEquals("druckerzeugnis,druck.erzeugnis,drucker.zeugnis",
+                decompounder.splitShortest("Druckerzeugnis", 3, 8, 10000).toString());
+        assertEquals("druckerzeugnis", decompounder.split("Druckerzeugnis").toString());
+        expectThrows(IllegalArgumentException.class, () -> new FstCompiler()
+                .compile(new ByteArrayInputStream("druck x\n".getBytes(StandardCharsets.UTF_8)), out, true));
+    }
+
+    /**
+     * Each repetition of a word with two splits doubles the splits of the backtracking search,
+     * but adds only a constant amount of work to the dynamic programming. The work is the least number of
+     * FST arcs which must be visited to split the word.
+     */
+    public void testPathologicalWork() throws IOException {
+        FstDecompounder decompounder = new FstDecompounder(getClass().getResourceAsStream(WORDS), null);
+        int work = 0;
+        for (int k = 1; k <= 10; k++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < k; i++) {
+                sb.append("druckerzeugnis");
+            }
+            String word = sb.toString();
+            assertEquals(1 << k, decompounder.split(word).toString().split(",").length);
+            CharSequence shortest = decompounder.splitShortest(word, 1, 64, 100000);
+            assertEquals(2 * k, shortest.toString().split("\\.").length);
+            int states = minStates(decompounder, word);
+            if (k == 1) {
+                work = states;
+            }
+            // linear in the number of repetitions, with room for the arcs at the borders of the repetitions
+            assertTrue(word + ": " + states + " states", states <= 2 * k * work);
+        }
+    }
+
+    private static int minStates(FstDecompounder decompounder, String word) {
+        int low = 0;
+        int high = 100000;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (decompounder.splitShortest(word, 1, 64, mid) != null) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return high;
+    }
+}
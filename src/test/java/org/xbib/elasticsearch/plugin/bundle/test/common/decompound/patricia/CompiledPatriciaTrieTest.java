@@ -0,0 +1,147 @@
+package org.xbib.elasticsearch.plugin.bundle.test.common.decompound.patricia;
+
+import org.apache.lucene.util.CharsRefBuilder;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.CompactPatriciaTrie;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.CompiledPatriciaTrie;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.DecompoundModels;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.Decompounder;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.PatriciaTrieCompiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiled patricia trie test.
+ */
+public class CompiledPatriciaTrieTest extends ESTestCase {
+
+    private static final String RESOURCE_PATH = "/org/xbib/elasticsearch/plugin/bundle/index/analysis/decompound/patricia/";
+
+    private static final String[] WORDS = {
+            "Jahresfeier", "Rechtsanwaltskanzleien", "Donaudampfschiff", "Ökosteuer", "gekostet", "Häuser",
+            "Kindergarten", "Bundesverfassungsgericht", "Schlüsselwort", "Bindestrichwort", "Straßenbahn",
+            "Arbeitsplätze", "Fußballweltmeisterschaft", "a", "", "XYZ", "ärgerlich"
+    };
+
+    public void testTrained() throws Exception {
+        CompactPatriciaTrie trie = new CompactPatriciaTrie();
+        trie.train("Haus", "1", 3);
+        trie.train("Haus", "2", 3);
+        trie.train("Hausboot", "4");
+        trie.train("Hausbau", "4", 2);
+        trie.train("Maus", "2");
+        trie.train("Baum", "undecided");
+        trie.setIgnoreCase(true);
+        CompiledPatriciaTrie compiled = CompiledPatriciaTrie.compile(trie);
+        // compare with the string tree of the trie
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trie.save(out);
+        CompactPatriciaTrie loaded = new CompactPatriciaTrie();
+        loaded.load(new ByteArrayInputStream(out.toByteArray()));
+        loaded.setIgnoreCase(true);
+        for (double threshold : new double[] { 0d, 0.51d, 1d }) {
+            loaded.setThreshold(threshold);
+            for (String word : new String[] { "Haus", "haus", "Hausboot", "Hausb", "Mäuse", "Maus", "Baum", "" }) {
+                assertClassify(loaded, compiled, word, threshold);
+            }
+        }
+    }
+
+    public void testResources() throws Exception {
+        Path dir = createTempDir();
+        for (String name : new String[] { "grfExt.tree", "kompVHic.tree" }) {
+            CompactPatriciaTrie trie = new CompactPatriciaTrie();
+            try (InputStream in = getClass().getResourceAsStream(RESOURCE_PATH + name)) {
+                trie.load(in);
+            }
+            trie.setIgnoreCase(true);
+            Path path = PatriciaTrieCompiler.compile(name, dir);
+            CompiledPatriciaTrie compiled = CompiledPatriciaTrie.read(path);
+            assertTrue(compiled.isMapped());
+            assertEquals(0L, compiled.ramBytesUsed());
+            for (double threshold : new double[] { 0d, 0.51d }) {
+                trie.setThreshold(threshold);
+                for (String word : WORDS) {
+                    assertClassify(trie, compiled, word, threshold);
+                    assertClassify(trie, compiled, word.toLowerCase(Locale.ROOT), threshold);
+                }
+            }
+        }
+        DecompoundModels models = new DecompoundModels(dir);
+        assertTrue(models.getTrie("grfExt.tree").isMapped());
+        assertSame(models.getTrie("grfExt.tree"), models.getTrie("grfExt.tree"));
+        assertFalse(new DecompoundModels(null).getTrie("grfExt.tree").isMapped());
+    }
+
+    public void testFileName() throws Exception {
+        String name = CompiledPatriciaTrie.fileName("grfExt.tree");
+        assertTrue(name, name.startsWith("grfExt-") && name.endsWith(".bin"));
+        assertEquals(name, CompiledPatriciaTrie.fileName(RESOURCE_PATH + "grfExt.tree"));
+        assertNotEquals(name, CompiledPatriciaTrie.fileName("/custom/grfExt.tree"));
+        assertNotEquals(CompiledPatriciaTrie.fileName("/a/grfExt.tree"), CompiledPatriciaTrie.fileName("/b/grfExt.tree"));
+        // a compiled trie file of another resource with the same name is not used
+        Path dir = createTempDir();
+        Path path = PatriciaTrieCompiler.compile("grfExt.tree", dir);
+        Files.copy(path, dir.resolve(CompiledPatriciaTrie.fileName("/custom/kompVHic.tree")));
+        DecompoundModels models = new DecompoundModels(dir);
+        assertTrue(models.getTrie("grfExt.tree").isMapped());
+        assertFalse(models.getTrie("kompVHic.tree").isMapped());
+    }
+
+    public void testConcurrentLoad() throws Exception {
+        DecompoundModels models = new DecompoundModels(null);
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            List<Future<Decompounder>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    latch.await();
+                    return models.get(Settings.EMPTY);
+                }));
+            }
+            latch.countDown();
+            for (Future<Decompounder> future : futures) {
+                assertSame(futures.get(0).get(), future.get());
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertEquals(3, models.size());
+        // a failed load is not cached, and fails again
+        expectThrows(IOException.class, () -> models.getTrie("missing.tree"));
+        expectThrows(IOException.class, () -> models.getTrie("missing.tree"));
+        assertEquals(3, models.size());
+    }
+
+    private static void assertClassify(CompactPatriciaTrie trie, CompiledPatriciaTrie compiled, String word,
+                                       double threshold) {
+        char[] chars = ("#" + word + "#").toCharArray();
+        for (boolean backward : new boolean[] { false, true }) {
+            for (String suffix : new String[] { "", "<" }) {
+                CharsRefBuilder expected = new CharsRefBuilder();
+                CharsRefBuilder actual = new CharsRefBuilder();
+                boolean expectedOk = trie.classify(chars, 1, word.length(), backward, suffix, expected);
+                boolean actualOk = compiled.classify(chars, 1, word.length(), backward, suffix, threshold, actual);
+                assertEquals(word, expected.toString(), actual.toString());
+                assertEquals(word, expectedOk, actualOk);
+            }
+        }
+    }
+}
@@ -2,18 +2,26 @@ package org.xbib.elasticsearch.plugin.bundle.test.common.decompound.patricia;
 
 import com.carrotsearch.randomizedtesting.annotations.SuppressForbidden;
 import org.junit.Test;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.TinyLfuCache;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.CompactPatriciaTrie;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.Decomposition;
 import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.Decompounder;
-import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.LFUCache;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.StringTokenizer;
 import java.util.zip.GZIPInputStream;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 public class DecompounderTest {
 
@@ -52,7 +60,7 @@ public class DecompounderTest {
         long t1 = System.currentTimeMillis();
         long uncachedPerf = partCount * 1000 / (t1 - t0);
 
-        LFUCache<String, List<String>> cache = new LFUCache<>(100000, 0.90f);
+        TinyLfuCache<String, List<String>> cache = new TinyLfuCache<>(100000);
         long partCacheCount = 0;
         long t2 = System.currentTimeMillis();
         try (InputStream inputStream = new GZIPInputStream(getClass().getResourceAsStream("wpd13_sample.i5.xml.gz"))) {
@@ -81,4 +89,269 @@ public class DecompounderTest {
 
         assertTrue(factor >= 3.0);
     }
+
+    /**
+     * Compare the char array API and the string API of the decompounder on the german sample with a copy of the
+     * string based baseline decompounder, all must return the same parts, and the char array API must not allocate
+     * once the decomposition has grown.
+     */
+    @SuppressForbidden(value = "measure the bytes which are allocated by the thread")
+    @Test
+    public void testCharArrayAllocation() throws IOException, XMLStreamException {
+        String forward = "/decompound/patricia/kompVVic.tree";
+        String backward = "/decompound/patricia/kompVHic.tree";
+        String reduce = "/decompound/patricia/grfExt.tree";
+        Decompounder decompounder = new Decompounder(getClass().getResourceAsStream(forward),
+                getClass().getResourceAsStream(backward),
+                getClass().getResourceAsStream(reduce),
+                0.51d);
+        List<char[]> words = new ArrayList<>();
+        try (InputStream inputStream = new GZIPInputStream(getClass().getResourceAsStream("wpd13_sample.i5.xml.gz"))) {
+            XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+            XMLStreamReader streamReader = inputFactory.createXMLStreamReader(inputStream);
+            String name = null;
+            while (streamReader.hasNext()) {
+                streamReader.next();
+                if (streamReader.isStartElement()) {
+                    name = streamReader.getLocalName();
+                }
+                if (streamReader.hasText() && "s".equals(name)) {
+                    for (String string : streamReader.getText().split("\\s+")) {
+                        words.add(string.toCharArray());
+                    }
+                }
+            }
+        }
+        BaselineDecompounder baseline = new BaselineDecompounder(getClass().getResourceAsStream(forward),
+                getClass().getResourceAsStream(backward),
+                getClass().getResourceAsStream(reduce),
+                0.51d);
+        Decomposition decomposition = new Decomposition();
+        int compared = 0;
+        for (char[] word : words) {
+            List<String> expected;
+            try {
+                expected = baseline.decompound(new String(word));
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                // the baseline fails on a few malformed classes, where the char array decompounder does not split
+                continue;
+            }
+            decompounder.decompound(word, 0, word.length, decomposition);
+            assertEquals(new String(word), expected.size(), decomposition.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(new String(word), expected.get(i), decomposition.get(i));
+            }
+            assertEquals(expected, decompounder.decompound(new String(word)));
+            compared++;
+        }
+        assertTrue(compared + " of " + words.size() + " words", compared > words.size() * 9 / 10);
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue("thread allocated memory is not supported", threadMXBean instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported());
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        long threadId = Thread.currentThread().getId();
+        long parts = 0L;
+        // the decomposition has grown to the longest word in the comparison above
+        long b0 = allocations.getThreadAllocatedBytes(threadId);
+        for (char[] word : words) {
+            decompounder.decompound(word, 0, word.length, decomposition);
+            parts += decomposition.size();
+        }
+        long b1 = allocations.getThreadAllocatedBytes(threadId);
+        assertTrue(parts > 0L);
+        // the measurement may allocate a few bytes, but not one byte per word
+        assertTrue((b1 - b0) + " bytes for " + words.size() + " words", b1 - b0 < words.size());
+    }
+
+    /**
+     * The string based decompounder of the baseline, which is the reference for the char array decompounder.
+     */
+    private static class BaselineDecompounder {
+
+        private CompactPatriciaTrie kompvvTree;
+        private CompactPatriciaTrie kompvhTree;
+        private CompactPatriciaTrie grfTree;
+
+        BaselineDecompounder(InputStream kompvv, InputStream kompvh, InputStream gfred, double threshold)
+                throws IOException {
+            kompvvTree = new CompactPatriciaTrie();
+            kompvvTree.load(kompvv);
+            kompvvTree.setIgnoreCase(true);
+            kompvvTree.setThreshold(threshold);
+            kompvhTree = new CompactPatriciaTrie();
+            kompvhTree.load(kompvh);
+            kompvhTree.setIgnoreCase(true);
+            kompvhTree.setThreshold(threshold);
+            grfTree = new CompactPatriciaTrie();
+            grfTree.load(gfred);
+            grfTree.setIgnoreCase(true);
+            grfTree.setThreshold(threshold); // previous value = 0.46
+        }
+
+        private String reverse(String torev) {
+            StringBuilder ret = new StringBuilder();
+            for (int i = torev.length(); i > 0; i--) {
+                ret.append(torev.substring(i - 1, i));
+            }
+            return ret.toString();
+        }
+
+        List<String> decompound(String string) {
+            String word = string;
+            word = reduceToBaseForm(word);
+            List<String> list = new ArrayList<>();
+            String classvv = kompvvTree.classify(word + "<");
+            String classvh = kompvhTree.classify(reverse(word) + "<");
+            StringBuilder numStrvv = new StringBuilder();
+            StringBuilder numStrvh = new StringBuilder();
+            StringBuilder suffixvv = new StringBuilder();
+            StringBuilder suffixvh = new StringBuilder();
+            String vvpart1 = "";
+            String vhpart1 = "";
+            String vvpart2 = "";
+            String vhpart2 = "";
+            int numvv = 0;
+            int numvh = 0;
+            boolean vhOk = true;
+            boolean vvOk = true;
+            if ("undecided".equals(classvv)) {
+                vvOk = false;
+            }
+            if ("undecided".equals(classvh)) {
+                vhOk = false;
+            }
+            if (vvOk) {
+                for (int i = 0; i < classvv.length(); i++) {
+                    char c = classvv.charAt(i);
+                    if ((c <= '9') && (c >= '0')) {
+                        numStrvv.append(c);
+                    } else {
+                        suffixvv.append(c);
+                    }
+                }
+            }
+            if (vhOk) {
+                for (int i = 0; i < classvh.length(); i++) {
+                    char c = classvh.charAt(i);
+                    if ((c <= '9') && (c >= '0')) {
+                        numStrvh.append(c);
+                    } else {
+                        suffixvh.append(c);
+                    }
+                }
+            }
+
+            if (vvOk) {
+                numvv = Integer.parseInt(numStrvv.toString());
+            }
+            if (vhOk) {
+                numvh = Integer.parseInt(numStrvh.toString());
+            }
+
+            if (vvOk && numvv >= word.length()) {
+                vvOk = false;
+            }
+
+            if (vhOk && numvh >= word.length()) {
+                vhOk = false;
+            }
+
+            if (vvOk) {
+                for (int i = 0; i < suffixvv.length(); i++) {
+                    if (word.length() > (numvv + i)) {
+                        if (suffixvv.charAt(i) != word.charAt(numvv + i)) {
+                            vvOk = false;
+                        }
+                    } else {
+                        vvOk = false;
+                    }
+                }
+            }
+            if (vhOk) {
+                for (int i = 0; i < suffixvh.length(); i++) {
+                    if (suffixvh.charAt(i) != word.charAt(numvh + 1 + i)) {
+                        vvOk = false;
+                    }
+                }
+            }
+            if (vvOk) {
+                vvpart1 = word.substring(0, numvv);
+                vvpart2 = word.substring(numvv + suffixvv.length(), word.length());
+                if (vvpart2.length() <= 3) {
+                    vvOk = false;
+                }
+            }
+            if (vhOk) {
+                vhpart1 = word.substring(0, word.length() - numvh);
+                vhpart2 = word.substring(word.length() - (numvh + suffixvh.length()), word.length());
+                if (vhpart1.length() <= 3) {
+                    vhOk = false;
+                }
+            }
+            if (vvOk && vhOk) {
+                if ((vvpart1.equals(vhpart1)) || ((vhpart1.length() - vvpart1.length()) < 3)) {
+                    list.add(vvpart1);
+                    if (vhpart2.length() < vvpart2.length()) {
+                        list.add(vhpart2);
+                    } else if (vhpart2.length() > vvpart2.length()) {
+                        list.add(vvpart2);
+                    }
+                } else {
+                    list.add(vvpart1);
+                    list.add(word.substring(vvpart1.length() + suffixvv.length(), word.length() - numvh));
+                    list.add(vhpart2);
+                }
+                if (vvpart2.equals(vhpart2)) {
+                    list.add(vvpart2);
+                }
+
+            } else if (vvOk && !vhOk) {
+                list.add(vvpart1);
+                list.add(vvpart2);
+            } else if (vhOk && !vvOk) {
+                list.add(vhpart1);
+                list.add(vhpart2);
+            } else {
+                list.add(word);
+            }
+            List<String> retvec2 = new ArrayList<>();
+            List<String> l;
+            if (list.size() > 1) {
+                for (String s : list) {
+                    l = decompound(s);
+                    retvec2.addAll(l);
+                }
+            } else {
+                retvec2 = list;
+            }
+            return retvec2;
+        }
+
+        String reduceToBaseForm(String word) {
+            String result = word;
+            String baseForm = grfTree.classify(reverse(word));
+            if (!"undecided".equals(baseForm)) {
+                StringTokenizer st = new StringTokenizer(baseForm, ",");
+                baseForm = st.nextToken();
+                StringBuilder numStr = new StringBuilder();
+                StringBuilder suffix = new StringBuilder();
+                for (int i = 0; i < baseForm.length(); i++) {
+                    char c = baseForm.charAt(i);
+                    if ((c <= '9') && (c >= '0')) {
+                        numStr.append(c);
+                    } else {
+                        suffix.append(c);
+                    }
+                }
+                if (numStr.length() > 0) {
+                    int cutpos = Integer.parseInt(numStr.toString());
+                    if (cutpos > result.length()) {
+                        cutpos = result.length();
+                    }
+                    result = result.substring(0, result.length() - cutpos) + suffix;
+                }
+            }
+            return result;
+        }
+    }
 }
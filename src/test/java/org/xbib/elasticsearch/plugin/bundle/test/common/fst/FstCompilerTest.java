@@ -0,0 +1,64 @@
+package org.xbib.elasticsearch.plugin.bundle.test.common.fst;
+
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.fst.FstDecompounder;
+import org.xbib.elasticsearch.plugin.bundle.common.fst.FstCompiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * FST compiler test.
+ */
+public class FstCompilerTest extends ESTestCase {
+
+    public void testOffline() throws IOException {
+        // a lexicon which does not fit into a sort buffer of one megabyte, with duplicate words
+        Random random = random();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            String word = randomAlphaOfLengthBetween(3, 12);
+            sb.append(random.nextBoolean() ? word : word.toUpperCase(Locale.ROOT))
+                    .append(' ').append(random.nextInt(1000)).append('\n');
+            if (random.nextInt(10) == 0) {
+                sb.append(word).append('\n');
+            }
+        }
+        sb.append("# comment\n").append("druck 10\n").append("erzeugnis 20\n").append("Druck\t5\n");
+        byte[] lexicon = sb.toString().getBytes(StandardCharsets.UTF_8);
+        for (boolean weighted : new boolean[] { false, true }) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            new FstCompiler().compile(new ByteArrayInputStream(lexicon), expected, weighted);
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            Path tempDir = createTempDir();
+            new FstCompiler().compileOffline(new ByteArrayInputStream(lexicon), actual, weighted, tempDir, 1);
+            assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+            // only the temporary files of the sorter, the test file system may add extra files
+            try (Stream<Path> files = Files.list(tempDir)) {
+                assertEquals(0L, files.filter(file -> file.getFileName().toString().startsWith("fst")).count());
+            }
+            FstDecompounder decompounder = new FstDecompounder(new ByteArrayInputStream(actual.toByteArray()), null);
+            assertEquals(weighted, decompounder.isWeighted());
+            assertNotNull(decompounder.splitBest("Druckerzeugnis", 8, 10000));
+        }
+    }
+
+    public void testCommandLine() throws IOException {
+        Path dir = createTempDir();
+        Path lexicon = dir.resolve("lexicon.txt");
+        Files.write(lexicon, "donau 5\ndampf 5\nschiff 5\n".getBytes(StandardCharsets.UTF_8));
+        Path fst = dir.resolve("custom.fst");
+        FstCompiler.main(new String[] { "--weighted", "--buffer", "1", "--tmp", dir.toString(),
+                lexicon.toString(), fst.toString() });
+        FstDecompounder decompounder = new FstDecompounder(Files.newInputStream(fst), null);
+        assertTrue(decompounder.isWeighted());
+        assertEquals("donau.dampf.schiff", decompounder.splitBest("Donaudampfschiff", 8, 10000).toString());
+    }
+}
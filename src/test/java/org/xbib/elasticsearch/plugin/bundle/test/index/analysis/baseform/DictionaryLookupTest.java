@@ -0,0 +1,86 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.analysis.baseform;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttributeImpl;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.SuppressForbidden;
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.fsa.Dictionary;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dictionary lookup test.
+ */
+public class DictionaryLookupTest extends ESTestCase {
+
+    private static final String EN = "/org/xbib/elasticsearch/plugin/bundle/index/analysis/baseform/en-lemma-utf8.txt";
+
+    public void testLookup() throws IOException {
+        Dictionary dictionary = load();
+        Dictionary.Lookup lookup = dictionary.newLookup();
+        CharTermAttribute termAtt = new CharTermAttributeImpl();
+        for (String word : new String[] { "children", "mice", "went", "ABCs", "unknownword", "", "a" }) {
+            char[] chars = ("#" + word + "#").toCharArray();
+            assertEquals(word, dictionary.lookup(word).toString(), lookup.lookup(chars, 1, word.length()).toString());
+            termAtt.setEmpty().append(word);
+            lookup.lookup(termAtt);
+            assertEquals(word, dictionary.lookup(word).toString(), termAtt.toString());
+        }
+        assertEquals("child", lookup.lookup("children".toCharArray(), 0, 8).toString());
+        // a lone surrogate is not found and is kept as it is
+        assertEquals("\ud800", lookup.lookup(new char[] { '\ud800' }, 0, 1).toString());
+    }
+
+    /**
+     * Compare the string lookup with the reusable lookup on all words of the english dictionary, both must return
+     * the same results, and the reusable lookup must not allocate once its buffers have grown.
+     */
+    @SuppressForbidden(reason = "measure the bytes which are allocated by the thread")
+    public void testAllocationFree() throws IOException {
+        Dictionary dictionary = load();
+        List<char[]> words = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream(EN),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int pos = line.indexOf('\t');
+                words.add((pos > 0 ? line.substring(0, pos) : line).toCharArray());
+            }
+        }
+        Dictionary.Lookup lookup = dictionary.newLookup();
+        for (char[] word : words) {
+            assertEquals(dictionary.lookup(new String(word)).toString(), lookup.lookup(word, 0, word.length).toString());
+        }
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue("thread allocated memory is not supported", threadMXBean instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported());
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        long threadId = Thread.currentThread().getId();
+        long length = 0L;
+        // the buffers of the lookup have grown to the longest word and result in the comparison above
+        long b0 = allocations.getThreadAllocatedBytes(threadId);
+        for (char[] word : words) {
+            CharsRef chars = lookup.lookup(word, 0, word.length);
+            length += chars.length;
+        }
+        long b1 = allocations.getThreadAllocatedBytes(threadId);
+        assertTrue(length > 0L);
+        // the measurement may allocate a few bytes, but not one byte per lookup
+        assertTrue((b1 - b0) + " bytes for " + words.size() + " lookups", b1 - b0 < words.size());
+    }
+
+    private Dictionary load() throws IOException {
+        try (InputStreamReader reader = new InputStreamReader(getClass().getResourceAsStream(EN),
+                StandardCharsets.UTF_8)) {
+            return new Dictionary().loadLines(reader);
+        }
+    }
+}
@@ -53,4 +53,116 @@ public class FstDecompoundTokenFilterTests extends ESTokenStreamTestCase {
         Analyzer myanalyzer = analysis.indexAnalyzers.get("myanalyzer");
         assertAnalyzesTo(myanalyzer, source, expected);
     }
+
+    public void testShortestSplit() throws Exception {
+        String source = "Die Druckerzeugnisse auf dem Donaudampfschiff";
+        String[] expected = {
+                "Die",
+                "Druckerzeugnisse",
+                "druck",
+                "erzeugnisse",
+                "auf",
+                "dem",
+                "Donaudampfschiff",
+                "donau",
+                "dampf",
+                "schiff"
+        };
+        Settings settings = Settings.builder()
+                .put("index.analysis.filter.myfilter.type", "fst_decompound")
+                .put("index.analysis.filter.myfilter.split_mode", "shortest")
+                .put("index.analysis.analyzer.myanalyzer.type", "custom")
+                .put("index.analysis.analyzer.myanalyzer.tokenizer", "standard")
+                .put("index.analysis.analyzer.myanalyzer.filter.0", "myfilter")
+                .put("index.analysis.analyzer.myanalyzer.filter.1", "unique")
+                .build();
+        ESTestCase.TestAnalysis analysis = ESTestCase.createTestAnalysis(new Index("test", "_na_"),
+                settings,
+                new BundlePlugin(Settings.EMPTY), new CommonAnalysisPlugin());
+        Analyzer myanalyzer = analysis.indexAnalyzers.get("myanalyzer");
+        assertAnalyzesTo(myanalyzer, source, expected);
+    }
+
+    public void testBestSplit() throws Exception {
+        String source = "Die Jahresfeier auf dem Donaudampfschiff";
+        String[] expected = {
+                "Die",
+                "Jahresfeier",
+                "jahres",
+                "feier",
+                "auf",
+                "dem",
+                "Donaudampfschiff",
+                "donau",
+                "dampf",
+                "schiff"
+        };
+        Settings settings = Settings.builder()
+                .put("index.analysis.filter.myfilter.type", "fst_decompound")
+                .put("index.analysis.filter.myfilter.split_mode", "best")
+                .put("index.analysis.analyzer.myanalyzer.type", "custom")
+                .put("index.analysis.analyzer.myanalyzer.tokenizer", "standard")
+                .put("index.analysis.analyzer.myanalyzer.filter.0", "myfilter")
+                .put("index.analysis.analyzer.myanalyzer.filter.1", "unique")
+                .build();
+        ESTestCase.TestAnalysis analysis = ESTestCase.createTestAnalysis(new Index("test", "_na_"),
+                settings,
+                new BundlePlugin(Settings.EMPTY), new CommonAnalysisPlugin());
+        Analyzer myanalyzer = analysis.indexAnalyzers.get("myanalyzer");
+        assertAnalyzesTo(myanalyzer, source, expected);
+    }
+
+    public void testUnsplitWords() throws Exception {
+        String source = "Die Jahresfeier auf dem Donaudampfschiff";
+        Settings settings = Settings.builder()
+                .put("index.analysis.analyzer.myanalyzer.type", "custom")
+                .put("index.analysis.analyzer.myanalyzer.tokenizer", "standard")
+                .put("index.analysis.analyzer.myanalyzer.filter.0", "fst_decompound")
+                .put("index.analysis.filter.subwords.type", "fst_decompound")
+                .put("index.analysis.filter.subwords.subwords_only", true)
+                .put("index.analysis.analyzer.subwordsanalyzer.type", "custom")
+                .put("index.analysis.analyzer.subwordsanalyzer.tokenizer", "standard")
+                .put("index.analysis.analyzer.subwordsanalyzer.filter.0", "subwords")
+                .build();
+        ESTestCase.TestAnalysis analysis = ESTestCase.createTestAnalysis(new Index("test", "_na_"),
+                settings,
+                new BundlePlugin(Settings.EMPTY), new CommonAnalysisPlugin());
+        // without a unique filter, the words which are not split are emitted once
+        assertAnalyzesTo(analysis.indexAnalyzers.get("myanalyzer"), source,
+                new String[] { "Die", "Jahresfeier", "jahres", "feier", "auf", "dem",
+                        "Donaudampfschiff", "donau", "dampf", "schiff" },
+                new int[] { 1, 1, 0, 0, 1, 1, 1, 0, 0, 0 });
+        assertAnalyzesTo(analysis.indexAnalyzers.get("subwordsanalyzer"), source,
+                new String[] { "Die", "jahres", "feier", "auf", "dem", "donau", "dampf", "schiff" },
+                new int[] { 1, 1, 1, 1, 1, 1, 1, 1 });
+    }
+
+    public void testLexiconWord() throws Exception {
+        String source = "Schiff Dampfschiff";
+        for (String splitMode : new String[] { "shortest", "best" }) {
+            Settings settings = Settings.builder()
+                    .put("index.analysis.filter.myfilter.type", "fst_decompound")
+                    .put("index.analysis.filter.myfilter.split_mode", splitMode)
+                    .put("index.analysis.filter.subwords.type", "fst_decompound")
+                    .put("index.analysis.filter.subwords.split_mode", splitMode)
+                    .put("index.analysis.filter.subwords.subwords_only", true)
+                    .put("index.analysis.analyzer.myanalyzer.type", "custom")
+                    .put("index.analysis.analyzer.myanalyzer.tokenizer", "standard")
+                    .put("index.analysis.analyzer.myanalyzer.filter.0", "myfilter")
+                    .put("index.analysis.analyzer.subwordsanalyzer.type", "custom")
+                    .put("index.analysis.analyzer.subwordsanalyzer.tokenizer", "standard")
+                    .put("index.analysis.analyzer.subwordsanalyzer.filter.0", "subwords")
+                    .build();
+            ESTestCase.TestAnalysis analysis = ESTestCase.createTestAnalysis(new Index("test", "_na_"),
+                    settings,
+                    new BundlePlugin(Settings.EMPTY), new CommonAnalysisPlugin());
+            // the single word of the lexicon is not decompounded into itself
+            assertAnalyzesTo(analysis.indexAnalyzers.get("myanalyzer"), source,
+                    new String[] { "Schiff", "Dampfschiff", "dampf", "schiff" },
+                    new int[] { 1, 1, 0, 0 });
+            assertAnalyzesTo(analysis.indexAnalyzers.get("subwordsanalyzer"), source,
+                    new String[] { "Schiff", "dampf", "schiff" },
+                    new int[] { 1, 1, 1 });
+        }
+    }
 }
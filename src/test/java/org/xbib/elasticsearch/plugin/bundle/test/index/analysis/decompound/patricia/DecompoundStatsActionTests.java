@@ -0,0 +1,30 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.analysis.decompound.patricia;
+
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.xbib.elasticsearch.plugin.bundle.BundlePlugin;
+import org.xbib.elasticsearch.plugin.bundle.action.decompound.DecompoundStatsRequestBuilder;
+import org.xbib.elasticsearch.plugin.bundle.action.decompound.DecompoundStatsResponse;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Decompound statistics action test.
+ */
+public class DecompoundStatsActionTests extends ESSingleNodeTestCase {
+
+    /** The plugin classes that should be added to the node. */
+    @Override
+    protected Collection<Class<? extends Plugin>> getPlugins() {
+        return Collections.singletonList(BundlePlugin.class);
+    }
+
+    public void testStats() {
+        DecompoundStatsResponse response = new DecompoundStatsRequestBuilder(client()).execute().actionGet();
+        assertFalse(response.hasFailures());
+        assertEquals(1, response.getNodes().size());
+        // no decompound token filter with a cache is created yet
+        assertTrue(response.getNodes().get(0).getCacheStats().isEmpty());
+    }
+}
@@ -1,16 +1,27 @@
 package org.xbib.elasticsearch.plugin.bundle.test.index.analysis.decompound.patricia;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.elasticsearch.analysis.common.CommonAnalysisPlugin;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.Index;
+import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.analysis.TokenFilterFactory;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.test.ESTokenStreamTestCase;
+import org.elasticsearch.test.IndexSettingsModule;
 import org.xbib.elasticsearch.plugin.bundle.BundlePlugin;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.CacheStats;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.DecompoundCaches;
+import org.xbib.elasticsearch.plugin.bundle.common.decompound.patricia.DecompoundModels;
+import org.xbib.elasticsearch.plugin.bundle.index.analysis.decompound.patricia.DecompoundTokenFilterFactory;
 
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
   Decompound token filter tests.
@@ -86,4 +97,57 @@ public class DecompoundTokenFilterTests extends ESTokenStreamTestCase {
         assertNotNull(analyzer);
         assertTokenStreamContents(analyzer.tokenStream("test-field", source), expected);
     }
+
+    public void testCache() throws Exception {
+        String source = "Die Jahresfeier der Rechtsanwaltskanzleien auf dem Donaudampfschiff hat viel Ökosteuer gekostet";
+        IndexSettings indexSettings = IndexSettingsModule.newIndexSettings("test", Settings.EMPTY);
+        DecompoundModels models = new DecompoundModels(null);
+        DecompoundCaches caches = new DecompoundCaches();
+        Settings settings = Settings.builder().put("use_cache", true).build();
+        DecompoundTokenFilterFactory factory1 = new DecompoundTokenFilterFactory(indexSettings, null, "decomp1",
+                settings, models, caches);
+        DecompoundTokenFilterFactory factory2 = new DecompoundTokenFilterFactory(indexSettings, null, "decomp2",
+                settings, models, caches);
+        DecompoundTokenFilterFactory uncached = new DecompoundTokenFilterFactory(indexSettings, null, "decomp3",
+                Settings.EMPTY, models, caches);
+        assertEquals(1, caches.size());
+        String[] expected = tokens(uncached, source);
+        assertArrayEquals(expected, tokens(factory1, source));
+        assertArrayEquals(expected, tokens(factory2, source));
+        CacheStats stats = caches.stats().get(DecompoundCaches.key(settings));
+        assertEquals(11L, stats.getMisses());
+        assertEquals(11L, stats.getHits());
+        assertEquals(11L, stats.getSize());
+        // a decompounder with another threshold gets its own cache
+        new DecompoundTokenFilterFactory(indexSettings, null, "decomp4",
+                Settings.builder().put("use_cache", true).put("threshold", 0.7d).build(), models, caches);
+        assertEquals(2, caches.size());
+        // but shares the tries
+        assertEquals(3, models.size());
+    }
+
+    public void testCacheEvictionFactor() throws Exception {
+        IndexSettings indexSettings = IndexSettingsModule.newIndexSettings("test", Settings.EMPTY);
+        DecompoundCaches caches = new DecompoundCaches();
+        new DecompoundTokenFilterFactory(indexSettings, null, "decomp",
+                Settings.builder().put("use_cache", true).put("cache_eviction_factor", 0.9f).build(),
+                new DecompoundModels(null), caches);
+        assertEquals(1, caches.size());
+        assertWarnings("[cache_eviction_factor] is ignored, the decompound cache evicts by frequency");
+    }
+
+    private static String[] tokens(TokenFilterFactory factory, String source) throws Exception {
+        Tokenizer tokenizer = new StandardTokenizer();
+        tokenizer.setReader(new StringReader(source));
+        List<String> tokens = new ArrayList<>();
+        try (TokenStream tokenStream = factory.create(tokenizer)) {
+            CharTermAttribute termAtt = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                tokens.add(termAtt.toString());
+            }
+            tokenStream.end();
+        }
+        return tokens.toArray(new String[0]);
+    }
 }
@@ -0,0 +1,80 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModels;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.Language;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Length-adaptive language detection test.
+ */
+public class AdaptiveDetectionTests extends ESTestCase {
+
+    private static final String SHORT_TEXT = "Das ist ein Test";
+
+    private final LangdetectModels models = new LangdetectModels(null);
+
+    public void testShortText() {
+        LangdetectService adaptive = service(Settings.builder().put("adaptive", true));
+        LangdetectService shortText = new LangdetectService(Settings.builder()
+                .put("number_of_trials", 3)
+                .put("iteration_limit", 1000)
+                .put("max", 5)
+                .build(), "shorttext", null, models);
+        assertEquals("de", adaptive.detectAll(SHORT_TEXT).get(0).getLanguage());
+        assertEquals(shortText.detectAll(SHORT_TEXT).toString(), adaptive.detectAll(SHORT_TEXT).toString());
+        // the shorttext profile has no Hangul and no Japanese, these texts are detected with the full profile
+        assertEquals("ko", adaptive.detectAll("한국어 문장입니다").get(0).getLanguage());
+        assertEquals("ja", adaptive.detectAll("これは日本語の文章です。").get(0).getLanguage());
+        // a candidate language which is not in the shorttext profile
+        assertEquals("ru", adaptive.detectAll("Это русский текст", Arrays.asList("ru", "uk")).get(0).getLanguage());
+        assertEquals(2, models.size());
+    }
+
+    public void testSharedScripts() {
+        LangdetectService adaptive = service(Settings.builder().put("adaptive", true));
+        LangdetectService service = service(Settings.builder());
+        // Cyrillic and Arabic are also written by languages which are not in the shorttext profile
+        for (String text : new String[] { "Это русский текст", "Москва столица России" }) {
+            assertEquals("ru", adaptive.detectAll(text).get(0).getLanguage());
+        }
+        for (String text : new String[] { "هذا نص عربي قصير", "أنا أحب القراءة" }) {
+            assertEquals("ar", adaptive.detectAll(text).get(0).getLanguage());
+        }
+        // the best language of the full profile is in the shorttext profile
+        for (String text : new String[] { "Це український текст", "Това е български текст", "این یک متن فارسی است" }) {
+            assertEquals(service.detectAll(text).get(0).getLanguage(), adaptive.detectAll(text).get(0).getLanguage());
+        }
+    }
+
+    public void testLongText() throws Exception {
+        LangdetectService adaptive = service(Settings.builder().put("adaptive", true));
+        LangdetectService service = service(Settings.builder());
+        for (String resource : new String[] { "english.txt", "german.txt" }) {
+            String text = Streams.copyToString(new InputStreamReader(getClass().getResourceAsStream(resource),
+                    StandardCharsets.UTF_8));
+            List<Language> expected = service.detectAll(text);
+            List<Language> languages = adaptive.detectAll(text);
+            assertEquals(expected.get(0).getLanguage(), languages.get(0).getLanguage());
+            assertEquals(expected.get(0).getProbability(), languages.get(0).getProbability(), 1e-3);
+        }
+    }
+
+    public void testMinNGrams() {
+        LangdetectService service = service(Settings.builder().put("min_ngrams", 60));
+        assertTrue(service.detectAll(SHORT_TEXT).isEmpty());
+        assertEquals("en", service.detectAll("This is a longer sentence which is written in the English language")
+                .get(0).getLanguage());
+    }
+
+    private LangdetectService service(Settings.Builder builder) {
+        return new LangdetectService(builder.put("max", 5).build(), null, null, models);
+    }
+}
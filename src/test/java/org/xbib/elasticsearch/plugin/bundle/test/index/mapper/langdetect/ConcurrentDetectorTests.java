@@ -0,0 +1,85 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.Language;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Language detection with many threads on a single shared service. Each thread must get the results of a
+ * detection without concurrency.
+ */
+public class ConcurrentDetectorTests extends ESTestCase {
+
+    private static final int ROUNDS = 40;
+
+    public void testConcurrentDetection() throws Exception {
+        LangdetectService service = new LangdetectService();
+        List<String> texts = new ArrayList<>();
+        texts.add(read("english.txt"));
+        texts.add(read("german.txt"));
+        texts.add(read("chinese.txt"));
+        texts.add(read("japanese.txt"));
+        texts.add(read("korean.txt"));
+        texts.add("Das kann deutsch sein");
+        texts.add("This is a very small test");
+        List<String> expected = new ArrayList<>();
+        for (String text : texts) {
+            expected.add(toString(service.detectAll(text)));
+        }
+        int maxThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Boolean>> futures = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    futures.add(executorService.submit(() -> {
+                        for (int round = 0; round < ROUNDS; round++) {
+                            for (int j = 0; j < texts.size(); j++) {
+                                if (!expected.get(j).equals(toString(service.detectAll(texts.get(j))))) {
+                                    return false;
+                                }
+                            }
+                        }
+                        return true;
+                    }));
+                }
+                for (Future<Boolean> future : futures) {
+                    assertTrue(future.get());
+                }
+            } finally {
+                executorService.shutdown();
+                assertTrue(executorService.awaitTermination(30L, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    private static String toString(List<Language> languages) {
+        StringBuilder sb = new StringBuilder();
+        for (Language language : languages) {
+            sb.append(language.getLanguage()).append(':').append(language.getProbability()).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private String read(String path) throws Exception {
+        Reader reader = new InputStreamReader(getClass().getResourceAsStream(path), StandardCharsets.UTF_8);
+        Writer writer = new StringWriter();
+        Streams.copy(reader, writer);
+        reader.close();
+        writer.close();
+        return writer.toString();
+    }
+}
@@ -6,6 +6,8 @@ import org.elasticsearch.test.ESTestCase;
 import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangProfile;
 import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
 
+import java.util.Collections;
+
 /**
  * Detector test.
  */
@@ -18,7 +20,11 @@ public class DetectorTests extends ESTestCase {
     private static final String TRAINING_JA = "\u3042 \u3042 \u3042 \u3044 \u3046 \u3048 \u3048";
 
     public static LangdetectService create() throws Exception {
-        LangdetectService detect = new LangdetectService(Settings.EMPTY);
+        return create(Settings.EMPTY);
+    }
+
+    public static LangdetectService create(Settings settings) throws Exception {
+        LangdetectService detect = new LangdetectService(settings);
         LangProfile profile_en = new LangProfile();
         profile_en.setName("en_test");
         for (String w : TRAINING_EN.split(" ")) {
@@ -64,4 +70,21 @@ public class DetectorTests extends ESTestCase {
         LangdetectService detect = create();
         assertTrue(detect.detectAll("...").isEmpty());
     }
+
+    public void testExactDetector() throws Exception {
+        LangdetectService detect = create(Settings.builder()
+                .putList("languages", Collections.emptyList())
+                .put("algorithm", "exact")
+                .build());
+        assertEquals(detect.detectAll("a").get(0).getLanguage(), "en_test");
+        assertEquals(detect.detectAll("b d").get(0).getLanguage(), "fr_test");
+        assertEquals(detect.detectAll("d e").get(0).getLanguage(), "en_test");
+        assertEquals(detect.detectAll("\u3042\u3042\u3042\u3042a").get(0).getLanguage(), "ja_test");
+        assertTrue(detect.detectAll("...").isEmpty());
+    }
+
+    public void testUnknownAlgorithm() throws Exception {
+        expectThrows(IllegalArgumentException.class, () ->
+                create(Settings.builder().put("algorithm", "unknown").build()));
+    }
 }
@@ -0,0 +1,55 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.elasticsearch.common.io.Streams;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The held-out texts of the language detection tests, which are translations of the first article of the
+ * Universal Declaration of Human Rights and are not part of the language profiles. Each line of the resource
+ * {@code held-out.txt} is a language code and a text, separated by a tab.
+ */
+final class HeldOutTexts {
+
+    private HeldOutTexts() {
+    }
+
+    /**
+     * @return the held-out texts by language, in the order of the resource
+     * @throws IOException if the resource can not be read
+     */
+    static Map<String, String> load() throws IOException {
+        String content = Streams.copyToString(new InputStreamReader(
+                HeldOutTexts.class.getResourceAsStream("held-out.txt"), StandardCharsets.UTF_8));
+        Map<String, String> texts = new LinkedHashMap<>();
+        for (String line : content.split("\n")) {
+            int pos = line.indexOf('\t');
+            if (pos > 0) {
+                texts.put(line.substring(0, pos), line.substring(pos + 1));
+            }
+        }
+        return texts;
+    }
+
+    /**
+     * A text and its consecutive windows of a fixed number of characters.
+     *
+     * @param text the text
+     * @param window the number of characters of a window
+     * @return the text, followed by the windows of the text
+     */
+    static List<String> windows(String text, int window) {
+        List<String> list = new ArrayList<>();
+        list.add(text);
+        for (int i = 0; i + window <= text.length(); i += window) {
+            list.add(text.substring(i, i + window));
+        }
+        return list;
+    }
+}
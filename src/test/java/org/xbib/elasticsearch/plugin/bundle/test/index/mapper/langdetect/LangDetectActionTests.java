@@ -9,6 +9,7 @@ import org.elasticsearch.test.ESSingleNodeTestCase;
 import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectRequestBuilder;
 import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectResponse;
 import org.xbib.elasticsearch.plugin.bundle.BundlePlugin;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.Language;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -60,6 +61,39 @@ public class LangDetectActionTests extends ESSingleNodeTestCase {
         //}
     }
 
+    public void testLangDetectLanguages() throws Exception {
+        LangdetectResponse response = new LangdetectRequestBuilder(client())
+                .setText("Das ist ein Test")
+                .setLanguages("en", "fr")
+                .execute().actionGet();
+        assertFalse(response.getLanguages().isEmpty());
+        for (Language language : response.getLanguages()) {
+            assertTrue(language.getLanguage(), language.getLanguage().equals("en") ||
+                    language.getLanguage().equals("fr"));
+        }
+        expectThrows(IllegalArgumentException.class, () -> new LangdetectRequestBuilder(client())
+                .setText("Das ist ein Test")
+                .setLanguages("en", "xx")
+                .execute().actionGet());
+    }
+
+    public void testLangDetectSpans() throws Exception {
+        String german = "Alle Menschen sind frei und gleich an Würde und Rechten geboren. " +
+                "Sie sind mit Vernunft und Gewissen begabt und sollen einander im Geist der Brüderlichkeit begegnen.";
+        String english = "All human beings are born free and equal in dignity and rights. " +
+                "They are endowed with reason and conscience and should act towards one another in a spirit of " +
+                "brotherhood.";
+        LangdetectResponse response = new LangdetectRequestBuilder(client())
+                .setText(german + " " + english)
+                .setSpans(true)
+                .execute().actionGet();
+        assertTrue(response.getLanguages().isEmpty());
+        assertEquals(2, response.getSpans().size());
+        assertEquals("de", response.getSpans().get(0).getLanguage());
+        assertEquals("en", response.getSpans().get(1).getLanguage());
+        assertEquals(german.length() + english.length() + 1, response.getSpans().get(1).getEnd());
+    }
+
     public void testSort() throws Exception {
         //startCluster();
         //try {
@@ -0,0 +1,157 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.xbib.elasticsearch.plugin.bundle.BundlePlugin;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectBulkRequest;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectBulkRequestBuilder;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectBulkResponse;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectRequestBuilder;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectResponse;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.Language;
+import org.xbib.elasticsearch.plugin.bundle.rest.action.langdetect.RestLangdetectBulkAction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bulk language detection action test.
+ */
+public class LangDetectBulkActionTests extends ESSingleNodeTestCase {
+
+    private static final List<String> TEXTS = Arrays.asList(
+            "hello this is a test",
+            "Einigkeit und Recht und Freiheit für das deutsche Vaterland!",
+            "Allons enfants de la Patrie, Le jour de gloire est arrivé!",
+            "",
+            "Oh, say can you see by the dawn`s early light");
+
+    /** The plugin classes that should be added to the node. */
+    @Override
+    protected Collection<Class<? extends Plugin>> getPlugins() {
+        return Collections.singletonList(BundlePlugin.class);
+    }
+
+    public void testBulk() throws Exception {
+        LangdetectBulkRequestBuilder builder = new LangdetectBulkRequestBuilder(client());
+        for (int i = 0; i < 10; i++) {
+            builder.add(TEXTS);
+        }
+        LangdetectBulkResponse response = builder.execute().actionGet();
+        assertFalse(response.hasFailures());
+        assertEquals(10 * TEXTS.size(), response.getItems().length);
+        for (int i = 0; i < response.getItems().length; i++) {
+            LangdetectResponse single = new LangdetectRequestBuilder(client())
+                    .setText(TEXTS.get(i % TEXTS.size()))
+                    .execute().actionGet();
+            assertEquals(toString(single.getLanguages()), toString(response.getItems()[i].getLanguages()));
+        }
+        assertEquals("en", response.getItems()[0].getLanguages().get(0).getLanguage());
+        assertEquals("de", response.getItems()[1].getLanguages().get(0).getLanguage());
+        assertEquals("fr", response.getItems()[2].getLanguages().get(0).getLanguage());
+        assertTrue(response.getItems()[3].getLanguages().isEmpty());
+    }
+
+    public void testBulkProfile() throws Exception {
+        LangdetectBulkResponse response = new LangdetectBulkRequestBuilder(client())
+                .setProfile("shorttext")
+                .add(TEXTS)
+                .execute().actionGet();
+        assertEquals("shorttext", response.getProfile());
+        assertEquals(TEXTS.size(), response.getItems().length);
+        assertEquals("en", response.getItems()[0].getLanguages().get(0).getLanguage());
+    }
+
+    public void testValidation() {
+        assertNotNull(new LangdetectBulkRequest().validate());
+        assertNull(new LangdetectBulkRequest().add("a").add((String) null).validate());
+        assertNull(new LangdetectBulkRequest().add("a").validate());
+    }
+
+    public void testMissingText() throws Exception {
+        LangdetectBulkResponse response = new LangdetectBulkRequestBuilder(client())
+                .add(TEXTS.get(0))
+                .add((String) null)
+                .add(TEXTS.get(1))
+                .execute().actionGet();
+        assertTrue(response.hasFailures());
+        assertEquals(3, response.getItems().length);
+        assertEquals("en", response.getItems()[0].getLanguages().get(0).getLanguage());
+        assertTrue(response.getItems()[1].isFailed());
+        assertEquals("de", response.getItems()[2].getLanguages().get(0).getLanguage());
+    }
+
+    public void testParse() throws Exception {
+        LangdetectBulkRequest request = parse("{\"texts\":[\"a\",null,1,{\"text\":\"b\"},\"c\"]," +
+                "\"profile\":\"shorttext\",\"languages\":[\"de\",\"en\"]}");
+        assertEquals(Arrays.asList("a", null, null, null, "c"), request.getTexts());
+        assertEquals("shorttext", request.getProfile());
+        assertEquals(Arrays.asList("de", "en"), request.getLanguages());
+        request = parse("{\"text\":\"a\"}\n{\"text\":null}\n{\"text\":[\"b\"]}\n{\"text\":\"c\"}\n");
+        assertEquals(Arrays.asList("a", null, null, "c"), request.getTexts());
+        assertEquals("", request.getProfile());
+        for (String body : new String[] {
+                "{\"text\":\"a\"}\n{\"text\":\"b\",\"profile\":\"shorttext\"}\n",
+                "{\"text\":\"a\",\"languages\":\"de\"}\n",
+                "{\"text\":\"a\"}\n{\"texts\":[\"b\"]}\n",
+                "{\"texts\":[\"a\"]}\n{\"text\":\"b\"}\n",
+                "{\"texts\":[\"a\"],\"text\":\"b\"}",
+                "{\"doc\":{\"text\":\"a\"}}",
+                "[\"a\"]"
+        }) {
+            expectThrows(IllegalArgumentException.class, () -> parse(body));
+        }
+    }
+
+    private LangdetectBulkRequest parse(String body) throws Exception {
+        LangdetectBulkRequest request = new LangdetectBulkRequest().setProfile("");
+        List<String> languages = new ArrayList<>();
+        try (XContentParser parser = createParser(JsonXContent.jsonXContent, body)) {
+            RestLangdetectBulkAction.parse(parser, request, languages);
+        }
+        return request.setLanguages(languages);
+    }
+
+    public void testSerialization() throws Exception {
+        LangdetectBulkRequest request = new LangdetectBulkRequest().setProfile("shorttext").add(TEXTS)
+                .add((String) null);
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+        LangdetectBulkRequest request2 = new LangdetectBulkRequest();
+        request2.readFrom(out.bytes().streamInput());
+        assertEquals(request.getProfile(), request2.getProfile());
+        assertEquals(request.getTexts(), request2.getTexts());
+
+        LangdetectBulkResponse response = new LangdetectBulkResponse().setItems(new LangdetectBulkResponse.Item[] {
+                new LangdetectBulkResponse.Item(Collections.singletonList(new Language("de", 0.9d))),
+                new LangdetectBulkResponse.Item(new IllegalArgumentException("boom"))
+        });
+        out = new BytesStreamOutput();
+        response.writeTo(out);
+        StreamInput in = out.bytes().streamInput();
+        LangdetectBulkResponse response2 = new LangdetectBulkResponse();
+        response2.readFrom(in);
+        assertNull(response2.getProfile());
+        assertTrue(response2.hasFailures());
+        assertEquals(2, response2.getItems().length);
+        assertEquals("de", response2.getItems()[0].getLanguages().get(0).getLanguage());
+        assertEquals(0.9d, response2.getItems()[0].getLanguages().get(0).getProbability(), 0.0d);
+        assertTrue(response2.getItems()[1].isFailed());
+        assertEquals("boom", response2.getItems()[1].getFailure().getMessage());
+    }
+
+    private static String toString(List<Language> languages) {
+        StringBuilder sb = new StringBuilder();
+        for (Language language : languages) {
+            sb.append(language.getLanguage()).append(':').append(language.getProbability()).append(' ');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.xbib.elasticsearch.plugin.bundle.BundlePlugin;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectNodeStats;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectRequestBuilder;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectStatsRequestBuilder;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectStatsResponse;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.CacheStats;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModelStats;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Language detection statistics action test.
+ */
+public class LangDetectStatsActionTests extends ESSingleNodeTestCase {
+
+    /** The plugin classes that should be added to the node. */
+    @Override
+    protected Collection<Class<? extends Plugin>> getPlugins() {
+        return Collections.singletonList(BundlePlugin.class);
+    }
+
+    @Override
+    protected Settings nodeSettings() {
+        return Settings.builder()
+                .put("plugins.xbib.langdetect.cache.enabled", true)
+                .put("plugins.xbib.langdetect.cache.size", 100)
+                .build();
+    }
+
+    public void testCacheStats() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals("en", new LangdetectRequestBuilder(client())
+                    .setText("hello this is a test")
+                    .execute().actionGet().getLanguages().get(0).getLanguage());
+        }
+        LangdetectStatsResponse response = new LangdetectStatsRequestBuilder(client()).execute().actionGet();
+        assertFalse(response.hasFailures());
+        assertEquals(1, response.getNodes().size());
+        CacheStats stats = response.getNodes().get(0).getCacheStats();
+        assertEquals(100L, stats.getMaximumSize());
+        assertEquals(1L, stats.getMisses());
+        assertEquals(2L, stats.getHits());
+        // the query cache has its default size
+        assertEquals(1024L, response.getNodes().get(0).getQueryCacheStats().getMaximumSize());
+        // the models are loaded on first use and shared by the services of the node
+        new LangdetectRequestBuilder(client()).setProfile("shorttext").setText("hello").execute().actionGet();
+        response = new LangdetectStatsRequestBuilder(client()).execute().actionGet();
+        LangdetectNodeStats nodeStats = response.getNodes().get(0);
+        assertEquals(2, nodeStats.getServices());
+        assertEquals(2, nodeStats.getModelStats().size());
+        for (LangdetectModelStats modelStats : nodeStats.getModelStats()) {
+            assertTrue(modelStats.getNgrams() > 0L);
+            assertTrue(modelStats.getHeapBytes() > 0L);
+        }
+    }
+}
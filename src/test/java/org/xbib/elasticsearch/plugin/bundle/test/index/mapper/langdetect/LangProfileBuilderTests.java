@@ -0,0 +1,104 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangProfile;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangProfileBuilder;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.NGram;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Language profile builder test.
+ */
+public class LangProfileBuilderTests extends ESTestCase {
+
+    public void testCounts() {
+        String text = "Das ist ein Test, das ist kein Test.";
+        LangProfile expected = new LangProfile();
+        expected.setName("de");
+        NGram ngram = new NGram();
+        for (char ch : text.toCharArray()) {
+            ngram.addChar(Character.isLetter(ch) ? ch : ' ');
+            for (int n = 1; n <= NGram.N_GRAM; n++) {
+                expected.add(ngram.get(n));
+            }
+        }
+        LangProfile profile;
+        try (LangProfileBuilder builder = new LangProfileBuilder("de", 1, 0)) {
+            builder.add(text);
+            profile = builder.build();
+        }
+        assertEquals("de", profile.getName());
+        assertEquals(expected.getNWords(), profile.getNWords());
+        assertEquals(expected.getFreq(), profile.getFreq());
+    }
+
+    public void testParallel() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        String content = resource("held-out.txt");
+        while (sb.length() < 3 << 20) {
+            sb.append(content);
+        }
+        String corpus = sb.toString();
+        LangProfile profile1;
+        try (LangProfileBuilder builder = new LangProfileBuilder("xx", 1, 2)) {
+            builder.add(new StringReader(corpus));
+            profile1 = builder.build();
+        }
+        LangProfile profile4;
+        try (LangProfileBuilder builder = new LangProfileBuilder("xx", 4, 2)) {
+            builder.add(new StringReader(corpus));
+            profile4 = builder.build();
+        }
+        assertEquals(profile1.getNWords(), profile4.getNWords());
+        assertEquals(profile1.getFreq(), profile4.getFreq());
+        // the rare n-grams are omitted
+        assertTrue(profile1.getFreq().size() > 1000);
+        for (Integer count : profile1.getFreq().values()) {
+            assertTrue(count > 2);
+        }
+    }
+
+    public void testWriteRead() throws Exception {
+        LangProfile profile;
+        try (LangProfileBuilder builder = new LangProfileBuilder("en", 2, 0)) {
+            builder.add(resource("english.txt"));
+            profile = builder.build();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        profile.write(out);
+        LangProfile read = new LangProfile();
+        read.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(profile.getName(), read.getName());
+        assertEquals(profile.getNWords(), read.getNWords());
+        assertEquals(profile.getFreq(), read.getFreq());
+    }
+
+    public void testDetection() throws Exception {
+        Map<String, String> samples = HeldOutTexts.load();
+        LangdetectService service = new LangdetectService(Settings.EMPTY);
+        String[] languages = { "de", "en", "fr" };
+        for (int i = 0; i < languages.length; i++) {
+            try (LangProfileBuilder builder = new LangProfileBuilder(languages[i], 2, 0)) {
+                builder.add(samples.get(languages[i]));
+                service.addProfile(builder.build(), i, languages.length);
+            }
+        }
+        assertEquals("de", service.detectAll("Alle Menschen sind frei").get(0).getLanguage());
+        assertEquals("en", service.detectAll("All human beings are free").get(0).getLanguage());
+        assertEquals("fr", service.detectAll("Tous les êtres humains").get(0).getLanguage());
+    }
+
+    private String resource(String name) throws Exception {
+        return Streams.copyToString(new InputStreamReader(getClass().getResourceAsStream(name),
+                StandardCharsets.UTF_8));
+    }
+}
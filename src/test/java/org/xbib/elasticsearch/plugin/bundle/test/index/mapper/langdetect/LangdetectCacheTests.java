@@ -0,0 +1,114 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.apache.lucene.util.SuppressForbidden;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.CacheStats;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectCache;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.Language;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Language detection cache test.
+ */
+public class LangdetectCacheTests extends ESTestCase {
+
+    public void testCachedDetection() {
+        LangdetectCache cache = new LangdetectCache(100);
+        Settings settings = Settings.builder().put("max", 5).build();
+        LangdetectService service = new LangdetectService(settings, null, cache);
+        LangdetectService uncached = new LangdetectService(settings);
+        String text = "Einigkeit und Recht und Freiheit für das deutsche Vaterland!";
+        List<Language> languages = service.detectAll(text);
+        assertEquals(toString(uncached.detectAll(text)), toString(languages));
+        assertSame(languages, service.detectAll(text));
+        CacheStats stats = cache.stats();
+        assertEquals(1L, stats.getHits());
+        assertEquals(1L, stats.getMisses());
+        assertEquals(1L, stats.getSize());
+    }
+
+    public void testSettingsAreSeparated() {
+        LangdetectCache cache = new LangdetectCache(100);
+        LangdetectService service = new LangdetectService(Settings.builder()
+                .put("max", 1).build(), null, cache);
+        LangdetectService service2 = new LangdetectService(Settings.builder()
+                .put("max", 2).build(), null, cache);
+        String text = "Das kann deutsch sein";
+        service.detectAll(text);
+        service2.detectAll(text);
+        assertEquals(0L, cache.stats().getHits());
+        assertEquals(2L, cache.stats().getSize());
+    }
+
+    public void testCandidateLanguagesAreSeparated() {
+        LangdetectCache cache = new LangdetectCache(100);
+        LangdetectService service = new LangdetectService(Settings.builder().put("max", 5).build(), null, cache);
+        LangdetectService service2 = new LangdetectService(Settings.builder().put("max", 5).build(), null, cache);
+        // the columns of ar, uk and of bg, et are [0, 40] and [1, 9], which have the same Arrays.hashCode()
+        assertEquals(Arrays.asList("ar", "bg", "et", "uk"),
+                Arrays.asList(service.getLanguages().get(0), service.getLanguages().get(1),
+                        service.getLanguages().get(9), service.getLanguages().get(40)));
+        String text = "Це український текст";
+        assertEquals("uk", service.detectAll(text, Arrays.asList("ar", "uk")).get(0).getLanguage());
+        assertEquals("bg", service.detectAll(text, Arrays.asList("bg", "et")).get(0).getLanguage());
+        assertEquals("uk", service.detectAll(text, Arrays.asList("uk", "ar")).get(0).getLanguage());
+        assertEquals(1L, cache.stats().getHits());
+        // another service with equal settings has its own results
+        assertEquals("bg", service2.detectAll(text, Arrays.asList("bg", "et")).get(0).getLanguage());
+        assertEquals(1L, cache.stats().getHits());
+        assertEquals(3L, cache.stats().getSize());
+    }
+
+    /**
+     * A cache hit encodes and hashes the text into the scratch key of the thread, it does not allocate.
+     */
+    @SuppressForbidden(reason = "measure the bytes which are allocated by the thread")
+    public void testHitDoesNotAllocate() {
+        LangdetectCache cache = new LangdetectCache(100);
+        LangdetectService service = new LangdetectService(Settings.builder().put("max", 5).build(), null, cache);
+        String text = "Einigkeit und Recht und Freiheit für das deutsche Vaterland!";
+        Function<CharSequence, List<Language>> detector = service::detectAll;
+        List<Language> languages = cache.computeIfAbsent(service, null, text, detector);
+        assertSame(languages, cache.computeIfAbsent(service, null, text, detector));
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue("thread allocated memory is not supported", threadMXBean instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported());
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        long threadId = Thread.currentThread().getId();
+        int lookups = 10000;
+        long b0 = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < lookups; i++) {
+            if (cache.computeIfAbsent(service, null, text, detector) != languages) {
+                fail("cache miss");
+            }
+        }
+        long b1 = allocations.getThreadAllocatedBytes(threadId);
+        // the measurement may allocate a few bytes, but not one byte per lookup
+        assertTrue((b1 - b0) + " bytes for " + lookups + " lookups", b1 - b0 < lookups);
+    }
+
+    public void testDisabled() {
+        LangdetectCache cache = new LangdetectCache(0);
+        assertFalse(cache.isEnabled());
+        LangdetectService service = new LangdetectService(Settings.builder().put("max", 5).build(), null, cache);
+        service.detectAll("Das kann deutsch sein");
+        service.detectAll("Das kann deutsch sein");
+        assertEquals(0L, cache.stats().getMisses());
+        assertEquals(0L, cache.stats().getMaximumSize());
+    }
+
+    private static String toString(List<Language> languages) {
+        StringBuilder sb = new StringBuilder();
+        for (Language language : languages) {
+            sb.append(language.getLanguage()).append(':').append(language.getProbability()).append(' ');
+        }
+        return sb.toString();
+    }
+}
@@ -21,6 +21,8 @@ import org.elasticsearch.test.InternalSettingsPlugin;
 import org.xbib.elasticsearch.plugin.bundle.BundlePlugin;
 
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Collection;
 
 /**
@@ -47,6 +49,41 @@ public class LangdetectMappingTests extends ESSingleNodeTestCase {
         assertEquals("en", doc.rootDoc().getFields("someField")[0].stringValue());
     }
 
+    public void testDefaultMapping() throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject()
+                .startObject("someType").startObject("properties").startObject("someField")
+                .field("type", "langdetect")
+                .endObject().endObject().endObject().endObject();
+        IndexService indexService = createIndex("some_index", Settings.EMPTY, "someType", mapping);
+        DocumentMapper docMapper = indexService.mapperService().documentMapper("someType");
+        BytesReference json = BytesReference.bytes(XContentFactory.jsonBuilder()
+                .startObject().field("someField", copyToStringFromClasspath("german.txt")).endObject());
+        SourceToParse sourceToParse = SourceToParse.source("some_index", "someType", "1", json, XContentType.JSON);
+        ParsedDocument doc = docMapper.parse(sourceToParse);
+        assertEquals("de", doc.rootDoc().getFields("someField")[0].stringValue());
+    }
+
+    public void testAdaptiveMapping() throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject()
+                .startObject("someType").startObject("properties").startObject("someField")
+                .field("type", "langdetect")
+                .field("adaptive", true)
+                .field("min_ngrams", 12)
+                .endObject().endObject().endObject().endObject();
+        IndexService indexService = createIndex("some_index", Settings.EMPTY, "someType", mapping);
+        DocumentMapper docMapper = indexService.mapperService().documentMapper("someType");
+        assertTrue(docMapper.mappingSource().string().contains("\"adaptive\":\"true\""));
+        BytesReference json = BytesReference.bytes(XContentFactory.jsonBuilder()
+                .startObject().field("someField", "Das ist ein Test").endObject());
+        ParsedDocument doc = docMapper.parse(SourceToParse.source("some_index", "someType", "1", json,
+                XContentType.JSON));
+        assertEquals("de", doc.rootDoc().getFields("someField")[0].stringValue());
+        json = BytesReference.bytes(XContentFactory.jsonBuilder()
+                .startObject().field("someField", "Test").endObject());
+        doc = docMapper.parse(SourceToParse.source("some_index", "someType", "2", json, XContentType.JSON));
+        assertEquals(0, doc.rootDoc().getFields("someField").length);
+    }
+
     public void testBinary() throws Exception {
         IndexService indexService = createIndex("some_index", Settings.EMPTY,
                 "someType", getMapping("base64-mapping.json"));
@@ -64,6 +101,54 @@ public class LangdetectMappingTests extends ESSingleNodeTestCase {
         assertEquals("en", doc.rootDoc().getFields("someField")[0].stringValue());
     }
 
+    public void testBinarySampled() throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject()
+                .startObject("someType").startObject("properties").startObject("someField")
+                .field("type", "langdetect")
+                .array("languages", "en", "fr", "de", "it", "es")
+                .field("binary", true)
+                .field("max_chars", 1000)
+                .field("sample_windows", 3)
+                .endObject().endObject().endObject().endObject();
+        IndexService indexService = createIndex("some_index", Settings.EMPTY, "someType", mapping);
+        DocumentMapper docMapper = indexService.mapperService().documentMapper("someType");
+        String sampleBinary = copyToStringFromClasspath("base64.txt");
+        BytesReference json = BytesReference.bytes(XContentFactory.jsonBuilder()
+                .startObject().field("someField", sampleBinary).endObject());
+        SourceToParse sourceToParse = SourceToParse.source("some_index", "someType", "1", json, XContentType.JSON);
+        ParsedDocument doc = docMapper.parse(sourceToParse);
+        assertTrue(doc.rootDoc().getFields("someField").length >= 1);
+        assertEquals("en", doc.rootDoc().getFields("someField")[0].stringValue());
+    }
+
+    public void testBinaryClearText() throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject()
+                .startObject("someType").startObject("properties").startObject("someField")
+                .field("type", "langdetect")
+                .array("languages", "en", "fr", "de", "it", "es")
+                .field("binary", true)
+                .field("algorithm", "exact")
+                .field("max_chars", 16)
+                .endObject().endObject().endObject().endObject();
+        IndexService indexService = createIndex("some_index", Settings.EMPTY, "someType", mapping);
+        DocumentMapper docMapper = indexService.mapperService().documentMapper("someType");
+        // the characters which are decoded up to max_chars are Base64 characters, but the value is clear text
+        BytesReference text = BytesReference.bytes(XContentFactory.jsonBuilder()
+                .startObject().field("someField", "Donaudampfschifffahrtsgesellschaft ist ein Wort").endObject());
+        ParsedDocument textDoc = docMapper.parse(SourceToParse.source("some_index", "someType", "1", text,
+                XContentType.JSON));
+        assertEquals("de", textDoc.rootDoc().getFields("someField")[0].stringValue());
+        // Base64 with line breaks between groups of four characters is decoded
+        String encoded = Base64.getMimeEncoder().encodeToString(
+                "Das ist ein Test, der in deutscher Sprache geschrieben ist".getBytes(StandardCharsets.UTF_8));
+        assertTrue(encoded.contains("\r\n"));
+        BytesReference json = BytesReference.bytes(XContentFactory.jsonBuilder()
+                .startObject().field("someField", encoded).endObject());
+        ParsedDocument doc = docMapper.parse(SourceToParse.source("some_index", "someType", "2", json,
+                XContentType.JSON));
+        assertEquals("de", doc.rootDoc().getFields("someField")[0].stringValue());
+    }
+
     public void testBinary2() throws Exception {
         String mapping = copyToStringFromClasspath("base64-2-mapping.json");
         DocumentMapper docMapper = createIndex("some_index")
@@ -0,0 +1,160 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModel;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModelCompiler;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModels;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.Language;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiled language detection model test.
+ */
+public class LangdetectModelTests extends ESTestCase {
+
+    private static final String[] TEXTS = {
+            "Einigkeit und Recht und Freiheit für das deutsche Vaterland!",
+            "This is a very small test",
+            "Ceci est un texte en français",
+            "Questo è un testo in italiano",
+            "Это русский текст"
+    };
+
+    public void testCompiledModel() throws Exception {
+        Path directory = createTempDir();
+        Path path = LangdetectModelCompiler.compile(null, directory);
+        assertEquals(LangdetectModel.fileName(null), path.getFileName().toString());
+        List<String> languages = LangdetectService.getLanguages(Settings.EMPTY, null);
+        LangdetectModel built = LangdetectModel.build(null, languages);
+        LangdetectModel mapped = LangdetectModel.read(null, path);
+        assertEquals(built.getLanguages(), mapped.getLanguages());
+        assertEquals(built.getTable().size(), mapped.getTable().size());
+        assertTrue(mapped.getTable().isReadOnly());
+        assertTrue(mapped.ramBytesUsed() < built.ramBytesUsed());
+        LangdetectModels models = new LangdetectModels(directory);
+        assertEquals(mapped.getLanguages(), models.get(null, languages).getLanguages());
+        assertTrue(models.get(null, languages).getTable().isReadOnly());
+        Settings settings = Settings.builder().put("algorithm", "exact").build();
+        LangdetectService service = new LangdetectService(settings, null, null, models);
+        LangdetectService json = new LangdetectService(settings);
+        for (String text : TEXTS) {
+            assertEquals(toString(json.detectAll(text)), toString(service.detectAll(text)));
+        }
+    }
+
+    public void testSharedModel() {
+        LangdetectModels models = new LangdetectModels(null);
+        Settings settings = Settings.builder().put("max", 1).build();
+        LangdetectService service = new LangdetectService(settings, null, null, models);
+        LangdetectService service2 = new LangdetectService(Settings.builder().put("max", 2).build(),
+                null, null, models);
+        assertSame(service.getTable(), service2.getTable());
+        assertFalse(service.getTable().isReadOnly());
+        LangdetectService service3 = new LangdetectService(Settings.builder()
+                .putList("languages", "de", "en").build(), null, null, models);
+        assertNotSame(service.getTable(), service3.getTable());
+        assertEquals(2, models.size());
+        assertEquals("de", service3.detectAll(TEXTS[0]).get(0).getLanguage());
+    }
+
+    public void testLanguageMismatch() throws Exception {
+        Path directory = createTempDir();
+        LangdetectModel.build(null, Arrays.asList("de", "en")).write(directory.resolve(LangdetectModel.fileName(null)));
+        LangdetectModels models = new LangdetectModels(directory);
+        List<String> languages = LangdetectService.getLanguages(Settings.EMPTY, null);
+        LangdetectModel model = models.get(null, languages);
+        assertEquals(languages, model.getLanguages());
+        assertFalse(model.getTable().isReadOnly());
+        assertTrue(models.get(null, Arrays.asList("de", "en")).getTable().isReadOnly());
+    }
+
+    public void testUnknownLanguages() {
+        List<String> languages = Arrays.asList("de", "xx", "en", "yy");
+        LangdetectModel model = LangdetectModel.build(null, languages);
+        assertEquals(Arrays.asList("de", "en"), model.getLanguages());
+        assertEquals(2, model.getTable().getLangSize());
+        for (String algorithm : new String[] { "sampling", "exact" }) {
+            LangdetectService service = new LangdetectService(Settings.builder()
+                    .put("algorithm", algorithm)
+                    .putList("languages", languages)
+                    .build(), null, null, new LangdetectModels(null));
+            LangdetectService json = new LangdetectService(Settings.builder()
+                    .put("algorithm", algorithm)
+                    .putList("languages", "de", "en")
+                    .build());
+            assertEquals(Arrays.asList("de", "en"), service.getLanguages());
+            for (String text : TEXTS) {
+                assertEquals(toString(json.detectAll(text)), toString(service.detectAll(text)));
+            }
+        }
+    }
+
+    public void testSelectedModel() {
+        List<String> subset = Arrays.asList("de", "fr", "it", "en");
+        LangdetectModels models = new LangdetectModels(null);
+        LangdetectModel selected = models.get(null, subset);
+        LangdetectModel built = LangdetectModel.build(null, subset);
+        assertEquals(2, models.size());
+        assertEquals(subset, selected.getLanguages());
+        assertEquals(built.getTable().size(), selected.getTable().size());
+        assertTrue(selected.getTable().size() < models.get(null,
+                LangdetectService.getLanguages(Settings.EMPTY, null)).getTable().size());
+        assertNull(built.select(Arrays.asList("de", "de")));
+        assertNull(built.select(Arrays.asList("de", "ru")));
+        for (String algorithm : new String[] { "sampling", "exact" }) {
+            Settings settings = Settings.builder()
+                    .put("algorithm", algorithm)
+                    .putList("languages", subset)
+                    .build();
+            LangdetectService service = new LangdetectService(settings, null, null, models);
+            LangdetectService json = new LangdetectService(settings);
+            for (String text : TEXTS) {
+                assertEquals(toString(json.detectAll(text)), toString(service.detectAll(text)));
+            }
+        }
+    }
+
+    public void testRestrictedDetection() {
+        List<String> subset = Arrays.asList("de", "fr", "it", "en");
+        LangdetectModels models = new LangdetectModels(null);
+        for (String algorithm : new String[] { "sampling", "exact" }) {
+            LangdetectService service = new LangdetectService(Settings.builder()
+                    .put("algorithm", algorithm)
+                    .build(), null, null, models);
+            LangdetectService json = new LangdetectService(Settings.builder()
+                    .put("algorithm", algorithm)
+                    .putList("languages", subset)
+                    .build());
+            for (String text : TEXTS) {
+                assertSameLanguages(json.detectAll(text), service.detectAll(text, subset));
+            }
+            assertEquals(toString(service.detectAll(TEXTS[4])), toString(service.detectAll(TEXTS[4], null)));
+        }
+        LangdetectService service = new LangdetectService(Settings.builder().put("max", 1).build(),
+                null, null, models);
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () ->
+                service.detectAll(TEXTS[0], Arrays.asList("de", "xx")));
+        assertTrue(e.getMessage(), e.getMessage().startsWith("language xx is not one of"));
+    }
+
+    private static void assertSameLanguages(List<Language> expected, List<Language> actual) {
+        assertEquals(toString(expected), expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getLanguage(), actual.get(i).getLanguage());
+            assertEquals(expected.get(i).getProbability(), actual.get(i).getProbability(), 1e-12);
+        }
+    }
+
+    private static String toString(List<Language> languages) {
+        StringBuilder sb = new StringBuilder();
+        for (Language language : languages) {
+            sb.append(language.getLanguage()).append(':').append(language.getProbability()).append(' ');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModel;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModelStats;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModels;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectServices;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Language detection service registry test.
+ */
+public class LangdetectServicesTests extends ESTestCase {
+
+    public void testSharedService() {
+        LangdetectServices services = new LangdetectServices(null, new LangdetectModels(null));
+        LangdetectService service = services.get(Settings.EMPTY, null);
+        // settings which are not read by the service and the default languages give the same service
+        assertSame(service, services.get(Settings.builder()
+                .put("binary", true)
+                .put("node.name", "test")
+                .putList("languages", LangdetectService.getLanguages(Settings.EMPTY, null))
+                .build(), ""));
+        assertEquals("en", service.detectAll("This is a very small test").get(0).getLanguage());
+        LangdetectService shorttext = services.get(Settings.EMPTY, "shorttext");
+        assertNotSame(service, shorttext);
+        assertSame(shorttext, services.get(Settings.builder().put("profile", "shorttext").build(), null));
+        assertNotSame(service, services.get(Settings.builder().put("max", 1).build(), null));
+        assertEquals(3, services.size());
+        assertEquals(2, services.getModels().size());
+        List<LangdetectModelStats> stats = services.getModels().stats();
+        assertEquals(2, stats.size());
+        assertEquals("default", stats.get(0).getProfile());
+        assertEquals(service.getLanguages().size(), stats.get(0).getLanguages());
+        assertEquals(service.getTable().size(), stats.get(0).getNgrams());
+        assertEquals("32 bit", stats.get(0).getStorage());
+        assertEquals("shorttext", stats.get(1).getProfile());
+        assertTrue(stats.get(1).getHeapBytes() > 0L);
+    }
+
+    public void testConcurrentGet() throws Exception {
+        LangdetectServices services = new LangdetectServices(null, new LangdetectModels(null));
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            List<Future<LangdetectService>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    latch.await();
+                    return services.get(Settings.EMPTY, null);
+                }));
+            }
+            latch.countDown();
+            for (Future<LangdetectService> future : futures) {
+                assertSame(futures.get(0).get(), future.get());
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, services.size());
+        assertEquals(1, services.getModels().size());
+    }
+
+    public void testConcurrentModels() throws Exception {
+        LangdetectModels models = new LangdetectModels(null);
+        List<String> all = LangdetectService.getLanguages(Settings.EMPTY, null);
+        List<String> subset = all.subList(0, 3);
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            List<Future<LangdetectModel>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                // the subset loads the model of all default languages while other threads request it
+                List<String> languages = i % 2 == 0 ? subset : all;
+                futures.add(executor.submit(() -> {
+                    latch.await();
+                    models.stats();
+                    return models.get(null, languages);
+                }));
+            }
+            latch.countDown();
+            for (int i = 0; i < threads; i++) {
+                assertSame(futures.get(i % 2).get(), futures.get(i).get());
+            }
+            assertEquals(subset, futures.get(0).get().getLanguages());
+            assertEquals(all, futures.get(1).get().getLanguages());
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertEquals(2, models.size());
+        assertEquals(2, models.stats().size());
+    }
+}
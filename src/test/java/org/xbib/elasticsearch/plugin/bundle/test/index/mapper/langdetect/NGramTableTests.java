@@ -0,0 +1,85 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.NGramTable;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+/**
+ * N-gram table test.
+ */
+public class NGramTableTests extends ESTestCase {
+
+    public void testKey() {
+        assertEquals(0L, NGramTable.key(""));
+        assertEquals(0L, NGramTable.key("abcd"));
+        assertNotEquals(NGramTable.key("a"), NGramTable.key(" a"));
+        assertNotEquals(NGramTable.key("ab"), NGramTable.key("ba"));
+        assertNotEquals(NGramTable.key("\u0000a"), NGramTable.key("a"));
+        assertEquals(NGramTable.key("abc"), NGramTable.key(new StringBuilder("abc")));
+    }
+
+    public void testAddAndFind() {
+        NGramTable table = new NGramTable(3);
+        int count = 20000;
+        for (int i = 0; i < count; i++) {
+            int row = table.add(NGramTable.key(gram(i)));
+            assertEquals(i, row);
+            table.set(row, i % 3, i);
+        }
+        table.trim();
+        assertEquals(count, table.size());
+        for (int i = 0; i < count; i++) {
+            int row = table.find(NGramTable.key(gram(i)));
+            assertEquals(i, row);
+            assertEquals(i, table.get(row, i % 3), 0.5d);
+            assertEquals(0d, table.get(row, (i + 1) % 3), 0d);
+            assertEquals(row, table.add(NGramTable.key(gram(i))));
+        }
+        assertEquals(-1, table.find(NGramTable.key("￿￿￿")));
+        assertTrue(table.ramBytesUsed() > count * 3 * Float.BYTES);
+    }
+
+    public void testUpdate() {
+        NGramTable table = new NGramTable(2);
+        int row = table.add(NGramTable.key("ab"));
+        table.set(row, 0, 0.5d);
+        double[] prob = {1.0d, 1.0d};
+        table.update(row, prob, 0.25d);
+        assertEquals(0.75d, prob[0], 1e-7);
+        assertEquals(0.25d, prob[1], 1e-7);
+    }
+
+    public void testWriteAndRead() throws Exception {
+        NGramTable table = new NGramTable(3);
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            table.set(table.add(NGramTable.key(gram(i))), i % 3, i / 10000d);
+        }
+        table.trim();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.writeTo(Channels.newChannel(out));
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        NGramTable read = NGramTable.readFrom(buffer);
+        assertFalse(buffer.hasRemaining());
+        assertTrue(read.isReadOnly());
+        assertEquals(table.size(), read.size());
+        assertEquals(table.getLangSize(), read.getLangSize());
+        for (int i = 0; i < count; i++) {
+            int row = read.find(NGramTable.key(gram(i)));
+            assertEquals(table.find(NGramTable.key(gram(i))), row);
+            for (int lang = 0; lang < 3; lang++) {
+                assertEquals(table.get(row, lang), read.get(row, lang), 0d);
+            }
+        }
+        assertEquals(-1, read.find(NGramTable.key("￿￿￿")));
+        expectThrows(IllegalStateException.class, () -> read.add(NGramTable.key("xyz")));
+        assertTrue(read.ramBytesUsed() < table.ramBytesUsed());
+    }
+
+    private static String gram(int i) {
+        return new String(new char[] { (char) ('a' + i % 26), (char) (0x400 + i / 26) });
+    }
+}
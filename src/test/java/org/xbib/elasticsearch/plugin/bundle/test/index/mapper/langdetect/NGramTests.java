@@ -2,6 +2,7 @@ package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
 
 import org.elasticsearch.test.ESTestCase;
 import org.xbib.elasticsearch.plugin.bundle.common.langdetect.NGram;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.NGramTable;
 
 public class NGramTests extends ESTestCase {
 
@@ -112,4 +113,19 @@ public class NGramTests extends ESTestCase {
         assertEquals(ngram.get(2), " a");
         assertEquals(ngram.get(3), null);
     }
+
+    /**
+     * Test method for {@link NGram#key(int)}.
+     */
+    public final void testKey() {
+        NGram ngram = new NGram();
+        String text = "Ab, CDE fgh \u3044\u30a4 \u4E03x \u2010 \u0410\u0411\u0432 z";
+        for (int i = 0; i < text.length(); i++) {
+            ngram.addChar(text.charAt(i));
+            for (int n = 0; n <= NGram.N_GRAM + 1; n++) {
+                String gram = ngram.get(n);
+                assertEquals(gram == null ? 0L : NGramTable.key(gram), ngram.key(n));
+            }
+        }
+    }
 }
@@ -0,0 +1,94 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModel;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModels;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.Language;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accuracy and footprint of quantized language detection models.
+ *
+ * The held-out texts are translations of the first article of the Universal Declaration of Human Rights,
+ * which are not part of the language profiles. Each text is detected as a whole and in windows of
+ * 20 characters.
+ */
+public class QuantizationTests extends ESTestCase {
+
+    private static final int WINDOW = 20;
+
+    public void testFootprint() {
+        List<String> languages = LangdetectService.getLanguages(Settings.EMPTY, null);
+        LangdetectModel model = LangdetectModel.build(null, languages);
+        LangdetectModel model16 = model.quantize(16);
+        LangdetectModel model8 = model.quantize(8);
+        assertEquals(16, model16.getTable().getQuantizationBits());
+        assertEquals(8, model8.getTable().getQuantizationBits());
+        assertTrue(model16.getTable().isReadOnly());
+        assertTrue(model16.ramBytesUsed() < model.ramBytesUsed());
+        assertTrue(model8.ramBytesUsed() < model16.ramBytesUsed());
+        logger.info("heap bytes: 32 bit {}, 16 bit {}, 8 bit {}",
+                model.ramBytesUsed(), model16.ramBytesUsed(), model8.ramBytesUsed());
+        // quantizing again gives the same probabilities
+        LangdetectModel again = model8.quantize(8);
+        for (int row = 0; row < model8.getTable().size(); row += 97) {
+            for (int lang = 0; lang < languages.size(); lang++) {
+                assertEquals(model8.getTable().get(row, lang), again.getTable().get(row, lang), 0d);
+            }
+        }
+        LangdetectModels models = new LangdetectModels(null, 8);
+        assertEquals(8, models.get(null, languages).getTable().getQuantizationBits());
+        expectThrows(IllegalArgumentException.class, () -> new LangdetectModels(null, 4));
+    }
+
+    public void testAccuracy() throws Exception {
+        Map<String, List<String>> samples = samples();
+        Settings settings = Settings.builder().put("algorithm", "exact").build();
+        LangdetectService service = new LangdetectService(settings, null, null, new LangdetectModels(null));
+        LangdetectService service16 = new LangdetectService(settings, null, null, new LangdetectModels(null, 16));
+        LangdetectService service8 = new LangdetectService(settings, null, null, new LangdetectModels(null, 8));
+        int total = 0;
+        int[] correct = new int[3];
+        for (Map.Entry<String, List<String>> entry : samples.entrySet()) {
+            String language = entry.getKey();
+            int[] c = new int[3];
+            for (String text : entry.getValue()) {
+                String expected = top(service.detectAll(text));
+                // 16 bits change no detection
+                assertEquals(text, expected, top(service16.detectAll(text)));
+                c[0] += language.equals(expected) ? 1 : 0;
+                c[1] += language.equals(top(service16.detectAll(text))) ? 1 : 0;
+                c[2] += language.equals(top(service8.detectAll(text))) ? 1 : 0;
+            }
+            // the whole text is detected by all models
+            String text = entry.getValue().get(0);
+            assertEquals(text, language, top(service.detectAll(text)));
+            assertEquals(text, language, top(service8.detectAll(text)));
+            // 8 bits lose at most one window of a language
+            assertTrue(language + " " + c[2] + " < " + c[0], c[2] >= c[0] - 1);
+            total += entry.getValue().size();
+            for (int i = 0; i < 3; i++) {
+                correct[i] += c[i];
+            }
+        }
+        logger.info("{} texts, correct: 32 bit {}, 16 bit {}, 8 bit {}", total, correct[0], correct[1], correct[2]);
+        assertTrue(correct[2] * 100 >= correct[0] * 99);
+    }
+
+    private static String top(List<Language> languages) {
+        return languages.isEmpty() ? null : languages.get(0).getLanguage();
+    }
+
+    private static Map<String, List<String>> samples() throws Exception {
+        Map<String, List<String>> samples = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : HeldOutTexts.load().entrySet()) {
+            samples.put(entry.getKey(), HeldOutTexts.windows(entry.getValue(), WINDOW));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,142 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Language detection on a bounded prefix or on sampled windows of long texts.
+ */
+public class SampledDetectorTests extends ESTestCase {
+
+    private static final String ENGLISH = "This is a very small test. ";
+
+    private static final String GERMAN = "Das kann deutsch sein, oder nicht. ";
+
+    public void testPrefix() {
+        String text = repeat(ENGLISH, 100) + repeat(GERMAN, 1000);
+        LangdetectService service = new LangdetectService(Settings.builder()
+                .putList("languages", "de", "en")
+                .put("max_chars", 1000)
+                .build());
+        assertEquals(1, service.detectAll(text).size());
+        assertEquals("en", service.detectAll(text).get(0).getLanguage());
+    }
+
+    public void testWindows() {
+        String text = repeat(ENGLISH, 100) + repeat(GERMAN, 1000);
+        LangdetectService service = new LangdetectService(Settings.builder()
+                .putList("languages", "de", "en")
+                .put("max_chars", 2000)
+                .put("sample_windows", 4)
+                .build());
+        // three of the four windows are german
+        assertEquals("de", service.detectAll(text).get(0).getLanguage());
+    }
+
+    public void testShortTextIsNotSampled() {
+        LangdetectService service = new LangdetectService(Settings.builder()
+                .putList("languages", "de", "en")
+                .build());
+        LangdetectService sampled = new LangdetectService(Settings.builder()
+                .putList("languages", "de", "en")
+                .put("max_chars", 1000)
+                .put("sample_windows", 4)
+                .build());
+        String text = repeat(GERMAN, 10);
+        assertEquals(service.detectAll(text).get(0).getProbability(),
+                sampled.detectAll(text).get(0).getProbability(), 0d);
+    }
+
+    public void testStreamIsReadPartially() throws IOException {
+        byte[] b = (repeat(ENGLISH, 100) + repeat(GERMAN, 10000)).getBytes(StandardCharsets.UTF_8);
+        LangdetectService service = new LangdetectService(Settings.builder()
+                .putList("languages", "de", "en")
+                .put("max_chars", 1000)
+                .build());
+        CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(b));
+        assertEquals("en", service.detectAll(in, b.length).get(0).getLanguage());
+        assertTrue(in.count <= 1000L);
+        service = new LangdetectService(Settings.builder()
+                .putList("languages", "de", "en")
+                .put("max_chars", 1000)
+                .put("sample_windows", 4)
+                .build());
+        assertEquals("de", service.detectAll(new ByteArrayInputStream(b), b.length).get(0).getLanguage());
+    }
+
+    public void testSurrogatePairs() {
+        String emoji = new String(Character.toChars(0x1F600));
+        for (int windows : new int[] { 1, 3, 4 }) {
+            LangdetectService service = new LangdetectService(Settings.builder()
+                    .putList("languages", "de", "en")
+                    .put("max_chars", 101)
+                    .put("sample_windows", windows)
+                    .build());
+            for (int prefix = 0; prefix < 4; prefix++) {
+                // the window borders fall on the high and on the low surrogates of the supplementary characters
+                String text = repeat("a", prefix) + repeat(emoji, 500 + prefix);
+                CharSequence sample = service.sample(text);
+                for (int i = 0; i < sample.length(); i++) {
+                    char c = sample.charAt(i);
+                    if (Character.isHighSurrogate(c)) {
+                        assertTrue(sample.toString(), i + 1 < sample.length() &&
+                                Character.isLowSurrogate(sample.charAt(i + 1)));
+                    } else if (Character.isLowSurrogate(c)) {
+                        assertTrue(sample.toString(), i > 0 && Character.isHighSurrogate(sample.charAt(i - 1)));
+                    }
+                }
+                // a window is at most one char longer, the windows are separated by a space
+                assertTrue(sample.length() + " chars", sample.length() <= 101 + 2 * windows);
+            }
+        }
+    }
+
+    public void testInvalidWindows() {
+        expectThrows(IllegalArgumentException.class, () -> new LangdetectService(Settings.builder()
+                .putList("languages", "de", "en")
+                .put("sample_windows", 0)
+                .build()));
+    }
+
+    private static String repeat(String s, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangProfile;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModel;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModels;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.Language;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.NGramTable;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Classification of texts by script before language detection.
+ */
+public class ScriptFilterTests extends ESTestCase {
+
+    private static final String[] RESOURCES = {
+            "english.txt", "german.txt", "chinese.txt", "japanese.txt", "korean.txt"
+    };
+
+    private static final String[] TEXTS = {
+            "ελληνικά κείμενα είναι εδώ και άλλα πολλά λόγια για την Ελλάδα",
+            "Ελλάδα NATO",
+            "Привет, как дела? Это русский текст.",
+            "שלום עולם זה עברית",
+            "한국어 문장입니다 韓國語",
+            "1冊6,000円",
+            "Việt Nam là một quốc gia nằm ở phía đông bán đảo Đông Dương"
+    };
+
+    public void testSameLanguages() throws Exception {
+        for (String algorithm : new String[] { "sampling", "exact" }) {
+            LangdetectModels models = new LangdetectModels(null);
+            LangdetectService service = new LangdetectService(Settings.builder()
+                    .put("algorithm", algorithm)
+                    .build(), null, null, models);
+            LangdetectService unfiltered = new LangdetectService(Settings.builder()
+                    .put("algorithm", algorithm)
+                    .put("script_filter", false)
+                    .build(), null, null, models);
+            for (String text : texts()) {
+                List<Language> expected = unfiltered.detectAll(text);
+                List<Language> actual = service.detectAll(text);
+                assertEquals(text, languages(expected), languages(actual));
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(text, expected.get(i).getProbability(), actual.get(i).getProbability(), 1e-3);
+                }
+            }
+        }
+    }
+
+    public void testHeldOut() throws Exception {
+        List<String> texts = new ArrayList<>();
+        for (String text : HeldOutTexts.load().values()) {
+            texts.addAll(HeldOutTexts.windows(text, 20));
+        }
+        for (String algorithm : new String[] { "sampling", "exact" }) {
+            LangdetectModels models = new LangdetectModels(null);
+            LangdetectService service = new LangdetectService(Settings.builder()
+                    .put("algorithm", algorithm)
+                    .build(), null, null, models);
+            LangdetectService unfiltered = new LangdetectService(Settings.builder()
+                    .put("algorithm", algorithm)
+                    .put("script_filter", false)
+                    .build(), null, null, models);
+            for (String text : texts) {
+                List<Language> expected = unfiltered.detectAll(text);
+                List<Language> actual = service.detectAll(text);
+                assertEquals(text, expected.size(), actual.size());
+                if (!expected.isEmpty()) {
+                    assertEquals(text, expected.get(0).getLanguage(), actual.get(0).getLanguage());
+                }
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(text, expected.get(i).getProbability(), actual.get(i).getProbability(), 1e-3);
+                }
+            }
+        }
+    }
+
+    /**
+     * The n-gram of the last row of the table is scored without reading beyond the probability matrix,
+     * also if the probability vector has the additional probability of the languages which are not scored.
+     */
+    public void testLastRow() throws Exception {
+        List<String> languages = LangdetectService.getLanguages(Settings.EMPTY, null);
+        NGramTable table = LangdetectModel.build(null, languages).getTable();
+        String gram = gram(languages, table, table.size() - 1);
+        assertNotNull(gram);
+        for (String algorithm : new String[] { "sampling", "exact" }) {
+            for (boolean scriptFilter : new boolean[] { true, false }) {
+                LangdetectService service = new LangdetectService(Settings.builder()
+                        .put("algorithm", algorithm)
+                        .put("script_filter", scriptFilter)
+                        .build());
+                assertNotNull(gram, service.detectAll(gram));
+                assertNotNull(gram, service.detectAll("Das ist ein Test " + gram));
+            }
+        }
+    }
+
+    /**
+     * Find the n-gram of a row in the profiles of the languages of a table.
+     */
+    private static String gram(List<String> languages, NGramTable table, int row) throws Exception {
+        for (int i = languages.size() - 1; i >= 0; i--) {
+            LangProfile profile = new LangProfile();
+            try (InputStream in = LangdetectModel.class.getResourceAsStream(languages.get(i))) {
+                profile.read(in);
+            }
+            for (String gram : profile.getFreq().keySet()) {
+                if (table.find(NGramTable.key(gram)) == row) {
+                    return gram;
+                }
+            }
+        }
+        return null;
+    }
+
+    private List<String> texts() throws Exception {
+        List<String> texts = new ArrayList<>();
+        for (String resource : RESOURCES) {
+            String text = Streams.copyToString(new InputStreamReader(getClass().getResourceAsStream(resource),
+                    StandardCharsets.UTF_8));
+            texts.add(text);
+            for (int length : new int[] { 8, 20, 50 }) {
+                for (int i = 0; i + length <= text.length() && i < 2000; i += length * 3) {
+                    texts.add(text.substring(i, i + length));
+                }
+            }
+        }
+        for (String text : TEXTS) {
+            texts.add(text);
+        }
+        return texts;
+    }
+
+    private static List<String> languages(List<Language> languages) {
+        List<String> list = new ArrayList<>();
+        for (Language language : languages) {
+            list.add(language.getLanguage());
+        }
+        return list;
+    }
+}
@@ -1,7 +1,11 @@
 package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
 
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.test.ESTestCase;
 import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.Language;
+
+import java.util.List;
 
 public class SimpleDetectorTests extends ESTestCase {
 
@@ -10,4 +14,24 @@ public class SimpleDetectorTests extends ESTestCase {
         assertEquals("de", detect.detectAll("Das kann deutsch sein").get(0).getLanguage());
         assertEquals("en", detect.detectAll("This is a very small test").get(0).getLanguage());
     }
+
+    public void testExactDetector() throws Exception {
+        LangdetectService detect = new LangdetectService(Settings.builder()
+                .putList("languages", "de", "en", "fr", "nl", "it")
+                .put("algorithm", "exact")
+                .build());
+        assertEquals("de", detect.detectAll("Das kann deutsch sein").get(0).getLanguage());
+        assertEquals("en", detect.detectAll("This is a very small test").get(0).getLanguage());
+        assertEquals("fr", detect.detectAll("Allons enfants de la Patrie, Le jour de gloire est arrivé!")
+                .get(0).getLanguage());
+        // deterministic, also across instances
+        LangdetectService detect2 = new LangdetectService(detect.getSettings());
+        List<Language> first = detect.detectAll("Datt isse ne test");
+        List<Language> second = detect2.detectAll("Datt isse ne test");
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).getLanguage(), second.get(i).getLanguage());
+            assertEquals(first.get(i).getProbability(), second.get(i).getProbability(), 0d);
+        }
+    }
 }
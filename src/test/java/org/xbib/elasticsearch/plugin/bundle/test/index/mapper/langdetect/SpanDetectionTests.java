@@ -0,0 +1,108 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModels;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LanguageSpan;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detection of the language spans of texts which switch between languages.
+ */
+public class SpanDetectionTests extends ESTestCase {
+
+    private static final int SPAN_WINDOW = 100;
+
+    private final LangdetectService service = new LangdetectService(Settings.builder()
+            .putList("languages", LangdetectService.getLanguages(Settings.EMPTY, null))
+            .put("span_window", SPAN_WINDOW)
+            .build(), null, null, new LangdetectModels(null));
+
+    public void testMixedText() throws Exception {
+        Map<String, String> samples = HeldOutTexts.load();
+        String[][] pairs = { { "de", "en" }, { "en", "fr" }, { "ru", "en" }, { "fi", "sv" }, { "ja", "en" } };
+        for (String[] pair : pairs) {
+            String first = samples.get(pair[0]);
+            String text = first + " " + samples.get(pair[1]);
+            List<LanguageSpan> spans = service.detectSpans(text, null);
+            assertEquals(text, 2, spans.size());
+            assertEquals(pair[0], spans.get(0).getLanguage());
+            assertEquals(pair[1], spans.get(1).getLanguage());
+            assertEquals(0, spans.get(0).getStart());
+            assertEquals(spans.get(0).getEnd(), spans.get(1).getStart());
+            assertEquals(text.length(), spans.get(1).getEnd());
+            // the boundary is found within half a window of the switch
+            assertTrue(spans.toString(), Math.abs(spans.get(1).getStart() - (first.length() + 1)) < SPAN_WINDOW / 2);
+            // the boundary is at the start of a word
+            assertFalse(Character.isLetter(text.charAt(spans.get(1).getStart() - 1)));
+            assertTrue(spans.get(0).getProbability() > 0.9);
+            assertTrue(spans.get(1).getProbability() > 0.9);
+        }
+    }
+
+    public void testSingleLanguage() throws Exception {
+        for (Map.Entry<String, String> entry : HeldOutTexts.load().entrySet()) {
+            if (entry.getKey().startsWith("zh")) {
+                // the simplified and traditional chinese texts are nearly the same
+                continue;
+            }
+            String text = entry.getValue();
+            List<LanguageSpan> spans = service.detectSpans(text, null);
+            assertEquals(text + " " + spans, 1, spans.size());
+            assertEquals(entry.getKey(), spans.get(0).getLanguage());
+            assertEquals(0, spans.get(0).getStart());
+            assertEquals(text.length(), spans.get(0).getEnd());
+        }
+    }
+
+    public void testCandidateLanguages() throws Exception {
+        Map<String, String> samples = HeldOutTexts.load();
+        String text = samples.get("de") + " " + samples.get("en");
+        List<LanguageSpan> spans = service.detectSpans(text, Arrays.asList("en", "nl"));
+        for (LanguageSpan span : spans) {
+            assertTrue(span.toString(), span.getLanguage().equals("en") || span.getLanguage().equals("nl"));
+        }
+        expectThrows(IllegalArgumentException.class, () -> service.detectSpans(text, Collections.singletonList("xx")));
+    }
+
+    public void testNoNGrams() {
+        assertTrue(service.detectSpans("", null).isEmpty());
+        assertTrue(service.detectSpans("  ...  ", null).isEmpty());
+    }
+
+    /**
+     * The cost of the span detection is linear in the length of the text. Each n-gram enters and leaves the
+     * sliding window once and is added once to the scores of its span, so the score updates of a text which is
+     * eight times longer are eight times the updates of the text, far below the 64 times of a quadratic cost.
+     */
+    public void testLinearCost() throws Exception {
+        Map<String, String> samples = HeldOutTexts.load();
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 20000) {
+            sb.append(samples.get("de")).append(' ').append(samples.get("en")).append(' ');
+        }
+        String text = sb.toString();
+        for (int i = 0; i < 3; i++) {
+            sb.append(sb);
+        }
+        String longText = sb.toString();
+        long updates = spanUpdates(text);
+        long longUpdates = spanUpdates(longText);
+        // at most three n-grams per character, each is updated at most three times
+        assertTrue(text.length() + " characters: " + updates, updates <= 9L * text.length());
+        assertTrue(longText.length() + " characters: " + longUpdates + ", " + text.length() + " characters: " +
+                updates, longUpdates <= 9L * updates);
+    }
+
+    private long spanUpdates(String text) {
+        assertFalse(service.detectSpans(text, null).isEmpty());
+        long updates = service.getSpanUpdates();
+        assertTrue(updates > 0L);
+        return updates;
+    }
+}
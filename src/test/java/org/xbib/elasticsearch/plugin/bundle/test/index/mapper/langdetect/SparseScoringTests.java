@@ -0,0 +1,143 @@
+package org.xbib.elasticsearch.plugin.bundle.test.index.mapper.langdetect;
+
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESTestCase;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectModel;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.LangdetectService;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.NGram;
+import org.xbib.elasticsearch.plugin.bundle.common.langdetect.NGramTable;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dense and sparse scoring of n-gram rows over the bundled profiles.
+ */
+public class SparseScoringTests extends ESTestCase {
+
+    private static final String[] RESOURCES = {
+            "english.txt", "german.txt", "chinese.txt", "japanese.txt", "korean.txt"
+    };
+
+    private static final double WEIGHT = 0.5d / 10000;
+
+    public void testSameScores() throws Exception {
+        for (String profile : new String[] { null, "shorttext" }) {
+            NGramTable table = LangdetectModel.build(profile,
+                    LangdetectService.getLanguages(Settings.EMPTY, profile)).getTable();
+            for (int[] rows : rows(table)) {
+                double[] dense = score(table, rows, false);
+                double[] sparse = score(table, rows, true);
+                for (int i = 0; i < dense.length; i++) {
+                    assertEquals(dense[i], sparse[i], 1e-12);
+                }
+            }
+        }
+    }
+
+    public void testSparseRows() {
+        NGramTable table = new NGramTable(4);
+        int sparse = table.add(NGramTable.key("a"));
+        table.set(sparse, 2, 0.5d);
+        int dense = table.add(NGramTable.key("b"));
+        table.set(dense, 0, 0.25d);
+        table.set(dense, 3, 0.75d);
+        long ramBytesUsed = table.ramBytesUsed();
+        table.trim();
+        assertTrue(table.ramBytesUsed() < ramBytesUsed);
+        assertEquals(0d, table.get(sparse, 0), 0d);
+        assertEquals(0.5d, table.get(sparse, 2), 0d);
+        assertEquals(0.75d, table.get(dense, 3), 0d);
+        assertTrue(table.hasProbability(sparse, new boolean[] { false, false, true, false }));
+        assertFalse(table.hasProbability(sparse, new boolean[] { true, true, false, true }));
+        double[] prob = { 1d, 1d, 1d, 1d };
+        table.updateSparse(sparse, prob, 0.25d);
+        assertArrayEquals(new double[] { 1d, 1d, 3d, 1d }, prob, 1e-7);
+        table.updateSparse(dense, prob, new int[] { 1, -1, -1, 0 }, 0.25d);
+        assertArrayEquals(new double[] { 4d, 2d, 3d, 1d }, prob, 1e-7);
+        // a trimmed table can be extended
+        table.set(table.add(NGramTable.key("c")), 1, 0.125d);
+        table.trim();
+        assertEquals(0.125d, table.get(table.find(NGramTable.key("c")), 1), 0d);
+        assertEquals(0.5d, table.get(sparse, 2), 0d);
+    }
+
+    /**
+     * The dense scoring updates all languages for each n-gram, the sparse scoring only the languages which have
+     * a probability for the n-gram. Over the n-grams of the test texts, these are less than half of all languages.
+     */
+    public void testSparseUpdates() throws Exception {
+        NGramTable table = LangdetectModel.build(null, LangdetectService.getLanguages(Settings.EMPTY, null))
+                .getTable();
+        boolean[] languages = new boolean[table.getLangSize()];
+        long dense = 0L;
+        long sparse = 0L;
+        for (int[] rows : rows(table)) {
+            for (int row : rows) {
+                Arrays.fill(languages, false);
+                table.markLanguages(row, languages);
+                for (boolean language : languages) {
+                    sparse += language ? 1 : 0;
+                }
+                dense += languages.length;
+            }
+        }
+        assertTrue(sparse > 0L);
+        assertTrue(sparse + " of " + dense + " updates", sparse * 2 < dense);
+    }
+
+    private static double[] score(NGramTable table, int[] rows, boolean sparse) {
+        double[] prob = new double[table.getLangSize()];
+        Arrays.fill(prob, 1d / prob.length);
+        for (int i = 0; i < rows.length; i++) {
+            if (sparse) {
+                table.updateSparse(rows[i], prob, WEIGHT);
+            } else {
+                table.update(rows[i], prob, WEIGHT);
+            }
+            if (i % 5 == 4 || i == rows.length - 1) {
+                double sum = 0d;
+                for (double p : prob) {
+                    sum += p;
+                }
+                for (int j = 0; j < prob.length; j++) {
+                    prob[j] /= sum;
+                }
+            }
+        }
+        return prob;
+    }
+
+    private List<int[]> rows(NGramTable table) throws Exception {
+        List<int[]> list = new ArrayList<>();
+        for (String resource : RESOURCES) {
+            String text = Streams.copyToString(new InputStreamReader(getClass().getResourceAsStream(resource),
+                    StandardCharsets.UTF_8));
+            for (int i = 0; i + 50 <= text.length(); i += 50) {
+                list.add(rows(table, text.substring(i, i + 50)));
+            }
+        }
+        return list;
+    }
+
+    private static int[] rows(NGramTable table, String text) {
+        NGram ngram = new NGram();
+        int[] rows = new int[text.length() * NGram.N_GRAM];
+        int size = 0;
+        for (int i = 0; i < text.length(); i++) {
+            ngram.addChar(text.charAt(i));
+            for (int n = 1; n <= NGram.N_GRAM; n++) {
+                long key = ngram.key(n);
+                int row = key != 0L ? table.find(key) : -1;
+                if (row >= 0) {
+                    rows[size++] = row;
+                }
+            }
+        }
+        return Arrays.copyOf(rows, size);
+    }
+}
@@ -0,0 +1,135 @@
+package org.xbib.elasticsearch.plugin.bundle.test.query.langdetect;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.NamedWriteableAwareStreamInput;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.query.MultiMatchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.query.QueryShardException;
+import org.elasticsearch.index.query.Rewriteable;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.search.SearchModule;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.xbib.elasticsearch.plugin.bundle.BundlePlugin;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectStatsRequestBuilder;
+import org.xbib.elasticsearch.plugin.bundle.action.langdetect.LangdetectStatsResponse;
+import org.xbib.elasticsearch.plugin.bundle.common.cache.CacheStats;
+import org.xbib.elasticsearch.plugin.bundle.query.langdetect.LangdetectQueryBuilder;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Language routing query test.
+ */
+public class LangdetectQueryTests extends ESSingleNodeTestCase {
+
+    private static final long QUERY_CACHE_SIZE = 100L;
+
+    /** The plugin classes that should be added to the node. */
+    @Override
+    protected Collection<Class<? extends Plugin>> getPlugins() {
+        return Collections.singletonList(BundlePlugin.class);
+    }
+
+    @Override
+    protected Settings nodeSettings() {
+        return Settings.builder()
+                .put("plugins.xbib.langdetect.query_cache.size", QUERY_CACHE_SIZE)
+                .build();
+    }
+
+    public void testRewrite() throws Exception {
+        IndexService indexService = createIndex("test", Settings.EMPTY, "someType", mapping());
+        QueryShardContext context = indexService.newQueryShardContext(0, null, () -> 0L, null);
+        MultiMatchQueryBuilder query = rewrite(new LangdetectQueryBuilder("Das ist ein kleiner Test", "content"),
+                context);
+        assertEquals(Collections.singleton("content_de"), query.fields().keySet());
+        query = rewrite(new LangdetectQueryBuilder("This is a very small test", "content").boost(2f), context);
+        assertEquals(Collections.singleton("content_en"), query.fields().keySet());
+        assertEquals(2f, query.boost(), 0f);
+        // a language without a field queries all fields
+        query = rewrite(new LangdetectQueryBuilder("Ceci est un texte en français", "content"), context);
+        assertEquals(2, query.fields().size());
+        expectThrows(QueryShardException.class,
+                () -> rewrite(new LangdetectQueryBuilder("Das ist ein Test", "content_de"), context));
+    }
+
+    public void testQueryCache() throws Exception {
+        IndexService indexService = createIndex("test", Settings.EMPTY, "someType", mapping());
+        QueryShardContext context = indexService.newQueryShardContext(0, null, () -> 0L, null);
+        String text = "Der Cache ist für wiederholte Anfragen";
+        CacheStats before = queryCacheStats();
+        for (int i = 0; i < 3; i++) {
+            rewrite(new LangdetectQueryBuilder(text, "content"), context);
+        }
+        CacheStats after = queryCacheStats();
+        assertEquals(QUERY_CACHE_SIZE, after.getMaximumSize());
+        assertEquals(1L, after.getMisses() - before.getMisses());
+        assertEquals(2L, after.getHits() - before.getHits());
+    }
+
+    public void testSearch() throws Exception {
+        createIndex("test", Settings.EMPTY, "someType", mapping());
+        client().prepareIndex("test", "someType", "1")
+                .setSource("content", "Das ist ein Test der deutschen Sprache")
+                .get();
+        client().prepareIndex("test", "someType", "2")
+                .setSource("content", "This is a test of the English language")
+                .setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE)
+                .get();
+        SearchResponse response = client().prepareSearch("test")
+                .setQuery(new LangdetectQueryBuilder("Ein Test der Sprache", "content"))
+                .get();
+        assertEquals(1L, response.getHits().getTotalHits());
+        assertEquals("1", response.getHits().getAt(0).getId());
+    }
+
+    public void testSerialization() throws Exception {
+        LangdetectQueryBuilder query = new LangdetectQueryBuilder("Das ist ein Test", "content").top(2)
+                .queryName("q");
+        NamedWriteableRegistry registry = new NamedWriteableRegistry(
+                new SearchModule(Settings.EMPTY, false, Collections.singletonList(new BundlePlugin(Settings.EMPTY)))
+                        .getNamedWriteables());
+        BytesStreamOutput out = new BytesStreamOutput();
+        out.writeNamedWriteable(query);
+        QueryBuilder copy = new NamedWriteableAwareStreamInput(out.bytes().streamInput(), registry)
+                .readNamedWriteable(QueryBuilder.class);
+        assertEquals(query, copy);
+        expectThrows(IllegalArgumentException.class, () -> new LangdetectQueryBuilder("test", "content").top(0));
+    }
+
+    private CacheStats queryCacheStats() {
+        LangdetectStatsResponse response = new LangdetectStatsRequestBuilder(client()).execute().actionGet();
+        assertFalse(response.hasFailures());
+        return response.getNodes().get(0).getQueryCacheStats();
+    }
+
+    private static MultiMatchQueryBuilder rewrite(LangdetectQueryBuilder query, QueryShardContext context)
+            throws Exception {
+        return (MultiMatchQueryBuilder) Rewriteable.rewrite(query, context);
+    }
+
+    private static XContentBuilder mapping() throws Exception {
+        return XContentFactory.jsonBuilder().startObject()
+                .startObject("someType").startObject("properties")
+                .startObject("content")
+                .field("type", "langdetect")
+                .array("languages", "de", "en", "fr")
+                .startObject("language_to")
+                .field("de", "content_de")
+                .field("en", "content_en")
+                .endObject()
+                .endObject()
+                .startObject("content_de").field("type", "text").endObject()
+                .startObject("content_en").field("type", "text").endObject()
+                .endObject().endObject().endObject();
+    }
+}